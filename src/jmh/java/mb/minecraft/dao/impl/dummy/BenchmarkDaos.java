@@ -0,0 +1,62 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.lang.reflect.Constructor;
+import java.util.Random;
+
+/**
+ * Builds dummy DAOs outside Spring for the benchmarks, the same way Spring
+ * does (the constructors are private), and holds the small bits of test data
+ * plumbing the benchmarks share.
+ *
+ * @author mikebro
+ */
+final class BenchmarkDaos {
+
+	private BenchmarkDaos() {
+	}
+
+	static <T> T create( Class<T> daoClass ) {
+		try {
+			Constructor<T> constructor = daoClass.getDeclaredConstructor();
+			constructor.setAccessible( true );
+			return constructor.newInstance();
+		} catch( ReflectiveOperationException e ) {
+			throw new IllegalStateException( "cannot create " + daoClass.getName(), e );
+		}
+	}
+
+	static VillagerTypeDaoDummyImpl createVillagerTypeDao( VillagerDaoDummyImpl villagerDao ) {
+		VillagerTypeDaoDummyImpl dao = create( VillagerTypeDaoDummyImpl.class );
+		dao.villagerDao = villagerDao;
+		return dao;
+	}
+
+	/** @return a copy of ids in a fixed random order, so lookups don't stream through memory */
+	static int[] shuffle( int[] ids ) {
+		int[] shuffled = ids.clone();
+		Random random = new Random( 42 );
+		for( int i = shuffled.length - 1; i > 0; i-- ) {
+			int j = random.nextInt( i + 1 );
+			int id = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = id;
+		}
+		return shuffled;
+	}
+
+	/** Hands out the elements of an array round-robin. */
+	static final class Cycle {
+		private final int[] values;
+		private int next;
+
+		Cycle( int[] values ) {
+			this.values = values;
+		}
+
+		int next() {
+			int value = values[next];
+			next = next + 1 == values.length ? 0 : next + 1;
+			return value;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DummyDataSnapshot over a generated dataset; 64,000 villagers come to about
+ * a million trade items. Each import goes into freshly built DAOs, so it
+ * measures loading rather than clearing.
+ *
+ * @author mikebro
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgs = { "-Xmx4g" } )
+public class DummyDataSnapshotBenchmark {
+
+	@Param( { "64000" } )
+	int villagers;
+
+	private DummyDataSnapshot source;
+	private DummyDataSnapshot target;
+	private Path file;
+
+
+	@Setup( Level.Trial )
+	public void setUp() throws IOException {
+		source = newSnapshot();
+		DummyDataGenerator.builder().villagers( villagers ).build()
+				.populate( source.itemDao, source.villageDao, source.villagerTypeDao,
+						source.villagerDao, source.tradeDao, source.tradeItemDao );
+		file = Files.createTempFile( "dummy-dao", ".snap" );
+		source.exportTo( file );
+	}
+
+	@Setup( Level.Iteration )
+	public void setUpTarget() {
+		target = newSnapshot();
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown() throws IOException {
+		Files.deleteIfExists( file );
+	}
+
+	private static DummyDataSnapshot newSnapshot() {
+		DummyDataSnapshot snapshot = new DummyDataSnapshot();
+		snapshot.itemDao = BenchmarkDaos.create( ItemDaoDummyImpl.class );
+		snapshot.villageDao = BenchmarkDaos.create( VillageDaoDummyImpl.class );
+		snapshot.villagerDao = BenchmarkDaos.create( VillagerDaoDummyImpl.class );
+		snapshot.villagerTypeDao = BenchmarkDaos.createVillagerTypeDao( snapshot.villagerDao );
+		snapshot.tradeDao = BenchmarkDaos.create( TradeDaoDummyImpl.class );
+		snapshot.tradeItemDao = BenchmarkDaos.create( TradeItemDaoDummyImpl.class );
+		return snapshot;
+	}
+
+
+	@Benchmark
+	public long exportTo() throws IOException {
+		return source.exportTo( file );
+	}
+
+	@Benchmark
+	public long importFrom() throws IOException {
+		return target.importFrom( file );
+	}
+}
@@ -0,0 +1,151 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * IntTable against the HashMap&lt;Integer,T&gt; the DAOs used to keep their
+ * rows in, at a million rows. Point operations walk the IDs in a shuffled
+ * order so neither table gets to stream through memory.
+ * <p>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="IntTableBenchmark"
+ *
+ * @author mikebro
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class IntTableBenchmark {
+
+	@Param( { "1000000" } )
+	int rows;
+
+	private int[] ids;
+	private Object[] values;
+	private int next;
+
+	private Map<Integer,Object> hashMap;
+	private IntTable<Object> intTable;
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+		ids = new int[rows];
+		values = new Object[rows];
+		for( int i = 0; i < rows; i++ ) {
+			ids[i] = i + 1;
+			values[i] = new Object();
+		}
+		Random random = new Random( 42 );
+		for( int i = rows - 1; i > 0; i-- ) {
+			int j = random.nextInt( i + 1 );
+			int id = ids[i];
+			ids[i] = ids[j];
+			ids[j] = id;
+		}
+		hashMap = new HashMap<>();
+		intTable = new IntTable<>();
+		for( int i = 0; i < rows; i++ ) {
+			hashMap.put( i + 1, values[i] );
+			intTable.put( i + 1, values[i] );
+		}
+	}
+
+	private int nextId() {
+		int id = ids[next];
+		next = next + 1 == rows ? 0 : next + 1;
+		return id;
+	}
+
+
+	@Benchmark
+	public Object hashMapGet() {
+		return hashMap.get( nextId() );
+	}
+
+	@Benchmark
+	public Object intTableGet() {
+		return intTable.get( nextId() );
+	}
+
+	// the old update(): containsKey, then put
+	@Benchmark
+	public Object hashMapUpdate() {
+		int id = nextId();
+		return hashMap.containsKey( id ) ? hashMap.put( id, values[id - 1] ) : null;
+	}
+
+	@Benchmark
+	public Object intTableUpdate() {
+		int id = nextId();
+		return intTable.replace( id, values[id - 1] );
+	}
+
+	// delete a row and insert it again, which is what steady-state churn looks like
+	@Benchmark
+	public Object hashMapChurn() {
+		int id = nextId();
+		Object row = hashMap.remove( id );
+		return hashMap.put( id, row );
+	}
+
+	@Benchmark
+	public Object intTableChurn() {
+		int id = nextId();
+		Object row = intTable.remove( id );
+		return intTable.put( id, row );
+	}
+
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	public Map<Integer,Object> hashMapFill() {
+		Map<Integer,Object> map = new HashMap<>();
+		for( int i = 0; i < rows; i++ ) {
+			map.put( ids[i], values[i] );
+		}
+		return map;
+	}
+
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	public IntTable<Object> intTableFill() {
+		IntTable<Object> table = new IntTable<>();
+		for( int i = 0; i < rows; i++ ) {
+			table.put( ids[i], values[i] );
+		}
+		return table;
+	}
+
+	// selectAll()
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	public List<Object> hashMapCopy() {
+		return new ArrayList<>( hashMap.values() );
+	}
+
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	public List<Object> intTableCopy() {
+		return intTable.rows();
+	}
+}
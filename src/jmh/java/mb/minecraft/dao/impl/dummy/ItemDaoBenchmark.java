@@ -0,0 +1,102 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mb.minecraft.dao.impl.dummy.BenchmarkDaos.Cycle;
+import mb.minecraft.model.Item;
+
+/**
+ * ItemDaoDummyImpl, which also stands in for VillageDaoDummyImpl: the two
+ * share every line of their implementation but the row type.
+ * <p>
+ * Inserts are measured together with the delete that takes the row back out,
+ * so the table stays at its parameterized size for the whole run.
+ *
+ * @author mikebro
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ItemDaoBenchmark {
+
+	@Param( { "10", "1000", "100000", "1000000" } )
+	int rows;
+
+	private ItemDaoDummyImpl itemDao;
+	private Item[] items;
+	private Cycle ids;
+	private Cycle positions;
+	private int[] batch;
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+		itemDao = BenchmarkDaos.create( ItemDaoDummyImpl.class );
+		items = new Item[rows];
+		int[] order = new int[rows];
+		for( int i = 0; i < rows; i++ ) {
+			items[i] = itemDao.insertOne( Item.builder().name( "Bench item " + i ).imageSource( "bench.png" ).build() );
+			order[i] = i;
+		}
+		order = BenchmarkDaos.shuffle( order );
+		int[] shuffledIds = new int[rows];
+		for( int i = 0; i < rows; i++ ) {
+			shuffledIds[i] = items[order[i]].getId();
+		}
+		ids = new Cycle( shuffledIds );
+		batch = new int[Math.min( rows, 100 )];
+		for( int i = 0; i < batch.length; i++ ) {
+			batch[i] = shuffledIds[i];
+		}
+		positions = new Cycle( order );
+	}
+
+
+	@Benchmark
+	public Item selectOneById() {
+		return itemDao.selectOneById( ids.next() );
+	}
+
+	@Benchmark
+	public List<Item> selectByIds() {
+		return itemDao.selectByIds( batch );
+	}
+
+	@Benchmark
+	public Item selectOneByName() {
+		return itemDao.selectOneByName( items[positions.next()].getName() );
+	}
+
+	@Benchmark
+	public List<Item> selectAll() {
+		return itemDao.selectAll();
+	}
+
+	@Benchmark
+	public Item update() {
+		return itemDao.update( items[positions.next()] );
+	}
+
+	@Benchmark
+	public boolean insertOneDeleteOne() {
+		Item item = itemDao.insertOne( Item.builder().name( "Bench insert" ).imageSource( "bench.png" ).build() );
+		return itemDao.deleteOne( item );
+	}
+}
@@ -0,0 +1,120 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mb.minecraft.dao.impl.dummy.BenchmarkDaos.Cycle;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.Villager;
+
+/**
+ * TradeDaoDummyImpl, with ten trades per villager.
+ *
+ * @author mikebro
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class TradeDaoBenchmark {
+
+	private static final int FIRST_VILLAGER_ID = 20_000;
+	private static final int BATCH = 100;
+
+	@Param( { "10", "1000", "100000", "1000000" } )
+	int rows;
+
+	private TradeDaoDummyImpl tradeDao;
+	private Trade[] trades;
+	private Villager[] villagers;
+	private Cycle ids;
+	private Cycle positions;
+	private Cycle villagerPositions;
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+		tradeDao = BenchmarkDaos.create( TradeDaoDummyImpl.class );
+
+		villagers = new Villager[Math.max( 1, rows / 10 )];
+		int[] villagerOrder = new int[villagers.length];
+		for( int v = 0; v < villagers.length; v++ ) {
+			villagers[v] = Villager.builder().id( FIRST_VILLAGER_ID + v ).build();
+			villagerOrder[v] = v;
+		}
+
+		trades = new Trade[rows];
+		int[] order = new int[rows];
+		for( int i = 0; i < rows; i++ ) {
+			trades[i] = tradeDao.insertOne( Trade.builder().villagerId( FIRST_VILLAGER_ID + i % villagers.length ).build() );
+			order[i] = i;
+		}
+		order = BenchmarkDaos.shuffle( order );
+		int[] shuffledIds = new int[rows];
+		for( int i = 0; i < rows; i++ ) {
+			shuffledIds[i] = trades[order[i]].getId();
+		}
+		ids = new Cycle( shuffledIds );
+		positions = new Cycle( order );
+		villagerPositions = new Cycle( BenchmarkDaos.shuffle( villagerOrder ) );
+	}
+
+
+	@Benchmark
+	public Trade selectOneById() {
+		return tradeDao.selectOneById( ids.next() );
+	}
+
+	@Benchmark
+	public List<Trade> selectAll() {
+		return tradeDao.selectAll();
+	}
+
+	@Benchmark
+	public List<Trade> selectAllByVillager() {
+		return tradeDao.selectAll( villagers[villagerPositions.next()] );
+	}
+
+	@Benchmark
+	public Trade update() {
+		return tradeDao.update( trades[positions.next()] );
+	}
+
+	@Benchmark
+	public boolean insertOneDeleteOne() {
+		Trade trade = tradeDao.insertOne( Trade.builder().villagerId( FIRST_VILLAGER_ID ).build() );
+		return tradeDao.deleteOne( trade );
+	}
+
+	// a batch of trades for ten villagers, then deleted one by one
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MICROSECONDS )
+	public int insertDelete() {
+		List<Trade> batch = new ArrayList<>( BATCH );
+		for( int i = 0; i < BATCH; i++ ) {
+			batch.add( Trade.builder().villagerId( FIRST_VILLAGER_ID + i % 10 ).build() );
+		}
+		int deleted = 0;
+		for( Trade trade : tradeDao.insert( batch ) ) {
+			if( tradeDao.deleteOne( trade ) )
+				deleted++;
+		}
+		return deleted;
+	}
+}
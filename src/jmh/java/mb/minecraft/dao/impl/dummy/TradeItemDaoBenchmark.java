@@ -0,0 +1,145 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mb.minecraft.dao.impl.dummy.BenchmarkDaos.Cycle;
+import mb.minecraft.model.Item;
+import mb.minecraft.model.OfferRequire;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+
+/**
+ * TradeItemDaoDummyImpl, with two offered and two required items per trade,
+ * drawn round-robin from the eighteen mock items.
+ *
+ * @author mikebro
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class TradeItemDaoBenchmark {
+
+	private static final int FIRST_TRADE_ID = 30_000;
+	private static final int FIRST_ITEM_ID = 1001;
+	private static final int ITEM_COUNT = 18;
+	private static final int PER_TRADE = 4;
+	private static final int BATCH = 100;
+
+	@Param( { "10", "1000", "100000", "1000000" } )
+	int rows;
+
+	private TradeItemDaoDummyImpl tradeItemDao;
+	private TradeItem[] tradeItems;
+	private Trade[] trades;
+	private Item[] items;
+	private Cycle positions;
+	private Cycle tradePositions;
+	private Cycle itemPositions;
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+		tradeItemDao = BenchmarkDaos.create( TradeItemDaoDummyImpl.class );
+
+		trades = new Trade[Math.max( 1, ( rows + PER_TRADE - 1 ) / PER_TRADE )];
+		int[] tradeOrder = new int[trades.length];
+		for( int t = 0; t < trades.length; t++ ) {
+			trades[t] = Trade.builder().id( FIRST_TRADE_ID + t ).build();
+			tradeOrder[t] = t;
+		}
+		items = new Item[ITEM_COUNT];
+		int[] itemOrder = new int[ITEM_COUNT];
+		for( int i = 0; i < ITEM_COUNT; i++ ) {
+			items[i] = Item.builder().id( FIRST_ITEM_ID + i ).build();
+			itemOrder[i] = i;
+		}
+
+		tradeItems = new TradeItem[rows];
+		int[] order = new int[rows];
+		for( int i = 0; i < rows; i++ ) {
+			tradeItems[i] = tradeItemDao.insertOne( newTradeItem( FIRST_TRADE_ID + i / PER_TRADE, i % PER_TRADE, i ) );
+			order[i] = i;
+		}
+		positions = new Cycle( BenchmarkDaos.shuffle( order ) );
+		tradePositions = new Cycle( BenchmarkDaos.shuffle( tradeOrder ) );
+		itemPositions = new Cycle( BenchmarkDaos.shuffle( itemOrder ) );
+	}
+
+	// OFFER 1, REQUIRE 1, OFFER 2, REQUIRE 2
+	private static TradeItem newTradeItem( int tradeId, int slot, int n ) {
+		return TradeItem.builder()
+				.tradeId( tradeId )
+				.offerRequire( slot % 2 == 0 ? OfferRequire.OFFER : OfferRequire.REQUIRE )
+				.seqno( slot / 2 + 1 )
+				.quantity( 1 )
+				.itemId( FIRST_ITEM_ID + n % ITEM_COUNT )
+				.build();
+	}
+
+
+	@Benchmark
+	public TradeItem selectOneByTradeKey() {
+		TradeItem key = tradeItems[positions.next()];
+		return tradeItemDao.selectOneByTradeKey( key.getTradeId(), key.getOfferRequire(), key.getSeqno() );
+	}
+
+	@Benchmark
+	public List<TradeItem> selectAll() {
+		return tradeItemDao.selectAll();
+	}
+
+	@Benchmark
+	public List<TradeItem> selectAllByTrade() {
+		return tradeItemDao.selectAll( trades[tradePositions.next()] );
+	}
+
+	@Benchmark
+	public List<TradeItem> selectAllByItem() {
+		return tradeItemDao.selectAll( items[itemPositions.next()] );
+	}
+
+	@Benchmark
+	public TradeItem update() {
+		return tradeItemDao.update( tradeItems[positions.next()] );
+	}
+
+	@Benchmark
+	public boolean insertOneDeleteOne() {
+		TradeItem tradeItem = tradeItemDao.insertOne( newTradeItem( FIRST_TRADE_ID - 1, 0, 0 ) );
+		return tradeItemDao.deleteOne( tradeItem );
+	}
+
+	// complete trades for twenty-five trades, then deleted one by one
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MICROSECONDS )
+	public int insertDelete() {
+		List<TradeItem> batch = new ArrayList<>( BATCH );
+		for( int i = 0; i < BATCH; i++ ) {
+			batch.add( newTradeItem( FIRST_TRADE_ID - 1 - i / PER_TRADE, i % PER_TRADE, i ) );
+		}
+		int deleted = 0;
+		for( TradeItem tradeItem : tradeItemDao.insert( batch ) ) {
+			if( tradeItemDao.deleteOne( tradeItem ) )
+				deleted++;
+		}
+		return deleted;
+	}
+}
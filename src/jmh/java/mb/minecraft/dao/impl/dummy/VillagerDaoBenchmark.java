@@ -0,0 +1,141 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mb.minecraft.dao.ForeignKeyConstraintException;
+import mb.minecraft.dao.impl.dummy.BenchmarkDaos.Cycle;
+import mb.minecraft.model.Village;
+import mb.minecraft.model.Villager;
+import mb.minecraft.model.VillagerType;
+
+/**
+ * VillagerDaoDummyImpl, and VillagerTypeDaoDummyImpl.deleteOne(), whose
+ * foreign key check looks the type up in the villager DAO's type index.
+ * <p>
+ * Villagers are spread over one village per hundred of them, and over four of
+ * the mock villager types.
+ *
+ * @author mikebro
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class VillagerDaoBenchmark {
+
+	private static final int FIRST_VILLAGE_ID = 10_000;
+	private static final int[] TYPE_IDS = { 101, 102, 103, 104 };
+
+	@Param( { "10", "1000", "100000", "1000000" } )
+	int rows;
+
+	private VillagerDaoDummyImpl villagerDao;
+	private VillagerTypeDaoDummyImpl villagerTypeDao;
+	private Villager[] villagers;
+	private Village[] villages;
+	private Cycle ids;
+	private Cycle positions;
+	private Cycle villagePositions;
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+		villagerDao = BenchmarkDaos.create( VillagerDaoDummyImpl.class );
+		villagerTypeDao = BenchmarkDaos.createVillagerTypeDao( villagerDao );
+
+		villages = new Village[Math.max( 1, rows / 100 )];
+		int[] villageOrder = new int[villages.length];
+		for( int v = 0; v < villages.length; v++ ) {
+			villages[v] = Village.builder().id( FIRST_VILLAGE_ID + v ).name( "Bench village " + v ).build();
+			villageOrder[v] = v;
+		}
+
+		villagers = new Villager[rows];
+		int[] order = new int[rows];
+		for( int i = 0; i < rows; i++ ) {
+			villagers[i] = villagerDao.insertOne( Villager.builder()
+					.name( "Bench villager " + i )
+					.villageId( FIRST_VILLAGE_ID + i % villages.length )
+					.typeId( TYPE_IDS[i % TYPE_IDS.length] )
+					.build() );
+			order[i] = i;
+		}
+		order = BenchmarkDaos.shuffle( order );
+		int[] shuffledIds = new int[rows];
+		for( int i = 0; i < rows; i++ ) {
+			shuffledIds[i] = villagers[order[i]].getId();
+		}
+		ids = new Cycle( shuffledIds );
+		positions = new Cycle( order );
+		villagePositions = new Cycle( BenchmarkDaos.shuffle( villageOrder ) );
+	}
+
+
+	@Benchmark
+	public Villager selectOneById() {
+		return villagerDao.selectOneById( ids.next() );
+	}
+
+	@Benchmark
+	public Villager selectOneByName() {
+		return villagerDao.selectOneByName( villagers[positions.next()].getName() );
+	}
+
+	@Benchmark
+	public List<Villager> selectAll() {
+		return villagerDao.selectAll();
+	}
+
+	@Benchmark
+	public List<Villager> selectAllByVillage() {
+		return villagerDao.selectAll( villages[villagePositions.next()] );
+	}
+
+	@Benchmark
+	public Villager update() {
+		return villagerDao.update( villagers[positions.next()] );
+	}
+
+	@Benchmark
+	public boolean insertOneDeleteOne() {
+		Villager villager = villagerDao.insertOne( Villager.builder()
+				.name( "Bench insert" )
+				.villageId( FIRST_VILLAGE_ID )
+				.typeId( TYPE_IDS[0] )
+				.build() );
+		return villagerDao.deleteOne( villager );
+	}
+
+	// a type nobody uses: the check passes, and the type is put back for the next call
+	@Benchmark
+	public boolean villagerTypeDeleteOne() {
+		VillagerType type = villagerTypeDao.insertOne( VillagerType.builder().profession( "Bench profession" ).build() );
+		return villagerTypeDao.deleteOne( type );
+	}
+
+	// a type in use: the delete is refused
+	@Benchmark
+	public Object villagerTypeDeleteOneReferenced() {
+		try {
+			return villagerTypeDao.deleteOne( villagerTypeDao.selectOneById( TYPE_IDS[0] ) );
+		} catch( ForeignKeyConstraintException e ) {
+			return e;
+		}
+	}
+}
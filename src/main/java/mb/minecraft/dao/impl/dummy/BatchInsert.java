@@ -0,0 +1,164 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import mb.minecraft.dao.DaoConstraintException;
+
+/**
+ * The checks a DAO's insert( List ) makes on the whole batch before it writes
+ * any of it, and the write itself, so that a batch goes in whole or not at
+ * all. Each check throws the DaoConstraintException insertOne would have
+ * thrown for the first offending row, whether it clashes with a row already
+ * stored or with one earlier in the batch.
+ * <p>
+ * The checks take no locks, so other writers are only held up while the rows
+ * are written, and then only those writing under the same stripes. A writer
+ * that gets in between can still make a row fail as it is written, as can a
+ * failing store; every row the batch wrote before it is then taken back.
+ * Readers are not held up, and may see part of a batch while it is being
+ * written or taken back.
+ *
+ * @author mikebro
+ */
+final class BatchInsert {
+
+	private BatchInsert() {
+	}
+
+	/**
+	 * Moves idSeq past every ID the rows bring with them, 0 and below
+	 * included, for rows restored under their own IDs.
+	 */
+	static <T> void advancePast( List<T> rows, Function<T,Integer> getId, AtomicInteger idSeq ) {
+		int maxId = Integer.MIN_VALUE;
+		for( T row : rows ) {
+			maxId = Math.max( maxId, getId.apply( row ) );
+		}
+		if( !rows.isEmpty() )
+			idSeq.accumulateAndGet( maxId + 1, Math::max );
+	}
+
+	/**
+	 * Gives each row without a positive ID the next from one block drawn from
+	 * idSeq, after moving idSeq past the IDs the batch brings with it. IDs
+	 * drawn for a batch that is then rejected are not reused.
+	 */
+	static <T> void assignIds( List<T> rows, Function<T,Integer> getId, BiConsumer<T,Integer> setId,
+			AtomicInteger idSeq ) {
+		int maxId = -1;
+		int missing = 0;
+		for( T row : rows ) {
+			Integer id = getId.apply( row );
+			if( id != null && id > 0 ) {
+				maxId = Math.max( maxId, id );
+			} else {
+				missing++;
+			}
+		}
+		if( maxId >= 0 ) {
+			idSeq.accumulateAndGet( maxId + 1, Math::max );
+		}
+		int next = idSeq.getAndAdd( missing );
+		for( T row : rows ) {
+			Integer id = getId.apply( row );
+			if( id == null || id <= 0 ) {
+				setId.accept( row, next++ );
+			}
+		}
+	}
+
+	static <T> void checkIds( List<T> rows, Function<T,Integer> getId, RowTable<T> table, String type, String column ) {
+		IntTable<T> seen = new IntTable<>( rows.size() );
+		for( T row : rows ) {
+			int id = getId.apply( row );
+			if( seen.put( id, row ) != null || table.containsKey( id ) )
+				throw new DaoConstraintException(
+						String.format( DaoConstraintException.UNIQUE_CONSTRAINT_ERROR, type, column ), row );
+		}
+	}
+
+	/** Null keys are not checked, as a unique index does not hold them. */
+	static <T,K> void checkUnique( List<T> rows, Function<T,K> key, Function<K,?> holder, String type, String column ) {
+		Set<K> seen = new HashSet<>( rows.size() * 2 );
+		for( T row : rows ) {
+			K k = key.apply( row );
+			if( k != null && ( !seen.add( k ) || holder.apply( k ) != null ) )
+				throw new DaoConstraintException(
+						String.format( DaoConstraintException.UNIQUE_CONSTRAINT_ERROR, type, column ), row );
+		}
+	}
+
+	/**
+	 * Writes the rows in list order, each with insert, which takes the row's
+	 * own stripe. If one fails, takes back those already written with delete
+	 * and rethrows.
+	 */
+	static <T> void publish( List<T> rows, Consumer<T> insert, Consumer<T> delete ) {
+		List<T> written = new ArrayList<>( rows.size() );
+		try {
+			for( T row : rows ) {
+				insert.accept( row );
+				written.add( row );
+			}
+		} catch( RuntimeException | Error e ) {
+			takeBack( written, delete, e );
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the rows grouped by parent key, each group under one hold of its
+	 * stripe in locks, so batches for different parents go in side by side.
+	 * Groups go in the order their first rows come in the list. If a row
+	 * fails, takes back those already written with delete, once the stripe is
+	 * released, and rethrows.
+	 */
+	static <T> void publish( List<T> rows, Function<T,Integer> parentKey, StripedLocks locks,
+			Consumer<T> insert, Consumer<T> delete ) {
+		Map<Integer,List<T>> groups = new LinkedHashMap<>();
+		for( T row : rows ) {
+			groups.computeIfAbsent( parentKey.apply( row ), k -> new ArrayList<>() ).add( row );
+		}
+		List<T> written = new ArrayList<>( rows.size() );
+		try {
+			for( Map.Entry<Integer,List<T>> group : groups.entrySet() ) {
+				Lock lock = locks.stripe( group.getKey() );
+				lock.lock();
+				try {
+					for( T row : group.getValue() ) {
+						insert.accept( row );
+						written.add( row );
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+		} catch( RuntimeException | Error e ) {
+			takeBack( written, delete, e );
+			throw e;
+		}
+	}
+
+
+
+	// newest first, keeping going past any row that cannot be taken back
+	private static <T> void takeBack( List<T> written, Consumer<T> delete, Throwable cause ) {
+		for( int i = written.size() - 1; i >= 0; i-- ) {
+			try {
+				delete.accept( written.get( i ) );
+			} catch( RuntimeException | Error e ) {
+				cause.addSuppressed( e );
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mb.minecraft.dao.impl.dummy.DaoCache.Eviction;
+
+/**
+ * A map holding at most a fixed number of entries, for {@link DaoCache}.
+ * Which entry goes to make room is decided by the {@link Eviction} policy.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author mikebro
+ */
+abstract class BoundedCache<K,V> {
+
+	private long evictions;
+
+
+	static <K,V> BoundedCache<K,V> create( Eviction eviction, int maximumSize ) {
+		if( maximumSize < 1 )
+			throw new IllegalArgumentException( "maximumSize must be at least 1" );
+		return eviction == Eviction.LRU ? new Lru<>( maximumSize ) : new WindowTinyLfu<>( maximumSize );
+	}
+
+	abstract V get( K key );
+
+	abstract void put( K key, V value );
+
+	abstract void remove( K key );
+
+	abstract void clear();
+
+	abstract int size();
+
+	long evictions() {
+		return evictions;
+	}
+
+	void evicted() {
+		evictions++;
+	}
+
+
+
+	private static <K,V> Map<K,V> accessOrdered() {
+		return new LinkedHashMap<>( 16, 0.75f, true );
+	}
+
+	private static <K,V> Map.Entry<K,V> eldest( Map<K,V> map ) {
+		Iterator<Map.Entry<K,V>> entries = map.entrySet().iterator();
+		return entries.hasNext() ? entries.next() : null;
+	}
+
+
+	private static class Lru<K,V> extends BoundedCache<K,V> {
+		final int maximumSize;
+		final Map<K,V> entries = accessOrdered();
+
+		Lru( int maximumSize ) {
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		V get( K key ) {
+			return entries.get( key );
+		}
+
+		@Override
+		void put( K key, V value ) {
+			entries.put( key, value );
+			if( entries.size() > maximumSize ) {
+				entries.remove( eldest( entries ).getKey() );
+				evicted();
+			}
+		}
+
+		@Override
+		void remove( K key ) {
+			entries.remove( key );
+		}
+
+		@Override
+		void clear() {
+			entries.clear();
+		}
+
+		@Override
+		int size() {
+			return entries.size();
+		}
+	}
+
+
+	// window 1% of the entries; the main area split 20% probation, 80% protected
+	private static class WindowTinyLfu<K,V> extends BoundedCache<K,V> {
+		final int windowSize;
+		final int mainSize;
+		final int protectedSize;
+		final Map<K,V> window = accessOrdered();
+		final Map<K,V> probation = accessOrdered();
+		final Map<K,V> protect = accessOrdered();
+		final FrequencySketch sketch;
+
+		WindowTinyLfu( int maximumSize ) {
+			this.windowSize = Math.max( 1, maximumSize / 100 );
+			this.mainSize = maximumSize - windowSize;
+			this.protectedSize = mainSize * 4 / 5;
+			this.sketch = new FrequencySketch( maximumSize );
+		}
+
+		@Override
+		V get( K key ) {
+			sketch.increment( key );
+			V value = window.get( key );
+			if( value != null )
+				return value;
+			value = probation.remove( key );
+			if( value != null ) {
+				// a second hit earns a place in the protected area
+				protect.put( key, value );
+				if( protect.size() > protectedSize ) {
+					Map.Entry<K,V> demoted = eldest( protect );
+					protect.remove( demoted.getKey() );
+					probation.put( demoted.getKey(), demoted.getValue() );
+				}
+				return value;
+			}
+			return protect.get( key );
+		}
+
+		@Override
+		void put( K key, V value ) {
+			if( window.containsKey( key ) ) {
+				window.put( key, value );
+			} else if( probation.containsKey( key ) ) {
+				probation.put( key, value );
+			} else if( protect.containsKey( key ) ) {
+				protect.put( key, value );
+			} else {
+				window.put( key, value );
+				if( window.size() > windowSize ) {
+					Map.Entry<K,V> candidate = eldest( window );
+					window.remove( candidate.getKey() );
+					admit( candidate.getKey(), candidate.getValue() );
+				}
+			}
+		}
+
+		@Override
+		void remove( K key ) {
+			if( window.remove( key ) == null && probation.remove( key ) == null ) {
+				protect.remove( key );
+			}
+		}
+
+		@Override
+		void clear() {
+			window.clear();
+			probation.clear();
+			protect.clear();
+		}
+
+		@Override
+		int size() {
+			return window.size() + probation.size() + protect.size();
+		}
+
+		// the candidate, just out of the window, against the main area's next victim
+		private void admit( K key, V value ) {
+			if( probation.size() + protect.size() < mainSize ) {
+				probation.put( key, value );
+				return;
+			}
+			evicted();
+			Map<K,V> victims = probation.isEmpty() ? protect : probation;
+			Map.Entry<K,V> victim = eldest( victims );
+			if( victim != null && sketch.frequency( key ) > sketch.frequency( victim.getKey() ) ) {
+				victims.remove( victim.getKey() );
+				probation.put( key, value );
+			}
+		}
+	}
+}
@@ -0,0 +1,396 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A read-through cache in front of one DAO, built per DAO and usually
+ * declared next to it in the Spring context:
+ * <pre>
+ * &#64;Bean
+ * DaoCache itemDaoCache() {
+ *     return DaoCache.builder()
+ *             .dao( "ItemDao" )
+ *             .maximumSize( 10_000 )
+ *             .expireAfterWrite( Duration.ofMinutes( 5 ) )
+ *             .expireMissesAfter( Duration.ofSeconds( 30 ) )
+ *             .build();
+ * }
+ *
+ * &#64;Bean
+ * &#64;Primary
+ * ItemDao itemDao( DaoCache itemDaoCache, ItemDaoDummyImpl items ) {
+ *     return itemDaoCache.wrap( ItemDao.class, items );
+ * }
+ * </pre>
+ * The select methods are cached by their argument, or by its ID when that
+ * is a row, as in selectAll( Village ). Lookups that find nothing are kept
+ * too if expireMissesAfter is set. Hits on lists hand out a copy, so callers
+ * may change them as they could the DAO's own.
+ * <p>
+ * Every other method is a write, and once it returns, whether or not it
+ * succeeded, cached lookups of the rows it touched are stale, as are every
+ * cached list and miss, since any of those may have changed. Lookups
+ * already under way when a write begins are not kept. Writes that do not go
+ * through the cache, such as foreign key cascades from another DAO, are only
+ * seen once the entries they affect expire.
+ *
+ * @author mikebro
+ */
+public class DaoCache implements DaoCacheMXBean {
+
+	private static final Logger logger = LogManager.getLogger( DaoCache.class );
+
+	private static final String DOMAIN = "mb.minecraft.dao.dummy";
+
+	// rows are tracked in this many stripes; rows sharing one go stale together
+	private static final int ROW_STRIPES = 1024;
+
+	private static final long NEVER = Long.MAX_VALUE;
+
+	// every model's getId()
+	private static final ClassValue<Method> ID_GETTERS = new ClassValue<Method>() {
+		@Override
+		protected Method computeValue( Class<?> type ) {
+			if( !type.getName().startsWith( "mb.minecraft.model." ) )
+				return null;
+			try {
+				Method getId = type.getMethod( "getId" );
+				return getId.getReturnType() == Integer.class ? getId : null;
+			} catch( NoSuchMethodException e ) {
+				return null;
+			}
+		}
+	};
+
+	/** How a full cache picks the entry to drop. */
+	public enum Eviction {
+		/** The least recently used entry. */
+		LRU,
+		/**
+		 * Window TinyLFU: new entries wait in a small LRU window, and then
+		 * displace the main area's least recently used entry only if they
+		 * have been asked for more often lately. A burst of one-off lookups
+		 * then cannot flush out the entries that are used all the time.
+		 */
+		W_TINY_LFU
+	}
+
+
+	private final String dao;
+	private final long expireAfterWriteNanos;
+	private final long expireMissesAfterNanos;
+	private final BoundedCache<Key,Entry> entries;
+	// bumped by every write; lists and misses must have been loaded since
+	private final AtomicLong generation = new AtomicLong();
+	// the generation of each row stripe's last write
+	private final AtomicLongArray rowWrites = new AtomicLongArray( ROW_STRIPES );
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder missHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private boolean wrapped;
+
+
+	/**
+	 * @param dao names the cache in logs and JMX
+	 * @param maximumSize entries kept at most
+	 * @param eviction W_TINY_LFU if null
+	 * @param expireAfterWrite how long a loaded row or list is kept; null for until evicted or stale
+	 * @param expireMissesAfter how long a lookup that found nothing is kept; null not to keep them
+	 */
+	@Builder
+	private DaoCache( String dao, int maximumSize, Eviction eviction, Duration expireAfterWrite, Duration expireMissesAfter ) {
+		if( dao == null )
+			throw new IllegalArgumentException( "dao must be named" );
+		this.dao = dao;
+		this.entries = BoundedCache.create( eviction != null ? eviction : Eviction.W_TINY_LFU, maximumSize );
+		this.expireAfterWriteNanos = expireAfterWrite != null ? expireAfterWrite.toNanos() : NEVER;
+		this.expireMissesAfterNanos = expireMissesAfter != null ? expireMissesAfter.toNanos() : 0;
+	}
+
+	/**
+	 * @return target behind a proxy implementing daoInterface that caches its selects here
+	 */
+	public synchronized <D> D wrap( Class<D> daoInterface, D target ) {
+		if( wrapped )
+			throw new IllegalStateException( "The cache for " + dao + " already fronts a DAO" );
+		wrapped = true;
+		Object proxy = Proxy.newProxyInstance( daoInterface.getClassLoader(), new Class<?>[] { daoInterface },
+				new ReadThrough( target ) );
+		return daoInterface.cast( proxy );
+	}
+
+	@Override
+	public String getDao() {
+		return dao;
+	}
+
+	@Override
+	public CacheStats getStats() {
+		long hitCount = hits.sum();
+		long missCount = misses.sum();
+		long lookups = hitCount + missCount;
+		int size;
+		long evictions;
+		synchronized( entries ) {
+			size = entries.size();
+			evictions = entries.evictions();
+		}
+		return new CacheStats( hitCount, missHits.sum(), missCount, lookups == 0 ? 0 : (double) hitCount / lookups,
+				evictions, size );
+	}
+
+	@Override
+	public void clear() {
+		synchronized( entries ) {
+			entries.clear();
+		}
+	}
+
+	@Override
+	public void resetStats() {
+		hits.reset();
+		missHits.reset();
+		misses.reset();
+	}
+
+	/** Registers this cache with the platform MBean server, replacing any for the same DAO. */
+	public void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = objectName();
+			if( server.isRegistered( name ) ) {
+				server.unregisterMBean( name );
+			}
+			server.registerMBean( this, name );
+		} catch( JMException e ) {
+			throw new IllegalStateException( "Cannot register the cache for " + dao, e );
+		}
+	}
+
+	public void unregister() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName() );
+		} catch( InstanceNotFoundException e ) {
+			logger.debug( "The cache for " + dao + " was not registered" );
+		} catch( JMException e ) {
+			throw new IllegalStateException( "Cannot unregister the cache for " + dao, e );
+		}
+	}
+
+	public ObjectName objectName() throws JMException {
+		return new ObjectName( DOMAIN + ":type=DaoCache,name=" + ObjectName.quote( dao ) );
+	}
+
+
+
+	private Object lookup( Key key, Object target, Method method, Object[] args ) throws Throwable {
+		long now = System.nanoTime();
+		Entry entry;
+		synchronized( entries ) {
+			entry = entries.get( key );
+			if( entry != null && !isFresh( entry, now ) ) {
+				entries.remove( key );
+				entry = null;
+			}
+		}
+		if( entry != null ) {
+			hits.increment();
+			if( entry.value == null ) {
+				missHits.increment();
+			}
+			return entry.value instanceof List ? new ArrayList<>( (List<?>) entry.value ) : entry.value;
+		}
+
+		misses.increment();
+		long loadedAt = generation.get();
+		Object value = invoke( target, method, args );
+		if( value == null && expireMissesAfterNanos == 0 )
+			return null;
+		Entry loaded;
+		if( value instanceof List ) {
+			loaded = new Entry( new ArrayList<>( (List<?>) value ), loadedAt, -1, expiry( now, expireAfterWriteNanos ) );
+		} else if( value instanceof Collection ) {
+			return value;
+		} else if( value == null ) {
+			loaded = new Entry( null, loadedAt, -1, expiry( now, expireMissesAfterNanos ) );
+		} else {
+			Integer id = idOf( value );
+			loaded = new Entry( value, loadedAt, id != null ? stripeOf( id ) : -1, expiry( now, expireAfterWriteNanos ) );
+		}
+		synchronized( entries ) {
+			if( isFresh( loaded, now ) ) {
+				entries.put( key, loaded );
+			}
+		}
+		return value;
+	}
+
+	private Object write( Object target, Method method, Object[] args ) throws Throwable {
+		Object result = null;
+		try {
+			result = invoke( target, method, args );
+			return result;
+		} finally {
+			long written = generation.incrementAndGet();
+			// IDs are read afterwards, as inserts assign them
+			if( args != null ) {
+				for( Object arg : args ) {
+					markWritten( arg, written );
+				}
+			}
+			markWritten( result, written );
+		}
+	}
+
+	private void markWritten( Object rows, long written ) {
+		if( rows instanceof Collection ) {
+			for( Object row : (Collection<?>) rows ) {
+				markWritten( row, written );
+			}
+			return;
+		}
+		Integer id = rows != null ? idOf( rows ) : null;
+		if( id != null ) {
+			rowWrites.accumulateAndGet( stripeOf( id ), written, Math::max );
+		}
+	}
+
+	// a row is fresh while unwritten; a list or miss while nothing at all is
+	private boolean isFresh( Entry entry, long now ) {
+		if( entry.expiresAt != NEVER && now - entry.expiresAt > 0 )
+			return false;
+		if( entry.rowStripe < 0 )
+			return entry.loadedAt == generation.get();
+		return rowWrites.get( entry.rowStripe ) <= entry.loadedAt;
+	}
+
+	private static long expiry( long now, long ttlNanos ) {
+		return ttlNanos == NEVER ? NEVER : now + ttlNanos;
+	}
+
+	private static int stripeOf( int id ) {
+		int h = id * 0x9e3779b9;
+		return ( h ^ ( h >>> 16 ) ) & ( ROW_STRIPES - 1 );
+	}
+
+	// every model's getId(), or null for anything that is not a row
+	private static Integer idOf( Object row ) {
+		Method getId = ID_GETTERS.get( row.getClass() );
+		if( getId == null )
+			return null;
+		try {
+			return (Integer) getId.invoke( row );
+		} catch( ReflectiveOperationException e ) {
+			throw new IllegalStateException( "Cannot read the ID of " + row, e );
+		}
+	}
+
+	private static Object invoke( Object target, Method method, Object[] args ) throws Throwable {
+		try {
+			return method.invoke( target, args );
+		} catch( InvocationTargetException e ) {
+			throw e.getCause();
+		}
+	}
+
+
+	/**
+	 * Hit and miss counts since the last reset. Hits on lookups kept as
+	 * finding nothing are counted both as hits and as missHits.
+	 */
+	@Value
+	public static class CacheStats {
+		long hits;
+		long missHits;
+		long misses;
+		double hitRate;
+		long evictions;
+		int size;
+	}
+
+
+	private static class Entry {
+		final Object value;
+		final long loadedAt;
+		final int rowStripe;
+		final long expiresAt;
+
+		Entry( Object value, long loadedAt, int rowStripe, long expiresAt ) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+			this.rowStripe = rowStripe;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+
+	// a select method and its argument, a row standing for its ID
+	private static class Key {
+		final Method method;
+		final Object arg;
+
+		Key( Method method, Object arg ) {
+			this.method = method;
+			this.arg = arg;
+		}
+
+		@Override
+		public boolean equals( Object o ) {
+			if( !( o instanceof Key ) )
+				return false;
+			Key other = (Key) o;
+			return method.equals( other.method ) && Objects.equals( arg, other.arg );
+		}
+
+		@Override
+		public int hashCode() {
+			return method.hashCode() * 31 + Objects.hashCode( arg );
+		}
+	}
+
+
+	private class ReadThrough implements InvocationHandler {
+		final Object target;
+
+		ReadThrough( Object target ) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+			if( method.getDeclaringClass() == Object.class || method.getDeclaringClass() == DisposableBean.class )
+				return DaoCache.invoke( target, method, args );
+			if( !method.getName().startsWith( "select" ) )
+				return write( target, method, args );
+			if( args != null && args.length > 1 )
+				return DaoCache.invoke( target, method, args );
+			Object arg = args != null ? args[0] : null;
+			Integer id = arg != null ? idOf( arg ) : null;
+			return lookup( new Key( method, id != null ? id : arg ), target, method, args );
+		}
+	}
+}
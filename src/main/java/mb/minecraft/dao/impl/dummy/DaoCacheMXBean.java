@@ -0,0 +1,20 @@
+package mb.minecraft.dao.impl.dummy;
+
+import mb.minecraft.dao.impl.dummy.DaoCache.CacheStats;
+
+/**
+ * The JMX view of a {@link DaoCache}.
+ *
+ * @author mikebro
+ */
+public interface DaoCacheMXBean {
+
+	String getDao();
+
+	CacheStats getStats();
+
+	/** Drops every entry. */
+	void clear();
+
+	void resetStats();
+}
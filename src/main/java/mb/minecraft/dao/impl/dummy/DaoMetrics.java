@@ -0,0 +1,230 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import lombok.Value;
+import mb.minecraft.dao.DaoConstraintException;
+import mb.minecraft.dao.ForeignKeyConstraintException;
+
+/**
+ * Call counts and latencies for every method of one DAO, collected by a
+ * proxy in front of it:
+ * <pre>
+ * DaoMetrics metrics = new DaoMetrics( "ItemDao" );
+ * ItemDao instrumented = metrics.instrument( ItemDao.class, itemDao );
+ * metrics.register();    // optional, for JMX
+ * ...
+ * metrics.snapshot().forEach( System.out::println );
+ * </pre>
+ * For each method this keeps the number of calls, how many failed on a
+ * unique or foreign key constraint and how many failed otherwise, the rows
+ * returned by methods returning lists, and a {@link LatencyHistogram}.
+ * Recording a call only bumps counters; the proxy itself still boxes
+ * arguments as any reflective proxy does.
+ * <p>
+ * The proxy implements the DAO interface only, so it is for callers that
+ * use the DAO through its interface. The DAOs' own collaborators, such as
+ * {@link ForeignKeys}, keep calling the implementation directly.
+ *
+ * @author mikebro
+ */
+public class DaoMetrics implements DaoMetricsMXBean {
+
+	private static final Logger logger = LogManager.getLogger( DaoMetrics.class );
+
+	private static final String DOMAIN = "mb.minecraft.dao.dummy";
+
+	private final String dao;
+	private final Map<String,MethodMetrics> methods;
+
+
+	public DaoMetrics( String dao ) {
+		this.dao = dao;
+		this.methods = new LinkedHashMap<>();
+	}
+
+	/**
+	 * @return target behind a proxy implementing daoInterface that records every call here
+	 */
+	public synchronized <D> D instrument( Class<D> daoInterface, D target ) {
+		Map<Method,MethodMetrics> byMethod = new HashMap<>();
+		for( Method method : daoInterface.getMethods() ) {
+			byMethod.put( method, methods.computeIfAbsent( signature( method ), MethodMetrics::new ) );
+		}
+		Object proxy = Proxy.newProxyInstance( daoInterface.getClassLoader(), new Class<?>[] { daoInterface },
+				new Recorder( target, byMethod ) );
+		return daoInterface.cast( proxy );
+	}
+
+	@Override
+	public String getDao() {
+		return dao;
+	}
+
+	@Override
+	public List<MethodStats> getMethods() {
+		return snapshot();
+	}
+
+	/** @return the current figures for each method, those taking the most time in total first */
+	public synchronized List<MethodStats> snapshot() {
+		List<MethodStats> stats = new ArrayList<>( methods.size() );
+		for( MethodMetrics method : methods.values() ) {
+			stats.add( method.stats() );
+		}
+		stats.sort( Comparator.comparingLong( MethodStats::getTotalNanos ).reversed() );
+		return stats;
+	}
+
+	@Override
+	public synchronized void reset() {
+		methods.values().forEach( MethodMetrics::reset );
+	}
+
+	/** Registers these metrics with the platform MBean server, replacing any for the same DAO. */
+	public void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = objectName();
+			if( server.isRegistered( name ) ) {
+				server.unregisterMBean( name );
+			}
+			server.registerMBean( this, name );
+		} catch( JMException e ) {
+			throw new IllegalStateException( "Cannot register metrics for " + dao, e );
+		}
+	}
+
+	public void unregister() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName() );
+		} catch( InstanceNotFoundException e ) {
+			logger.debug( "Metrics for " + dao + " were not registered" );
+		} catch( JMException e ) {
+			throw new IllegalStateException( "Cannot unregister metrics for " + dao, e );
+		}
+	}
+
+	public ObjectName objectName() throws JMException {
+		return new ObjectName( DOMAIN + ":type=DaoMetrics,name=" + ObjectName.quote( dao ) );
+	}
+
+
+
+	// selectAll(Village), so overloads are kept apart
+	private static String signature( Method method ) {
+		StringBuilder signature = new StringBuilder( method.getName() ).append( '(' );
+		Class<?>[] types = method.getParameterTypes();
+		for( int i = 0; i < types.length; i++ ) {
+			signature.append( i > 0 ? "," : "" ).append( types[i].getSimpleName() );
+		}
+		return signature.append( ')' ).toString();
+	}
+
+
+	/**
+	 * One method's figures at the time of {@link DaoMetrics#snapshot()}; times are in nanoseconds.
+	 */
+	@Value
+	public static class MethodStats {
+		String method;
+		long calls;
+		long constraintViolations;
+		long failures;
+		long rows;
+		long totalNanos;
+		long meanNanos;
+		long p50Nanos;
+		long p90Nanos;
+		long p99Nanos;
+		long p999Nanos;
+		long maxNanos;
+	}
+
+
+	private static class MethodMetrics {
+		final String method;
+		final LongAdder calls = new LongAdder();
+		final LongAdder constraintViolations = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final LongAdder rows = new LongAdder();
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		MethodMetrics( String method ) {
+			this.method = method;
+		}
+
+		MethodStats stats() {
+			return new MethodStats( method, calls.sum(), constraintViolations.sum(), failures.sum(), rows.sum(),
+					latency.sum(), latency.mean(), latency.percentile( 0.5 ), latency.percentile( 0.9 ),
+					latency.percentile( 0.99 ), latency.percentile( 0.999 ), latency.max() );
+		}
+
+		void reset() {
+			calls.reset();
+			constraintViolations.reset();
+			failures.reset();
+			rows.reset();
+			latency.reset();
+		}
+	}
+
+
+	private static class Recorder implements InvocationHandler {
+		final Object target;
+		final Map<Method,MethodMetrics> byMethod;
+
+		Recorder( Object target, Map<Method,MethodMetrics> byMethod ) {
+			this.target = target;
+			this.byMethod = byMethod;
+		}
+
+		@Override
+		public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+			MethodMetrics metrics = byMethod.get( method );
+			if( metrics == null ) {
+				// equals, hashCode and toString
+				return method.invoke( target, args );
+			}
+			long start = System.nanoTime();
+			try {
+				Object result = method.invoke( target, args );
+				if( result instanceof Collection ) {
+					metrics.rows.add( ( (Collection<?>) result ).size() );
+				}
+				return result;
+			} catch( InvocationTargetException e ) {
+				Throwable cause = e.getCause();
+				if( cause instanceof DaoConstraintException || cause instanceof ForeignKeyConstraintException ) {
+					metrics.constraintViolations.increment();
+				} else {
+					metrics.failures.increment();
+				}
+				throw cause;
+			} finally {
+				metrics.calls.increment();
+				metrics.latency.record( System.nanoTime() - start );
+			}
+		}
+	}
+}
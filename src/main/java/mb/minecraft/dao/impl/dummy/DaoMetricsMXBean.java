@@ -0,0 +1,19 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.List;
+
+/**
+ * JMX view of a {@link DaoMetrics}, registered as
+ * <code>mb.minecraft.dao.dummy:type=DaoMetrics,name=</code><i>dao</i>.
+ *
+ * @author mikebro
+ */
+public interface DaoMetricsMXBean {
+
+	String getDao();
+
+	/** @return one entry per DAO method, those taking the most time in total first */
+	List<DaoMetrics.MethodStats> getMethods();
+
+	void reset();
+}
@@ -0,0 +1,197 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Makes a DAO behave more like one in front of a real database, by putting a
+ * proxy in front of its interface that delays, throttles and fails calls:
+ * <pre>
+ * DaoSimulation simulation = DaoSimulation.builder()
+ *         .operation( "select", Profile.builder()
+ *                 .latency( LatencyDistribution.percentiles( ms( 2 ), ms( 5 ), ms( 20 ), ms( 80 ) ) )
+ *                 .build() )
+ *         .operation( "insert", Profile.builder()
+ *                 .latency( LatencyDistribution.normal( ms( 4 ), ms( 1 ) ) )
+ *                 .failureRate( 0.01 )
+ *                 .maxPerSecond( 500 )
+ *                 .build() )
+ *         .build();
+ * ItemDao itemDao = simulation.wrap( ItemDao.class, realItemDao );
+ * </pre>
+ * A method gets the profile whose key is the longest prefix of its name, so
+ * "selectAll" can override "select", and "" covers everything else; methods
+ * matching no key are passed straight through, as is destroy().
+ * <p>
+ * A simulated call first waits for its turn under the profile's throughput
+ * cap, which each wrapped DAO enforces separately, then sleeps for a sampled
+ * latency. It then either fails with a {@link TransientDaoException}, without
+ * calling the DAO, or calls it. An interrupt cuts the wait short and is left
+ * set on the thread.
+ *
+ * @author mikebro
+ */
+public class DaoSimulation {
+
+	private final Map<String,Profile> operations;
+
+
+	private DaoSimulation( Map<String,Profile> operations ) {
+		this.operations = Collections.unmodifiableMap( new LinkedHashMap<>( operations ) );
+	}
+
+	public static DaoSimulationBuilder builder() {
+		return new DaoSimulationBuilder();
+	}
+
+
+	public <D> D wrap( Class<D> daoInterface, D target ) {
+		Map<Method,Operation> byMethod = new HashMap<>();
+		Map<String,Operation> byKey = new HashMap<>();
+		for( Method method : daoInterface.getMethods() ) {
+			if( method.getDeclaringClass() == DisposableBean.class )
+				continue;
+			String key = keyOf( method.getName() );
+			if( key != null ) {
+				byMethod.put( method, byKey.computeIfAbsent( key, k -> new Operation( operations.get( k ) ) ) );
+			}
+		}
+		Object proxy = Proxy.newProxyInstance( daoInterface.getClassLoader(), new Class<?>[] { daoInterface },
+				new Simulator( target, daoInterface.getSimpleName(), byMethod ) );
+		return daoInterface.cast( proxy );
+	}
+
+
+	private String keyOf( String method ) {
+		String best = null;
+		for( String key : operations.keySet() ) {
+			if( method.startsWith( key ) && ( best == null || key.length() > best.length() ) )
+				best = key;
+		}
+		return best;
+	}
+
+	// waits until deadline, or until interrupted
+	private static void pauseUntil( long deadline ) {
+		long left;
+		while( ( left = deadline - System.nanoTime() ) > 0 ) {
+			LockSupport.parkNanos( left );
+			if( Thread.currentThread().isInterrupted() )
+				return;
+		}
+	}
+
+
+	/**
+	 * Collects the profiles of a {@link DaoSimulation}; a later profile for the
+	 * same key replaces an earlier one.
+	 */
+	public static class DaoSimulationBuilder {
+		private final Map<String,Profile> operations = new LinkedHashMap<>();
+
+		private DaoSimulationBuilder() {
+		}
+
+		public DaoSimulationBuilder operation( String key, Profile profile ) {
+			if( key == null || profile == null )
+				throw new NullPointerException( "key and profile must not be null" );
+			operations.put( key, profile );
+			return this;
+		}
+
+		public DaoSimulation build() {
+			return new DaoSimulation( operations );
+		}
+	}
+
+
+	/**
+	 * How calls to one kind of operation behave. Unset, a call is neither
+	 * delayed, throttled nor failed.
+	 */
+	@Value
+	@Builder
+	public static class Profile {
+		/** Added to every call; null for none. */
+		LatencyDistribution latency;
+		/** The share of calls, 0 to 1, that fail instead of reaching the DAO. */
+		double failureRate;
+		/** Calls let through per second; 0 for no cap. */
+		double maxPerSecond;
+	}
+
+
+	// a profile as applied to one wrapped DAO, with that DAO's throughput cap
+	private static class Operation {
+		final Profile profile;
+		final long intervalNanos;
+		final AtomicLong nextSlot;
+
+		Operation( Profile profile ) {
+			if( profile.failureRate < 0 || profile.failureRate > 1 )
+				throw new IllegalArgumentException( "failureRate must be from 0 to 1" );
+			if( profile.maxPerSecond < 0 )
+				throw new IllegalArgumentException( "maxPerSecond must not be negative" );
+			this.profile = profile;
+			this.intervalNanos = profile.maxPerSecond > 0 ? (long) ( 1e9 / profile.maxPerSecond ) : 0;
+			this.nextSlot = new AtomicLong( System.nanoTime() );
+		}
+
+		// the time this call may start, after those already admitted
+		long admit( long now ) {
+			if( intervalNanos == 0 )
+				return now;
+			while( true ) {
+				long next = nextSlot.get();
+				long slot = Math.max( next, now );
+				if( nextSlot.compareAndSet( next, slot + intervalNanos ) )
+					return slot;
+			}
+		}
+	}
+
+
+	private static class Simulator implements InvocationHandler {
+		final Object target;
+		final String dao;
+		final Map<Method,Operation> byMethod;
+
+		Simulator( Object target, String dao, Map<Method,Operation> byMethod ) {
+			this.target = target;
+			this.dao = dao;
+			this.byMethod = byMethod;
+		}
+
+		@Override
+		public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+			Operation operation = byMethod.get( method );
+			if( operation != null ) {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long start = operation.admit( System.nanoTime() );
+				LatencyDistribution latency = operation.profile.latency;
+				pauseUntil( start + ( latency != null ? latency.sampleNanos( random ) : 0 ) );
+				if( operation.profile.failureRate > 0 && random.nextDouble() < operation.profile.failureRate )
+					throw new TransientDaoException( "Simulated transient failure in " + dao + "." + method.getName() );
+			}
+			try {
+				return method.invoke( target, args );
+			} catch( InvocationTargetException e ) {
+				throw e.getCause();
+			}
+		}
+	}
+}
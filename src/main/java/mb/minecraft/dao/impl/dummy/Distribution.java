@@ -0,0 +1,56 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.SplittableRandom;
+
+/**
+ * A distribution of ints, sampled by {@link DummyDataGenerator} with its own
+ * seeded random source so a generated dataset is reproducible.
+ *
+ * @author mikebro
+ */
+@FunctionalInterface
+public interface Distribution {
+
+	int sample( SplittableRandom random );
+
+
+	static Distribution fixed( int value ) {
+		return random -> value;
+	}
+
+	/** Uniform over min to max, both inclusive. */
+	static Distribution uniform( int min, int max ) {
+		if( max < min )
+			throw new IllegalArgumentException( "max < min" );
+		return random -> random.nextInt( min, max + 1 );
+	}
+
+	/**
+	 * Zipf over 0 to n - 1: 0 is the most likely value, and value k turns up
+	 * 1 / (k+1)^exponent as often. An exponent of 0 is uniform.
+	 */
+	static Distribution zipf( int n, double exponent ) {
+		if( n < 1 )
+			throw new IllegalArgumentException( "n < 1" );
+		double[] cumulative = new double[n];
+		double total = 0;
+		for( int k = 0; k < n; k++ ) {
+			total += 1 / Math.pow( k + 1, exponent );
+			cumulative[k] = total;
+		}
+		double sum = total;
+		return random -> {
+			double u = random.nextDouble() * sum;
+			int lo = 0;
+			int hi = n - 1;
+			while( lo < hi ) {
+				int mid = ( lo + hi ) >>> 1;
+				if( cumulative[mid] <= u )
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		};
+	}
+}
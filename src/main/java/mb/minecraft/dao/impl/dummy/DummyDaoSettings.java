@@ -0,0 +1,96 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Switches for the optional storage modes of the dummy DAOs.
+ * <p>
+ * The DAOs build their tables in their constructors, before Spring has injected
+ * anything, so these are read from system properties, e.g.
+ * <code>-Dmb.minecraft.dao.dummy.concurrent=true</code>.
+ *
+ * @author mikebro
+ */
+final class DummyDaoSettings {
+
+	static final String CONCURRENT = "mb.minecraft.dao.dummy.concurrent";
+	static final String SNAPSHOT_READS = "mb.minecraft.dao.dummy.snapshotReads";
+	static final String FOREIGN_KEYS = "mb.minecraft.dao.dummy.foreignKeys";
+	static final String DATA_DIR = "mb.minecraft.dao.dummy.dataDir";
+	static final String SYNC = "mb.minecraft.dao.dummy.sync";
+	static final String WAL = "mb.minecraft.dao.dummy.wal";
+	static final String CHECKPOINT_INTERVAL = "mb.minecraft.dao.dummy.checkpointInterval";
+	static final String FIXTURES = "mb.minecraft.dao.dummy.fixtures";
+	static final String INIT = "mb.minecraft.dao.dummy.init";
+	static final String TRANSACTIONS = "mb.minecraft.dao.dummy.transactions";
+
+
+	private DummyDaoSettings() {
+	}
+
+	// tables are kept in files under this directory and survive restarts; null keeps them in memory only
+	static Path dataDir() {
+		String dir = System.getProperty( DATA_DIR, "" );
+		return dir.isEmpty() ? null : Paths.get( dir );
+	}
+
+	// forces every write in a data directory to disk before it returns
+	static boolean isSync() {
+		return Boolean.getBoolean( SYNC );
+	}
+
+	// keeps the data directory as write-ahead logs and checkpoints rather than mapped table files
+	static boolean isWal() {
+		return Boolean.getBoolean( WAL );
+	}
+
+	// log records between checkpoints
+	static int checkpointInterval() {
+		return Math.max( 1, Integer.getInteger( CHECKPOINT_INTERVAL, 1 << 16 ) );
+	}
+
+	// a JSON or XML fixture file that replaces the mock data at startup; null keeps the mock data
+	static Path fixtures() {
+		String file = System.getProperty( FIXTURES, "" );
+		return file.isEmpty() ? null : Paths.get( file );
+	}
+
+	// "lazy" fills each table on first access, "async" in the background from init(), "parallel" all
+	// at once from DummyDataSeeder; unset or anything else fills each in its constructor
+	static TableInit.Mode initMode() {
+		String mode = System.getProperty( INIT, "" );
+		if( mode.equalsIgnoreCase( "parallel" ) )
+			return TableInit.Mode.PARALLEL;
+		if( mode.equalsIgnoreCase( "lazy" ) )
+			return TableInit.Mode.LAZY;
+		if( mode.equalsIgnoreCase( "async" ) )
+			return TableInit.Mode.ASYNC;
+		return TableInit.Mode.EAGER;
+	}
+
+	// on with transactions too, whose readers take no lock
+	static boolean isConcurrent() {
+		return Boolean.getBoolean( CONCURRENT ) || isTransactional();
+	}
+
+	// selectAll() shares one unmodifiable copy of the table between writes
+	static boolean isSnapshotReads() {
+		return Boolean.getBoolean( SNAPSHOT_READS );
+	}
+
+	// rows keep their earlier versions for DummyTransactionManager; kept in memory only, so not with dataDir
+	static boolean isTransactional() {
+		return Boolean.getBoolean( TRANSACTIONS );
+	}
+
+	// "restrict" or "cascade"; unset or anything else leaves foreign keys unchecked
+	static ForeignKeys.Mode foreignKeyMode() {
+		String mode = System.getProperty( FOREIGN_KEYS, "" );
+		if( mode.equalsIgnoreCase( "restrict" ) )
+			return ForeignKeys.Mode.RESTRICT;
+		if( mode.equalsIgnoreCase( "cascade" ) )
+			return ForeignKeys.Mode.CASCADE;
+		return ForeignKeys.Mode.OFF;
+	}
+}
@@ -0,0 +1,249 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import lombok.Builder;
+import mb.minecraft.dao.ItemDao;
+import mb.minecraft.dao.TradeDao;
+import mb.minecraft.dao.TradeItemDao;
+import mb.minecraft.dao.VillageDao;
+import mb.minecraft.dao.VillagerDao;
+import mb.minecraft.dao.VillagerTypeDao;
+import mb.minecraft.model.Item;
+import mb.minecraft.model.OfferRequire;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Village;
+import mb.minecraft.model.Villager;
+import mb.minecraft.model.VillagerType;
+
+/**
+ * Fills the DAOs with synthetic rows for capacity testing, on top of whatever
+ * mock data they already hold.
+ * <p>
+ * Every row references rows generated before it: villagers live in generated
+ * villages and have generated types, trades belong to generated villagers, and
+ * trade items reference those trades and generated items. A given seed and
+ * configuration always produce the same rows and IDs when run against freshly
+ * constructed DAOs.
+ * <p>
+ * Rows are generated as they are inserted, a batch at a time through
+ * insert(List), reusing the batch list. Only the IDs of the parent tables are
+ * kept, in int arrays. The item, village, villager type and villager DAOs
+ * declare insert(List) only on their dummy implementations, so any other
+ * implementation, a decorated one included, gets those rows one at a time.
+ * <p>
+ * Any of the counts may be 0. Villagers then reference no village or no
+ * type, and without items no trade items are generated.
+ * <pre>
+ * DummyDataGenerator.builder()
+ *         .seed( 7 )
+ *         .villagers( 1_000_000 )
+ *         .tradesPerVillager( Distribution.uniform( 2, 10 ) )
+ *         .build()
+ *         .populate( itemDao, villageDao, villagerTypeDao, villagerDao, tradeDao, tradeItemDao );
+ * </pre>
+ *
+ * @author mikebro
+ */
+@Builder
+public class DummyDataGenerator {
+
+	private static final Logger logger = LogManager.getLogger( DummyDataGenerator.class );
+
+	@Builder.Default
+	private final long seed = 1L;
+
+	/** Names are made unique with this prefix, so one set of DAOs can be populated more than once. */
+	@Builder.Default
+	private final String namePrefix = "Generated";
+
+	@Builder.Default
+	private final int items = 1_000;
+	@Builder.Default
+	private final int villages = 100;
+	@Builder.Default
+	private final int villagerTypes = 15;
+	@Builder.Default
+	private final int villagers = 10_000;
+
+	/** Zipf exponent for how villagers are spread over villages; 0 is even. */
+	@Builder.Default
+	private final double villageSkew = 0.5;
+	/** Zipf exponent for which items trades use; the first items generated are the popular ones. */
+	@Builder.Default
+	private final double itemSkew = 1.0;
+	@Builder.Default
+	private final double taggedRate = 0.1;
+
+	@Builder.Default
+	private final Distribution tradesPerVillager = Distribution.uniform( 1, 8 );
+	@Builder.Default
+	private final Distribution offersPerTrade = Distribution.uniform( 1, 2 );
+	@Builder.Default
+	private final Distribution requiresPerTrade = Distribution.uniform( 1, 3 );
+	@Builder.Default
+	private final Distribution quantity = Distribution.uniform( 1, 64 );
+
+	@Builder.Default
+	private final int batchSize = 1_000;
+
+
+	public void populate( ItemDao itemDao, VillageDao villageDao, VillagerTypeDao villagerTypeDao,
+			VillagerDao villagerDao, TradeDao tradeDao, TradeItemDao tradeItemDao ) {
+		if( items < 0 || villages < 0 || villagerTypes < 0 || villagers < 0 )
+			throw new IllegalArgumentException( "Row counts cannot be negative" );
+		if( batchSize < 1 )
+			throw new IllegalArgumentException( "batchSize < 1" );
+		long start = System.nanoTime();
+		SplittableRandom random = new SplittableRandom( seed );
+
+		int[] itemIds = insertAll( items,
+				i -> Item.builder().name( namePrefix + " item " + i ).build(),
+				bulk( itemDao, ItemDaoDummyImpl.class, ItemDaoDummyImpl::insert, itemDao::insertOne ), Item::getId );
+		int[] villageIds = insertAll( villages,
+				i -> Village.builder().name( namePrefix + " village " + i ).build(),
+				bulk( villageDao, VillageDaoDummyImpl.class, VillageDaoDummyImpl::insert, villageDao::insertOne ), Village::getId );
+		int[] typeIds = insertAll( villagerTypes,
+				i -> VillagerType.builder().profession( namePrefix + " profession " + i ).build(),
+				bulk( villagerTypeDao, VillagerTypeDaoDummyImpl.class, VillagerTypeDaoDummyImpl::insert, villagerTypeDao::insertOne ), VillagerType::getId );
+
+		Batches batches = new Batches( random, tradeDao, tradeItemDao, itemIds );
+		Distribution villageChoice = villages > 0 ? Distribution.zipf( villages, villageSkew ) : null;
+		Function<List<Villager>,List<Villager>> insertVillagers = bulk( villagerDao, VillagerDaoDummyImpl.class,
+				VillagerDaoDummyImpl::insert, villagerDao::insertOne );
+		List<Villager> villagerBatch = new ArrayList<>( Math.min( villagers, batchSize ) );
+		for( int i = 0; i < villagers; i++ ) {
+			villagerBatch.add( Villager.builder()
+					.name( namePrefix + " villager " + i )
+					.tagged( random.nextDouble() < taggedRate )
+					.villageId( villageChoice != null ? villageIds[villageChoice.sample( random )] : null )
+					.typeId( villagerTypes > 0 ? typeIds[random.nextInt( villagerTypes )] : null )
+					.build() );
+			if( villagerBatch.size() == batchSize || i == villagers - 1 ) {
+				for( Villager villager : insertVillagers.apply( villagerBatch ) ) {
+					for( int n = tradesPerVillager.sample( random ); n > 0; n-- ) {
+						batches.addTrade( Trade.builder().villagerId( villager.getId() ).build() );
+					}
+				}
+				villagerBatch.clear();
+			}
+		}
+		batches.flushTrades();
+		batches.flushTradeItems();
+
+		logger.info( String.format( "Generated %d items, %d villages, %d villager types, %d villagers, %d trades and %d trade items in %d ms",
+				items, villages, villagerTypes, villagers, batches.tradeCount, batches.tradeItemCount,
+				( System.nanoTime() - start ) / 1_000_000 ) );
+	}
+
+
+
+	// inserts count rows made by row, a batch at a time, and returns their IDs in order
+	private <T> int[] insertAll( int count, IntFunction<T> row, Function<List<T>,List<T>> insert, Function<T,Integer> getId ) {
+		int[] ids = new int[count];
+		List<T> batch = new ArrayList<>( Math.min( count, batchSize ) );
+		int next = 0;
+		for( int i = 0; i < count; i++ ) {
+			batch.add( row.apply( i ) );
+			if( batch.size() == batchSize || i == count - 1 ) {
+				for( T inserted : insert.apply( batch ) ) {
+					ids[next++] = getId.apply( inserted );
+				}
+				batch.clear();
+			}
+		}
+		return ids;
+	}
+
+	// insert( List ) of the dummy implementation behind dao, or insertOne row by row
+	private static <D,T> Function<List<T>,List<T>> bulk( Object dao, Class<D> dummyClass,
+			BiFunction<D,List<T>,List<T>> insert, UnaryOperator<T> insertOne ) {
+		if( dummyClass.isInstance( dao ) ) {
+			D dummy = dummyClass.cast( dao );
+			return rows -> insert.apply( dummy, rows );
+		}
+		return rows -> {
+			List<T> inserted = new ArrayList<>( rows.size() );
+			for( T row : rows ) {
+				inserted.add( insertOne.apply( row ) );
+			}
+			return inserted;
+		};
+	}
+
+	// trades are inserted a batch at a time, and each batch's trade items are
+	// generated once the trades have their IDs
+	private class Batches {
+		final SplittableRandom random;
+		final TradeDao tradeDao;
+		final TradeItemDao tradeItemDao;
+		final int[] itemIds;
+		final Distribution itemChoice;
+		final List<Trade> trades = new ArrayList<>( batchSize );
+		final List<TradeItem> tradeItems = new ArrayList<>( batchSize );
+		long tradeCount;
+		long tradeItemCount;
+
+		Batches( SplittableRandom random, TradeDao tradeDao, TradeItemDao tradeItemDao, int[] itemIds ) {
+			this.random = random;
+			this.tradeDao = tradeDao;
+			this.tradeItemDao = tradeItemDao;
+			this.itemIds = itemIds;
+			this.itemChoice = itemIds.length > 0 ? Distribution.zipf( itemIds.length, itemSkew ) : null;
+		}
+
+		void addTrade( Trade trade ) {
+			trades.add( trade );
+			if( trades.size() == batchSize ) {
+				flushTrades();
+			}
+		}
+
+		void flushTrades() {
+			if( trades.isEmpty() )
+				return;
+			tradeDao.insert( trades );
+			tradeCount += trades.size();
+			for( Trade trade : trades ) {
+				if( itemChoice == null )
+					break;
+				addTradeItems( trade, OfferRequire.OFFER, offersPerTrade.sample( random ) );
+				addTradeItems( trade, OfferRequire.REQUIRE, requiresPerTrade.sample( random ) );
+			}
+			trades.clear();
+		}
+
+		void addTradeItems( Trade trade, OfferRequire offerRequire, int count ) {
+			for( int seqno = 1; seqno <= count; seqno++ ) {
+				tradeItems.add( TradeItem.builder()
+						.tradeId( trade.getId() )
+						.offerRequire( offerRequire )
+						.seqno( seqno )
+						.quantity( quantity.sample( random ) )
+						.itemId( itemIds[itemChoice.sample( random )] )
+						.build() );
+				if( tradeItems.size() == batchSize ) {
+					flushTradeItems();
+				}
+			}
+		}
+
+		void flushTradeItems() {
+			if( tradeItems.isEmpty() )
+				return;
+			tradeItemDao.insert( tradeItems );
+			tradeItemCount += tradeItems.size();
+			tradeItems.clear();
+		}
+	}
+}
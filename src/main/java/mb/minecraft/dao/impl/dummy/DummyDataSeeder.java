@@ -0,0 +1,121 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the dummy DAOs' tables side by side at startup, switched on with
+ * <code>-Dmb.minecraft.dao.dummy.init=parallel</code>.
+ * <p>
+ * The DAOs are constructed empty, and once Spring has them all this fills
+ * every table on a fork-join pool, returning when all are ready. Readers that
+ * get in first wait at the table's {@link TableInit} gate, as in async mode.
+ * Without foreign key enforcement nothing in the seed data is checked across
+ * tables, so all six fill at once. With it, each table waits for the tables
+ * it references (Village and VillagerType before Villager, Villager before
+ * Trade, Trade and Item before TradeItem), so no fill blocks a pool thread
+ * waiting for its parents' rows to appear.
+ * <p>
+ * The time each table took is logged and kept for {@link #timings()}.
+ *
+ * @author mikebro
+ */
+@Component
+public class DummyDataSeeder {
+
+	private static final Logger logger = LogManager.getLogger( DummyDataSeeder.class );
+
+	@Autowired( required = false )
+	ItemDaoDummyImpl itemDao;
+	@Autowired( required = false )
+	VillageDaoDummyImpl villageDao;
+	@Autowired( required = false )
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@Autowired( required = false )
+	VillagerDaoDummyImpl villagerDao;
+	@Autowired( required = false )
+	TradeDaoDummyImpl tradeDao;
+	@Autowired( required = false )
+	TradeItemDaoDummyImpl tradeItemDao;
+
+	private volatile Map<String,Long> timings = Collections.emptyMap();
+
+
+	@PostConstruct
+	public void init() {
+		if( DummyDaoSettings.initMode() == TableInit.Mode.PARALLEL ) {
+			logger.info( "DummyDataSeeder.init()" );
+			seed();
+		}
+	}
+
+	/**
+	 * Fills every table that is not filled yet, in parallel, and waits for them all.
+	 * @return {@link #timings()}
+	 */
+	public Map<String,Long> seed() {
+		long start = System.nanoTime();
+		boolean ordered = DummyDaoSettings.foreignKeyMode() != ForeignKeys.Mode.OFF;
+		Map<String,TableInit> tables = new LinkedHashMap<>();
+		tables.put( "Item", itemDao != null ? itemDao.tableInit() : null );
+		tables.put( "Village", villageDao != null ? villageDao.tableInit() : null );
+		tables.put( "VillagerType", villagerTypeDao != null ? villagerTypeDao.tableInit() : null );
+		tables.put( "Villager", villagerDao != null ? villagerDao.tableInit() : null );
+		tables.put( "Trade", tradeDao != null ? tradeDao.tableInit() : null );
+		tables.put( "TradeItem", tradeItemDao != null ? tradeItemDao.tableInit() : null );
+
+		ForkJoinPool pool = new ForkJoinPool( Math.min( tables.size(), Runtime.getRuntime().availableProcessors() ) );
+		try {
+			CompletableFuture<Void> items = fill( pool, tables.get( "Item" ), ordered );
+			CompletableFuture<Void> villages = fill( pool, tables.get( "Village" ), ordered );
+			CompletableFuture<Void> villagerTypes = fill( pool, tables.get( "VillagerType" ), ordered );
+			CompletableFuture<Void> villagers = fill( pool, tables.get( "Villager" ), ordered, villages, villagerTypes );
+			CompletableFuture<Void> trades = fill( pool, tables.get( "Trade" ), ordered, villagers );
+			CompletableFuture<Void> tradeItems = fill( pool, tables.get( "TradeItem" ), ordered, trades, items );
+			CompletableFuture.allOf( items, villages, villagerTypes, villagers, trades, tradeItems ).join();
+		} catch( CompletionException e ) {
+			if( e.getCause() instanceof RuntimeException )
+				throw (RuntimeException) e.getCause();
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+
+		Map<String,Long> timings = new LinkedHashMap<>();
+		tables.forEach( ( table, tableInit ) -> {
+			if( tableInit != null ) {
+				timings.put( table, tableInit.fillMillis() );
+			}
+		} );
+		this.timings = Collections.unmodifiableMap( timings );
+		logger.info( "Seeded " + timings.size() + " tables in " + ( System.nanoTime() - start ) / 1_000_000 + " ms"
+				+ ( ordered ? " in foreign key order" : "" ) + ", each in ms: " + timings );
+		return this.timings;
+	}
+
+	/** @return how long each table took to fill, in ms, as of the last {@link #seed()} */
+	public Map<String,Long> timings() {
+		return timings;
+	}
+
+
+
+	// parents only hold the fill back when foreign keys are checked
+	private static CompletableFuture<Void> fill( ForkJoinPool pool, TableInit tableInit, boolean ordered, CompletableFuture<?>... parents ) {
+		if( tableInit == null )
+			return CompletableFuture.completedFuture( null );
+		return CompletableFuture.allOf( ordered ? parents : new CompletableFuture<?>[0] )
+				.thenRunAsync( tableInit::await, pool );
+	}
+}
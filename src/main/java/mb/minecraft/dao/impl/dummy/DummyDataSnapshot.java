@@ -0,0 +1,325 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dumps the rows of all six dummy DAOs to one file and loads them back, for
+ * moving a populated dataset between environments.
+ * <p>
+ * The file holds a header (magic, version), then each table in parent to
+ * child order: a tag byte, the table's next ID, each row as its length and
+ * its {@link RowCodecs} encoding, and a length of -1. A CRC32 of everything
+ * before it closes the file.
+ * <p>
+ * Rows are streamed both ways through a 1MB buffer. Export reads the tables
+ * in place, so concurrent writes may or may not make it into the file.
+ * Import first streams through the whole file once, walking its tables
+ * without decoding the rows and checking its CRC, so a truncated or corrupt
+ * file is refused before anything is touched. It then deletes every row,
+ * children first, restores the rows under their own IDs through the DAOs'
+ * indexes, a batch at a time and without foreign key checks, and finally
+ * moves each ID sequence to where it was at export. Only a file that passes
+ * its CRC and is still malformed, which exportTo never writes, leaves the
+ * DAOs holding whatever was restored before the problem was found.
+ *
+ * @author mikebro
+ */
+@Component
+public class DummyDataSnapshot {
+
+	private static final Logger logger = LogManager.getLogger( DummyDataSnapshot.class );
+
+	private static final int MAGIC = 0x4D424453;
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int RESTORE_BATCH = 1_024;
+
+	@Autowired
+	ItemDaoDummyImpl itemDao;
+	@Autowired
+	VillageDaoDummyImpl villageDao;
+	@Autowired
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@Autowired
+	VillagerDaoDummyImpl villagerDao;
+	@Autowired
+	TradeDaoDummyImpl tradeDao;
+	@Autowired
+	TradeItemDaoDummyImpl tradeItemDao;
+
+
+	/**
+	 * Writes every row to file, replacing it.
+	 * @return the number of rows written
+	 */
+	public long exportTo( Path file ) throws IOException {
+		long start = System.nanoTime();
+		long rows = 0;
+		try( Output out = new Output( file ) ) {
+			out.ensure( 8 );
+			out.buf.putInt( MAGIC ).putInt( VERSION );
+			rows += writeTable( out, 1, RowCodecs.ITEM, itemDao.nextId(), itemDao::forEachRow );
+			rows += writeTable( out, 2, RowCodecs.VILLAGE, villageDao.nextId(), villageDao::forEachRow );
+			rows += writeTable( out, 3, RowCodecs.VILLAGER_TYPE, villagerTypeDao.nextId(), villagerTypeDao::forEachRow );
+			rows += writeTable( out, 4, RowCodecs.VILLAGER, villagerDao.nextId(), villagerDao::forEachRow );
+			rows += writeTable( out, 5, RowCodecs.TRADE, tradeDao.nextId(), tradeDao::forEachRow );
+			rows += writeTable( out, 6, RowCodecs.TRADE_ITEM, tradeItemDao.nextId(), tradeItemDao::forEachRow );
+			out.finish();
+		}
+		logger.info( "Exported " + rows + " rows to " + file + " in " + ( System.nanoTime() - start ) / 1_000_000 + " ms" );
+		return rows;
+	}
+
+	/**
+	 * Replaces every row with those in file.
+	 * @return the number of rows read
+	 * @throws IOException if file cannot be read, or is not a complete snapshot
+	 */
+	public long importFrom( Path file ) throws IOException {
+		long start = System.nanoTime();
+		long rows = 0;
+		verify( file );
+		try( Input in = new Input( file ) ) {
+			in.ensure( 8 );
+			if( in.buf.getInt() != MAGIC || in.buf.getInt() != VERSION )
+				throw new IOException( "Not a version " + VERSION + " snapshot: " + file );
+
+			tradeItemDao.deleteAll();
+			tradeDao.deleteAll();
+			villagerDao.deleteAll();
+			villagerTypeDao.deleteAll();
+			villageDao.deleteAll();
+			itemDao.deleteAll();
+
+			rows += readTable( in, 1, RowCodecs.ITEM, itemDao::restore, itemDao::advanceNextId );
+			rows += readTable( in, 2, RowCodecs.VILLAGE, villageDao::restore, villageDao::advanceNextId );
+			rows += readTable( in, 3, RowCodecs.VILLAGER_TYPE, villagerTypeDao::restore, villagerTypeDao::advanceNextId );
+			rows += readTable( in, 4, RowCodecs.VILLAGER, villagerDao::restore, villagerDao::advanceNextId );
+			rows += readTable( in, 5, RowCodecs.TRADE, tradeDao::restore, tradeDao::advanceNextId );
+			rows += readTable( in, 6, RowCodecs.TRADE_ITEM, tradeItemDao::restore, tradeItemDao::advanceNextId );
+			in.finish();
+		}
+		logger.info( "Imported " + rows + " rows from " + file + " in " + ( System.nanoTime() - start ) / 1_000_000 + " ms" );
+		return rows;
+	}
+
+
+
+	// walks the tables without decoding a row and checks the CRC, reading
+	// only BUFFER_SIZE at a time
+	private static void verify( Path file ) throws IOException {
+		try( Input in = new Input( file ) ) {
+			in.ensure( 8 );
+			if( in.buf.getInt() != MAGIC || in.buf.getInt() != VERSION )
+				throw new IOException( "Not a version " + VERSION + " snapshot: " + file );
+			for( int tag = 1; tag <= 6; tag++ ) {
+				in.ensure( 5 );
+				if( in.buf.get() != tag )
+					throw new IOException( "Snapshot is corrupt: expected table " + tag );
+				in.buf.getInt();
+				while( in.skipRow() ) {
+				}
+			}
+			in.finish();
+		}
+	}
+
+	private static <T> long writeTable( Output out, int tag, RowCodec<T> codec, int nextId, Consumer<Consumer<T>> forEachRow ) throws IOException {
+		out.ensure( 5 );
+		out.buf.put( (byte) tag ).putInt( nextId );
+		long[] count = new long[1];
+		try {
+			forEachRow.accept( row -> {
+				out.row( codec, row );
+				count[0]++;
+			} );
+		} catch( UncheckedIOException e ) {
+			throw e.getCause();
+		}
+		out.ensure( 4 );
+		out.buf.putInt( -1 );
+		return count[0];
+	}
+
+	private static <T> long readTable( Input in, int tag, RowCodec<T> codec, Consumer<List<T>> restore, IntConsumer advanceNextId ) throws IOException {
+		in.ensure( 5 );
+		if( in.buf.get() != tag )
+			throw new IOException( "Snapshot is corrupt: expected table " + tag );
+		int nextId = in.buf.getInt();
+		long count = 0;
+		List<T> batch = new ArrayList<>( RESTORE_BATCH );
+		for( T row = in.row( codec ); row != null; row = in.row( codec ) ) {
+			batch.add( row );
+			if( batch.size() == RESTORE_BATCH ) {
+				restore.accept( batch );
+				batch.clear();
+			}
+			count++;
+		}
+		if( !batch.isEmpty() )
+			restore.accept( batch );
+		advanceNextId.accept( nextId );
+		return count;
+	}
+
+
+	private static final class Output implements Closeable {
+
+		private final FileChannel channel;
+		private final CRC32 crc;
+		private ByteBuffer buf;
+		private ByteBuffer scratch;
+
+
+		Output( Path file ) throws IOException {
+			this.channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+			this.crc = new CRC32();
+			this.buf = ByteBuffer.allocate( BUFFER_SIZE );
+			this.scratch = ByteBuffer.allocate( 256 );
+		}
+
+		void ensure( int length ) throws IOException {
+			if( buf.remaining() >= length )
+				return;
+			drain();
+			if( buf.capacity() < length )
+				buf = ByteBuffer.allocate( length );
+		}
+
+		<T> void row( RowCodec<T> codec, T row ) {
+			scratch = RowCodecs.encode( codec, row, scratch );
+			try {
+				ensure( 4 + scratch.remaining() );
+			} catch( IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+			buf.putInt( scratch.remaining() ).put( scratch );
+		}
+
+		void finish() throws IOException {
+			drain();
+			buf.putInt( (int) crc.getValue() );
+			drain();
+		}
+
+		private void drain() throws IOException {
+			buf.flip();
+			crc.update( buf.duplicate() );
+			while( buf.hasRemaining() ) {
+				channel.write( buf );
+			}
+			buf.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+
+	private static final class Input implements Closeable {
+
+		private final FileChannel channel;
+		private final CRC32 crc;
+		private ByteBuffer buf;
+		// buf is summed into crc up to here
+		private int summed;
+
+
+		Input( Path file ) throws IOException {
+			this.channel = FileChannel.open( file, StandardOpenOption.READ );
+			this.crc = new CRC32();
+			this.buf = ByteBuffer.allocate( BUFFER_SIZE );
+			buf.flip();
+		}
+
+		void ensure( int length ) throws IOException {
+			if( buf.remaining() >= length )
+				return;
+			sum();
+			buf.compact();
+			if( buf.capacity() < length ) {
+				buf.flip();
+				buf = ByteBuffer.allocate( length ).put( buf );
+			}
+			while( buf.position() < length ) {
+				if( channel.read( buf ) < 0 )
+					throw new EOFException( "Snapshot is truncated" );
+			}
+			buf.flip();
+			summed = 0;
+		}
+
+		// reads the next row in place, or returns null at the end of the table
+		<T> T row( RowCodec<T> codec ) throws IOException {
+			ensure( 4 );
+			int length = buf.getInt();
+			if( length < 0 )
+				return null;
+			ensure( length );
+			int limit = buf.limit();
+			int end = buf.position() + length;
+			buf.limit( end );
+			T row;
+			try {
+				row = codec.read( buf );
+			} catch( BufferUnderflowException | IllegalArgumentException e ) {
+				throw new IOException( "Snapshot is corrupt: a row overruns its " + length + " bytes", e );
+			} finally {
+				buf.limit( limit );
+			}
+			if( buf.position() != end )
+				throw new IOException( "Snapshot is corrupt: a row is " + length + " bytes but read as " + ( length - end + buf.position() ) );
+			return row;
+		}
+
+		// steps over the next row, or returns false at the end of the table
+		boolean skipRow() throws IOException {
+			ensure( 4 );
+			int length = buf.getInt();
+			if( length < 0 )
+				return false;
+			ensure( length );
+			buf.position( buf.position() + length );
+			return true;
+		}
+
+		void finish() throws IOException {
+			ensure( 4 );
+			sum();
+			if( buf.getInt() != (int) crc.getValue() )
+				throw new IOException( "Snapshot fails its CRC" );
+		}
+
+		private void sum() {
+			ByteBuffer done = buf.duplicate();
+			done.limit( buf.position() ).position( summed );
+			crc.update( done );
+			summed = buf.position();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
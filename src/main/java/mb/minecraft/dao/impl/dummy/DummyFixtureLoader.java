@@ -0,0 +1,259 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+
+import mb.minecraft.dao.DaoConstraintException;
+import mb.minecraft.dao.ForeignKeyConstraintException;
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Village;
+import mb.minecraft.model.Villager;
+import mb.minecraft.model.VillagerType;
+
+/**
+ * Seeds the dummy DAOs from JSON or XML fixture files. With
+ * <code>-Dmb.minecraft.dao.dummy.fixtures=path/to/fixture.json</code> the file
+ * replaces the mock data at startup.
+ * <p>
+ * A fixture is one object holding an array per table, parents first:
+ * <pre>
+ * { "items": [ { "id": 1, "name": "Emerald" } ],
+ *   "villages": [ ... ], "villagerTypes": [ ... ], "villagers": [ ... ],
+ *   "trades": [ ... ], "tradeItems": [ ... ] }
+ * </pre>
+ * In XML each array is a wrapper element around one element per row, e.g.
+ * <code>&lt;fixture&gt;&lt;items&gt;&lt;item&gt;&lt;id&gt;1&lt;/id&gt;...</code>.
+ * Tables may be left out.
+ * <p>
+ * The file is read a row at a time off the parser's token stream, so memory
+ * use does not grow with its size. Each row is checked for its required fields
+ * and that its parents exist, then inserted in batches; IDs given in the file
+ * are kept. A bad row stops the load with an exception naming its line, and
+ * the batches before its own stay loaded.
+ *
+ * @author mikebro
+ */
+@Component
+public class DummyFixtureLoader {
+
+	private static final Logger logger = LogManager.getLogger( DummyFixtureLoader.class );
+
+	private static final int BATCH_SIZE = 1_000;
+	private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+	private static final XmlMapper XML_MAPPER = new XmlMapper();
+
+	public enum Format {
+		JSON,
+		XML;
+
+		public static Format of( Path file ) {
+			return file.getFileName().toString().toLowerCase().endsWith( ".xml" ) ? XML : JSON;
+		}
+	}
+
+	@Autowired
+	ItemDaoDummyImpl itemDao;
+	@Autowired
+	VillageDaoDummyImpl villageDao;
+	@Autowired
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@Autowired
+	VillagerDaoDummyImpl villagerDao;
+	@Autowired
+	TradeDaoDummyImpl tradeDao;
+	@Autowired
+	TradeItemDaoDummyImpl tradeItemDao;
+
+
+	@PostConstruct
+	public void init() {
+		Path file = DummyDaoSettings.fixtures();
+		if( file == null )
+			return;
+		logger.info( "DummyFixtureLoader.init(), replacing the mock data with " + file );
+		tradeItemDao.deleteAll();
+		tradeDao.deleteAll();
+		villagerDao.deleteAll();
+		villagerTypeDao.deleteAll();
+		villageDao.deleteAll();
+		itemDao.deleteAll();
+		try {
+			load( file );
+		} catch( IOException e ) {
+			throw new UncheckedIOException( "Cannot load fixture " + file, e );
+		}
+	}
+
+	/**
+	 * Adds the rows in file, read as XML if its name ends in .xml and as JSON otherwise.
+	 * @return the number of rows loaded
+	 */
+	public long load( Path file ) throws IOException {
+		try( InputStream in = Files.newInputStream( file ) ) {
+			return load( in, Format.of( file ) );
+		}
+	}
+
+	/**
+	 * Adds the rows in in, which is left open.
+	 * @return the number of rows loaded
+	 * @throws IOException if in cannot be read or is not a fixture
+	 * @throws DaoConstraintException if a row is missing a required field or breaks a unique constraint
+	 * @throws ForeignKeyConstraintException if a row references a parent that does not exist
+	 */
+	public long load( InputStream in, Format format ) throws IOException {
+		long start = System.nanoTime();
+		ObjectMapper mapper = format == Format.XML ? XML_MAPPER : JSON_MAPPER;
+		Map<String,Table<?>> tables = tables( mapper );
+		long rows = 0;
+		try( JsonParser parser = mapper.getFactory().createParser( in ) ) {
+			parser.disable( JsonParser.Feature.AUTO_CLOSE_SOURCE );
+			if( parser.nextToken() != JsonToken.START_OBJECT )
+				throw new JsonParseException( parser, "A fixture must be an object of tables" );
+			while( parser.nextToken() == JsonToken.FIELD_NAME ) {
+				Table<?> table = tables.get( parser.currentName() );
+				if( table == null )
+					throw new JsonParseException( parser, "Unknown table \"" + parser.currentName() + "\", expected one of " + tables.keySet() );
+				parser.nextToken();
+				rows += table.load( parser );
+			}
+		}
+		logger.info( "Loaded " + rows + " fixture rows in " + ( System.nanoTime() - start ) / 1_000_000 + " ms" );
+		return rows;
+	}
+
+
+
+	private Map<String,Table<?>> tables( ObjectMapper mapper ) {
+		Map<String,Table<?>> tables = new LinkedHashMap<>();
+		tables.put( "items", new Table<>( mapper, Item.class,
+				( row, where ) -> require( row, row.getName(), "name", where ),
+				itemDao::insert ) );
+		tables.put( "villages", new Table<>( mapper, Village.class,
+				( row, where ) -> require( row, row.getName(), "name", where ),
+				villageDao::insert ) );
+		tables.put( "villagerTypes", new Table<>( mapper, VillagerType.class,
+				( row, where ) -> require( row, row.getProfession(), "profession", where ),
+				villagerTypeDao::insert ) );
+		tables.put( "villagers", new Table<>( mapper, Villager.class,
+				( row, where ) -> {
+					require( row, row.getName(), "name", where );
+					if( row.getVillageId() != null )
+						requireParent( villageDao.selectOneById( row.getVillageId() ), "Village", row.getVillageId(), where );
+					if( row.getTypeId() != null )
+						requireParent( villagerTypeDao.selectOneById( row.getTypeId() ), "VillagerType", row.getTypeId(), where );
+				},
+				villagerDao::insert ) );
+		tables.put( "trades", new Table<>( mapper, Trade.class,
+				( row, where ) -> {
+					require( row, row.getVillagerId(), "villagerId", where );
+					requireParent( villagerDao.selectOneById( row.getVillagerId() ), "Villager", row.getVillagerId(), where );
+				},
+				tradeDao::insert ) );
+		tables.put( "tradeItems", new Table<>( mapper, TradeItem.class,
+				( row, where ) -> {
+					require( row, row.getTradeId(), "tradeId", where );
+					require( row, row.getOfferRequire(), "offerRequire", where );
+					require( row, row.getSeqno(), "seqno", where );
+					requireParent( tradeDao.selectOneById( row.getTradeId() ), "Trade", row.getTradeId(), where );
+					if( row.getItemId() != null )
+						requireParent( itemDao.selectOneById( row.getItemId() ), "Item", row.getItemId(), where );
+				},
+				tradeItemDao::insert ) );
+		return tables;
+	}
+
+	private static void require( Object row, Object value, String field, String where ) {
+		if( value == null || "".equals( value ) )
+			throw new DaoConstraintException( where + " is missing its " + field, row );
+	}
+
+	private static void requireParent( Object parent, String parentTable, int parentId, String where ) {
+		if( parent == null )
+			throw new ForeignKeyConstraintException( where + " references " + parentTable + " with ID " + parentId + ", which does not exist" );
+	}
+
+
+	// one table's rows in a fixture: how to read, check and insert them
+	private static class Table<T> {
+		final ObjectReader reader;
+		final String type;
+		final BiConsumer<T,String> check;
+		final Consumer<List<T>> insert;
+		final List<T> batch = new ArrayList<>( BATCH_SIZE );
+
+		Table( ObjectMapper mapper, Class<T> type, BiConsumer<T,String> check, Consumer<List<T>> insert ) {
+			this.reader = mapper.readerFor( type );
+			this.type = type.getSimpleName();
+			this.check = check;
+			this.insert = insert;
+		}
+
+		// reads the table the parser is positioned on: a JSON array, or an XML
+		// wrapper element, which the parser sees as an object whose fields are rows
+		long load( JsonParser parser ) throws IOException {
+			JsonToken token = parser.currentToken();
+			if( token == JsonToken.VALUE_NULL || token == JsonToken.VALUE_STRING && parser.getText().trim().isEmpty() )
+				return 0;
+			JsonToken end;
+			if( token == JsonToken.START_ARRAY )
+				end = JsonToken.END_ARRAY;
+			else if( token == JsonToken.START_OBJECT )
+				end = JsonToken.END_OBJECT;
+			else
+				throw new JsonParseException( parser, "Table of " + type + " must be an array" );
+
+			long count = 0;
+			while( ( token = parser.nextToken() ) != end ) {
+				if( token == JsonToken.FIELD_NAME )
+					token = parser.nextToken();
+				if( token != JsonToken.START_OBJECT )
+					throw new JsonParseException( parser, "Expected a " + type + " object" );
+				JsonLocation location = parser.currentLocation();
+				T row = reader.readValue( parser );
+				check.accept( row, "Fixture line " + location.getLineNr() + ": " + type );
+				batch.add( row );
+				if( batch.size() == BATCH_SIZE ) {
+					flush();
+				}
+				count++;
+			}
+			// the next table may reference these rows
+			flush();
+			return count;
+		}
+
+		void flush() {
+			if( batch.isEmpty() )
+				return;
+			insert.accept( batch );
+			batch.clear();
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+
+/**
+ * A unit of work over the dummy tables, begun and ended by
+ * {@link DummyTransactionManager}.
+ * <p>
+ * Writers take turns. A transaction takes the write lock shared by all six
+ * tables at its first write and holds it until it commits or rolls back; a
+ * write made outside any transaction takes it for the length of the DAO call,
+ * and commits as a transaction of its own when the call returns. Readers take
+ * no lock at all. Instead every row written keeps its earlier versions in its
+ * {@link VersionedRowTable} for as long as an open transaction may still need
+ * them: a transaction reads the rows as they were committed when it began,
+ * along with its own writes, and a read outside any transaction sees the rows
+ * as last committed.
+ * <p>
+ * A transaction that has read something and then goes to write after another
+ * writer has committed would be writing on the strength of rows it has not
+ * seen, so it fails with CannotSerializeTransactionException instead, and can
+ * be retried.
+ *
+ * @author mikebro
+ */
+final class DummyTransaction {
+
+	/** Every DAO's lock stripe while transactions are on, see {@link StripedLocks}. */
+	static final Lock WRITE_LOCK = new WriteLock();
+
+	// the commit time of the last transaction to write anything
+	private static final AtomicLong clock = new AtomicLong();
+	private static final ReentrantLock writeLock = new ReentrantLock();
+	private static final Set<DummyTransaction> open = ConcurrentHashMap.newKeySet();
+	private static final Set<VersionedRowTable<?>> versioned = ConcurrentHashMap.newKeySet();
+	private static final ThreadLocal<DummyTransaction> current = new ThreadLocal<>();
+	private static final ThreadLocal<DummyTransaction> autoCommit = new ThreadLocal<>();
+	private static final ThreadLocal<Boolean> filling = ThreadLocal.withInitial( () -> Boolean.FALSE );
+
+	private final boolean implicit;
+	private final long lockTimeoutMillis;
+	private final Map<VersionedRowTable<?>,List<Integer>> written;
+	private volatile long snapshot;
+	private volatile long commitTime;
+	private boolean read;
+	private boolean writing;
+	private boolean wrote;
+	private boolean rollbackOnly;
+	private boolean ended;
+	private int depth;
+
+
+	private DummyTransaction( boolean implicit, long lockTimeoutMillis ) {
+		this.implicit = implicit;
+		this.lockTimeoutMillis = lockTimeoutMillis;
+		this.written = implicit ? null : new LinkedHashMap<>();
+		this.snapshot = clock.get();
+		this.commitTime = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Starts a transaction on this thread.
+	 * @param lockTimeoutMillis how long its first write may wait for other
+	 * writers to finish, or -1 to wait as long as it takes
+	 */
+	static DummyTransaction begin( long lockTimeoutMillis ) {
+		DummyTransaction tx = new DummyTransaction( false, lockTimeoutMillis );
+		open.add( tx );
+		// again now it is registered, so no purge can have dropped what it needs
+		tx.snapshot = clock.get();
+		current.set( tx );
+		return tx;
+	}
+
+	/** @return this thread's transaction, or null */
+	static DummyTransaction current() {
+		return current.get();
+	}
+
+	/** Unbinds this thread's transaction, to be bound again with resume. */
+	static DummyTransaction suspend() {
+		DummyTransaction tx = current.get();
+		current.remove();
+		return tx;
+	}
+
+	static void resume( DummyTransaction tx ) {
+		if( tx != null ) {
+			current.set( tx );
+		} else {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Runs fill, which fills a table nobody else can reach until it is done,
+	 * outside this thread's transaction. Its rows go in unversioned, as if
+	 * written before any transaction, so every reader sees them, the
+	 * suspended transaction included. It takes no write lock either, so it
+	 * never waits on a transaction that is waiting for the table.
+	 */
+	static void fill( Runnable fill ) {
+		DummyTransaction tx = suspend();
+		boolean outer = filling.get();
+		filling.set( Boolean.TRUE );
+		try {
+			fill.run();
+		} finally {
+			filling.set( outer );
+			resume( tx );
+		}
+	}
+
+	/** @return the transaction this thread's reads are made in, or null */
+	static DummyTransaction reader() {
+		DummyTransaction tx = current.get();
+		return tx != null ? tx : autoCommit.get();
+	}
+
+	/** @return the transaction this thread's writes belong to, or null if it holds no write lock */
+	static DummyTransaction writer() {
+		if( filling.get() )
+			return null;
+		DummyTransaction tx = current.get();
+		return tx != null && tx.writing ? tx : autoCommit.get();
+	}
+
+	/** @return the commit time up to which reader sees other transactions' writes */
+	static long readPoint( DummyTransaction reader ) {
+		if( reader == null )
+			return clock.get();
+		reader.read = true;
+		return reader.snapshot;
+	}
+
+	// copies are handed out in explicit transactions only, where a row changed
+	// in place before update must not show through until commit
+	boolean readsCopies() {
+		return !implicit;
+	}
+
+	/** @return true if this transaction's writes are visible at readPoint */
+	boolean committedBy( long readPoint ) {
+		return commitTime <= readPoint;
+	}
+
+	boolean isCommitted() {
+		return commitTime != Long.MAX_VALUE;
+	}
+
+	void wrote( VersionedRowTable<?> table, int id ) {
+		wrote = true;
+		versioned.add( table );
+		if( written != null ) {
+			written.computeIfAbsent( table, t -> new ArrayList<>() ).add( id );
+		}
+	}
+
+	void setRollbackOnly() {
+		rollbackOnly = true;
+	}
+
+	boolean isRollbackOnly() {
+		return rollbackOnly;
+	}
+
+	void commit() {
+		if( ended )
+			return;
+		try {
+			if( wrote ) {
+				publish();
+			}
+		} finally {
+			end();
+		}
+	}
+
+	void rollback() {
+		if( ended )
+			return;
+		try {
+			if( wrote ) {
+				List<VersionedRowTable<?>> tables = new ArrayList<>( written.keySet() );
+				for( int i = tables.size() - 1; i >= 0; i-- ) {
+					tables.get( i ).rollback( this, written.get( tables.get( i ) ) );
+				}
+			}
+		} finally {
+			end();
+		}
+	}
+
+
+
+	// only ever called by the holder of the write lock, so commits are serial:
+	// a reader that sees the new clock value also sees this commit time
+	private void publish() {
+		long time = clock.get() + 1;
+		commitTime = time;
+		clock.set( time );
+	}
+
+	private void end() {
+		ended = true;
+		if( current.get() == this ) {
+			current.remove();
+		}
+		open.remove( this );
+		if( writing ) {
+			writing = false;
+			try {
+				purge();
+			} finally {
+				writeLock.unlock();
+			}
+		} else if( writeLock.tryLock() ) {
+			// an old snapshot closing may free versions no writer will come back for
+			try {
+				purge();
+			} finally {
+				writeLock.unlock();
+			}
+		}
+	}
+
+	private void startWriting() {
+		if( writing )
+			return;
+		try {
+			if( lockTimeoutMillis < 0 ) {
+				writeLock.lockInterruptibly();
+			} else if( !writeLock.tryLock( lockTimeoutMillis, TimeUnit.MILLISECONDS ) ) {
+				throw new CannotAcquireLockException( "Timed out after " + lockTimeoutMillis + " ms waiting for another transaction to finish writing" );
+			}
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new CannotAcquireLockException( "Interrupted waiting for another transaction to finish writing", e );
+		}
+		writing = true;
+		if( read && clock.get() != snapshot )
+			throw new CannotSerializeTransactionException( "Another transaction committed since this one began reading" );
+		snapshot = clock.get();
+	}
+
+	// for tryLock, once the write lock has been tried for: a transaction that
+	// startWriting would fail lets it go again and is refused instead
+	private boolean tookWriteLock( boolean locked ) {
+		if( !locked )
+			return false;
+		if( read && clock.get() != snapshot ) {
+			writeLock.unlock();
+			return false;
+		}
+		writing = true;
+		snapshot = clock.get();
+		return true;
+	}
+
+	// under the write lock
+	private static void purge() {
+		long horizon = clock.get();
+		for( DummyTransaction tx : open ) {
+			horizon = Math.min( horizon, tx.snapshot );
+		}
+		long oldest = horizon;
+		versioned.removeIf( table -> table.purge( oldest ) );
+	}
+
+
+
+	// In a transaction, lock and lockInterruptibly wait as long as its timeout
+	// allows and fail the way its first write would; tryLock only ever returns
+	// false, waiting no longer than it is given.
+	private static class WriteLock implements Lock {
+
+		@Override
+		public void lock() {
+			if( filling.get() )
+				return;
+			DummyTransaction tx = current.get();
+			if( tx != null ) {
+				tx.startWriting();
+				return;
+			}
+			writeLock.lock();
+			enterAutoCommit();
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			if( Thread.interrupted() )
+				throw new InterruptedException();
+			if( filling.get() )
+				return;
+			DummyTransaction tx = current.get();
+			if( tx != null ) {
+				tx.startWriting();
+				return;
+			}
+			writeLock.lockInterruptibly();
+			enterAutoCommit();
+		}
+
+		@Override
+		public boolean tryLock() {
+			if( filling.get() )
+				return true;
+			DummyTransaction tx = current.get();
+			if( tx != null )
+				return tx.writing || tx.tookWriteLock( writeLock.tryLock() );
+			if( !writeLock.tryLock() )
+				return false;
+			enterAutoCommit();
+			return true;
+		}
+
+		@Override
+		public boolean tryLock( long time, TimeUnit unit ) throws InterruptedException {
+			if( filling.get() )
+				return true;
+			DummyTransaction tx = current.get();
+			if( tx != null )
+				return tx.writing || tx.tookWriteLock( writeLock.tryLock( time, unit ) );
+			if( !writeLock.tryLock( time, unit ) )
+				return false;
+			enterAutoCommit();
+			return true;
+		}
+
+		// a transaction keeps the lock until it ends
+		@Override
+		public void unlock() {
+			if( current.get() != null || filling.get() )
+				return;
+			DummyTransaction auto = autoCommit.get();
+			try {
+				if( --auto.depth == 0 ) {
+					autoCommit.remove();
+					if( auto.wrote ) {
+						auto.publish();
+						purge();
+					}
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException();
+		}
+
+		// under writeLock, taken outside any transaction
+		private static void enterAutoCommit() {
+			DummyTransaction auto = autoCommit.get();
+			if( auto == null ) {
+				auto = new DummyTransaction( true, -1 );
+				autoCommit.set( auto );
+			}
+			auto.depth++;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package mb.minecraft.dao.impl.dummy;
+
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+
+/**
+ * Spring transaction manager over the dummy DAOs, so that @Transactional and
+ * TransactionTemplate work on them as they would on a database. Declare one
+ * as a bean and start the JVM with
+ * <code>-Dmb.minecraft.dao.dummy.transactions=true</code>, which has the DAOs
+ * keep the row versions transactions need. It implies
+ * <code>mb.minecraft.dao.dummy.concurrent=true</code>, as readers take no
+ * lock. The tables are kept in memory only; a data directory is refused.
+ * <p>
+ * Every transaction reads a snapshot, whatever isolation level it asks for:
+ * readers never wait, and one writer at a time works across all six tables.
+ * See {@link DummyTransaction} for the details. A transaction's timeout
+ * bounds how long its first write waits for the writer before it.
+ * Propagation REQUIRES_NEW and NOT_SUPPORTED suspend the transaction as
+ * usual; NESTED is not supported.
+ *
+ * @author mikebro
+ */
+public class DummyTransactionManager extends AbstractPlatformTransactionManager {
+
+	private static final long serialVersionUID = 1L;
+
+
+	@Override
+	protected Object doGetTransaction() {
+		return new TransactionObject( DummyTransaction.current() );
+	}
+
+	@Override
+	protected boolean isExistingTransaction( Object transaction ) {
+		return ( (TransactionObject) transaction ).tx != null;
+	}
+
+	@Override
+	protected void doBegin( Object transaction, TransactionDefinition definition ) {
+		if( !DummyDaoSettings.isTransactional() )
+			throw new CannotCreateTransactionException( "The dummy DAOs were not started with " + DummyDaoSettings.TRANSACTIONS + "=true" );
+		int timeout = determineTimeout( definition );
+		( (TransactionObject) transaction ).tx = DummyTransaction.begin( timeout == TransactionDefinition.TIMEOUT_DEFAULT ? -1 : timeout * 1000L );
+	}
+
+	@Override
+	protected Object doSuspend( Object transaction ) {
+		( (TransactionObject) transaction ).tx = null;
+		return DummyTransaction.suspend();
+	}
+
+	@Override
+	protected void doResume( Object transaction, Object suspendedResources ) {
+		DummyTransaction.resume( (DummyTransaction) suspendedResources );
+	}
+
+	@Override
+	protected void doCommit( DefaultTransactionStatus status ) {
+		transactionOf( status ).commit();
+	}
+
+	@Override
+	protected void doRollback( DefaultTransactionStatus status ) {
+		transactionOf( status ).rollback();
+	}
+
+	@Override
+	protected void doSetRollbackOnly( DefaultTransactionStatus status ) {
+		transactionOf( status ).setRollbackOnly();
+	}
+
+
+
+	private static DummyTransaction transactionOf( DefaultTransactionStatus status ) {
+		return ( (TransactionObject) status.getTransaction() ).tx;
+	}
+
+
+	private static class TransactionObject implements SmartTransactionObject {
+		DummyTransaction tx;
+
+		TransactionObject( DummyTransaction tx ) {
+			this.tx = tx;
+		}
+
+		@Override
+		public boolean isRollbackOnly() {
+			return tx != null && tx.isRollbackOnly();
+		}
+
+		@Override
+		public void flush() {
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import lombok.Builder;
+
+/**
+ * Declaration of one foreign key column between two dummy tables, for
+ * {@link ForeignKeys}.
+ * <p>
+ * The child side lookups are expected to be backed by the child DAO's index
+ * on the column, so finding whether a parent is referenced is O(1) and
+ * collecting its children for a cascade is O(children).
+ *
+ * @author mikebro
+ */
+@Builder
+final class ForeignKey<C> {
+
+	enum OnDelete {
+		RESTRICT,
+		CASCADE
+	}
+
+	final String childTable;
+	final String parentTable;
+	final OnDelete onDelete;
+
+	/** Reads the column; null means the row references nothing. */
+	final Function<C,Integer> parentId;
+	final Function<C,Integer> childId;
+
+	final IntPredicate parentExists;
+	/** Any one child of the parent ID, or null. */
+	final IntFunction<C> anyChild;
+	final IntFunction<List<C>> children;
+	final Predicate<C> deleteChild;
+}
@@ -0,0 +1,153 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Secondary index from a foreign key column to the rows that reference it.
+ * <p>
+ * Rows are kept in row ID order within each key, in both modes. That is the
+ * order a filtered scan of the old HashMap table gave only while the IDs were
+ * smaller than its capacity, so callers should not rely on it matching that.
+ * Like {@link UniqueIndex}, the key each row was filed under is remembered by
+ * row ID so a row re-parented in place is moved correctly on update.
+ * <p>
+ * In concurrent mode the buckets are added and dropped atomically per key.
+ * Callers serialize writes to any one row ID.
+ * <p>
+ * The buckets follow the latest rows. Over a versioned table, select and rows
+ * look each row up in the table as the reader sees it instead, and add the
+ * rows with versions that the reader sees under the key; first and count
+ * answer for the latest rows, as the writers checking them need.
+ *
+ * @author mikebro
+ */
+class ForeignKeyIndex<T> {
+
+	private final RowTable<T> table;
+	private final Function<T,Integer> keyOf;
+	private final boolean concurrent;
+	private final Map<Integer,Bucket<T>> rowsByKey;
+	private final Map<Integer,Integer> keysById;
+
+
+	ForeignKeyIndex( RowTable<T> table, Function<T,Integer> keyOf, boolean concurrent ) {
+		this.table = table;
+		this.keyOf = keyOf;
+		this.concurrent = concurrent;
+		this.rowsByKey = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+		this.keysById = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+	}
+
+	List<T> select( Integer key ) {
+		if( key == null )
+			return new ArrayList<>();
+		if( table.isVersioned() )
+			return selectVersioned( key );
+		Bucket<T> bucket = rowsByKey.get( key );
+		if( bucket == null )
+			return new ArrayList<>();
+		return new ArrayList<>( bucket.rows.values() );
+	}
+
+	// live view of the rows filed under key, for callers that only iterate
+	Collection<T> rows( Integer key ) {
+		if( table.isVersioned() )
+			return select( key );
+		Bucket<T> bucket = key != null ? rowsByKey.get( key ) : null;
+		return bucket != null ? bucket.rows.values() : Collections.emptyList();
+	}
+
+	// any one row filed under key, or null if there are none
+	T first( Integer key ) {
+		Bucket<T> bucket = key != null ? rowsByKey.get( key ) : null;
+		if( bucket == null )
+			return null;
+		Iterator<T> it = bucket.rows.values().iterator();
+		return it.hasNext() ? it.next() : null;
+	}
+
+	// O(1) in both modes, from the count each bucket keeps
+	int count( Integer key ) {
+		Bucket<T> bucket = key != null ? rowsByKey.get( key ) : null;
+		return bucket != null ? bucket.size : 0;
+	}
+
+	Integer keyOf( int id ) {
+		return keysById.get( id );
+	}
+
+	void put( int id, Integer key, T row ) {
+		Integer oldKey = key != null ? keysById.put( id, key ) : keysById.remove( id );
+		if( oldKey != null && !oldKey.equals( key ) ) {
+			removeFromBucket( oldKey, id );
+		}
+		if( key != null ) {
+			rowsByKey.compute( key, ( k, bucket ) -> {
+				if( bucket == null )
+					bucket = new Bucket<>( concurrent );
+				if( bucket.rows.put( id, row ) == null ) {
+					bucket.size++;
+				}
+				return bucket;
+			} );
+		}
+	}
+
+	void remove( int id ) {
+		Integer oldKey = keysById.remove( id );
+		if( oldKey != null ) {
+			removeFromBucket( oldKey, id );
+		}
+	}
+
+	// the changed rows are read first, so a row changed while the bucket is
+	// read is still found there, as the reader sees it
+	private List<T> selectVersioned( Integer key ) {
+		Map<Integer,T> changed = table.changedRows( row -> key.equals( keyOf.apply( row ) ) );
+		Map<Integer,T> result = new TreeMap<>( changed );
+		Bucket<T> bucket = rowsByKey.get( key );
+		if( bucket != null ) {
+			for( Integer id : bucket.rows.keySet() ) {
+				if( changed.containsKey( id ) )
+					continue;
+				T row = table.get( id );
+				if( row != null && key.equals( keyOf.apply( row ) ) ) {
+					result.put( id, row );
+				}
+			}
+		}
+		return new ArrayList<>( result.values() );
+	}
+
+	private void removeFromBucket( Integer key, int id ) {
+		rowsByKey.computeIfPresent( key, ( k, bucket ) -> {
+			if( bucket.rows.remove( id ) != null ) {
+				bucket.size--;
+			}
+			return bucket.size == 0 ? null : bucket;
+		} );
+	}
+
+
+
+	// the rows filed under one key, and how many there are, as a skip list
+	// can only count itself by walking; only changed inside rowsByKey.compute
+	private static class Bucket<T> {
+		final Map<Integer,T> rows;
+		volatile int size;
+
+		Bucket( boolean concurrent ) {
+			this.rows = concurrent ? new ConcurrentSkipListMap<>() : new TreeMap<>();
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static mb.minecraft.dao.impl.dummy.ForeignKey.OnDelete.CASCADE;
+import static mb.minecraft.dao.impl.dummy.ForeignKey.OnDelete.RESTRICT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import mb.minecraft.dao.ForeignKeyConstraintException;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Village;
+import mb.minecraft.model.Villager;
+
+/**
+ * Foreign key enforcement across the dummy DAOs, switched on with
+ * <code>-Dmb.minecraft.dao.dummy.foreignKeys=restrict</code> or
+ * <code>=cascade</code>.
+ * <p>
+ * The keys are declared in {@link #init()}. With enforcement on, inserts and
+ * updates are refused if they reference a parent that does not exist, and a
+ * parent row cannot be deleted while anything references it. In cascade mode
+ * the keys declared ON DELETE CASCADE instead delete the children, through
+ * the child DAO, so deleting a village takes its villagers, their trades and
+ * those trades' items with it. No RESTRICT key hangs below a CASCADE one, so
+ * a cascade never stops halfway.
+ * <p>
+ * VillagerTypeDaoDummyImpl checks its own deletes, as it always has; its key
+ * is declared here for the check on villagers.
+ * <p>
+ * Each parent table has its own lock stripes by parent ID. A write to a
+ * child holds the stripes of the parents it references across its check and
+ * the write itself, through {@link #withParents}, and a delete holds the
+ * parent's stripe across its check, the delete and the cascade, through
+ * {@link #delete}, so in concurrent mode no child can slip in under a parent
+ * that is going away. These stripes are always taken before any of the DAOs'
+ * own, and a cascade takes them from the top table down.
+ *
+ * @author mikebro
+ */
+@Component
+class ForeignKeys {
+
+	private static final Logger logger = LogManager.getLogger( ForeignKeys.class );
+
+	static final String MISSING_PARENT_ERROR = "%s with ID %d references %s with ID %d, which does not exist";
+
+	enum Mode {
+		OFF,
+		RESTRICT,
+		CASCADE
+	}
+
+	@Autowired( required = false )
+	ItemDaoDummyImpl itemDao;
+	@Autowired( required = false )
+	VillageDaoDummyImpl villageDao;
+	@Autowired( required = false )
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@Autowired( required = false )
+	VillagerDaoDummyImpl villagerDao;
+	@Autowired( required = false )
+	TradeDaoDummyImpl tradeDao;
+	@Autowired( required = false )
+	TradeItemDaoDummyImpl tradeItemDao;
+
+	private final Mode mode;
+	private final Map<String,List<ForeignKey<?>>> keysByChild;
+	private final Map<String,List<ForeignKey<?>>> keysByParent;
+	private final Map<String,StripedLocks> parentLocks;
+
+
+	ForeignKeys() {
+		this.mode = DummyDaoSettings.foreignKeyMode();
+		this.keysByChild = new HashMap<>();
+		this.keysByParent = new HashMap<>();
+		this.parentLocks = new HashMap<>();
+	}
+
+	@PostConstruct
+	void init() {
+		logger.info( "ForeignKeys.init(), mode " + mode );
+		keysByChild.clear();
+		keysByParent.clear();
+		parentLocks.clear();
+
+		if( villagerDao != null && villageDao != null ) {
+			declare( ForeignKey.<Villager>builder()
+					.childTable( "Villager" )
+					.parentTable( "Village" )
+					.onDelete( CASCADE )
+					.parentId( Villager::getVillageId )
+					.childId( Villager::getId )
+					.parentExists( id -> villageDao.selectOneById( id ) != null )
+					.anyChild( villagerDao::selectAnyByVillageId )
+					.children( id -> villagerDao.selectAll( Village.builder().id( id ).build() ) )
+					.deleteChild( villagerDao::deleteOne )
+					.build() );
+		}
+		if( villagerDao != null && villagerTypeDao != null ) {
+			declare( ForeignKey.<Villager>builder()
+					.childTable( "Villager" )
+					.parentTable( "VillagerType" )
+					.onDelete( RESTRICT )
+					.parentId( Villager::getTypeId )
+					.childId( Villager::getId )
+					.parentExists( id -> villagerTypeDao.selectOneById( id ) != null )
+					.anyChild( villagerDao::selectAnyByTypeId )
+					.build() );
+		}
+		if( tradeDao != null && villagerDao != null ) {
+			declare( ForeignKey.<Trade>builder()
+					.childTable( "Trade" )
+					.parentTable( "Villager" )
+					.onDelete( CASCADE )
+					.parentId( Trade::getVillagerId )
+					.childId( Trade::getId )
+					.parentExists( id -> villagerDao.selectOneById( id ) != null )
+					.anyChild( tradeDao::selectAnyByVillagerId )
+					.children( id -> tradeDao.selectAll( Villager.builder().id( id ).build() ) )
+					.deleteChild( tradeDao::deleteOne )
+					.build() );
+		}
+		if( tradeItemDao != null && tradeDao != null ) {
+			declare( ForeignKey.<TradeItem>builder()
+					.childTable( "TradeItem" )
+					.parentTable( "Trade" )
+					.onDelete( CASCADE )
+					.parentId( TradeItem::getTradeId )
+					.childId( TradeItem::getId )
+					.parentExists( id -> tradeDao.selectOneById( id ) != null )
+					.anyChild( tradeItemDao::selectAnyByTradeId )
+					.children( id -> tradeItemDao.selectAll( Trade.builder().id( id ).build() ) )
+					.deleteChild( tradeItemDao::deleteOne )
+					.build() );
+		}
+		if( tradeItemDao != null && itemDao != null ) {
+			declare( ForeignKey.<TradeItem>builder()
+					.childTable( "TradeItem" )
+					.parentTable( "Item" )
+					.onDelete( RESTRICT )
+					.parentId( TradeItem::getItemId )
+					.childId( TradeItem::getId )
+					.parentExists( id -> itemDao.selectOneById( id ) != null )
+					.anyChild( tradeItemDao::selectAnyByItemId )
+					.build() );
+		}
+	}
+
+	boolean enforced() {
+		return mode != Mode.OFF;
+	}
+
+	/**
+	 * Called before a row of childTable is inserted or updated.
+	 * @throws ForeignKeyConstraintException if row references a missing parent
+	 */
+	void checkParents( String childTable, Object row ) {
+		if( mode == Mode.OFF )
+			return;
+		for( ForeignKey<?> key : keysByChild.getOrDefault( childTable, Collections.emptyList() ) ) {
+			checkParent( key, row );
+		}
+	}
+
+	/**
+	 * Runs write, which inserts or updates row in childTable after calling
+	 * checkParents, holding the stripes of the parents row references, so
+	 * none of them can be deleted in between.
+	 */
+	<R> R withParents( String childTable, Object row, Supplier<R> write ) {
+		if( mode == Mode.OFF )
+			return write.get();
+		List<ForeignKey<?>> keys = keysByChild.getOrDefault( childTable, Collections.emptyList() );
+		List<Lock> held = new ArrayList<>( keys.size() );
+		try {
+			for( ForeignKey<?> key : keys ) {
+				Lock lock = parentLocks.get( key.parentTable ).stripe( parentIdOf( key, row ) );
+				lock.lock();
+				held.add( lock );
+			}
+			return write.get();
+		} finally {
+			for( int i = held.size() - 1; i >= 0; i-- ) {
+				held.get( i ).unlock();
+			}
+		}
+	}
+
+	/**
+	 * Deletes row id of parentTable with delete, holding the row's stripe from
+	 * the check in beforeDelete until its cascade is done. Nothing is
+	 * cascaded if delete finds no row.
+	 * @throws ForeignKeyConstraintException if the row is still referenced
+	 */
+	boolean delete( String parentTable, Integer id, BooleanSupplier delete ) {
+		StripedLocks locks = parentLocks.get( parentTable );
+		if( mode == Mode.OFF || id == null || locks == null )
+			return delete.getAsBoolean();
+		Lock lock = locks.stripe( id );
+		lock.lock();
+		try {
+			checkUnreferenced( parentTable, id );
+			if( !delete.getAsBoolean() )
+				return false;
+			deleteChildren( parentTable, id );
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+
+	private void declare( ForeignKey<?> key ) {
+		keysByChild.computeIfAbsent( key.childTable, k -> new ArrayList<>() ).add( key );
+		keysByParent.computeIfAbsent( key.parentTable, k -> new ArrayList<>() ).add( key );
+		parentLocks.computeIfAbsent( key.parentTable, k -> new StripedLocks( DummyDaoSettings.isConcurrent() ) );
+	}
+
+	private void checkUnreferenced( String parentTable, int id ) {
+		for( ForeignKey<?> key : keysByParent.getOrDefault( parentTable, Collections.emptyList() ) ) {
+			if( !cascades( key ) ) {
+				checkUnreferenced( key, id );
+			}
+		}
+	}
+
+	private void deleteChildren( String parentTable, int id ) {
+		for( ForeignKey<?> key : keysByParent.getOrDefault( parentTable, Collections.emptyList() ) ) {
+			if( cascades( key ) ) {
+				deleteChildren( key, id );
+			}
+		}
+	}
+
+	private boolean cascades( ForeignKey<?> key ) {
+		return mode == Mode.CASCADE && key.onDelete == CASCADE;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private <C> Integer parentIdOf( ForeignKey<C> key, Object row ) {
+		return key.parentId.apply( (C) row );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private <C> void checkParent( ForeignKey<C> key, Object row ) {
+		C child = (C) row;
+		Integer parentId = key.parentId.apply( child );
+		if( parentId != null && !key.parentExists.test( parentId ) ) {
+			throw new ForeignKeyConstraintException(
+					String.format( MISSING_PARENT_ERROR, key.childTable, key.childId.apply( child ), key.parentTable, parentId ) );
+		}
+	}
+
+	private <C> void checkUnreferenced( ForeignKey<C> key, int id ) {
+		C child = key.anyChild.apply( id );
+		if( child != null ) {
+			throw new ForeignKeyConstraintException(
+					String.format( ForeignKeyConstraintException.FOREIGN_KEY_CONSTRAINT_ERROR, key.parentTable, id, key.childTable, key.childId.apply( child ) ) );
+		}
+	}
+
+	private <C> void deleteChildren( ForeignKey<C> key, int id ) {
+		for( C child : key.children.apply( id ) ) {
+			key.deleteChild.test( child );
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package mb.minecraft.dao.impl.dummy;
+
+/**
+ * An approximate count of how often each key has been seen lately, for
+ * {@link BoundedCache}'s TinyLFU admission. This is a count-min sketch of
+ * four rows of counters, eight per cache entry and saturating at 15; once it has counted ten times as many
+ * accesses as the cache holds entries, every counter is halved, so that
+ * old popularity fades.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author mikebro
+ */
+class FrequencySketch {
+
+	private static final int[] SEEDS = { 0x97cb3127, 0x2c1b3c6d, 0x297a2d39, 0x5a3c4bb1 };
+	private static final int MAX_COUNT = 15;
+
+	private final byte[][] rows;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+
+	FrequencySketch( int maximumSize ) {
+		int width = Integer.highestOneBit( Math.min( 1 << 20, Math.max( 2, maximumSize ) ) - 1 ) << 4;
+		this.rows = new byte[SEEDS.length][width];
+		this.mask = width - 1;
+		this.sampleSize = (int) Math.min( Integer.MAX_VALUE, 10L * maximumSize );
+	}
+
+	void increment( Object key ) {
+		int hash = key == null ? 0 : key.hashCode();
+		for( int i = 0; i < rows.length; i++ ) {
+			int index = indexOf( hash, i );
+			if( rows[i][index] < MAX_COUNT ) {
+				rows[i][index]++;
+			}
+		}
+		if( ++additions >= sampleSize ) {
+			halve();
+		}
+	}
+
+	int frequency( Object key ) {
+		int hash = key == null ? 0 : key.hashCode();
+		int frequency = MAX_COUNT;
+		for( int i = 0; i < rows.length; i++ ) {
+			frequency = Math.min( frequency, rows[i][indexOf( hash, i )] );
+		}
+		return frequency;
+	}
+
+
+
+	private int indexOf( int hash, int row ) {
+		int h = ( hash ^ SEEDS[row] ) * 0x9e3779b9;
+		return ( h ^ ( h >>> 16 ) ) & mask;
+	}
+
+	private void halve() {
+		for( byte[] row : rows ) {
+			for( int i = 0; i < row.length; i++ ) {
+				row[i] >>= 1;
+			}
+		}
+		additions /= 2;
+	}
+}
@@ -0,0 +1,123 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from a primitive int to a primitive long, for
+ * per-row numbers such as {@link RowVersions} stamps that would otherwise
+ * cost an object each.
+ * <p>
+ * Keys and values sit side by side in two arrays, with linear probing and
+ * backward-shift deletion as in {@link IntTable}. An empty slot is marked by
+ * the value {@link #ABSENT}, which therefore cannot be stored.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author mikebro
+ */
+class IntLongTable {
+
+	/** What get returns for a key that is not present. */
+	static final long ABSENT = -1;
+
+	private static final int MIN_CAPACITY = 16;
+
+	// kept at most half full
+	private int[] keys;
+	private long[] values;
+	private int size;
+
+
+	IntLongTable() {
+		this.keys = new int[MIN_CAPACITY];
+		this.values = newValues( MIN_CAPACITY );
+	}
+
+	/** @return the value stored under key, or ABSENT */
+	long get( int key ) {
+		return values[slotOf( key )];
+	}
+
+	void put( int key, long value ) {
+		if( value == ABSENT )
+			throw new IllegalArgumentException( "ABSENT cannot be stored" );
+		int s = slotOf( key );
+		if( values[s] != ABSENT ) {
+			values[s] = value;
+			return;
+		}
+		keys[s] = key;
+		values[s] = value;
+		if( ++size * 2 > keys.length ) {
+			rehash( keys.length * 2 );
+		}
+	}
+
+	void remove( int key ) {
+		int s = slotOf( key );
+		if( values[s] == ABSENT )
+			return;
+		size--;
+		deleteSlot( s );
+	}
+
+	int size() {
+		return size;
+	}
+
+
+
+	// slot holding key, or the empty slot where it would go
+	private int slotOf( int key ) {
+		int mask = keys.length - 1;
+		int i = IntTable.mix( key ) & mask;
+		while( values[i] != ABSENT && keys[i] != key ) {
+			i = ( i + 1 ) & mask;
+		}
+		return i;
+	}
+
+	private void deleteSlot( int hole ) {
+		int mask = keys.length - 1;
+		int i = hole;
+		while( true ) {
+			i = ( i + 1 ) & mask;
+			if( values[i] == ABSENT )
+				break;
+			int home = IntTable.mix( keys[i] ) & mask;
+			boolean movable = i > hole
+					? home <= hole || home > i
+					: home <= hole && home > i;
+			if( movable ) {
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		values[hole] = ABSENT;
+	}
+
+	private void rehash( int capacity ) {
+		int[] oldKeys = keys;
+		long[] oldValues = values;
+		this.keys = new int[capacity];
+		this.values = newValues( capacity );
+		int mask = capacity - 1;
+		for( int p = 0; p < oldKeys.length; p++ ) {
+			if( oldValues[p] != ABSENT ) {
+				int i = IntTable.mix( oldKeys[p] ) & mask;
+				while( values[i] != ABSENT ) {
+					i = ( i + 1 ) & mask;
+				}
+				keys[i] = oldKeys[p];
+				values[i] = oldValues[p];
+			}
+		}
+	}
+
+	private static long[] newValues( int capacity ) {
+		long[] values = new long[capacity];
+		Arrays.fill( values, ABSENT );
+		return values;
+	}
+}
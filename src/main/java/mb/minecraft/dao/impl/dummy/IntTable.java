@@ -0,0 +1,266 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash table keyed by a primitive int, with no boxing and no
+ * per-entry objects.
+ * <p>
+ * Rows live in two dense arrays (<code>ids</code> and <code>rows</code>) in
+ * insertion order, and a separate linear-probing index of positions into
+ * them. Iteration walks the dense arrays, so rows come back in the order they
+ * were inserted, much as the small-integer HashMaps this replaces returned
+ * them in ID order. Removal clears the row in place and shifts the probe
+ * chain back, so there are no tombstones in the index; the dense arrays are
+ * compacted when they run out of room and enough of them is dead.
+ * <p>
+ * Not thread-safe; see {@link StripedIntTable}.
+ *
+ * @author mikebro
+ */
+class IntTable<T> implements RowTable<T> {
+
+	private static final int EMPTY = -1;
+	private static final int MIN_CAPACITY = 8;
+
+	// hash index: position in ids/rows, or EMPTY. Kept at most half full.
+	private int[] slots;
+	private int[] ids;
+	private Object[] rows;
+	// positions used in ids/rows, live or dead
+	private int end;
+	private int size;
+
+
+	IntTable() {
+		this( MIN_CAPACITY );
+	}
+
+	IntTable( int expectedSize ) {
+		int capacity = Math.max( MIN_CAPACITY, expectedSize );
+		this.ids = new int[capacity];
+		this.rows = new Object[capacity];
+		this.slots = newSlots( capacity * 2 );
+	}
+
+	@Override
+	public T get( int id ) {
+		int p = slots[slotOf( id )];
+		return p != EMPTY ? rowAt( p ) : null;
+	}
+
+	@Override
+	public boolean containsKey( int id ) {
+		return slots[slotOf( id )] != EMPTY;
+	}
+
+	@Override
+	public T put( int id, T row ) {
+		if( row == null )
+			throw new IllegalArgumentException( "null row" );
+		int s = slotOf( id );
+		int p = slots[s];
+		if( p != EMPTY ) {
+			T old = rowAt( p );
+			rows[p] = row;
+			return old;
+		}
+		if( end == ids.length ) {
+			makeRoom();
+			s = slotOf( id );
+		}
+		ids[end] = id;
+		rows[end] = row;
+		slots[s] = end++;
+		size++;
+		if( size * 2 > slots.length ) {
+			rehash( slots.length * 2 );
+		}
+		return null;
+	}
+
+	@Override
+	public T replace( int id, T row ) {
+		if( row == null )
+			throw new IllegalArgumentException( "null row" );
+		int p = slots[slotOf( id )];
+		if( p == EMPTY )
+			return null;
+		T old = rowAt( p );
+		rows[p] = row;
+		return old;
+	}
+
+	@Override
+	public T remove( int id ) {
+		int s = slotOf( id );
+		int p = slots[s];
+		if( p == EMPTY )
+			return null;
+		T old = rowAt( p );
+		rows[p] = null;
+		size--;
+		deleteSlot( s );
+		return old;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void ensureCapacity( int additional ) {
+		long needed = (long) size + additional;
+		if( end + (long) additional > ids.length ) {
+			compact( (int) Math.min( Integer.MAX_VALUE - 8, Math.max( needed, ids.length ) ) );
+		}
+		int slotCount = slots.length;
+		while( needed * 2 > slotCount && slotCount < 1 << 30 ) {
+			slotCount *= 2;
+		}
+		if( slotCount != slots.length ) {
+			rehash( slotCount );
+		}
+	}
+
+	@Override
+	public List<T> rows() {
+		List<T> list = new ArrayList<>( size );
+		forEach( list::add );
+		return list;
+	}
+
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public void forEach( Consumer<? super T> action ) {
+		Object[] rows = this.rows;
+		for( int p = 0, n = end; p < n; p++ ) {
+			Object row = rows[p];
+			if( row != null )
+				action.accept( (T) row );
+		}
+	}
+
+	/**
+	 * Lookup for readers that hold no lock, used by {@link StripedIntTable}
+	 * under an optimistic read. Tolerates a table being rewritten underneath
+	 * it: the probe is bounded and every index is range checked, so the worst
+	 * outcome is a wrong answer the caller throws away after validating.
+	 */
+	@SuppressWarnings( "unchecked" )
+	T getRacy( int id ) {
+		int[] slots = this.slots;
+		int[] ids = this.ids;
+		Object[] rows = this.rows;
+		int mask = slots.length - 1;
+		int i = mix( id ) & mask;
+		for( int n = 0; n <= mask; n++, i = ( i + 1 ) & mask ) {
+			int p = slots[i];
+			if( p == EMPTY || p < 0 || p >= ids.length || p >= rows.length )
+				return null;
+			if( ids[p] == id )
+				return (T) rows[p];
+		}
+		return null;
+	}
+
+
+
+	// slot holding id, or the empty slot where it would go
+	private int slotOf( int id ) {
+		int mask = slots.length - 1;
+		int i = mix( id ) & mask;
+		while( true ) {
+			int p = slots[i];
+			if( p == EMPTY || ids[p] == id )
+				return i;
+			i = ( i + 1 ) & mask;
+		}
+	}
+
+	// backward-shift deletion: pull later entries of the probe chain into the
+	// hole until the chain ends, so lookups never need tombstones
+	private void deleteSlot( int hole ) {
+		int mask = slots.length - 1;
+		int i = hole;
+		while( true ) {
+			i = ( i + 1 ) & mask;
+			int p = slots[i];
+			if( p == EMPTY )
+				break;
+			int home = mix( ids[p] ) & mask;
+			boolean movable = i > hole
+					? home <= hole || home > i
+					: home <= hole && home > i;
+			if( movable ) {
+				slots[hole] = p;
+				hole = i;
+			}
+		}
+		slots[hole] = EMPTY;
+	}
+
+	// the dense arrays are full: squeeze out removed rows, or grow if few are dead
+	private void makeRoom() {
+		compact( size * 2 > ids.length ? ids.length * 2 : ids.length );
+	}
+
+	// moves the live rows to the front of new dense arrays of the given capacity
+	private void compact( int capacity ) {
+		int[] newIds = new int[capacity];
+		Object[] newRows = new Object[capacity];
+		int n = 0;
+		for( int p = 0; p < end; p++ ) {
+			if( rows[p] != null ) {
+				newIds[n] = ids[p];
+				newRows[n] = rows[p];
+				n++;
+			}
+		}
+		this.ids = newIds;
+		this.rows = newRows;
+		this.end = n;
+		rehash( slots.length );
+	}
+
+	private void rehash( int slotCount ) {
+		int[] newSlots = newSlots( slotCount );
+		int mask = slotCount - 1;
+		for( int p = 0; p < end; p++ ) {
+			if( rows[p] != null ) {
+				int i = mix( ids[p] ) & mask;
+				while( newSlots[i] != EMPTY ) {
+					i = ( i + 1 ) & mask;
+				}
+				newSlots[i] = p;
+			}
+		}
+		this.slots = newSlots;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private T rowAt( int p ) {
+		return (T) rows[p];
+	}
+
+	private static int[] newSlots( int count ) {
+		int[] slots = new int[Integer.highestOneBit( count - 1 ) << 1];
+		Arrays.fill( slots, EMPTY );
+		return slots;
+	}
+
+	// murmur3 finalizer; row IDs are often sequential or strided
+	static int mix( int id ) {
+		int h = id;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
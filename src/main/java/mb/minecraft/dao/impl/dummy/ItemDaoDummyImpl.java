@@ -1,15 +1,16 @@
 package mb.minecraft.dao.impl.dummy;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import mb.minecraft.dao.DaoConstraintException;
@@ -25,91 +26,246 @@ public class ItemDaoDummyImpl implements ItemDao {
 
 	private static final Logger logger = LogManager.getLogger( ItemDaoDummyImpl.class );
 
-	private Map<Integer,Item> itemTable;
-	private int idSeq;
+	@Autowired( required = false )
+	ForeignKeys foreignKeys;
+
+	private RowTable<Item> itemTable;
+	private TableSnapshot<Item> allRows;
+	private RowVersions versions;
+	private UniqueIndex<String,Item> nameIndex;
+	private StripedLocks rowLocks;
+	private AtomicInteger idSeq;
+	private TableInit tableInit;
 
 
 	@PostConstruct
 	public void init() {
 		logger.info( "ItemDaoDummyImpl.init()" );
+		tableInit.onInit();
 	}
 
 
 	private ItemDaoDummyImpl() {
 		logger.info( "ItemDaoDummyImpl constructor" );
-		this.itemTable = new HashMap<>();
-		this.idSeq = 0;
-		for( Item item : generateMockData() ) {
-			insertOne( item );
-		}
+		boolean concurrent = DummyDaoSettings.isConcurrent();
+		this.itemTable = RowTable.create( concurrent, "item", RowCodecs.ITEM );
+		this.allRows = new TableSnapshot<>( itemTable, DummyDaoSettings.isSnapshotReads() );
+		this.versions = new RowVersions( "Item", concurrent );
+		this.nameIndex = new UniqueIndex<>( itemTable, Item::getName, concurrent );
+		itemTable.onRollback( this::reindex );
+		this.rowLocks = new StripedLocks( concurrent );
+		this.idSeq = new AtomicInteger();
+		this.tableInit = new TableInit( "Item", DummyDaoSettings.initMode(), this::fill );
+		tableInit.onConstructed();
 	}
 
 	@Override
 	public Item selectOneById( int id ) {
+		tableInit.await();
 		return itemTable.get( id );
 	}
 
+	public List<Item> selectByIds( int... ids ) {
+		tableInit.await();
+		return itemTable.get( ids );
+	}
+
 	@Override
 	public Item selectOneByName( String name ) {
-		Optional<Item> optionalItem = itemTable.values().stream()
-				.filter( i -> i.getName().equals( name ) )
-				.findFirst();
-		if( optionalItem.isPresent() )
-			return optionalItem.get();
-		else
-			return null;
+		tableInit.await();
+		return nameIndex.get( name );
 	}
 
 	@Override
 	public List<Item> selectAll() {
-		return new ArrayList<Item>( itemTable.values() );
+		tableInit.await();
+		return allRows.selectAll();
 	}
 
 	@Override
 	public Item insertOne( Item newRow ) {
+		tableInit.await();
 		newRow.setId( deriveId( newRow ) );
-		testUniqueIdConstraint( newRow );
-		testUniqueNameConstraint( newRow );
-		itemTable.put( newRow.getId(), newRow );
+		insertLocked( newRow );
 		return newRow;
 	}
 
+	public List<Item> insert( List<Item> newRowSet ) {
+		tableInit.await();
+		BatchInsert.assignIds( newRowSet, Item::getId, Item::setId, idSeq );
+		BatchInsert.checkIds( newRowSet, Item::getId, itemTable, "Item", "ID" );
+		BatchInsert.checkUnique( newRowSet, Item::getName, nameIndex::get, "Item", "NAME" );
+		itemTable.ensureCapacity( newRowSet.size() );
+		BatchInsert.publish( newRowSet, this::insertLocked, row -> deleteLocked( row.getId() ) );
+		return newRowSet;
+	}
+
+	/** @return the version of row id, to pass to update( row, expectedVersion ), or -1 if there is no such row */
+	public long versionOf( int id ) {
+		tableInit.await();
+		return versions.get( id );
+	}
+
 	@Override
 	public Item update( Item item ) {
-		if( this.itemTable.containsKey( item.getId() ) ) {
-			this.itemTable.put( item.getId(), item );
-			return item;
-		}
-		return null;
+		return update( item, RowVersions.ANY );
+	}
+
+	/**
+	 * Updates the row only if it is still at expectedVersion, read with
+	 * versionOf before the row itself was read.
+	 * @throws StaleRowException if another update got there first
+	 */
+	public Item update( Item item, long expectedVersion ) {
+		tableInit.await();
+		if( item.getId() == null )
+			return null;
+		return updateLocked( item, expectedVersion );
 	}
 
 	@Override
 	public boolean deleteOne( Item item ) {
-		if( itemTable.containsKey( item.getId() ) ) {
-			itemTable.remove( item.getId() );
-			return true;
-		} else {
+		tableInit.await();
+		if( item.getId() == null )
 			return false;
+		if( foreignKeys != null && itemTable.containsKey( item.getId() ) )
+			return foreignKeys.delete( "Item", item.getId(), () -> deleteLocked( item.getId() ) );
+		return deleteLocked( item.getId() );
+	}
+
+	// For DummyDataSnapshot and reloading. Unlike insertOne, keeps any ID,
+	// 0 included, and skips the foreign key checks.
+	void restore( Item row ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( row.getId() + 1, Math::max );
+		insertLocked( row );
+	}
+
+	// restore for a batch: room is made and the ID sequence moved once for all of it
+	void restore( List<Item> rows ) {
+		tableInit.await();
+		BatchInsert.advancePast( rows, Item::getId, idSeq );
+		itemTable.ensureCapacity( rows.size() );
+		BatchInsert.publish( rows, this::insertLocked, row -> deleteLocked( row.getId() ) );
+	}
+
+	// For DummyDataSnapshot. Deletes every row, skipping the foreign key
+	// checks; only their IDs are collected first.
+	void deleteAll() {
+		tableInit.await();
+		for( int id : itemTable.ids( Item::getId ) ) {
+			deleteLocked( id );
 		}
 	}
 
+	void forEachRow( Consumer<? super Item> action ) {
+		tableInit.await();
+		itemTable.forEach( action );
+	}
+
+	int nextId() {
+		tableInit.await();
+		return idSeq.get();
+	}
+
+	void advanceNextId( int nextId ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( nextId, Math::max );
+	}
+
+	TableInit tableInit() {
+		return tableInit;
+	}
+
 	@Override
 	public void destroy() throws Exception {
 		logger.info( "Shutting down ItemDaoDummyImpl" );
+		tableInit.close();
+		itemTable.close();
 	}
 
 
 
+	private void fill() {
+		if( itemTable.load( this::restore ) ) {
+			idSeq.accumulateAndGet( itemTable.maxId() + 1, Math::max );
+		} else {
+			for( Item item : generateMockData() ) {
+				insertOne( item );
+			}
+		}
+	}
+
 	private int deriveId( Item newRow ) {
 		int newId = newRow.getId() != null ? newRow.getId() : 0;
-		if( idSeq <= newId ) {
-			idSeq = newId + 1;
+		if( newId > 0 ) {
+			idSeq.accumulateAndGet( newId + 1, Math::max );
 			return newId;
 		}
-		if( newId > 0 )
-			return newId;
-		else
-			return idSeq++;
+		return idSeq.getAndIncrement();
+	}
+
+	private Item updateLocked( Item item, long expectedVersion ) {
+		Lock lock = rowLocks.stripe( item.getId() );
+		lock.lock();
+		try {
+			return versions.update( item.getId(), expectedVersion, item, () -> {
+				if( !this.itemTable.containsKey( item.getId() ) )
+					return null;
+				claimUniqueName( item );
+				this.itemTable.put( item.getId(), item );
+				allRows.invalidate();
+				return item;
+			} );
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void insertLocked( Item newRow ) {
+		Lock lock = rowLocks.stripe( newRow.getId() );
+		lock.lock();
+		try {
+			testUniqueIdConstraint( newRow );
+			claimUniqueName( newRow );
+			try {
+				itemTable.put( newRow.getId(), newRow );
+			} catch( RuntimeException | Error e ) {
+				nameIndex.remove( newRow.getId() );
+				throw e;
+			}
+			versions.inserted( newRow.getId() );
+			allRows.invalidate();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean deleteLocked( int id ) {
+		Lock lock = rowLocks.stripe( id );
+		lock.lock();
+		try {
+			if( itemTable.remove( id ) == null )
+				return false;
+			allRows.invalidate();
+			versions.deleted( id );
+			nameIndex.remove( id );
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// puts a row a rollback restored back in the name index
+	private void reindex( Item row, int id ) {
+		if( row != null ) {
+			nameIndex.claim( id, row.getName() );
+			versions.inserted( id );
+		} else {
+			versions.deleted( id );
+			nameIndex.remove( id );
+		}
+		allRows.invalidate();
 	}
 
 	private void testUniqueIdConstraint( Item row ) {
@@ -119,9 +275,8 @@ public class ItemDaoDummyImpl implements ItemDao {
 		}
 	}
 
-	private void testUniqueNameConstraint( Item row ) {
-		Item item = this.selectOneByName( row.getName() );
-		if( item != null ) {
+	private void claimUniqueName( Item row ) {
+		if( nameIndex.claim( row.getId(), row.getName() ) != null ) {
 			throw new DaoConstraintException(
 					String.format( DaoConstraintException.UNIQUE_CONSTRAINT_ERROR, "Item", "NAME" ), row );
 		}
@@ -0,0 +1,67 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * A distribution of latencies in nanoseconds, sampled by {@link DaoSimulation}
+ * for each simulated call.
+ *
+ * @author mikebro
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+	long sampleNanos( Random random );
+
+
+	static LatencyDistribution fixed( Duration latency ) {
+		long nanos = latency.toNanos();
+		return random -> nanos;
+	}
+
+	/** Uniform over min to max. */
+	static LatencyDistribution uniform( Duration min, Duration max ) {
+		long lo = min.toNanos();
+		long hi = max.toNanos();
+		if( hi < lo )
+			throw new IllegalArgumentException( "max < min" );
+		return random -> lo + (long) ( random.nextDouble() * ( hi - lo ) );
+	}
+
+	/** Normal, cut off at zero. */
+	static LatencyDistribution normal( Duration mean, Duration standardDeviation ) {
+		long mu = mean.toNanos();
+		long sigma = standardDeviation.toNanos();
+		return random -> Math.max( 0, mu + (long) ( random.nextGaussian() * sigma ) );
+	}
+
+	/**
+	 * Long-tailed, through the given percentiles. Between them, and down to
+	 * half the median and up to the 99.9th percentile stretched as far again
+	 * as it is beyond the 99th, latencies are spread geometrically.
+	 */
+	static LatencyDistribution percentiles( Duration p50, Duration p90, Duration p99, Duration p999 ) {
+		double[] quantiles = { 0, 0.5, 0.9, 0.99, 0.999, 1 };
+		double[] nanos = new double[quantiles.length];
+		nanos[1] = Math.max( 1, p50.toNanos() );
+		nanos[2] = p90.toNanos();
+		nanos[3] = p99.toNanos();
+		nanos[4] = p999.toNanos();
+		for( int i = 2; i < 5; i++ ) {
+			if( nanos[i] < nanos[i - 1] )
+				throw new IllegalArgumentException( "percentiles must not decrease" );
+		}
+		nanos[0] = nanos[1] / 2;
+		nanos[5] = nanos[4] * nanos[4] / Math.max( 1, nanos[3] );
+		return random -> {
+			double u = random.nextDouble();
+			int i = 0;
+			while( u > quantiles[i + 1] ) {
+				i++;
+			}
+			double t = ( u - quantiles[i] ) / ( quantiles[i + 1] - quantiles[i] );
+			return (long) ( nanos[i] * Math.pow( nanos[i + 1] / nanos[i], t ) );
+		};
+	}
+}
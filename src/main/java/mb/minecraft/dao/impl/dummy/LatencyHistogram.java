@@ -0,0 +1,108 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds, in the style of
+ * HdrHistogram: values below 64 get a bucket each, and every power of two
+ * above that is split into 32 buckets, so any value is placed to within about
+ * 3%. Values are capped at 2^40ns, about 18 minutes.
+ * <p>
+ * {@link #record(long)} only increments preallocated counters, so it neither
+ * allocates nor locks. Reads sum the counters as they go, so under concurrent
+ * recording they may be off by the odd value in flight.
+ *
+ * @author mikebro
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int LINEAR = SUB_COUNT * 2;
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = ( 1L << MAX_EXPONENT ) - 1;
+	private static final int BUCKETS = LINEAR + ( MAX_EXPONENT - SUB_BITS - 1 ) * SUB_COUNT;
+
+	private final AtomicLongArray counts;
+	private final AtomicLong count;
+	private final AtomicLong sum;
+	private final AtomicLong max;
+
+
+	LatencyHistogram() {
+		this.counts = new AtomicLongArray( BUCKETS );
+		this.count = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	void record( long nanos ) {
+		long value = Math.max( 0, Math.min( nanos, MAX_VALUE ) );
+		counts.incrementAndGet( indexOf( value ) );
+		count.incrementAndGet();
+		sum.addAndGet( value );
+		max.accumulateAndGet( value, Math::max );
+	}
+
+	long count() {
+		return count.get();
+	}
+
+	long sum() {
+		return sum.get();
+	}
+
+	long mean() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / n;
+	}
+
+	long max() {
+		return max.get();
+	}
+
+	/** @return the highest value in the bucket holding the given quantile, 0 to 1, or 0 if empty */
+	long percentile( double quantile ) {
+		long total = 0;
+		for( int i = 0; i < BUCKETS; i++ ) {
+			total += counts.get( i );
+		}
+		if( total == 0 )
+			return 0;
+		long rank = Math.max( 1, (long) Math.ceil( quantile * total ) );
+		long seen = 0;
+		for( int i = 0; i < BUCKETS; i++ ) {
+			seen += counts.get( i );
+			if( seen >= rank )
+				return Math.min( highestValueAt( i ), max.get() );
+		}
+		return max.get();
+	}
+
+	void reset() {
+		for( int i = 0; i < BUCKETS; i++ ) {
+			counts.set( i, 0 );
+		}
+		count.set( 0 );
+		sum.set( 0 );
+		max.set( 0 );
+	}
+
+
+
+	static int indexOf( long value ) {
+		if( value < LINEAR )
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BITS;
+		return LINEAR + ( shift - 1 ) * SUB_COUNT + (int) ( ( value >>> shift ) - SUB_COUNT );
+	}
+
+	static long highestValueAt( int index ) {
+		if( index < LINEAR )
+			return index;
+		int shift = ( index - LINEAR ) / SUB_COUNT + 1;
+		long sub = ( index - LINEAR ) % SUB_COUNT + SUB_COUNT;
+		return ( ( sub + 1 ) << shift ) - 1;
+	}
+}
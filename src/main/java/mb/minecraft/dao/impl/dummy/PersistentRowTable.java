@@ -0,0 +1,129 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link RowTable} for persistent mode: keeps the rows in an in-memory table
+ * as usual and records every write in the table's {@link TableStore}.
+ * <p>
+ * The store is written after the in-memory table, while the DAO still holds
+ * the row's lock, so records of one ID reach the store in the order they were
+ * applied. A write the store refuses is taken back out of the in-memory
+ * table before the failure is passed on.
+ *
+ * @author mikebro
+ */
+class PersistentRowTable<T> implements RowTable<T> {
+
+	private final RowTable<T> table;
+	private final TableStore<T> store;
+	private boolean loading;
+
+
+	PersistentRowTable( RowTable<T> table, TableStore<T> store ) {
+		this.table = table;
+		this.store = store;
+	}
+
+	@Override
+	public T get( int id ) {
+		return table.get( id );
+	}
+
+	@Override
+	public boolean containsKey( int id ) {
+		return table.containsKey( id );
+	}
+
+	@Override
+	public T put( int id, T row ) {
+		T old = table.put( id, row );
+		if( !loading ) {
+			try {
+				store.put( id, row );
+			} catch( RuntimeException | Error e ) {
+				// keep memory in step with the store the row never reached
+				if( old == null ) {
+					table.remove( id );
+				} else {
+					table.put( id, old );
+				}
+				throw e;
+			}
+		}
+		return old;
+	}
+
+	@Override
+	public T replace( int id, T row ) {
+		T old = table.replace( id, row );
+		if( old != null && !loading ) {
+			try {
+				store.put( id, row );
+			} catch( RuntimeException | Error e ) {
+				table.put( id, old );
+				throw e;
+			}
+		}
+		return old;
+	}
+
+	@Override
+	public T remove( int id ) {
+		T old = table.remove( id );
+		if( old != null && !loading ) {
+			try {
+				store.remove( id );
+			} catch( RuntimeException | Error e ) {
+				table.put( id, old );
+				throw e;
+			}
+		}
+		return old;
+	}
+
+	@Override
+	public void ensureCapacity( int additional ) {
+		table.ensureCapacity( additional );
+	}
+
+	@Override
+	public int size() {
+		return table.size();
+	}
+
+	@Override
+	public List<T> rows() {
+		return table.rows();
+	}
+
+	@Override
+	public void forEach( Consumer<? super T> action ) {
+		table.forEach( action );
+	}
+
+	// insert writes the rows back into this table; they are in the store already
+	@Override
+	public boolean load( Consumer<? super T> insert ) {
+		if( store.isEmpty() )
+			return false;
+		loading = true;
+		try {
+			store.load( insert );
+		} finally {
+			loading = false;
+		}
+		return true;
+	}
+
+	@Override
+	public int maxId() {
+		return store.maxId();
+	}
+
+	@Override
+	public void close() {
+		store.close();
+	}
+}
@@ -0,0 +1,20 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encoding of one dummy table's rows, used wherever rows leave the
+ * heap. Implementations are in {@link RowCodecs}.
+ *
+ * @author mikebro
+ */
+interface RowCodec<T> {
+
+	int id( T row );
+
+	/** Writes row at the buffer's position, advancing it. */
+	void write( T row, ByteBuffer buf );
+
+	/** Reads one row written by {@link #write} from the buffer's position, advancing it. */
+	T read( ByteBuffer buf );
+}
@@ -0,0 +1,237 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import mb.minecraft.model.Item;
+import mb.minecraft.model.OfferRequire;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Village;
+import mb.minecraft.model.Villager;
+import mb.minecraft.model.VillagerType;
+
+/**
+ * The {@link RowCodec} of each dummy table.
+ * <p>
+ * Fields are written in declaration order. Nullable Integers take a presence
+ * byte and then the int, Strings a length (-1 for null) and then their UTF-8
+ * bytes. Booleans and enums take one byte. All multi-byte values are big
+ * endian, whatever the buffer is set to.
+ *
+ * @author mikebro
+ */
+final class RowCodecs {
+
+	static final RowCodec<Item> ITEM = new RowCodec<Item>() {
+		@Override
+		public int id( Item row ) {
+			return row.getId();
+		}
+
+		@Override
+		public void write( Item row, ByteBuffer buf ) {
+			putInteger( buf, row.getId() );
+			putString( buf, row.getName() );
+			putString( buf, row.getImageSource() );
+		}
+
+		@Override
+		public Item read( ByteBuffer buf ) {
+			return Item.builder()
+					.id( getInteger( buf ) )
+					.name( getString( buf ) )
+					.imageSource( getString( buf ) )
+					.build();
+		}
+	};
+
+	static final RowCodec<Village> VILLAGE = new RowCodec<Village>() {
+		@Override
+		public int id( Village row ) {
+			return row.getId();
+		}
+
+		@Override
+		public void write( Village row, ByteBuffer buf ) {
+			putInteger( buf, row.getId() );
+			putString( buf, row.getName() );
+		}
+
+		@Override
+		public Village read( ByteBuffer buf ) {
+			return Village.builder()
+					.id( getInteger( buf ) )
+					.name( getString( buf ) )
+					.build();
+		}
+	};
+
+	static final RowCodec<Villager> VILLAGER = new RowCodec<Villager>() {
+		@Override
+		public int id( Villager row ) {
+			return row.getId();
+		}
+
+		@Override
+		public void write( Villager row, ByteBuffer buf ) {
+			putInteger( buf, row.getId() );
+			putString( buf, row.getName() );
+			buf.put( (byte) ( row.isTagged() ? 1 : 0 ) );
+			putInteger( buf, row.getVillageId() );
+			putInteger( buf, row.getTypeId() );
+		}
+
+		@Override
+		public Villager read( ByteBuffer buf ) {
+			return Villager.builder()
+					.id( getInteger( buf ) )
+					.name( getString( buf ) )
+					.tagged( buf.get() != 0 )
+					.villageId( getInteger( buf ) )
+					.typeId( getInteger( buf ) )
+					.build();
+		}
+	};
+
+	static final RowCodec<VillagerType> VILLAGER_TYPE = new RowCodec<VillagerType>() {
+		@Override
+		public int id( VillagerType row ) {
+			return row.getId();
+		}
+
+		@Override
+		public void write( VillagerType row, ByteBuffer buf ) {
+			putInteger( buf, row.getId() );
+			putString( buf, row.getProfession() );
+		}
+
+		@Override
+		public VillagerType read( ByteBuffer buf ) {
+			return VillagerType.builder()
+					.id( getInteger( buf ) )
+					.profession( getString( buf ) )
+					.build();
+		}
+	};
+
+	static final RowCodec<Trade> TRADE = new RowCodec<Trade>() {
+		@Override
+		public int id( Trade row ) {
+			return row.getId();
+		}
+
+		@Override
+		public void write( Trade row, ByteBuffer buf ) {
+			putInteger( buf, row.getId() );
+			putInteger( buf, row.getVillagerId() );
+			putInteger( buf, row.getTradeSeqno() );
+		}
+
+		@Override
+		public Trade read( ByteBuffer buf ) {
+			return Trade.builder()
+					.id( getInteger( buf ) )
+					.villagerId( getInteger( buf ) )
+					.tradeSeqno( getInteger( buf ) )
+					.build();
+		}
+	};
+
+	static final RowCodec<TradeItem> TRADE_ITEM = new RowCodec<TradeItem>() {
+		@Override
+		public int id( TradeItem row ) {
+			return row.getId();
+		}
+
+		@Override
+		public void write( TradeItem row, ByteBuffer buf ) {
+			putInteger( buf, row.getId() );
+			putInteger( buf, row.getTradeId() );
+			buf.put( (byte) ( row.getOfferRequire() == null ? 0 : row.getOfferRequire().ordinal() + 1 ) );
+			putInteger( buf, row.getSeqno() );
+			putInteger( buf, row.getQuantity() );
+			putInteger( buf, row.getItemId() );
+			putString( buf, row.getMemo() );
+		}
+
+		@Override
+		public TradeItem read( ByteBuffer buf ) {
+			Integer id = getInteger( buf );
+			Integer tradeId = getInteger( buf );
+			byte offerRequire = buf.get();
+			return TradeItem.builder()
+					.id( id )
+					.tradeId( tradeId )
+					.offerRequire( offerRequire == 0 ? null : OfferRequire.values()[offerRequire - 1] )
+					.seqno( getInteger( buf ) )
+					.quantity( getInteger( buf ) )
+					.itemId( getInteger( buf ) )
+					.memo( getString( buf ) )
+					.build();
+		}
+	};
+
+
+	private RowCodecs() {
+	}
+
+	/**
+	 * Encodes row into scratch, or into a larger buffer if it does not fit.
+	 * @return the buffer holding the row, flipped for reading
+	 */
+	static <T> ByteBuffer encode( RowCodec<T> codec, T row, ByteBuffer scratch ) {
+		while( true ) {
+			scratch.clear();
+			try {
+				codec.write( row, scratch );
+				return scratch.flip();
+			} catch( BufferOverflowException e ) {
+				scratch = ByteBuffer.allocate( scratch.capacity() * 2 );
+			}
+		}
+	}
+
+	/** @return a new row equal to row, sharing no mutable state with it */
+	static <T> T copy( RowCodec<T> codec, T row ) {
+		return codec.read( encode( codec, row, ByteBuffer.allocate( 256 ) ) );
+	}
+
+	static void putInteger( ByteBuffer buf, Integer value ) {
+		if( value == null ) {
+			buf.put( (byte) 0 );
+		} else {
+			buf.put( (byte) 1 );
+			buf.putInt( value );
+		}
+	}
+
+	static Integer getInteger( ByteBuffer buf ) {
+		return buf.get() == 0 ? null : buf.getInt();
+	}
+
+	static void putString( ByteBuffer buf, String value ) {
+		if( value == null ) {
+			buf.putInt( -1 );
+		} else {
+			byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+			buf.putInt( bytes.length );
+			buf.put( bytes );
+		}
+	}
+
+	static String getString( ByteBuffer buf ) {
+		int length = buf.getInt();
+		if( length < 0 )
+			return null;
+		if( buf.hasArray() ) {
+			String value = new String( buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8 );
+			buf.position( buf.position() + length );
+			return value;
+		}
+		byte[] bytes = new byte[length];
+		buf.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+}
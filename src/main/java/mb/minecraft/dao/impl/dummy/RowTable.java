@@ -0,0 +1,137 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Primary storage of a dummy table: rows keyed by their int ID.
+ * <p>
+ * Null rows are never stored, so a null return always means "no such ID".
+ *
+ * @author mikebro
+ */
+interface RowTable<T> {
+
+	T get( int id );
+
+	boolean containsKey( int id );
+
+	/** @return the row for each of ids in turn, null where there is none */
+	default List<T> get( int[] ids ) {
+		List<T> rows = new ArrayList<>( ids.length );
+		for( int id : ids ) {
+			rows.add( get( id ) );
+		}
+		return rows;
+	}
+
+	/** @return the row previously stored under id, or null */
+	T put( int id, T row );
+
+	/** Stores row only if id is already present. @return the row replaced, or null */
+	T replace( int id, T row );
+
+	/** @return the row removed, or null if id was not present */
+	T remove( int id );
+
+	int size();
+
+	/** Makes room for additional more rows ahead of a batch of inserts. */
+	default void ensureCapacity( int additional ) {
+	}
+
+	/** @return a new list holding every row */
+	List<T> rows();
+
+	void forEach( Consumer<? super T> action );
+
+	/** @return the ID of every row, read with idOf, without building a list of the rows */
+	default int[] ids( ToIntFunction<? super T> idOf ) {
+		int[][] ids = { new int[Math.max( 16, size() )] };
+		int[] count = { 0 };
+		forEach( row -> {
+			if( count[0] == ids[0].length )
+				ids[0] = Arrays.copyOf( ids[0], count[0] * 2 );
+			ids[0][count[0]++] = idOf.applyAsInt( row );
+		} );
+		return Arrays.copyOf( ids[0], count[0] );
+	}
+
+	/**
+	 * Passes the rows stored by an earlier run, if any, to insert.
+	 * @return false if there were none, as there never are in memory
+	 */
+	default boolean load( Consumer<? super T> insert ) {
+		return false;
+	}
+
+	/** @return the highest ID ever stored by this or an earlier run, deleted rows included, or -1 if not known */
+	default int maxId() {
+		return -1;
+	}
+
+	/**
+	 * @return true if rows keep their earlier versions, in which case readers
+	 * see them as {@link VersionedRowTable} describes and the indexes over the
+	 * table must look rows up through it
+	 */
+	default boolean isVersioned() {
+		return false;
+	}
+
+	/** @return true if id has versions other than its latest, written or being written */
+	default boolean isChanged( int id ) {
+		return false;
+	}
+
+	/** @return by ID, the rows for which isChanged is true as the caller sees them, those passing filter */
+	default Map<Integer,T> changedRows( Predicate<? super T> filter ) {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * Has a rollback pass each row it puts back to reindex, so that the
+	 * indexes over the table can be restored with it. Every row the rollback
+	 * touches is passed as null first, and then again with the row it was
+	 * restored to, if it was not removed.
+	 */
+	default void onRollback( ObjIntConsumer<T> reindex ) {
+	}
+
+	/** Makes every write durable and releases the table's file, if it has one. */
+	default void close() {
+	}
+
+	static <T> RowTable<T> create( boolean concurrent ) {
+		return concurrent ? new StripedIntTable<>() : new IntTable<>();
+	}
+
+	/**
+	 * A table stored under the data directory as name, if one is set, or
+	 * versioned if transactions are on.
+	 * @throws IllegalStateException if both are, as the store would be
+	 * written before a transaction commits and never rolled back
+	 */
+	static <T> RowTable<T> create( boolean concurrent, String name, RowCodec<T> codec ) {
+		RowTable<T> table = create( concurrent );
+		Path dataDir = DummyDaoSettings.dataDir();
+		if( dataDir != null && DummyDaoSettings.isTransactional() )
+			throw new IllegalStateException( DummyDaoSettings.TRANSACTIONS + " cannot be used with " + DummyDaoSettings.DATA_DIR );
+		if( dataDir != null ) {
+			RowTable<T> memory = table;
+			TableStore<T> store = DummyDaoSettings.isWal()
+					? WriteAheadLog.open( dataDir, name, codec, DummyDaoSettings.isSync(), DummyDaoSettings.checkpointInterval(), memory::rows )
+					: TableFile.open( dataDir.resolve( name + ".tbl" ), codec, DummyDaoSettings.isSync() );
+			table = new PersistentRowTable<>( table, store );
+		}
+		return DummyDaoSettings.isTransactional() ? new VersionedRowTable<>( table, codec ) : table;
+	}
+}
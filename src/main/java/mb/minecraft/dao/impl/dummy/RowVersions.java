@@ -0,0 +1,128 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The version stamp of every row of one dummy table, for the DAOs' optimistic
+ * update( row, expectedVersion ).
+ * <p>
+ * A stamp is even while its row is at rest and odd while an update to it is
+ * being applied. An update claims its row under the row's lock stripe, with
+ * one compare-and-set from the even stamp the caller read to the odd one
+ * after it, so an update made from a stale read fails as soon as it has the
+ * stripe. The claim is made under the stripe, never before it, so nobody
+ * holds a claim while waiting for a lock; with transactions on, where the
+ * stripe is the write lock a transaction keeps until it ends, a claim made
+ * first would leave the transaction waiting on the claim and the claimer
+ * waiting on the transaction. The winner writes the row and then moves the
+ * stamp on to the next even value. A version read while an update is in
+ * flight is odd, and so already stale.
+ * <p>
+ * Each inserted row starts from a stamp this table has not handed out before,
+ * so a version read before a row was deleted never matches a row inserted
+ * again under the same ID.
+ * <p>
+ * Readers take no lock, so in concurrent mode, which transactions switch on
+ * too, each row's stamp is an AtomicLong. Otherwise the stamps are plain longs in
+ * an {@link IntLongTable}, with no object per row.
+ *
+ * @author mikebro
+ */
+class RowVersions {
+
+	/** The version of a row that does not exist. */
+	static final long NONE = IntLongTable.ABSENT;
+
+	/** Passed as the expected version by update( row ), which claims any. */
+	static final long ANY = Long.MIN_VALUE;
+
+	private final String type;
+	// one of these two is null
+	private final RowTable<AtomicLong> stamps;
+	private final IntLongTable plainStamps;
+	private final AtomicLong nextStamp;
+
+
+	RowVersions( String type, boolean concurrent ) {
+		this.type = type;
+		this.stamps = concurrent ? RowTable.create( true ) : null;
+		this.plainStamps = concurrent ? null : new IntLongTable();
+		this.nextStamp = new AtomicLong();
+	}
+
+	long get( int id ) {
+		if( plainStamps != null )
+			return plainStamps.get( id );
+		AtomicLong stamp = stamps.get( id );
+		return stamp != null ? stamp.get() : NONE;
+	}
+
+	// called by writers once the row is stored
+	void inserted( int id ) {
+		long stamp = nextStamp.getAndAdd( 2 );
+		if( plainStamps != null ) {
+			plainStamps.put( id, stamp );
+		} else {
+			stamps.put( id, new AtomicLong( stamp ) );
+		}
+	}
+
+	void deleted( int id ) {
+		if( plainStamps != null ) {
+			plainStamps.remove( id );
+		} else {
+			stamps.remove( id );
+		}
+	}
+
+	/**
+	 * Runs write as an update of row id made from expected, or from whatever
+	 * version the row is at if expected is ANY. Called under the row's lock
+	 * stripe, so no other update of it is in flight.
+	 * @return what write returned, or null if there is no row
+	 * @throws StaleRowException if the row is no longer at expected
+	 */
+	<T> T update( int id, long expected, T row, Supplier<T> write ) {
+		long claimed = claim( id, expected, row );
+		if( claimed == NONE )
+			return null;
+		T updated = null;
+		try {
+			updated = write.get();
+			return updated;
+		} finally {
+			release( id, claimed, updated != null );
+		}
+	}
+
+
+
+	private long claim( int id, long expected, Object row ) {
+		long current = get( id );
+		if( current == NONE )
+			return NONE;
+		if( expected == ANY )
+			expected = current;
+		if( ( expected & 1 ) != 0 || !compareAndSet( id, expected, expected + 1 ) )
+			throw new StaleRowException( type, id, expected, get( id ), row );
+		return expected + 1;
+	}
+
+	// moves the stamp on if the update changed the row, and back if not
+	private void release( int id, long claimed, boolean changed ) {
+		compareAndSet( id, claimed, changed ? claimed + 1 : claimed - 1 );
+	}
+
+	// false if row id has no stamp, or one other than expect
+	private boolean compareAndSet( int id, long expect, long update ) {
+		if( plainStamps != null ) {
+			if( plainStamps.get( id ) != expect )
+				return false;
+			plainStamps.put( id, update );
+			return true;
+		}
+		AtomicLong stamp = stamps.get( id );
+		return stamp != null && stamp.compareAndSet( expect, update );
+	}
+}
@@ -0,0 +1,41 @@
+package mb.minecraft.dao.impl.dummy;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Thrown by a dummy DAO's update( row, expectedVersion ) when the row has been
+ * updated since the caller read expectedVersion. Nothing was changed; read
+ * the row and its version again and retry.
+ *
+ * @author mikebro
+ */
+public class StaleRowException extends OptimisticLockingFailureException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient Object row;
+	private final long expectedVersion;
+	private final long actualVersion;
+
+
+	public StaleRowException( String type, int id, long expectedVersion, long actualVersion, Object row ) {
+		super( String.format( "%s %d is at version %d, not %d", type, id, actualVersion, expectedVersion ) );
+		this.row = row;
+		this.expectedVersion = expectedVersion;
+		this.actualVersion = actualVersion;
+	}
+
+	/** @return the row the update was rejected for */
+	public Object getRow() {
+		return row;
+	}
+
+	public long getExpectedVersion() {
+		return expectedVersion;
+	}
+
+	/** @return the row's version when the update was rejected, -1 if it had been deleted */
+	public long getActualVersion() {
+		return actualVersion;
+	}
+}
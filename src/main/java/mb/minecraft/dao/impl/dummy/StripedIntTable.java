@@ -0,0 +1,149 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe {@link RowTable} for concurrent mode: a fixed set of
+ * {@link IntTable} segments, each behind its own StampedLock.
+ * <p>
+ * Lookups first try an optimistic read and only take the read lock if a
+ * writer got in the way, so readers of one segment don't contend with each
+ * other. Iteration goes segment by segment, so rows are not in insertion order.
+ *
+ * @author mikebro
+ */
+class StripedIntTable<T> implements RowTable<T> {
+
+	private final Segment<T>[] segments;
+	private final int shift;
+
+
+	@SuppressWarnings( "unchecked" )
+	StripedIntTable() {
+		int count = Integer.highestOneBit( Runtime.getRuntime().availableProcessors() * 4 - 1 ) << 1;
+		this.segments = (Segment<T>[]) new Segment<?>[count];
+		for( int i = 0; i < count; i++ ) {
+			segments[i] = new Segment<>();
+		}
+		this.shift = 32 - Integer.numberOfTrailingZeros( count );
+	}
+
+	@Override
+	public T get( int id ) {
+		Segment<T> seg = segmentFor( id );
+		long stamp = seg.lock.tryOptimisticRead();
+		if( stamp != 0L ) {
+			T row = seg.table.getRacy( id );
+			if( seg.lock.validate( stamp ) )
+				return row;
+		}
+		stamp = seg.lock.readLock();
+		try {
+			return seg.table.get( id );
+		} finally {
+			seg.lock.unlockRead( stamp );
+		}
+	}
+
+	@Override
+	public boolean containsKey( int id ) {
+		return get( id ) != null;
+	}
+
+	@Override
+	public T put( int id, T row ) {
+		Segment<T> seg = segmentFor( id );
+		long stamp = seg.lock.writeLock();
+		try {
+			return seg.table.put( id, row );
+		} finally {
+			seg.lock.unlockWrite( stamp );
+		}
+	}
+
+	@Override
+	public T replace( int id, T row ) {
+		Segment<T> seg = segmentFor( id );
+		long stamp = seg.lock.writeLock();
+		try {
+			return seg.table.replace( id, row );
+		} finally {
+			seg.lock.unlockWrite( stamp );
+		}
+	}
+
+	@Override
+	public T remove( int id ) {
+		Segment<T> seg = segmentFor( id );
+		long stamp = seg.lock.writeLock();
+		try {
+			return seg.table.remove( id );
+		} finally {
+			seg.lock.unlockWrite( stamp );
+		}
+	}
+
+	@Override
+	public void ensureCapacity( int additional ) {
+		// IDs spread evenly over the segments
+		int perSegment = additional / segments.length + 1;
+		for( Segment<T> seg : segments ) {
+			long stamp = seg.lock.writeLock();
+			try {
+				seg.table.ensureCapacity( perSegment );
+			} finally {
+				seg.lock.unlockWrite( stamp );
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for( Segment<T> seg : segments ) {
+			long stamp = seg.lock.readLock();
+			try {
+				size += seg.table.size();
+			} finally {
+				seg.lock.unlockRead( stamp );
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public List<T> rows() {
+		List<T> list = new ArrayList<>();
+		forEach( list::add );
+		return list;
+	}
+
+	// each segment is read under its lock; the action must not write to this table
+	@Override
+	public void forEach( Consumer<? super T> action ) {
+		for( Segment<T> seg : segments ) {
+			long stamp = seg.lock.readLock();
+			try {
+				seg.table.forEach( action );
+			} finally {
+				seg.lock.unlockRead( stamp );
+			}
+		}
+	}
+
+
+
+	// top bits of a different hash than IntTable probes with, so the IDs in one
+	// segment don't all share their low bits
+	private Segment<T> segmentFor( int id ) {
+		return segments[( id * 0x9E3779B9 ) >>> shift];
+	}
+
+	private static final class Segment<T> {
+		final StampedLock lock = new StampedLock();
+		final IntTable<T> table = new IntTable<>();
+	}
+}
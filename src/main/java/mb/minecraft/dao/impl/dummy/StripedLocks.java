@@ -0,0 +1,104 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks selected by hashing an int key (a row ID or a foreign
+ * key), so writers working on different keys rarely wait on each other.
+ * <p>
+ * Outside concurrent mode every stripe is a no-op lock and the DAOs run exactly
+ * as they did single-threaded. With transactions on there is a single stripe,
+ * {@link DummyTransaction#WRITE_LOCK}, shared by every DAO.
+ *
+ * @author mikebro
+ */
+class StripedLocks {
+
+	private static final Lock NO_LOCK = new NoLock();
+
+	private final Lock[] stripes;
+	private final int mask;
+
+
+	StripedLocks( boolean concurrent ) {
+		if( DummyDaoSettings.isTransactional() ) {
+			this.stripes = new Lock[] { DummyTransaction.WRITE_LOCK };
+			this.mask = 0;
+		} else if( concurrent ) {
+			int size = Integer.highestOneBit( Runtime.getRuntime().availableProcessors() * 16 - 1 ) << 1;
+			this.stripes = new Lock[size];
+			for( int i = 0; i < size; i++ ) {
+				stripes[i] = new ReentrantLock();
+			}
+			this.mask = size - 1;
+		} else {
+			this.stripes = null;
+			this.mask = 0;
+		}
+	}
+
+	Lock stripe( int key ) {
+		if( stripes == null )
+			return NO_LOCK;
+		return stripes[index( key )];
+	}
+
+	Lock stripe( Integer key ) {
+		return stripe( key != null ? key.intValue() : 0 );
+	}
+
+	// locks the stripes of both keys in a fixed order, so two writers locking the
+	// same pair the other way round cannot deadlock; release with unlock( a, b )
+	void lock( Integer a, Integer b ) {
+		if( stripes == null )
+			return;
+		int first = index( a != null ? a.intValue() : 0 );
+		int second = index( b != null ? b.intValue() : 0 );
+		stripes[Math.min( first, second )].lock();
+		stripes[Math.max( first, second )].lock();
+	}
+
+	void unlock( Integer a, Integer b ) {
+		stripe( a ).unlock();
+		stripe( b ).unlock();
+	}
+
+	private int index( int key ) {
+		int h = key * 0x9E3779B9;
+		return ( h ^ ( h >>> 16 ) ) & mask;
+	}
+
+
+	private static class NoLock implements Lock {
+
+		@Override
+		public void lock() {
+		}
+
+		@Override
+		public void lockInterruptibly() {
+		}
+
+		@Override
+		public boolean tryLock() {
+			return true;
+		}
+
+		@Override
+		public boolean tryLock( long time, TimeUnit unit ) {
+			return true;
+		}
+
+		@Override
+		public void unlock() {
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * One dummy table on disk: an append-only log of row records, read and
+ * written through a MappedByteBuffer.
+ * <p>
+ * The file starts with a 16 byte header (magic, version, end of the last
+ * complete record, highest ID ever put). Each record is the body length, an
+ * op byte, the row ID and, for a put, the row as written by the table's
+ * {@link RowCodec}. A record is written in full before the header's end
+ * moves past it, so a process that dies mid-write leaves the previous state.
+ * The mapped pages belong to the OS, so every write survives the JVM going
+ * away; {@link #flush()} (or <code>sync</code>, which forces every write)
+ * makes them survive the OS going away too.
+ * <p>
+ * Opening the file replays the log. Rows are decoded straight from the
+ * mapping and only the latest record of each live ID is kept. If most of the
+ * log turns out to be superseded, the live records are copied to a fresh
+ * file which replaces the old one. A running table makes the same check
+ * each time its log has doubled since the last one, and once more before it
+ * would outgrow the file, so a writer that keeps replacing the same rows
+ * does not fill the file with dead records.
+ * <p>
+ * A mapping is limited to 2GB, and so is a table file.
+ *
+ * @author mikebro
+ */
+final class TableFile<T> implements TableStore<T> {
+
+	private static final Logger logger = LogManager.getLogger( TableFile.class );
+
+	private static final int MAGIC = 0x4D424454;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int END_OFFSET = 8;
+	private static final int MAX_ID_OFFSET = 12;
+	private static final int RECORD_HEADER_SIZE = 9;
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	private static final int COMPACT_MIN_RECORDS = 1024;
+	private static final int COMPACT_MIN_BYTES = 1 << 20;
+
+	private final Path path;
+	private final RowCodec<T> codec;
+	private final boolean sync;
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	private ByteBuffer scratch;
+	private int end;
+	private int records;
+	private int maxId;
+	// an append past this end first checks whether to compact
+	private long checkAt;
+	// latest put record of each live ID, as slices of the mapping; dropped once loaded
+	private IntTable<ByteBuffer> live;
+
+
+	private TableFile( Path path, RowCodec<T> codec, boolean sync ) {
+		this.path = path;
+		this.codec = codec;
+		this.sync = sync;
+		this.scratch = ByteBuffer.allocate( 256 );
+	}
+
+	/**
+	 * Opens the table file at path, creating it if it does not exist.
+	 * @throws UncheckedIOException if the file cannot be opened, or is not a table file
+	 */
+	static <T> TableFile<T> open( Path path, RowCodec<T> codec, boolean sync ) {
+		TableFile<T> file = new TableFile<>( path, codec, sync );
+		try {
+			Files.createDirectories( path.toAbsolutePath().getParent() );
+			file.map( path );
+			file.replay();
+			if( file.isMostlyDead() ) {
+				file.compact();
+			}
+			file.checkAt = nextCheck( file.end );
+		} catch( IOException e ) {
+			file.close();
+			throw new UncheckedIOException( "Cannot open table file " + path, e );
+		}
+		return file;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return live == null || live.size() == 0;
+	}
+
+	@Override
+	public void load( Consumer<? super T> action ) {
+		if( live == null )
+			return;
+		IntTable<ByteBuffer> rows = live;
+		live = null;
+		rows.forEach( record -> action.accept( decode( record ) ) );
+	}
+
+	@Override
+	public synchronized int maxId() {
+		return maxId;
+	}
+
+	@Override
+	public synchronized void put( int id, T row ) {
+		scratch = RowCodecs.encode( codec, row, scratch );
+		append( PUT, id, scratch );
+		// replay takes the max of the records as well, so this can lag the end
+		if( id > maxId ) {
+			maxId = id;
+			map.putInt( MAX_ID_OFFSET, id );
+		}
+	}
+
+	@Override
+	public synchronized void remove( int id ) {
+		scratch.clear().flip();
+		append( DELETE, id, scratch );
+	}
+
+	synchronized void flush() {
+		if( map != null )
+			map.force();
+	}
+
+	@Override
+	public synchronized void close() {
+		flush();
+		map = null;
+		live = null;
+		if( channel != null ) {
+			try {
+				channel.close();
+			} catch( IOException e ) {
+				logger.error( "Cannot close table file " + path, e );
+			}
+			channel = null;
+		}
+	}
+
+
+
+	private void map( Path target ) throws IOException {
+		channel = FileChannel.open( target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		long size = channel.size();
+		if( size > Integer.MAX_VALUE )
+			throw new IOException( "Table file is over 2GB" );
+		if( size < HEADER_SIZE ) {
+			map = channel.map( FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY );
+			map.putInt( 0, MAGIC );
+			map.putInt( 4, VERSION );
+			map.putInt( END_OFFSET, HEADER_SIZE );
+			map.putInt( MAX_ID_OFFSET, -1 );
+			end = HEADER_SIZE;
+			maxId = -1;
+			return;
+		}
+		map = channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+		if( map.getInt( 0 ) != MAGIC || map.getInt( 4 ) != VERSION )
+			throw new IOException( "Not a version " + VERSION + " table file" );
+		end = map.getInt( END_OFFSET );
+		maxId = map.getInt( MAX_ID_OFFSET );
+		if( end < HEADER_SIZE || end > size )
+			throw new IOException( "Corrupt table file header" );
+	}
+
+	private void replay() {
+		live = new IntTable<>();
+		records = 0;
+		int p = HEADER_SIZE;
+		while( p < end ) {
+			int length = p + RECORD_HEADER_SIZE <= end ? map.getInt( p ) : -1;
+			byte op = length >= 0 ? map.get( p + 4 ) : 0;
+			if( length < 0 || p + RECORD_HEADER_SIZE + length > end || ( op != PUT && op != DELETE ) ) {
+				// only a torn write that reached the header can get here
+				logger.warn( "Ignoring the end of table file " + path + " from offset " + p );
+				end = p;
+				map.putInt( END_OFFSET, end );
+				break;
+			}
+			int id = map.getInt( p + 5 );
+			if( op == PUT ) {
+				ByteBuffer record = map.duplicate();
+				record.position( p ).limit( p + RECORD_HEADER_SIZE + length );
+				live.put( id, record.slice() );
+				maxId = Math.max( maxId, id );
+			} else {
+				live.remove( id );
+			}
+			records++;
+			p += RECORD_HEADER_SIZE + length;
+		}
+	}
+
+	// the slices in live stay readable, as a mapping outlives its channel and file
+	private void compact() throws IOException {
+		Path tmp = path.resolveSibling( path.getFileName() + ".tmp" );
+		Files.deleteIfExists( tmp );
+		TableFile<T> out = new TableFile<>( tmp, codec, false );
+		try {
+			out.map( tmp );
+			out.map.putInt( MAX_ID_OFFSET, maxId );
+			live.forEach( record -> out.appendRecord( record.duplicate() ) );
+			out.flush();
+		} finally {
+			out.close();
+		}
+		logger.info( "Compacted table file " + path + " from " + records + " to " + live.size() + " records" );
+
+		channel.close();
+		Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		map( path );
+		records = live.size();
+	}
+
+	private boolean isMostlyDead() {
+		return records >= COMPACT_MIN_RECORDS && records > live.size() * 2;
+	}
+
+	// replays the log again, as open does, and compacts it if most of it is superseded
+	private void compactIfMostlyDead() {
+		boolean loaded = live == null;
+		try {
+			replay();
+			if( isMostlyDead() ) {
+				compact();
+			}
+		} catch( IOException e ) {
+			throw new UncheckedIOException( "Cannot compact table file " + path, e );
+		} finally {
+			if( loaded ) {
+				live = null;
+			}
+		}
+		checkAt = nextCheck( end );
+	}
+
+	// twice end, but no later than the append that would outgrow the file
+	private static long nextCheck( int end ) {
+		return Math.max( COMPACT_MIN_BYTES, Math.min( 2L * end, Integer.MAX_VALUE ) );
+	}
+
+	private T decode( ByteBuffer record ) {
+		ByteBuffer body = record.duplicate();
+		body.position( RECORD_HEADER_SIZE );
+		return codec.read( body );
+	}
+
+	private void append( byte op, int id, ByteBuffer body ) {
+		int length = RECORD_HEADER_SIZE + body.remaining();
+		if( map != null && end + (long) length > checkAt ) {
+			compactIfMostlyDead();
+		}
+		ensureCapacity( length );
+		map.position( end );
+		map.putInt( body.remaining() );
+		map.put( op );
+		map.putInt( id );
+		map.put( body );
+		commit( length );
+	}
+
+	private void appendRecord( ByteBuffer record ) {
+		ensureCapacity( record.remaining() );
+		int length = record.remaining();
+		map.position( end );
+		map.put( record );
+		commit( length );
+	}
+
+	private void commit( int length ) {
+		end += length;
+		records++;
+		map.putInt( END_OFFSET, end );
+		if( sync )
+			map.force();
+	}
+
+	private void ensureCapacity( int length ) {
+		if( map == null )
+			throw new IllegalStateException( "Table file " + path + " is closed" );
+		long needed = (long) end + length;
+		if( needed <= map.capacity() )
+			return;
+		if( needed > Integer.MAX_VALUE )
+			throw new IllegalStateException( "Table file " + path + " is full" );
+		long capacity = Math.min( Integer.MAX_VALUE, Math.max( needed, map.capacity() * 2L ) );
+		try {
+			map = channel.map( FileChannel.MapMode.READ_WRITE, 0, capacity );
+		} catch( IOException e ) {
+			throw new UncheckedIOException( "Cannot grow table file " + path, e );
+		}
+	}
+}
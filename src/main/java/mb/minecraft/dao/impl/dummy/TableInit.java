@@ -0,0 +1,154 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Readiness gate for a DAO's table, which is filled (loaded from its data
+ * directory, or seeded with mock data) either in the constructor, on first
+ * access, in the background once Spring calls init(), or alongside the other
+ * tables by {@link DummyDataSeeder}.
+ * <p>
+ * Every DAO method passes through {@link #await()} before touching its table.
+ * Once the table is ready that is a single volatile read; until then it runs
+ * the fill on the calling thread if nothing has started it, or waits for the
+ * thread that has. The thread doing the fill passes straight through, so the
+ * fill can use the DAO's own methods. The fill is never part of the
+ * caller's transaction, see {@link DummyTransaction#fill(Runnable)}.
+ *
+ * @author mikebro
+ */
+class TableInit {
+
+	private static final Logger logger = LogManager.getLogger( TableInit.class );
+
+	// cached rather than fixed, so a child table waiting on its parent never starves it of a thread
+	private static final ExecutorService filler = Executors.newCachedThreadPool( r -> {
+		Thread thread = new Thread( r, "dummy-dao-init" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	enum Mode {
+		EAGER,
+		LAZY,
+		ASYNC,
+		PARALLEL
+	}
+
+	private final String table;
+	private final Mode mode;
+	private final Runnable fill;
+	private final AtomicBoolean claimed;
+	private final CountDownLatch done;
+	private volatile Thread filling;
+	private volatile RuntimeException failure;
+	private volatile boolean ready;
+	private volatile long fillNanos = -1;
+
+
+	TableInit( String table, Mode mode, Runnable fill ) {
+		this.table = table;
+		this.mode = mode;
+		this.fill = fill;
+		this.claimed = new AtomicBoolean();
+		this.done = new CountDownLatch( 1 );
+	}
+
+	// from the end of the DAO's constructor; in eager mode fills the table
+	// there, as it always has, letting any failure fail the constructor
+	void onConstructed() {
+		if( mode == Mode.EAGER ) {
+			claimed.set( true );
+			long start = System.nanoTime();
+			filling = Thread.currentThread();
+			try {
+				DummyTransaction.fill( fill );
+				fillNanos = System.nanoTime() - start;
+			} finally {
+				filling = null;
+				done.countDown();
+			}
+			ready = true;
+		}
+	}
+
+	// from the DAO's init(); in async mode starts filling the table in the
+	// background, claiming it here so a reader arriving before the task
+	// starts waits for it rather than filling the table itself
+	void onInit() {
+		if( mode == Mode.ASYNC && claimed.compareAndSet( false, true ) ) {
+			filler.execute( this::fillClaimed );
+		}
+	}
+
+	void await() {
+		if( ready || filling == Thread.currentThread() )
+			return;
+		run();
+		awaitDone();
+		if( failure != null )
+			throw failure;
+		ready = true;
+	}
+
+	// from the DAO's destroy(); a table nobody has asked for is never filled,
+	// and one being filled is finished first so it can be closed cleanly
+	void close() {
+		if( claimed.compareAndSet( false, true ) ) {
+			failure = new IllegalStateException( table + " table is closed" );
+			done.countDown();
+		} else {
+			awaitDone();
+		}
+	}
+
+	// how long the fill took, or -1 if the table has not been filled
+	long fillMillis() {
+		long nanos = fillNanos;
+		return nanos < 0 ? -1 : nanos / 1_000_000;
+	}
+
+	private void run() {
+		if( claimed.compareAndSet( false, true ) ) {
+			fillClaimed();
+		}
+	}
+
+	// runs the fill this thread has claimed
+	private void fillClaimed() {
+		long start = System.nanoTime();
+		filling = Thread.currentThread();
+		try {
+			DummyTransaction.fill( fill );
+			fillNanos = System.nanoTime() - start;
+			logger.info( table + " table ready in " + fillNanos / 1_000_000 + " ms" );
+		} catch( RuntimeException | Error e ) {
+			logger.error( table + " table failed to initialize", e );
+			failure = new IllegalStateException( table + " table failed to initialize", e );
+		} finally {
+			filling = null;
+			done.countDown();
+		}
+	}
+
+	private void awaitDone() {
+		boolean interrupted = false;
+		while( true ) {
+			try {
+				done.await();
+				break;
+			} catch( InterruptedException e ) {
+				interrupted = true;
+			}
+		}
+		if( interrupted ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backs selectAll() for one dummy table.
+ * <p>
+ * By default every call copies the table into a new list, as the DAOs always
+ * have. In snapshot mode the copy is made unmodifiable and shared by every
+ * caller until the table is next written, so repeated polling between writes
+ * returns the same list in O(1) and allocates nothing. Either way the caller
+ * can't reach the table through the returned list.
+ * <p>
+ * A versioned table is always copied, as what a reader sees of it depends on
+ * the reader's transaction.
+ *
+ * @author mikebro
+ */
+class TableSnapshot<T> {
+
+	private final RowTable<T> table;
+	private final boolean enabled;
+	private final AtomicLong version;
+	private volatile Snapshot<T> current;
+
+
+	TableSnapshot( RowTable<T> table, boolean enabled ) {
+		this.table = table;
+		this.enabled = enabled && !table.isVersioned();
+		this.version = new AtomicLong();
+	}
+
+	List<T> selectAll() {
+		if( !enabled )
+			return table.rows();
+
+		Snapshot<T> snapshot = current;
+		long v = version.get();
+		if( snapshot != null && snapshot.version == v )
+			return snapshot.rows;
+
+		List<T> rows = Collections.unmodifiableList( table.rows() );
+		// only publish if no write landed while copying, otherwise the copy
+		// could outlive a change it doesn't contain
+		if( version.get() == v ) {
+			current = new Snapshot<>( v, rows );
+		}
+		return rows;
+	}
+
+	// called by writers after every change to the table
+	void invalidate() {
+		if( enabled ) {
+			version.incrementAndGet();
+		}
+	}
+
+
+	private static class Snapshot<T> {
+		final long version;
+		final List<T> rows;
+
+		Snapshot( long version, List<T> rows ) {
+			this.version = version;
+			this.rows = rows;
+		}
+	}
+}
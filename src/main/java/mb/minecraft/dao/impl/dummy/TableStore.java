@@ -0,0 +1,30 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Where a persistent dummy table keeps its rows between runs, for
+ * {@link PersistentRowTable}: a {@link TableFile} or a {@link WriteAheadLog}.
+ *
+ * @author mikebro
+ */
+interface TableStore<T> extends Closeable {
+
+	/** @return true if no rows were stored when the store was opened */
+	boolean isEmpty();
+
+	/** Passes each row stored when the store was opened to action, in insertion order. Only works once. */
+	void load( Consumer<? super T> action );
+
+	/** @return the highest ID ever stored, deleted rows included, or -1 */
+	int maxId();
+
+	void put( int id, T row );
+
+	void remove( int id );
+
+	/** Makes every write so far durable and releases the store's files. */
+	@Override
+	void close();
+}
@@ -1,15 +1,23 @@
 package mb.minecraft.dao.impl.dummy;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import mb.minecraft.dao.DaoConstraintException;
@@ -26,108 +34,359 @@ public class TradeDaoDummyImpl implements TradeDao {
 
 	private static final Logger logger = LogManager.getLogger( TradeDaoDummyImpl.class );
 
-	private Map<Integer,Trade> tradeTable;
-	private int idSeq;
+	@Autowired( required = false )
+	ForeignKeys foreignKeys;
+
+	private RowTable<Trade> tradeTable;
+	private TableSnapshot<Trade> allRows;
+	private RowVersions versions;
+	private ForeignKeyIndex<Trade> villagerIndex;
+	private Map<Integer,SeqnoMark> seqnoMarks;
+	private Map<Integer,Integer> seqnosById;
+	private StripedLocks rowLocks;
+	private StripedLocks villagerLocks;
+	private AtomicInteger idSeq;
+	private TableInit tableInit;
 
 
 	@PostConstruct
 	public void init() {
 		logger.info( "TradeDaoDummyImpl.init()" );
+		tableInit.onInit();
 	}
 
 
 	private TradeDaoDummyImpl() {
 		logger.info( "TradeDaoDummyImpl constructor" );
-		tradeTable = new HashMap<>();
-		idSeq = 0;
-		for( Trade trade : generateMockData() ) {
-			insertOne( trade );
-		}
+		boolean concurrent = DummyDaoSettings.isConcurrent();
+		tradeTable = RowTable.create( concurrent, "trade", RowCodecs.TRADE );
+		allRows = new TableSnapshot<>( tradeTable, DummyDaoSettings.isSnapshotReads() );
+		versions = new RowVersions( "Trade", concurrent );
+		villagerIndex = new ForeignKeyIndex<>( tradeTable, Trade::getVillagerId, concurrent );
+		seqnoMarks = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+		seqnosById = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+		rowLocks = new StripedLocks( concurrent );
+		villagerLocks = new StripedLocks( concurrent );
+		tradeTable.onRollback( this::reindex );
+		idSeq = new AtomicInteger();
+		tableInit = new TableInit( "Trade", DummyDaoSettings.initMode(), this::fill );
+		tableInit.onConstructed();
 	}
 
 	@Override
 	public Trade selectOneById( int id ) {
+		tableInit.await();
 		return tradeTable.get( id );
 	}
 
+	public List<Trade> selectByIds( int... ids ) {
+		tableInit.await();
+		return tradeTable.get( ids );
+	}
+
 	@Override
 	public List<Trade> selectAll() {
-		return new ArrayList<Trade>( tradeTable.values() );
+		tableInit.await();
+		return allRows.selectAll();
 	}
 
 	@Override
 	public List<Trade> selectAll( Villager villager ) {
-		return tradeTable.values().stream()
-				.filter( trade -> trade.getVillagerId().equals( villager.getId() ) )
-				.collect( Collectors.toList() );
+		tableInit.await();
+		return villagerIndex.select( villager.getId() );
+	}
+
+	/** @return the trades of each of villagers in turn, as selectAll( Villager ) would list them, skipping nulls */
+	public List<Trade> selectAll( Collection<Villager> villagers ) {
+		tableInit.await();
+		int size = 0;
+		for( Villager villager : villagers ) {
+			if( villager != null )
+				size += villagerIndex.count( villager.getId() );
+		}
+		List<Trade> trades = new ArrayList<>( size );
+		for( Villager villager : villagers ) {
+			if( villager != null )
+				villagerIndex.rows( villager.getId() ).forEach( trades::add );
+		}
+		return trades;
+	}
+
+	public Trade selectAnyByVillagerId( Integer villagerId ) {
+		tableInit.await();
+		return villagerIndex.first( villagerId );
 	}
 
 	@Override
 	public Trade insertOne( Trade newRow ) {
+		tableInit.await();
 		newRow.setId( deriveId( newRow ) );
-		testUniqueIdConstraint( newRow );
-		deriveSeqno( newRow );
-		tradeTable.put( newRow.getId(), newRow );
+		insertChecked( newRow );
 		return newRow;
 	}
 
 	@Override
 	public List<Trade> insert( List<Trade> newRowSet ) {
-		newRowSet.forEach( row -> insertOne( row ) );
+		tableInit.await();
+		BatchInsert.assignIds( newRowSet, Trade::getId, Trade::setId, idSeq );
+		BatchInsert.checkIds( newRowSet, Trade::getId, tradeTable, "Trade", "ID" );
+		if( foreignKeys != null ) {
+			for( Trade row : newRowSet ) {
+				foreignKeys.checkParents( "Trade", row );
+			}
+		}
+		tradeTable.ensureCapacity( newRowSet.size() );
+		if( foreignKeys != null && foreignKeys.enforced() ) {
+			// the villagers' key stripes come before the villager stripes, so
+			// each row takes both in turn, as insertOne does
+			BatchInsert.publish( newRowSet, this::insertChecked, row -> deleteLocked( row.getId() ) );
+		} else {
+			BatchInsert.publish( newRowSet, Trade::getVillagerId, villagerLocks, this::insertLocked, row -> deleteLocked( row.getId() ) );
+		}
 		return newRowSet;
 	}
 
+	/** @return the version of row id, to pass to update( row, expectedVersion ), or -1 if there is no such row */
+	public long versionOf( int id ) {
+		tableInit.await();
+		return versions.get( id );
+	}
+
 	@Override
 	public Trade update( Trade trade ) {
-		if( this.tradeTable.containsKey( trade.getId() ) ) {
-			this.tradeTable.put( trade.getId(), trade );
-			return trade;
-		}
-		return null;
+		return update( trade, RowVersions.ANY );
+	}
+
+	/**
+	 * Updates the row only if it is still at expectedVersion, read with
+	 * versionOf before the row itself was read.
+	 * @throws StaleRowException if another update got there first
+	 */
+	public Trade update( Trade trade, long expectedVersion ) {
+		tableInit.await();
+		if( trade.getId() == null )
+			return null;
+		return withParents( trade, () -> updateLocked( trade, expectedVersion ) );
 	}
 
 	@Override
 	public boolean deleteOne( Trade trade ) {
-		if( tradeTable.containsKey( trade.getId() ) ) {
-			tradeTable.remove( trade.getId() );
-			return true;
-		} else {
+		tableInit.await();
+		if( trade.getId() == null )
 			return false;
+		if( foreignKeys != null && tradeTable.containsKey( trade.getId() ) )
+			return foreignKeys.delete( "Trade", trade.getId(), () -> deleteLocked( trade.getId() ) );
+		return deleteLocked( trade.getId() );
+	}
+
+	void restore( Trade row ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( row.getId() + 1, Math::max );
+		Lock lock = villagerLocks.stripe( row.getVillagerId() );
+		lock.lock();
+		try {
+			insertLocked( row );
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// restore for a batch: room is made and the ID sequence moved once for
+	// all of it, and each parent's stripe is taken once for its rows
+	void restore( List<Trade> rows ) {
+		tableInit.await();
+		BatchInsert.advancePast( rows, Trade::getId, idSeq );
+		tradeTable.ensureCapacity( rows.size() );
+		BatchInsert.publish( rows, Trade::getVillagerId, villagerLocks, this::insertLocked, row -> deleteLocked( row.getId() ) );
+	}
+
+	// For DummyDataSnapshot. Deletes every row, skipping the foreign key
+	// checks; only their IDs are collected first.
+	void deleteAll() {
+		tableInit.await();
+		for( int id : tradeTable.ids( Trade::getId ) ) {
+			deleteLocked( id );
 		}
 	}
 
+	void forEachRow( Consumer<? super Trade> action ) {
+		tableInit.await();
+		tradeTable.forEach( action );
+	}
+
+	int nextId() {
+		tableInit.await();
+		return idSeq.get();
+	}
+
+	void advanceNextId( int nextId ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( nextId, Math::max );
+	}
+
+	TableInit tableInit() {
+		return tableInit;
+	}
+
 	@Override
 	public void destroy() throws Exception {
 		logger.info( "Shutting down TradeDaoDummyImpl" );
+		tableInit.close();
+		tradeTable.close();
 	}
 
 
 
+	private void fill() {
+		if( tradeTable.load( this::restore ) ) {
+			idSeq.accumulateAndGet( tradeTable.maxId() + 1, Math::max );
+		} else {
+			for( Trade trade : generateMockData() ) {
+				insertOne( trade );
+			}
+		}
+	}
+
 	private int deriveId( Trade newRow ) {
 		int newId = newRow.getId() != null ? newRow.getId() : 0;
-		if( idSeq <= newId ) {
-			idSeq = newId + 1;
+		if( newId > 0 ) {
+			idSeq.accumulateAndGet( newId + 1, Math::max );
 			return newId;
 		}
-		if( newId > 0 )
-			return newId;
-		else
-			return idSeq++;
+		return idSeq.getAndIncrement();
 	}
 
-	private void deriveSeqno( Trade newRow ) {
-		if( newRow.getTradeSeqno() == null && newRow.getVillagerId() != null ) {
-			int seqno = 0;
-			for( Trade t : selectAll( Villager.builder().id( newRow.getVillagerId() ).build() ) ) {
-				if( t.getTradeSeqno() > seqno ) {
-					seqno = t.getTradeSeqno();
+	// the villager's key stripe is taken before any of this DAO's locks
+	private <R> R withParents( Trade row, Supplier<R> write ) {
+		return foreignKeys != null ? foreignKeys.withParents( "Trade", row, write ) : write.get();
+	}
+
+	private void insertChecked( Trade newRow ) {
+		withParents( newRow, () -> {
+			if( foreignKeys != null )
+				foreignKeys.checkParents( "Trade", newRow );
+			Lock lock = villagerLocks.stripe( newRow.getVillagerId() );
+			lock.lock();
+			try {
+				insertLocked( newRow );
+			} finally {
+				lock.unlock();
+			}
+			return newRow;
+		} );
+	}
+
+	private Trade updateLocked( Trade trade, long expectedVersion ) {
+		while( true ) {
+			// the trade may have been moved or renumbered in place, so both the
+			// villager it was filed under and the one it names now are locked
+			Integer oldVillagerId = villagerIndex.keyOf( trade.getId() );
+			villagerLocks.lock( oldVillagerId, trade.getVillagerId() );
+			Lock lock = rowLocks.stripe( trade.getId() );
+			lock.lock();
+			try {
+				if( Objects.equals( oldVillagerId, villagerIndex.keyOf( trade.getId() ) ) ) {
+					return versions.update( trade.getId(), expectedVersion, trade, () -> {
+						if( foreignKeys != null && tradeTable.containsKey( trade.getId() ) )
+							foreignKeys.checkParents( "Trade", trade );
+						if( this.tradeTable.replace( trade.getId(), trade ) == null )
+							return null;
+						fileSeqno( trade.getId(), oldVillagerId, trade );
+						allRows.invalidate();
+						villagerIndex.put( trade.getId(), trade.getVillagerId(), trade );
+						return trade;
+					} );
 				}
+			} finally {
+				lock.unlock();
+				villagerLocks.unlock( oldVillagerId, trade.getVillagerId() );
 			}
-			seqno++;
-			newRow.setTradeSeqno( seqno );
+			// moved to another villager by a concurrent update; go again
+		}
+	}
+
+	// Writers lock the villager stripe first and the row stripe second. The
+	// villager stripe guards the seqno marks and the villager index; the row
+	// stripe keeps a single ID from being written by two villagers at once.
+	private void insertLocked( Trade newRow ) {
+		Lock lock = rowLocks.stripe( newRow.getId() );
+		lock.lock();
+		try {
+			testUniqueIdConstraint( newRow );
+			deriveSeqno( newRow );
+			tradeTable.put( newRow.getId(), newRow );
+			versions.inserted( newRow.getId() );
+			allRows.invalidate();
+			villagerIndex.put( newRow.getId(), newRow.getVillagerId(), newRow );
+			fileSeqno( newRow.getId(), null, newRow );
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean deleteLocked( int id ) {
+		while( true ) {
+			Integer villagerId = villagerIndex.keyOf( id );
+			Lock villagerLock = villagerLocks.stripe( villagerId );
+			villagerLock.lock();
+			Lock lock = rowLocks.stripe( id );
+			lock.lock();
+			try {
+				if( Objects.equals( villagerId, villagerIndex.keyOf( id ) ) ) {
+					if( tradeTable.remove( id ) == null )
+						return false;
+					allRows.invalidate();
+					versions.deleted( id );
+					unfileSeqno( id, villagerId );
+					villagerIndex.remove( id );
+					return true;
+				}
+			} finally {
+				lock.unlock();
+				villagerLock.unlock();
+			}
+		}
+	}
+
+	private void deriveSeqno( Trade newRow ) {
+		if( newRow.getTradeSeqno() == null && newRow.getVillagerId() != null ) {
+			SeqnoMark mark = seqnoMarks.get( newRow.getVillagerId() );
+			newRow.setTradeSeqno( ( mark != null ? mark.max : 0 ) + 1 );
+		}
+	}
+
+	// files the row's seqno under the villager it names, after taking back
+	// the one it was filed with under oldVillagerId, if any; the seqno is
+	// remembered by ID as callers change rows in place before update
+	private void fileSeqno( int id, Integer oldVillagerId, Trade row ) {
+		unfileSeqno( id, oldVillagerId );
+		if( row.getVillagerId() == null || row.getTradeSeqno() == null )
+			return;
+		seqnosById.put( id, row.getTradeSeqno() );
+		seqnoMarks.computeIfAbsent( row.getVillagerId(), k -> new SeqnoMark() ).add( row.getTradeSeqno() );
+	}
+
+	private void unfileSeqno( int id, Integer villagerId ) {
+		Integer seqno = seqnosById.remove( id );
+		if( seqno != null && villagerId != null ) {
+			seqnoMarks.computeIfPresent( villagerId, ( k, mark ) -> mark.remove( seqno ) ? null : mark );
 		}
 	}
 
+	// puts a row a rollback restored back under its villager
+	private void reindex( Trade row, int id ) {
+		if( row != null ) {
+			fileSeqno( id, villagerIndex.keyOf( id ), row );
+			villagerIndex.put( id, row.getVillagerId(), row );
+			versions.inserted( id );
+		} else {
+			versions.deleted( id );
+			unfileSeqno( id, villagerIndex.keyOf( id ) );
+			villagerIndex.remove( id );
+		}
+		allRows.invalidate();
+	}
+
 	private void testUniqueIdConstraint( Trade row ) {
 		if( tradeTable.containsKey( row.getId() ) ) {
 			throw new DaoConstraintException(
@@ -164,4 +423,27 @@ public class TradeDaoDummyImpl implements TradeDao {
 				.tradeSeqno( tradeSeqno )
 				.build();
 	}
+
+	// the tradeSeqnos in use by one villager, each counted by how many of its
+	// trades hold it, and the highest of them. Deriving a seqno reads max alone;
+	// adding or dropping one costs O(log n) in the villager's distinct seqnos.
+	// Only read or written while holding the villager's stripe.
+	private static class SeqnoMark {
+		final TreeMap<Integer,Integer> counts = new TreeMap<>();
+		int max;
+
+		void add( int seqno ) {
+			counts.merge( seqno, 1, Integer::sum );
+			max = Math.max( max, seqno );
+		}
+
+		// @return true if the villager has no seqnos left
+		boolean remove( int seqno ) {
+			counts.computeIfPresent( seqno, ( k, n ) -> n > 1 ? n - 1 : null );
+			if( counts.isEmpty() )
+				return true;
+			max = Math.max( 0, counts.lastKey() );
+			return false;
+		}
+	}
 }
@@ -1,16 +1,20 @@
 package mb.minecraft.dao.impl.dummy;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import mb.minecraft.dao.DaoConstraintException;
@@ -29,98 +33,368 @@ public class TradeItemDaoDummyImpl implements TradeItemDao {
 
 	private static final Logger logger = LogManager.getLogger( TradeItemDaoDummyImpl.class );
 
-	private Map<Integer,TradeItem> tradeItemTable;
-	private int idSeq;
+	@Autowired( required = false )
+	ForeignKeys foreignKeys;
+
+	private RowTable<TradeItem> tradeItemTable;
+	private TableSnapshot<TradeItem> allRows;
+	private RowVersions versions;
+	private ForeignKeyIndex<TradeItem> tradeIndex;
+	private ForeignKeyIndex<TradeItem> itemIndex;
+	private UniqueIndex<Long,TradeItem> tradeKeyIndex;
+	private StripedLocks rowLocks;
+	private StripedLocks tradeLocks;
+	private AtomicInteger idSeq;
+	private TableInit tableInit;
 
 
 	@PostConstruct
 	public void init() {
 		logger.info( "TradeItemDaoDummyImpl.init()" );
+		tableInit.onInit();
 	}
 
 
 	private TradeItemDaoDummyImpl() {
 		logger.info( "TradeItemDaoDummyImpl constructor" );
-		this.idSeq = 0;
-		this.tradeItemTable = new HashMap<>();
-		for( TradeItem item : generateMockData() ) {
-			insertOne( item );
-		}
+		boolean concurrent = DummyDaoSettings.isConcurrent();
+		this.idSeq = new AtomicInteger();
+		this.tradeItemTable = RowTable.create( concurrent, "tradeitem", RowCodecs.TRADE_ITEM );
+		this.allRows = new TableSnapshot<>( tradeItemTable, DummyDaoSettings.isSnapshotReads() );
+		this.versions = new RowVersions( "TradeItem", concurrent );
+		this.tradeIndex = new ForeignKeyIndex<>( tradeItemTable, TradeItem::getTradeId, concurrent );
+		this.itemIndex = new ForeignKeyIndex<>( tradeItemTable, TradeItem::getItemId, concurrent );
+		this.tradeKeyIndex = new UniqueIndex<>( tradeItemTable, TradeItemDaoDummyImpl::packTradeKey, concurrent );
+		tradeItemTable.onRollback( this::reindex );
+		this.rowLocks = new StripedLocks( concurrent );
+		this.tradeLocks = new StripedLocks( concurrent );
+		this.tableInit = new TableInit( "TradeItem", DummyDaoSettings.initMode(), this::fill );
+		tableInit.onConstructed();
 	}
 
 	// I would like this method to return a new List, not the private List for this object
 	// This is NOT meant to be a getter method for the table
+	// (in snapshot mode it is a shared copy, but one the caller can't modify)
 	@Override
 	public List<TradeItem> selectAll() {
-		return tradeItemTable.values().stream().collect( Collectors.toList() );
+		tableInit.await();
+		return allRows.selectAll();
 	}
 
 	@Override
 	public List<TradeItem> selectAll( Trade trade ) {
-		return tradeItemTable.values().stream()
-				.filter( ti -> ti.getTradeId().equals( trade.getId() ) )
-				.collect( Collectors.toList() ); 
+		tableInit.await();
+		return tradeIndex.select( trade.getId() );
+	}
+
+	/** @return the items of each of trades in turn, as selectAll( Trade ) would list them, skipping nulls */
+	public List<TradeItem> selectAll( Collection<Trade> trades ) {
+		tableInit.await();
+		int size = 0;
+		for( Trade trade : trades ) {
+			if( trade != null )
+				size += tradeIndex.count( trade.getId() );
+		}
+		List<TradeItem> items = new ArrayList<>( size );
+		for( Trade trade : trades ) {
+			if( trade != null )
+				tradeIndex.rows( trade.getId() ).forEach( items::add );
+		}
+		return items;
 	}
 
 	@Override
 	public List<TradeItem> selectAll( Item item ) {
-		return tradeItemTable.values().stream()
-				.filter( ti -> ti.getItemId().equals( item.getId() ) )
-				.collect( Collectors.toList() ); 
+		tableInit.await();
+		return itemIndex.select( item.getId() );
+	}
+
+	public List<TradeItem> selectByIds( int... ids ) {
+		tableInit.await();
+		return tradeItemTable.get( ids );
+	}
+
+	public TradeItem selectOneByTradeKey( int tradeId, OfferRequire offerRequire, int seqno ) {
+		tableInit.await();
+		Long key = packTradeKey( tradeId, offerRequire, seqno );
+		if( key != null ) {
+			return tradeKeyIndex.get( key );
+		}
+		for( TradeItem ti : tradeIndex.rows( tradeId ) ) {
+			if( offerRequire.equals( ti.getOfferRequire() ) && Integer.valueOf( seqno ).equals( ti.getSeqno() ) )
+				return ti;
+		}
+		return null;
+	}
+
+	public TradeItem selectAnyByTradeId( Integer tradeId ) {
+		tableInit.await();
+		return tradeIndex.first( tradeId );
+	}
+
+	public TradeItem selectAnyByItemId( Integer itemId ) {
+		tableInit.await();
+		return itemIndex.first( itemId );
 	}
 
 	@Override
 	public TradeItem insertOne( TradeItem newRow ) {
+		tableInit.await();
 		newRow.setId( deriveId( newRow ) );
-		testUniqueIdConstraint( newRow );
-		testUniqueTradeKeysConstraint( newRow );
-		tradeItemTable.put( newRow.getId(), newRow );
+		insertChecked( newRow );
 		return newRow;
 	}
 
 	@Override
 	public List<TradeItem> insert( List<TradeItem> newRowSet ) {
-		newRowSet.forEach( row -> insertOne( row ) );
+		tableInit.await();
+		BatchInsert.assignIds( newRowSet, TradeItem::getId, TradeItem::setId, idSeq );
+		BatchInsert.checkIds( newRowSet, TradeItem::getId, tradeItemTable, "TradeItem", "Id" );
+		BatchInsert.checkUnique( newRowSet, TradeItemDaoDummyImpl::tradeKeyOf,
+				key -> selectOneByTradeKey( (Integer) key.get( 0 ), (OfferRequire) key.get( 1 ), (Integer) key.get( 2 ) ),
+				"TradeItem", "TradeId-OfferRequire-Seqno" );
+		if( foreignKeys != null ) {
+			for( TradeItem row : newRowSet ) {
+				foreignKeys.checkParents( "TradeItem", row );
+			}
+		}
+		tradeItemTable.ensureCapacity( newRowSet.size() );
+		if( foreignKeys != null && foreignKeys.enforced() ) {
+			// the parents' key stripes come before the trade stripes, so each
+			// row takes both in turn, as insertOne does
+			BatchInsert.publish( newRowSet, this::insertChecked, row -> deleteLocked( row.getId() ) );
+		} else {
+			BatchInsert.publish( newRowSet, TradeItem::getTradeId, tradeLocks, this::insertLocked, row -> deleteLocked( row.getId() ) );
+		}
 		return newRowSet;
 	}
 
+	/** @return the version of row id, to pass to update( row, expectedVersion ), or -1 if there is no such row */
+	public long versionOf( int id ) {
+		tableInit.await();
+		return versions.get( id );
+	}
+
 	@Override
 	public TradeItem update( TradeItem item ) {
-		if( tradeItemTable.containsKey( item.getId() ) ) {
-			tradeItemTable.put( item.getId(), item );
-			return item;
-		} else {
+		return update( item, RowVersions.ANY );
+	}
+
+	/**
+	 * Updates the row only if it is still at expectedVersion, read with
+	 * versionOf before the row itself was read.
+	 * @throws StaleRowException if another update got there first
+	 */
+	public TradeItem update( TradeItem item, long expectedVersion ) {
+		tableInit.await();
+		if( item.getId() == null )
 			return null;
-		}
+		return withParents( item, () -> updateLocked( item, expectedVersion ) );
 	}
 
 	@Override
 	public boolean deleteOne( TradeItem item ) {
-		if( tradeItemTable.containsKey( item.getId() ) ) {
-			tradeItemTable.remove( item.getId() );
-			return true;
-		} else {
+		tableInit.await();
+		if( item.getId() == null )
 			return false;
+		return deleteLocked( item.getId() );
+	}
+
+	void restore( TradeItem row ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( row.getId() + 1, Math::max );
+		Lock lock = tradeLocks.stripe( row.getTradeId() );
+		lock.lock();
+		try {
+			insertLocked( row );
+		} finally {
+			lock.unlock();
 		}
 	}
 
+	// restore for a batch: room is made and the ID sequence moved once for
+	// all of it, and each parent's stripe is taken once for its rows
+	void restore( List<TradeItem> rows ) {
+		tableInit.await();
+		BatchInsert.advancePast( rows, TradeItem::getId, idSeq );
+		tradeItemTable.ensureCapacity( rows.size() );
+		BatchInsert.publish( rows, TradeItem::getTradeId, tradeLocks, this::insertLocked, row -> deleteLocked( row.getId() ) );
+	}
+
+	// For DummyDataSnapshot. Deletes every row, skipping the foreign key
+	// checks; only their IDs are collected first.
+	void deleteAll() {
+		tableInit.await();
+		for( int id : tradeItemTable.ids( TradeItem::getId ) ) {
+			deleteLocked( id );
+		}
+	}
+
+	void forEachRow( Consumer<? super TradeItem> action ) {
+		tableInit.await();
+		tradeItemTable.forEach( action );
+	}
+
+	int nextId() {
+		tableInit.await();
+		return idSeq.get();
+	}
+
+	void advanceNextId( int nextId ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( nextId, Math::max );
+	}
+
+	TableInit tableInit() {
+		return tableInit;
+	}
+
 	@Override
 	public void destroy() throws Exception {
 		logger.info( "Shutting down TradeItemDaoDummyImpl" );
+		tableInit.close();
+		tradeItemTable.close();
 	}
 
 
 
+	private void fill() {
+		if( tradeItemTable.load( this::restore ) ) {
+			idSeq.accumulateAndGet( tradeItemTable.maxId() + 1, Math::max );
+		} else {
+			for( TradeItem item : generateMockData() ) {
+				insertOne( item );
+			}
+		}
+	}
+
 	private int deriveId( TradeItem newRow ) {
 		int newId = newRow.getId() != null ? newRow.getId() : 0;
-		if( idSeq <= newId ) {
-			idSeq = newId + 1;
+		if( newId > 0 ) {
+			idSeq.accumulateAndGet( newId + 1, Math::max );
 			return newId;
 		}
-		if( newId > 0 )
-			return newId;
-		else
-			return idSeq++;
+		return idSeq.getAndIncrement();
+	}
+
+	// the parents' key stripes are taken before any of this DAO's locks
+	private <R> R withParents( TradeItem row, Supplier<R> write ) {
+		return foreignKeys != null ? foreignKeys.withParents( "TradeItem", row, write ) : write.get();
+	}
+
+	private void insertChecked( TradeItem newRow ) {
+		withParents( newRow, () -> {
+			if( foreignKeys != null )
+				foreignKeys.checkParents( "TradeItem", newRow );
+			Lock lock = tradeLocks.stripe( newRow.getTradeId() );
+			lock.lock();
+			try {
+				insertLocked( newRow );
+			} finally {
+				lock.unlock();
+			}
+			return newRow;
+		} );
+	}
+
+	private TradeItem updateLocked( TradeItem item, long expectedVersion ) {
+		while( true ) {
+			Integer oldTradeId = tradeIndex.keyOf( item.getId() );
+			tradeLocks.lock( oldTradeId, item.getTradeId() );
+			Lock lock = rowLocks.stripe( item.getId() );
+			lock.lock();
+			try {
+				if( Objects.equals( oldTradeId, tradeIndex.keyOf( item.getId() ) ) ) {
+					return versions.update( item.getId(), expectedVersion, item, () -> {
+						if( !tradeItemTable.containsKey( item.getId() ) )
+							return null;
+						if( foreignKeys != null )
+							foreignKeys.checkParents( "TradeItem", item );
+						claimUniqueTradeKeys( item );
+						tradeItemTable.put( item.getId(), item );
+						allRows.invalidate();
+						indexRow( item );
+						return item;
+					} );
+				}
+			} finally {
+				lock.unlock();
+				tradeLocks.unlock( oldTradeId, item.getTradeId() );
+			}
+			// moved to another trade by a concurrent update; go again
+		}
+	}
+
+	// Writers lock the trade stripe first and the row stripe second. The trade
+	// stripe covers every row sharing a tradeId, which is also the scope of the
+	// TradeId-OfferRequire-Seqno key; the row stripe keeps a single ID from
+	// being written under two trades at once.
+	private void insertLocked( TradeItem newRow ) {
+		Lock lock = rowLocks.stripe( newRow.getId() );
+		lock.lock();
+		try {
+			testUniqueIdConstraint( newRow );
+			claimUniqueTradeKeys( newRow );
+			try {
+				tradeItemTable.put( newRow.getId(), newRow );
+			} catch( RuntimeException | Error e ) {
+				tradeKeyIndex.remove( newRow.getId() );
+				throw e;
+			}
+			versions.inserted( newRow.getId() );
+			allRows.invalidate();
+			indexRow( newRow );
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean deleteLocked( int id ) {
+		while( true ) {
+			Integer tradeId = tradeIndex.keyOf( id );
+			Lock tradeLock = tradeLocks.stripe( tradeId );
+			tradeLock.lock();
+			Lock lock = rowLocks.stripe( id );
+			lock.lock();
+			try {
+				if( Objects.equals( tradeId, tradeIndex.keyOf( id ) ) ) {
+					if( tradeItemTable.remove( id ) == null )
+						return false;
+					allRows.invalidate();
+					versions.deleted( id );
+					tradeIndex.remove( id );
+					itemIndex.remove( id );
+					tradeKeyIndex.remove( id );
+					return true;
+				}
+			} finally {
+				lock.unlock();
+				tradeLock.unlock();
+			}
+		}
+	}
+
+	private void indexRow( TradeItem row ) {
+		tradeIndex.put( row.getId(), row.getTradeId(), row );
+		itemIndex.put( row.getId(), row.getItemId(), row );
+	}
+
+	// puts a row a rollback restored back in the indexes
+	private void reindex( TradeItem row, int id ) {
+		if( row != null ) {
+			Long key = packTradeKey( row );
+			if( key != null ) {
+				tradeKeyIndex.claim( id, key );
+			}
+			indexRow( row );
+			versions.inserted( id );
+		} else {
+			versions.deleted( id );
+			tradeIndex.remove( id );
+			itemIndex.remove( id );
+			tradeKeyIndex.remove( id );
+		}
+		allRows.invalidate();
 	}
 
 	private void testUniqueIdConstraint( TradeItem row ) {
@@ -130,20 +404,47 @@ public class TradeItemDaoDummyImpl implements TradeItemDao {
 		}
 	}
 
-	private void testUniqueTradeKeysConstraint( TradeItem row ) {
-		Optional<TradeItem> searchedItem = findMatching( row );
-		if( searchedItem.isPresent() ) {
+	private void claimUniqueTradeKeys( TradeItem row ) {
+		boolean taken;
+		Long key = packTradeKey( row );
+		if( key != null ) {
+			taken = tradeKeyIndex.claim( row.getId(), key ) != null;
+		} else {
+			TradeItem ti = null;
+			if( row.getTradeId() != null && row.getOfferRequire() != null && row.getSeqno() != null )
+				ti = selectOneByTradeKey( row.getTradeId(), row.getOfferRequire(), row.getSeqno() );
+			taken = ti != null && !ti.getId().equals( row.getId() );
+		}
+		if( taken ) {
 			throw new DaoConstraintException(
 					String.format( DaoConstraintException.UNIQUE_CONSTRAINT_ERROR, "TradeItem", "TradeId-OfferRequire-Seqno" ), row );
 		}
+		// an unpacked key is not indexed; a failed update keeps the old one
+		if( key == null ) {
+			tradeKeyIndex.remove( row.getId() );
+		}
+	}
+
+	// the TradeId-OfferRequire-Seqno key as a value, or null if any part is missing
+	private static List<Object> tradeKeyOf( TradeItem row ) {
+		if( row.getTradeId() == null || row.getOfferRequire() == null || row.getSeqno() == null )
+			return null;
+		return Arrays.asList( row.getTradeId(), row.getOfferRequire(), row.getSeqno() );
 	}
 
-	private Optional<TradeItem> findMatching( TradeItem item ) {
-		return tradeItemTable.values().stream()
-				.filter( ti -> ti.getTradeId().equals( item.getTradeId() ) &&
-						ti.getOfferRequire().equals( item.getOfferRequire() ) &&
-						ti.getSeqno().equals( item.getSeqno() ) )
-				.findFirst();
+	private static Long packTradeKey( TradeItem row ) {
+		if( row.getTradeId() == null || row.getOfferRequire() == null || row.getSeqno() == null )
+			return null;
+		return packTradeKey( row.getTradeId(), row.getOfferRequire(), row.getSeqno() );
+	}
+
+	// tradeId in the high 32 bits, seqno and the offer/require flag in the low 32.
+	// Negative seqnos don't fit and are left to a scan of the trade's own items.
+	private static Long packTradeKey( int tradeId, OfferRequire offerRequire, int seqno ) {
+		if( seqno < 0 )
+			return null;
+		long flag = offerRequire == OfferRequire.REQUIRE ? 1L : 0L;
+		return ( (long) tradeId << 32 ) | ( (long) seqno << 1 ) | flag;
 	}
 
 
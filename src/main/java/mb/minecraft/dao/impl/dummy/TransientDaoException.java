@@ -0,0 +1,21 @@
+package mb.minecraft.dao.impl.dummy;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * A failure that {@link DaoSimulation} injects in place of a DAO call. Like a
+ * dropped connection or a deadlock victim, the call did nothing and may
+ * succeed if retried. It is a Spring TransientDataAccessException, so retry
+ * logic keyed on that treats it as it would a real one.
+ *
+ * @author mikebro
+ */
+public class TransientDaoException extends TransientDataAccessResourceException {
+
+	private static final long serialVersionUID = 1L;
+
+
+	public TransientDaoException( String message ) {
+		super( message );
+	}
+}
@@ -0,0 +1,76 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Secondary index over a unique column of a dummy table, mapping each key to
+ * the ID of the row holding it.
+ * <p>
+ * The key each row was indexed under is remembered by row ID, so a row whose
+ * key was changed in place (callers mutate the object they selected and then
+ * pass it to update) can still be moved to its new key.
+ * <p>
+ * Keys are taken with putIfAbsent, so in concurrent mode two writers racing for
+ * the same key cannot both win. Callers serialize writes to any one row ID.
+ * <p>
+ * The index follows the latest rows. Over a versioned table, a row found by
+ * key is checked against the row the reader sees, and the rows with versions
+ * are searched for one that held the key before it was written.
+ *
+ * @author mikebro
+ */
+class UniqueIndex<K,T> {
+
+	private final RowTable<T> table;
+	private final Function<T,K> keyOf;
+	private final Map<K,Integer> idsByKey;
+	private final Map<Integer,K> keysById;
+
+
+	UniqueIndex( RowTable<T> table, Function<T,K> keyOf, boolean concurrent ) {
+		this.table = table;
+		this.keyOf = keyOf;
+		this.idsByKey = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+		this.keysById = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+	}
+
+	T get( K key ) {
+		if( key == null )
+			return null;
+		Integer id = idsByKey.get( key );
+		T row = id != null ? table.get( id ) : null;
+		if( !table.isVersioned() || row != null && key.equals( keyOf.apply( row ) ) )
+			return row;
+		Map<Integer,T> held = table.changedRows( r -> key.equals( keyOf.apply( r ) ) );
+		return held.isEmpty() ? null : held.values().iterator().next();
+	}
+
+	/**
+	 * Files row ID under key, releasing whatever key it held before. A null key
+	 * is not indexed, the same way a SQL unique index ignores NULL.
+	 * @return the ID of another row already holding key, in which case nothing
+	 * was changed, or null on success
+	 */
+	Integer claim( int id, K key ) {
+		if( key != null ) {
+			Integer holder = idsByKey.putIfAbsent( key, id );
+			if( holder != null && holder.intValue() != id )
+				return holder;
+		}
+		K oldKey = key != null ? keysById.put( id, key ) : keysById.remove( id );
+		if( oldKey != null && !oldKey.equals( key ) ) {
+			idsByKey.remove( oldKey, id );
+		}
+		return null;
+	}
+
+	void remove( int id ) {
+		K oldKey = keysById.remove( id );
+		if( oldKey != null ) {
+			idsByKey.remove( oldKey, id );
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * {@link RowTable} for transactions, see {@link DummyTransaction}.
+ * <p>
+ * The wrapped table always holds the latest row written under each ID,
+ * committed or not, so writers and the indexes work on it as they always
+ * have. A row being written also gets a chain of versions here, newest first:
+ * the latest, which stands for the row in the wrapped table, then a copy of
+ * each row it replaced, each tagged with the transaction that wrote it. A
+ * reader walks the chain to the first version it can see. Versions are
+ * dropped once no open transaction is old enough to need them, so a table
+ * nobody is writing has none and reads go straight through.
+ * <p>
+ * Reads in a transaction return copies of the rows, so that a row changed in
+ * place before it is passed to update does not change for anyone else first.
+ *
+ * @author mikebro
+ */
+class VersionedRowTable<T> implements RowTable<T> {
+
+	private final RowTable<T> table;
+	private final RowCodec<T> codec;
+	private final Map<Integer,Version<T>> versions;
+	// counts new chains and new heads, so a scan can tell it raced with a writer
+	private final AtomicLong pushes;
+	private ObjIntConsumer<T> reindex;
+
+
+	VersionedRowTable( RowTable<T> table, RowCodec<T> codec ) {
+		this.table = table;
+		this.codec = codec;
+		this.versions = new ConcurrentHashMap<>();
+		this.pushes = new AtomicLong();
+	}
+
+	@Override
+	public T get( int id ) {
+		DummyTransaction reader = DummyTransaction.reader();
+		return copyFor( reader, resolve( id, reader, DummyTransaction.readPoint( reader ) ) );
+	}
+
+	@Override
+	public boolean containsKey( int id ) {
+		DummyTransaction reader = DummyTransaction.reader();
+		return resolve( id, reader, DummyTransaction.readPoint( reader ) ) != null;
+	}
+
+	@Override
+	public T put( int id, T row ) {
+		beforeWrite( id );
+		return table.put( id, row );
+	}
+
+	@Override
+	public T replace( int id, T row ) {
+		if( !table.containsKey( id ) )
+			return null;
+		beforeWrite( id );
+		return table.replace( id, row );
+	}
+
+	@Override
+	public T remove( int id ) {
+		if( !table.containsKey( id ) )
+			return null;
+		beforeWrite( id );
+		return table.remove( id );
+	}
+
+	// the latest rows, the same as the wrapped table
+	@Override
+	public int size() {
+		return table.size();
+	}
+
+	@Override
+	public void ensureCapacity( int additional ) {
+		table.ensureCapacity( additional );
+	}
+
+	@Override
+	public List<T> rows() {
+		return scan();
+	}
+
+	@Override
+	public void forEach( Consumer<? super T> action ) {
+		scan().forEach( action );
+	}
+
+	@Override
+	public boolean load( Consumer<? super T> insert ) {
+		return table.load( insert );
+	}
+
+	@Override
+	public int maxId() {
+		return table.maxId();
+	}
+
+	@Override
+	public void close() {
+		table.close();
+	}
+
+	@Override
+	public boolean isVersioned() {
+		return true;
+	}
+
+	@Override
+	public boolean isChanged( int id ) {
+		return versions.containsKey( id );
+	}
+
+	@Override
+	public Map<Integer,T> changedRows( Predicate<? super T> filter ) {
+		if( versions.isEmpty() )
+			return Collections.emptyMap();
+		DummyTransaction reader = DummyTransaction.reader();
+		long readPoint = DummyTransaction.readPoint( reader );
+		Map<Integer,T> rows = new LinkedHashMap<>();
+		for( Integer id : versions.keySet() ) {
+			T row = resolve( id, reader, readPoint );
+			if( row != null && filter.test( row ) ) {
+				rows.put( id, copyFor( reader, row ) );
+			}
+		}
+		return rows;
+	}
+
+	@Override
+	public void onRollback( ObjIntConsumer<T> reindex ) {
+		this.reindex = reindex;
+	}
+
+	/**
+	 * Puts back the rows tx wrote under ids, and drops its versions of them.
+	 * Called by tx under the write lock, which it has held since it wrote them.
+	 */
+	void rollback( DummyTransaction tx, List<Integer> ids ) {
+		Set<Integer> touched = new HashSet<>( ids );
+		for( int id : touched ) {
+			T before = versions.get( id ).older.row;
+			if( before != null ) {
+				table.put( id, before );
+			} else {
+				table.remove( id );
+			}
+		}
+		if( reindex != null ) {
+			for( int id : touched ) {
+				reindex.accept( null, id );
+			}
+			for( int id : touched ) {
+				T row = table.get( id );
+				if( row != null ) {
+					reindex.accept( row, id );
+				}
+			}
+		}
+		for( int id : touched ) {
+			Version<T> older = versions.get( id ).older;
+			if( older.writer == null && older.older == null ) {
+				versions.remove( id );
+			} else {
+				versions.put( id, older );
+			}
+		}
+	}
+
+	/**
+	 * Drops every version older than the newest one committed by horizon,
+	 * and the chain itself if that is its latest.
+	 * @return true if no versions are left
+	 */
+	boolean purge( long horizon ) {
+		for( Map.Entry<Integer,Version<T>> entry : versions.entrySet() ) {
+			Version<T> head = entry.getValue();
+			if( head.committedBy( horizon ) ) {
+				versions.remove( entry.getKey(), head );
+				continue;
+			}
+			for( Version<T> v = head.older; v != null; v = v.older ) {
+				if( v.committedBy( horizon ) ) {
+					v.older = null;
+					break;
+				}
+			}
+		}
+		return versions.isEmpty();
+	}
+
+
+
+	private void beforeWrite( int id ) {
+		DummyTransaction writer = DummyTransaction.writer();
+		if( writer == null )
+			return;
+		Version<T> head = versions.get( id );
+		if( head != null && head.writer == writer )
+			return;
+		if( head != null && head.writer != null && !head.writer.isCommitted() )
+			throw new ConcurrencyFailureException( "Row " + id + " is being written by another transaction" );
+		Version<T> older = head != null ? head : new Version<>( null );
+		T before = table.get( id );
+		older.row = before != null ? RowCodecs.copy( codec, before ) : null;
+		versions.put( id, new Version<>( writer, older ) );
+		pushes.incrementAndGet();
+		writer.wrote( this, id );
+	}
+
+	// the version of row id visible at readPoint; the chain and the row are
+	// read until they agree, as a writer adds to the chain before the table
+	private T resolve( int id, DummyTransaction reader, long readPoint ) {
+		while( true ) {
+			Version<T> head = versions.get( id );
+			T latest = table.get( id );
+			if( head == null )
+				return latest;
+			if( versions.get( id ) == head )
+				return visible( head, latest, reader, readPoint );
+		}
+	}
+
+	private T visible( Version<T> head, T latest, DummyTransaction reader, long readPoint ) {
+		if( head.visibleTo( reader, readPoint ) )
+			return latest;
+		for( Version<T> v = head.older; v != null; v = v.older ) {
+			if( v.visibleTo( reader, readPoint ) )
+				return v.row;
+		}
+		return null;
+	}
+
+	private List<T> scan() {
+		DummyTransaction reader = DummyTransaction.reader();
+		long readPoint = DummyTransaction.readPoint( reader );
+		while( true ) {
+			long stamp = pushes.get();
+			Map<Integer,Version<T>> changed = versions.isEmpty() ? Collections.emptyMap() : new HashMap<>( versions );
+			Set<Integer> seen = new HashSet<>();
+			List<T> rows = new ArrayList<>( table.size() );
+			table.forEach( latest -> {
+				int id = codec.id( latest );
+				Version<T> head = changed.get( id );
+				T row = latest;
+				if( head != null ) {
+					seen.add( id );
+					row = visible( head, latest, reader, readPoint );
+				}
+				if( row != null ) {
+					rows.add( copyFor( reader, row ) );
+				}
+			} );
+			// rows deleted by a writer the reader can't see yet
+			for( Map.Entry<Integer,Version<T>> entry : changed.entrySet() ) {
+				if( !seen.contains( entry.getKey() ) ) {
+					T row = visible( entry.getValue(), null, reader, readPoint );
+					if( row != null ) {
+						rows.add( copyFor( reader, row ) );
+					}
+				}
+			}
+			if( pushes.get() == stamp )
+				return rows;
+		}
+	}
+
+	private T copyFor( DummyTransaction reader, T row ) {
+		return row != null && reader != null && reader.readsCopies() ? RowCodecs.copy( codec, row ) : row;
+	}
+
+
+
+	private static class Version<T> {
+		// null for the versions made before anything was versioned, which
+		// every reader sees
+		final DummyTransaction writer;
+		// set once this stops being the latest version
+		volatile T row;
+		volatile Version<T> older;
+
+		Version( DummyTransaction writer ) {
+			this.writer = writer;
+		}
+
+		Version( DummyTransaction writer, Version<T> older ) {
+			this.writer = writer;
+			this.older = older;
+		}
+
+		boolean visibleTo( DummyTransaction reader, long readPoint ) {
+			return writer == null || writer == reader || writer.committedBy( readPoint );
+		}
+
+		boolean committedBy( long horizon ) {
+			return writer == null || writer.committedBy( horizon );
+		}
+	}
+}
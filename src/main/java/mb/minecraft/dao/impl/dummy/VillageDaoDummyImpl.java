@@ -1,15 +1,16 @@
 package mb.minecraft.dao.impl.dummy;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import mb.minecraft.dao.DaoConstraintException;
@@ -25,91 +26,244 @@ public class VillageDaoDummyImpl implements VillageDao {
 
 	private static final Logger logger = LogManager.getLogger( VillageDaoDummyImpl.class );
 
-	private Map<Integer,Village> villageTable;
-	private int idSeq;
+	@Autowired( required = false )
+	ForeignKeys foreignKeys;
+
+	private RowTable<Village> villageTable;
+	private TableSnapshot<Village> allRows;
+	private RowVersions versions;
+	private UniqueIndex<String,Village> nameIndex;
+	private StripedLocks rowLocks;
+	private AtomicInteger idSeq;
+	private TableInit tableInit;
 
 
 	@PostConstruct
 	public void init() {
 		logger.info( "VillageDaoDummyImpl.init()" );
+		tableInit.onInit();
 	}
 
 
 	private VillageDaoDummyImpl() {
 		logger.info( "VillageDaoDummyImpl constructor" );
-		this.villageTable = new HashMap<>();
-		this.idSeq = 0;
-		for( Village v : generateMockData() ) {
-			insertOne( v );
-		}
+		boolean concurrent = DummyDaoSettings.isConcurrent();
+		this.villageTable = RowTable.create( concurrent, "village", RowCodecs.VILLAGE );
+		this.allRows = new TableSnapshot<>( villageTable, DummyDaoSettings.isSnapshotReads() );
+		this.versions = new RowVersions( "Village", concurrent );
+		this.nameIndex = new UniqueIndex<>( villageTable, Village::getName, concurrent );
+		villageTable.onRollback( this::reindex );
+		this.rowLocks = new StripedLocks( concurrent );
+		this.idSeq = new AtomicInteger();
+		this.tableInit = new TableInit( "Village", DummyDaoSettings.initMode(), this::fill );
+		tableInit.onConstructed();
 	}
 
 	@Override
 	public Village selectOneById( int id ) {
+		tableInit.await();
 		return villageTable.get( id );
 	}
 
+	public List<Village> selectByIds( int... ids ) {
+		tableInit.await();
+		return villageTable.get( ids );
+	}
+
 	@Override
 	public Village selectOneByName( String name ) {
-		Optional<Village> optionalVillage = villageTable.values().stream()
-				.filter( v -> v.getName().equals( name ) )
-				.findFirst();
-		if( optionalVillage.isPresent() )
-			return optionalVillage.get();
-		else
-			return null;
+		tableInit.await();
+		return nameIndex.get( name );
 	}
 
 	@Override
 	public List<Village> selectAll() {
-		return new ArrayList<>( villageTable.values() );
+		tableInit.await();
+		return allRows.selectAll();
 	}
 
 	@Override
 	public Village insertOne( Village newRow ) {
+		tableInit.await();
 		newRow.setId( deriveId( newRow ) );
-		testUniqueIdConstraint( newRow );
-		testUniqueNameConstraint( newRow );
-		villageTable.put( newRow.getId(), newRow );
+		insertLocked( newRow );
 		return newRow;
 	}
 
+	public List<Village> insert( List<Village> newRowSet ) {
+		tableInit.await();
+		BatchInsert.assignIds( newRowSet, Village::getId, Village::setId, idSeq );
+		BatchInsert.checkIds( newRowSet, Village::getId, villageTable, "Village", "ID" );
+		BatchInsert.checkUnique( newRowSet, Village::getName, nameIndex::get, "Village", "NAME" );
+		villageTable.ensureCapacity( newRowSet.size() );
+		BatchInsert.publish( newRowSet, this::insertLocked, row -> deleteLocked( row.getId() ) );
+		return newRowSet;
+	}
+
+	/** @return the version of row id, to pass to update( row, expectedVersion ), or -1 if there is no such row */
+	public long versionOf( int id ) {
+		tableInit.await();
+		return versions.get( id );
+	}
+
 	@Override
 	public Village update( Village village ) {
-		if( villageTable.containsKey( village.getId() ) ) {
-			villageTable.put( village.getId(), village );
-			return village;
-		}
-		return null;
+		return update( village, RowVersions.ANY );
+	}
+
+	/**
+	 * Updates the row only if it is still at expectedVersion, read with
+	 * versionOf before the row itself was read.
+	 * @throws StaleRowException if another update got there first
+	 */
+	public Village update( Village village, long expectedVersion ) {
+		tableInit.await();
+		if( village.getId() == null )
+			return null;
+		return updateLocked( village, expectedVersion );
 	}
 
 	@Override
 	public boolean deleteOne( Village village ) {
-		if( villageTable.containsKey( village.getId() ) ) {
-			villageTable.remove( village.getId() );
-			return true;
-		} else {
+		tableInit.await();
+		if( village.getId() == null )
 			return false;
+		if( foreignKeys != null && villageTable.containsKey( village.getId() ) )
+			return foreignKeys.delete( "Village", village.getId(), () -> deleteLocked( village.getId() ) );
+		return deleteLocked( village.getId() );
+	}
+
+	void restore( Village row ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( row.getId() + 1, Math::max );
+		insertLocked( row );
+	}
+
+	// restore for a batch: room is made and the ID sequence moved once for all of it
+	void restore( List<Village> rows ) {
+		tableInit.await();
+		BatchInsert.advancePast( rows, Village::getId, idSeq );
+		villageTable.ensureCapacity( rows.size() );
+		BatchInsert.publish( rows, this::insertLocked, row -> deleteLocked( row.getId() ) );
+	}
+
+	// For DummyDataSnapshot. Deletes every row, skipping the foreign key
+	// checks; only their IDs are collected first.
+	void deleteAll() {
+		tableInit.await();
+		for( int id : villageTable.ids( Village::getId ) ) {
+			deleteLocked( id );
 		}
 	}
 
+	void forEachRow( Consumer<? super Village> action ) {
+		tableInit.await();
+		villageTable.forEach( action );
+	}
+
+	int nextId() {
+		tableInit.await();
+		return idSeq.get();
+	}
+
+	void advanceNextId( int nextId ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( nextId, Math::max );
+	}
+
+	TableInit tableInit() {
+		return tableInit;
+	}
+
 	@Override
 	public void destroy() throws Exception {
 		logger.info( "Shutting down VillageDaoDummyImpl" );
+		tableInit.close();
+		villageTable.close();
 	}
 
 
 
+	private void fill() {
+		if( villageTable.load( this::restore ) ) {
+			idSeq.accumulateAndGet( villageTable.maxId() + 1, Math::max );
+		} else {
+			for( Village v : generateMockData() ) {
+				insertOne( v );
+			}
+		}
+	}
+
 	private int deriveId( Village newRow ) {
 		int newId = newRow.getId() != null ? newRow.getId() : 0;
-		if( idSeq <= newId ) {
-			idSeq = newId + 1;
+		if( newId > 0 ) {
+			idSeq.accumulateAndGet( newId + 1, Math::max );
 			return newId;
 		}
-		if( newId > 0 )
-			return newId;
-		else
-			return idSeq++;
+		return idSeq.getAndIncrement();
+	}
+
+	private Village updateLocked( Village village, long expectedVersion ) {
+		Lock lock = rowLocks.stripe( village.getId() );
+		lock.lock();
+		try {
+			return versions.update( village.getId(), expectedVersion, village, () -> {
+				if( !villageTable.containsKey( village.getId() ) )
+					return null;
+				claimUniqueName( village );
+				villageTable.put( village.getId(), village );
+				allRows.invalidate();
+				return village;
+			} );
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void insertLocked( Village newRow ) {
+		Lock lock = rowLocks.stripe( newRow.getId() );
+		lock.lock();
+		try {
+			testUniqueIdConstraint( newRow );
+			claimUniqueName( newRow );
+			try {
+				villageTable.put( newRow.getId(), newRow );
+			} catch( RuntimeException | Error e ) {
+				nameIndex.remove( newRow.getId() );
+				throw e;
+			}
+			versions.inserted( newRow.getId() );
+			allRows.invalidate();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean deleteLocked( int id ) {
+		Lock lock = rowLocks.stripe( id );
+		lock.lock();
+		try {
+			if( villageTable.remove( id ) == null )
+				return false;
+			allRows.invalidate();
+			versions.deleted( id );
+			nameIndex.remove( id );
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// puts a row a rollback restored back in the name index
+	private void reindex( Village row, int id ) {
+		if( row != null ) {
+			nameIndex.claim( id, row.getName() );
+			versions.inserted( id );
+		} else {
+			versions.deleted( id );
+			nameIndex.remove( id );
+		}
+		allRows.invalidate();
 	}
 
 	private void testUniqueIdConstraint( Village row ) {
@@ -119,9 +273,8 @@ public class VillageDaoDummyImpl implements VillageDao {
 		}
 	}
 
-	private void testUniqueNameConstraint( Village row ) {
-		Village v = this.selectOneByName( row.getName() );
-		if( v != null ) {
+	private void claimUniqueName( Village row ) {
+		if( nameIndex.claim( row.getId(), row.getName() ) != null ) {
 			throw new DaoConstraintException(
 					String.format( DaoConstraintException.UNIQUE_CONSTRAINT_ERROR, "Village", "NAME" ), row );
 		}
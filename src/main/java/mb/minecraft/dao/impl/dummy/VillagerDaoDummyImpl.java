@@ -2,16 +2,17 @@ package mb.minecraft.dao.impl.dummy;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import mb.minecraft.dao.DaoConstraintException;
@@ -28,102 +29,309 @@ public class VillagerDaoDummyImpl implements VillagerDao {
 
 	private static final Logger logger = LogManager.getLogger( VillagerDaoDummyImpl.class );
 
-	private Map<Integer,Villager> villagerTable;
-	private int idSeq;
+	@Autowired( required = false )
+	ForeignKeys foreignKeys;
+
+	private RowTable<Villager> villagerTable;
+	private TableSnapshot<Villager> allRows;
+	private RowVersions versions;
+	private UniqueIndex<String,Villager> nameIndex;
+	private ForeignKeyIndex<Villager> villageIndex;
+	private ForeignKeyIndex<Villager> typeIndex;
+	private StripedLocks rowLocks;
+	private AtomicInteger idSeq;
+	private TableInit tableInit;
 
 
 	@PostConstruct
 	public void init() {
 		logger.info( "VillagerDaoDummyImpl.init()" );
+		tableInit.onInit();
 	}
 
 
 	private VillagerDaoDummyImpl() {
 		logger.info( "VillagerDaoDummyImpl constructor" );
-		this.villagerTable = new HashMap<>();
-		this.idSeq = 0;
-		for( Villager v : generateMockData() ) {
-			insertOne( v );
-		}
+		boolean concurrent = DummyDaoSettings.isConcurrent();
+		this.villagerTable = RowTable.create( concurrent, "villager", RowCodecs.VILLAGER );
+		this.allRows = new TableSnapshot<>( villagerTable, DummyDaoSettings.isSnapshotReads() );
+		this.versions = new RowVersions( "Villager", concurrent );
+		this.nameIndex = new UniqueIndex<>( villagerTable, Villager::getName, concurrent );
+		this.villageIndex = new ForeignKeyIndex<>( villagerTable, Villager::getVillageId, concurrent );
+		this.typeIndex = new ForeignKeyIndex<>( villagerTable, Villager::getTypeId, concurrent );
+		villagerTable.onRollback( this::reindex );
+		this.rowLocks = new StripedLocks( concurrent );
+		this.idSeq = new AtomicInteger();
+		this.tableInit = new TableInit( "Villager", DummyDaoSettings.initMode(), this::fill );
+		tableInit.onConstructed();
 	}
 
 	@Override
 	public Villager selectOneById( int id ) {
+		tableInit.await();
 		return villagerTable.get( id );
 	}
 
+	public List<Villager> selectByIds( int... ids ) {
+		tableInit.await();
+		return villagerTable.get( ids );
+	}
+
 	@Override
 	public Villager selectOneByName( String name ) {
-		Optional<Villager> optionalVillager = villagerTable.values().stream()
-				.filter( v -> v.getName().equals( name ) )
-				.findFirst();
-		if( optionalVillager.isPresent() )
-			return optionalVillager.get();
-		else
-			return null;
+		tableInit.await();
+		return nameIndex.get( name );
 	}
 
 	@Override
 	public List<Villager> selectAll() {
-		return new ArrayList<>( villagerTable.values() );
+		tableInit.await();
+		return allRows.selectAll();
 	}
 
 	@Override
 	public List<Villager> selectAll( Village village ) {
+		tableInit.await();
 		if( village == null || village.getId() == null ) {
 			return Collections.emptyList();
 		} else {
-			return villagerTable.values().stream()
-					.filter( v -> village.getId().equals( v.getVillageId() ) )
-					.collect( Collectors.toList() );
+			return villageIndex.select( village.getId() );
 		}
 	}
 
+	/**
+	 * Any one villager of the given type, for callers that only need to know
+	 * whether the type is in use.
+	 * @return a villager with this typeId, or null if there is none
+	 */
+	public Villager selectAnyByTypeId( Integer typeId ) {
+		tableInit.await();
+		return typeIndex.first( typeId );
+	}
+
+	public int countByTypeId( Integer typeId ) {
+		tableInit.await();
+		return typeIndex.count( typeId );
+	}
+
+	public Villager selectAnyByVillageId( Integer villageId ) {
+		tableInit.await();
+		return villageIndex.first( villageId );
+	}
+
 	@Override
 	public Villager insertOne( Villager newRow ) {
+		tableInit.await();
 		newRow.setId( deriveId( newRow ) );
-		testUniqueIdConstraint( newRow );
-		testUniqueNameConstraint( newRow );
-		villagerTable.put( newRow.getId(), newRow );
+		insertChecked( newRow );
 		return newRow;
 	}
 
+	public List<Villager> insert( List<Villager> newRowSet ) {
+		tableInit.await();
+		BatchInsert.assignIds( newRowSet, Villager::getId, Villager::setId, idSeq );
+		BatchInsert.checkIds( newRowSet, Villager::getId, villagerTable, "Villager", "ID" );
+		BatchInsert.checkUnique( newRowSet, Villager::getName, nameIndex::get, "Villager", "NAME" );
+		if( foreignKeys != null ) {
+			for( Villager row : newRowSet ) {
+				foreignKeys.checkParents( "Villager", row );
+			}
+		}
+		villagerTable.ensureCapacity( newRowSet.size() );
+		BatchInsert.publish( newRowSet, this::insertChecked, row -> deleteLocked( row.getId() ) );
+		return newRowSet;
+	}
+
+	/** @return the version of row id, to pass to update( row, expectedVersion ), or -1 if there is no such row */
+	public long versionOf( int id ) {
+		tableInit.await();
+		return versions.get( id );
+	}
+
 	@Override
 	public Villager update( Villager villager ) {
-		if( villagerTable.containsKey( villager.getId() ) ) {
-			villagerTable.put( villager.getId(), villager );
-			return villager;
-		}
-		return null;
+		return update( villager, RowVersions.ANY );
+	}
+
+	/**
+	 * Updates the row only if it is still at expectedVersion, read with
+	 * versionOf before the row itself was read.
+	 * @throws StaleRowException if another update got there first
+	 */
+	public Villager update( Villager villager, long expectedVersion ) {
+		tableInit.await();
+		if( villager.getId() == null )
+			return null;
+		return withParents( villager, () -> updateLocked( villager, expectedVersion ) );
 	}
 
 	@Override
 	public boolean deleteOne( Villager villager ) {
-		if( villagerTable.containsKey( villager.getId() ) ) {
-			villagerTable.remove( villager.getId() );
-			return true;
-		} else {
+		tableInit.await();
+		if( villager.getId() == null )
 			return false;
+		if( foreignKeys != null && villagerTable.containsKey( villager.getId() ) )
+			return foreignKeys.delete( "Villager", villager.getId(), () -> deleteLocked( villager.getId() ) );
+		return deleteLocked( villager.getId() );
+	}
+
+	void restore( Villager row ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( row.getId() + 1, Math::max );
+		insertLocked( row );
+	}
+
+	// restore for a batch: room is made and the ID sequence moved once for all of it
+	void restore( List<Villager> rows ) {
+		tableInit.await();
+		BatchInsert.advancePast( rows, Villager::getId, idSeq );
+		villagerTable.ensureCapacity( rows.size() );
+		BatchInsert.publish( rows, this::insertLocked, row -> deleteLocked( row.getId() ) );
+	}
+
+	// For DummyDataSnapshot. Deletes every row, skipping the foreign key
+	// checks; only their IDs are collected first.
+	void deleteAll() {
+		tableInit.await();
+		for( int id : villagerTable.ids( Villager::getId ) ) {
+			deleteLocked( id );
 		}
 	}
 
+	void forEachRow( Consumer<? super Villager> action ) {
+		tableInit.await();
+		villagerTable.forEach( action );
+	}
+
+	int nextId() {
+		tableInit.await();
+		return idSeq.get();
+	}
+
+	void advanceNextId( int nextId ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( nextId, Math::max );
+	}
+
+	TableInit tableInit() {
+		return tableInit;
+	}
+
 	@Override
 	public void destroy() throws Exception {
 		logger.info( "Shutting down VillagerDaoDummyImpl" );
+		tableInit.close();
+		villagerTable.close();
 	}
 
 
 
+	private void fill() {
+		if( villagerTable.load( this::restore ) ) {
+			idSeq.accumulateAndGet( villagerTable.maxId() + 1, Math::max );
+		} else {
+			for( Villager v : generateMockData() ) {
+				insertOne( v );
+			}
+		}
+	}
+
 	private int deriveId( Villager newRow ) {
 		int newId = newRow.getId() != null ? newRow.getId() : 0;
-		if( idSeq <= newId ) {
-			idSeq = newId + 1;
+		if( newId > 0 ) {
+			idSeq.accumulateAndGet( newId + 1, Math::max );
 			return newId;
 		}
-		if( newId > 0 )
-			return newId;
-		else
-			return idSeq++;
+		return idSeq.getAndIncrement();
+	}
+
+	// the parents' key stripes are taken before any of this DAO's locks
+	private <R> R withParents( Villager row, Supplier<R> write ) {
+		return foreignKeys != null ? foreignKeys.withParents( "Villager", row, write ) : write.get();
+	}
+
+	private void insertChecked( Villager newRow ) {
+		withParents( newRow, () -> {
+			if( foreignKeys != null )
+				foreignKeys.checkParents( "Villager", newRow );
+			insertLocked( newRow );
+			return newRow;
+		} );
+	}
+
+	private Villager updateLocked( Villager villager, long expectedVersion ) {
+		Lock lock = rowLocks.stripe( villager.getId() );
+		lock.lock();
+		try {
+			return versions.update( villager.getId(), expectedVersion, villager, () -> {
+				if( !villagerTable.containsKey( villager.getId() ) )
+					return null;
+				if( foreignKeys != null )
+					foreignKeys.checkParents( "Villager", villager );
+				claimUniqueName( villager );
+				villagerTable.put( villager.getId(), villager );
+				allRows.invalidate();
+				villageIndex.put( villager.getId(), villager.getVillageId(), villager );
+				typeIndex.put( villager.getId(), villager.getTypeId(), villager );
+				return villager;
+			} );
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void insertLocked( Villager newRow ) {
+		Lock lock = rowLocks.stripe( newRow.getId() );
+		lock.lock();
+		try {
+			testUniqueIdConstraint( newRow );
+			claimUniqueName( newRow );
+			try {
+				villagerTable.put( newRow.getId(), newRow );
+			} catch( RuntimeException | Error e ) {
+				nameIndex.remove( newRow.getId() );
+				throw e;
+			}
+			versions.inserted( newRow.getId() );
+			allRows.invalidate();
+			villageIndex.put( newRow.getId(), newRow.getVillageId(), newRow );
+			typeIndex.put( newRow.getId(), newRow.getTypeId(), newRow );
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean deleteLocked( int id ) {
+		Lock lock = rowLocks.stripe( id );
+		lock.lock();
+		try {
+			if( villagerTable.remove( id ) == null )
+				return false;
+			allRows.invalidate();
+			versions.deleted( id );
+			nameIndex.remove( id );
+			villageIndex.remove( id );
+			typeIndex.remove( id );
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// puts a row a rollback restored back in the indexes
+	private void reindex( Villager row, int id ) {
+		if( row != null ) {
+			nameIndex.claim( id, row.getName() );
+			villageIndex.put( id, row.getVillageId(), row );
+			typeIndex.put( id, row.getTypeId(), row );
+			versions.inserted( id );
+		} else {
+			versions.deleted( id );
+			nameIndex.remove( id );
+			villageIndex.remove( id );
+			typeIndex.remove( id );
+		}
+		allRows.invalidate();
 	}
 
 	private void testUniqueIdConstraint( Villager row ) {
@@ -133,9 +341,8 @@ public class VillagerDaoDummyImpl implements VillagerDao {
 		}
 	}
 
-	private void testUniqueNameConstraint( Villager row ) {
-		Villager v = selectOneByName( row.getName() );
-		if( v != null ) {
+	private void claimUniqueName( Villager row ) {
+		if( nameIndex.claim( row.getId(), row.getName() ) != null ) {
 			throw new DaoConstraintException(
 					String.format( DaoConstraintException.UNIQUE_CONSTRAINT_ERROR, "Villager", "NAME" ), row );
 		}
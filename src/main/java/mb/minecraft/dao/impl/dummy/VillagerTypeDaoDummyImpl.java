@@ -3,11 +3,10 @@ package mb.minecraft.dao.impl.dummy;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
 
@@ -34,96 +33,230 @@ public class VillagerTypeDaoDummyImpl implements VillagerTypeDao {
 
 	@Autowired
 	VillagerDao villagerDao;
+	@Autowired( required = false )
+	VillagerDaoDummyImpl dummyVillagerDao;
+	@Autowired( required = false )
+	ForeignKeys foreignKeys;
 
 
-	private Map<Integer,VillagerType> villagerTypeTable;
-	private int idSeq;
+	private RowTable<VillagerType> villagerTypeTable;
+	private TableSnapshot<VillagerType> allRows;
+	private UniqueIndex<String,VillagerType> nameIndex;
+	private StripedLocks rowLocks;
+	private AtomicInteger idSeq;
+	private TableInit tableInit;
 
 
 	@PostConstruct
 	public void init() {
 		logger.info( "VillagerTypeDaoDummyImpl.init()" );
+		tableInit.onInit();
 	}
 
 
 	private VillagerTypeDaoDummyImpl() {
 		logger.info( "VillagerTypeDaoDummyImpl constructor" );
-		this.villagerTypeTable = new HashMap<>();
-		this.idSeq = 0;
-		for( VillagerType type : generateMockData() ) {
-			insertOne( type );
-		}
+		boolean concurrent = DummyDaoSettings.isConcurrent();
+		this.villagerTypeTable = RowTable.create( concurrent, "villagertype", RowCodecs.VILLAGER_TYPE );
+		this.allRows = new TableSnapshot<>( villagerTypeTable, DummyDaoSettings.isSnapshotReads() );
+		this.nameIndex = new UniqueIndex<>( villagerTypeTable, VillagerType::getProfession, concurrent );
+		villagerTypeTable.onRollback( this::reindex );
+		this.rowLocks = new StripedLocks( concurrent );
+		this.idSeq = new AtomicInteger();
+		this.tableInit = new TableInit( "VillagerType", DummyDaoSettings.initMode(), this::fill );
+		tableInit.onConstructed();
 	}
 
 	@Override
 	public VillagerType selectOneById( int id ) {
+		tableInit.await();
 		return villagerTypeTable.get( id );
 	}
 
+	public List<VillagerType> selectByIds( int... ids ) {
+		tableInit.await();
+		return villagerTypeTable.get( ids );
+	}
+
 	@Override
 	public VillagerType selectOneByName( String name ) {
-		Optional<VillagerType> optionalType = villagerTypeTable.values().stream()
-				.filter( t -> t.getProfession().equals( name ) )
-				.findFirst();
-		if( optionalType.isPresent() )
-			return optionalType.get();
-		else
-			return null;
+		tableInit.await();
+		return nameIndex.get( name );
 	}
 
 	@Override
 	public List<VillagerType> selectAll() {
-		return new ArrayList<>( villagerTypeTable.values() );
+		tableInit.await();
+		return allRows.selectAll();
 	}
 
 	@Override
 	public VillagerType insertOne( VillagerType newRow ) {
+		tableInit.await();
 		forceEntityId( newRow, deriveId( newRow ) );
-		testUniqueIdConstraint( newRow );
-		testUniqueNameConstraint( newRow );
-		villagerTypeTable.put( newRow.getId(), newRow );
+		insertLocked( newRow );
 		return newRow;
 	}
 
+	public List<VillagerType> insert( List<VillagerType> newRowSet ) {
+		tableInit.await();
+		BatchInsert.assignIds( newRowSet, VillagerType::getId, this::forceEntityId, idSeq );
+		BatchInsert.checkIds( newRowSet, VillagerType::getId, villagerTypeTable, "VillagerType", "ID" );
+		BatchInsert.checkUnique( newRowSet, VillagerType::getProfession, nameIndex::get, "VillagerType", "PROFESSION" );
+		villagerTypeTable.ensureCapacity( newRowSet.size() );
+		BatchInsert.publish( newRowSet, this::insertLocked, row -> deleteLocked( row.getId() ) );
+		return newRowSet;
+	}
+
 	@Override
 	public boolean deleteOne( VillagerType villagerType ) {
-		// this method must make sure that villagerType is not currently
-		// assigned to any Villager.
-		List<Villager> villagers = villagerDao.selectAll().stream()
-				.filter( v -> v.getTypeId() != null && v.getTypeId().equals( villagerType.getId() ) )
-				.collect( Collectors.toList() );
+		tableInit.await();
+		// with keys enforced, no villager can take the type between the check and the delete
+		if( foreignKeys != null && villagerType.getId() != null )
+			return foreignKeys.delete( "VillagerType", villagerType.getId(), () -> deleteUnreferenced( villagerType ) );
+		return deleteUnreferenced( villagerType );
+	}
 
-		if( villagers.size() == 0 ) {
-			if( villagerTypeTable.containsKey( villagerType.getId() ) ) {
-				villagerTypeTable.remove( villagerType.getId() );
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			throw new ForeignKeyConstraintException(
-					String.format( ForeignKeyConstraintException.FOREIGN_KEY_CONSTRAINT_ERROR, "VillagerType", villagerType.getId(), "Villager", villagers.get(0).getId() ) );
+	void restore( VillagerType row ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( row.getId() + 1, Math::max );
+		insertLocked( row );
+	}
 
+	// restore for a batch: room is made and the ID sequence moved once for all of it
+	void restore( List<VillagerType> rows ) {
+		tableInit.await();
+		BatchInsert.advancePast( rows, VillagerType::getId, idSeq );
+		villagerTypeTable.ensureCapacity( rows.size() );
+		BatchInsert.publish( rows, this::insertLocked, row -> deleteLocked( row.getId() ) );
+	}
+
+	// For DummyDataSnapshot. Deletes every row, skipping the foreign key
+	// checks; only their IDs are collected first.
+	void deleteAll() {
+		tableInit.await();
+		for( int id : villagerTypeTable.ids( VillagerType::getId ) ) {
+			deleteLocked( id );
 		}
 	}
 
+	void forEachRow( Consumer<? super VillagerType> action ) {
+		tableInit.await();
+		villagerTypeTable.forEach( action );
+	}
+
+	int nextId() {
+		tableInit.await();
+		return idSeq.get();
+	}
+
+	void advanceNextId( int nextId ) {
+		tableInit.await();
+		idSeq.accumulateAndGet( nextId, Math::max );
+	}
+
+	TableInit tableInit() {
+		return tableInit;
+	}
+
 	@Override
 	public void destroy() throws Exception {
 		logger.info( "Shutting down VillagerTypeDaoDummyImpl" );
+		tableInit.close();
+		villagerTypeTable.close();
 	}
 
 
 
+	private void fill() {
+		if( villagerTypeTable.load( this::restore ) ) {
+			idSeq.accumulateAndGet( villagerTypeTable.maxId() + 1, Math::max );
+		} else {
+			for( VillagerType type : generateMockData() ) {
+				insertOne( type );
+			}
+		}
+	}
+
+	// the dummy villager DAO indexes its villagers by type, and is asked
+	// directly, as ForeignKeys does, so that a metrics, simulation or cache
+	// proxy in front of villagerDao does not hide the index; any other
+	// implementation has to be searched, up to the first match
+	private Villager findReferencingVillager( VillagerType villagerType ) {
+		VillagerDaoDummyImpl indexed = dummyVillagerDao != null ? dummyVillagerDao
+				: villagerDao instanceof VillagerDaoDummyImpl ? (VillagerDaoDummyImpl) villagerDao : null;
+		if( indexed != null ) {
+			return indexed.selectAnyByTypeId( villagerType.getId() );
+		}
+		return villagerDao.selectAll().stream()
+				.filter( v -> v.getTypeId() != null && v.getTypeId().equals( villagerType.getId() ) )
+				.findFirst()
+				.orElse( null );
+	}
+
 	private int deriveId( VillagerType newRow ) {
 		int newId = newRow.getId() != null ? newRow.getId() : 0;
-		if( idSeq <= newId ) {
-			idSeq = newId + 1;
+		if( newId > 0 ) {
+			idSeq.accumulateAndGet( newId + 1, Math::max );
 			return newId;
 		}
-		if( newId > 0 )
-			return newId;
-		else
-			return idSeq++;
+		return idSeq.getAndIncrement();
+	}
+
+	private void insertLocked( VillagerType newRow ) {
+		Lock lock = rowLocks.stripe( newRow.getId() );
+		lock.lock();
+		try {
+			testUniqueIdConstraint( newRow );
+			claimUniqueName( newRow );
+			try {
+				villagerTypeTable.put( newRow.getId(), newRow );
+			} catch( RuntimeException | Error e ) {
+				nameIndex.remove( newRow.getId() );
+				throw e;
+			}
+			allRows.invalidate();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean deleteUnreferenced( VillagerType villagerType ) {
+		// this method must make sure that villagerType is not currently
+		// assigned to any Villager.
+		Villager villager = findReferencingVillager( villagerType );
+
+		if( villager == null ) {
+			return villagerType.getId() != null && deleteLocked( villagerType.getId() );
+		} else {
+			throw new ForeignKeyConstraintException(
+					String.format( ForeignKeyConstraintException.FOREIGN_KEY_CONSTRAINT_ERROR, "VillagerType", villagerType.getId(), "Villager", villager.getId() ) );
+
+		}
+	}
+
+	private boolean deleteLocked( int id ) {
+		Lock lock = rowLocks.stripe( id );
+		lock.lock();
+		try {
+			if( villagerTypeTable.remove( id ) == null )
+				return false;
+			allRows.invalidate();
+			nameIndex.remove( id );
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// puts a row a rollback restored back in the name index
+	private void reindex( VillagerType row, int id ) {
+		if( row != null ) {
+			nameIndex.claim( id, row.getProfession() );
+		} else {
+			nameIndex.remove( id );
+		}
+		allRows.invalidate();
 	}
 
 	private void testUniqueIdConstraint( VillagerType row ) {
@@ -133,9 +266,8 @@ public class VillagerTypeDaoDummyImpl implements VillagerTypeDao {
 		}
 	}
 
-	private void testUniqueNameConstraint( VillagerType row ) {
-		VillagerType t = selectOneByName( row.getProfession() );
-		if( t != null ) {
+	private void claimUniqueName( VillagerType row ) {
+		if( nameIndex.claim( row.getId(), row.getProfession() ) != null ) {
 			throw new DaoConstraintException(
 					String.format( DaoConstraintException.UNIQUE_CONSTRAINT_ERROR, "VillagerType", "PROFESSION" ), row );
 		}
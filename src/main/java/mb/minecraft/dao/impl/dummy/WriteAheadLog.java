@@ -0,0 +1,444 @@
+package mb.minecraft.dao.impl.dummy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * One dummy table on disk as a write-ahead log plus checkpoints.
+ * <p>
+ * Every put and remove is appended to the current log segment,
+ * <code>name.wal.N</code>, as the body length, an op byte, the row ID, the
+ * row as written by the table's {@link RowCodec} for a put, and a CRC32 of
+ * all that. Writers queue their record and then whichever of them gets the
+ * write lock first writes everything queued so far in one go, so a burst of
+ * writers shares one write() call, and one force() with <code>sync</code>.
+ * A record has reached the OS by the time put or remove returns, so it
+ * survives the JVM being killed.
+ * <p>
+ * Every <code>checkpointInterval</code> records the log moves on to a new
+ * segment and a background thread writes every row of the table, as its ID,
+ * length and body, to <code>name.ckpt</code>, after which the older segments
+ * are deleted. Opening reads the checkpoint and replays only the segments
+ * since, so replay is bounded by the interval. Replay of a segment stops at the first record that
+ * is short or fails its CRC, which is where a killed process stopped writing.
+ *
+ * @author mikebro
+ */
+final class WriteAheadLog<T> implements TableStore<T> {
+
+	private static final Logger logger = LogManager.getLogger( WriteAheadLog.class );
+
+	private static final int MAGIC = 0x4D424443;
+	private static final int VERSION = 1;
+	// magic, version, generation, highest ID, row count
+	private static final int CHECKPOINT_HEADER_SIZE = 20;
+	private static final int RECORD_HEADER_SIZE = 9;
+	private static final int CRC_SIZE = 4;
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+
+	private static final ExecutorService checkpointer = Executors.newSingleThreadExecutor( r -> {
+		Thread thread = new Thread( r, "dummy-dao-checkpoint" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	private final Path dir;
+	private final String name;
+	private final RowCodec<T> codec;
+	private final boolean sync;
+	private final int checkpointInterval;
+	private final Supplier<List<T>> rows;
+
+	// the write lock guards the segment, and is taken before the monitor, which guards the queue
+	private final ReentrantLock writeLock;
+	private FileChannel channel;
+	private int generation;
+	private ByteBuffer spare;
+	private long written;
+	private Future<?> checkpoint;
+
+	private final CRC32 crc;
+	private ByteBuffer pending;
+	private ByteBuffer scratch;
+	private long appended;
+	private int maxId;
+	private int sinceCheckpoint;
+
+	// latest put of each live ID, as slices of the mapped files; dropped once loaded
+	private IntTable<ByteBuffer> live;
+
+
+	private WriteAheadLog( Path dir, String name, RowCodec<T> codec, boolean sync, int checkpointInterval, Supplier<List<T>> rows ) {
+		this.dir = dir;
+		this.name = name;
+		this.codec = codec;
+		this.sync = sync;
+		this.checkpointInterval = checkpointInterval;
+		this.rows = rows;
+		this.writeLock = new ReentrantLock();
+		this.crc = new CRC32();
+		this.pending = ByteBuffer.allocate( 1 << 16 );
+		this.scratch = ByteBuffer.allocate( 256 );
+		this.maxId = -1;
+	}
+
+	/**
+	 * Opens the log of table name in dir, recovering whatever an earlier run
+	 * left there. rows is the table's content, for checkpoints.
+	 * @throws UncheckedIOException if the files cannot be read
+	 */
+	static <T> WriteAheadLog<T> open( Path dir, String name, RowCodec<T> codec, boolean sync, int checkpointInterval, Supplier<List<T>> rows ) {
+		WriteAheadLog<T> log = new WriteAheadLog<>( dir, name, codec, sync, checkpointInterval, rows );
+		try {
+			Files.createDirectories( dir );
+			log.recover();
+		} catch( IOException e ) {
+			log.close();
+			throw new UncheckedIOException( "Cannot open the log of " + name + " in " + dir, e );
+		}
+		return log;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return live == null || live.size() == 0;
+	}
+
+	@Override
+	public void load( Consumer<? super T> action ) {
+		if( live == null )
+			return;
+		IntTable<ByteBuffer> bodies = live;
+		live = null;
+		bodies.forEach( body -> action.accept( codec.read( body.duplicate() ) ) );
+	}
+
+	@Override
+	public synchronized int maxId() {
+		return maxId;
+	}
+
+	@Override
+	public void put( int id, T row ) {
+		commit( append( PUT, id, row ) );
+	}
+
+	@Override
+	public void remove( int id ) {
+		commit( append( DELETE, id, null ) );
+	}
+
+	@Override
+	public void close() {
+		Future<?> running;
+		writeLock.lock();
+		try {
+			if( channel == null )
+				return;
+			running = checkpoint;
+			try {
+				writePending();
+				channel.force( true );
+				channel.close();
+			} catch( IOException e ) {
+				logger.error( "Cannot close the log of " + name, e );
+			}
+			channel = null;
+			synchronized( this ) {
+				pending = null;
+				live = null;
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		if( running != null ) {
+			try {
+				running.get();
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			} catch( ExecutionException e ) {
+				logger.error( "Checkpoint of " + name + " failed", e.getCause() );
+			}
+		}
+	}
+
+
+
+	private synchronized long append( byte op, int id, T row ) {
+		if( pending == null )
+			throw new IllegalStateException( "The log of " + name + " is closed" );
+		ByteBuffer body = op == PUT ? ( scratch = RowCodecs.encode( codec, row, scratch ) ) : scratch.clear().flip();
+		int length = RECORD_HEADER_SIZE + body.remaining() + CRC_SIZE;
+		if( pending.remaining() < length ) {
+			ByteBuffer bigger = ByteBuffer.allocate( Math.max( pending.capacity() * 2, pending.position() + length ) );
+			pending.flip();
+			pending = bigger.put( pending );
+		}
+		int start = pending.position();
+		pending.putInt( body.remaining() ).put( op ).putInt( id ).put( body );
+		ByteBuffer record = pending.duplicate();
+		record.limit( pending.position() ).position( start );
+		crc.reset();
+		crc.update( record );
+		pending.putInt( (int) crc.getValue() );
+		if( op == PUT )
+			maxId = Math.max( maxId, id );
+		sinceCheckpoint++;
+		return ++appended;
+	}
+
+	private void commit( long seq ) {
+		writeLock.lock();
+		try {
+			if( written < seq )
+				writePending();
+			if( sinceCheckpoint() >= checkpointInterval && ( checkpoint == null || checkpoint.isDone() ) )
+				startCheckpoint();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private synchronized int sinceCheckpoint() {
+		return sinceCheckpoint;
+	}
+
+	// holding the write lock
+	private void writePending() {
+		ByteBuffer batch;
+		long last;
+		synchronized( this ) {
+			batch = pending;
+			last = appended;
+			pending = spare != null ? spare : ByteBuffer.allocate( batch.capacity() );
+			spare = null;
+		}
+		batch.flip();
+		try {
+			while( batch.hasRemaining() ) {
+				channel.write( batch );
+			}
+			if( sync )
+				channel.force( false );
+		} catch( IOException e ) {
+			throw new UncheckedIOException( "Cannot write the log of " + name, e );
+		}
+		written = last;
+		spare = batch.clear();
+	}
+
+	// Holding the write lock, and the monitor so nothing is queued meanwhile.
+	// A writer whose row is missing from the copy has yet to queue its record,
+	// so the record lands in the new segment.
+	private void startCheckpoint() {
+		int checkpointGeneration;
+		int checkpointMaxId;
+		List<T> snapshot;
+		synchronized( this ) {
+			writePending();
+			try {
+				channel.close();
+				channel = openSegment( generation + 1 );
+			} catch( IOException e ) {
+				throw new UncheckedIOException( "Cannot start a new log segment of " + name, e );
+			}
+			checkpointGeneration = ++generation;
+			checkpointMaxId = maxId;
+			snapshot = rows.get();
+			sinceCheckpoint = 0;
+		}
+		checkpoint = checkpointer.submit( () -> writeCheckpoint( checkpointGeneration, checkpointMaxId, snapshot ) );
+	}
+
+	private void writeCheckpoint( int checkpointGeneration, int checkpointMaxId, List<T> snapshot ) {
+		Path tmp = dir.resolve( name + ".ckpt.tmp" );
+		try {
+			try( FileChannel out = FileChannel.open( tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+				CRC32 checksum = new CRC32();
+				ByteBuffer buf = ByteBuffer.allocate( 1 << 16 );
+				ByteBuffer body = ByteBuffer.allocate( 256 );
+				buf.putInt( MAGIC ).putInt( VERSION ).putInt( checkpointGeneration ).putInt( checkpointMaxId ).putInt( snapshot.size() );
+				for( T row : snapshot ) {
+					body = RowCodecs.encode( codec, row, body );
+					if( buf.remaining() < 8 + body.remaining() ) {
+						drain( out, buf, checksum );
+						if( buf.capacity() < 8 + body.remaining() )
+							buf = ByteBuffer.allocate( 8 + body.remaining() );
+					}
+					buf.putInt( codec.id( row ) ).putInt( body.remaining() ).put( body );
+				}
+				drain( out, buf, checksum );
+				buf.putInt( (int) checksum.getValue() ).flip();
+				while( buf.hasRemaining() ) {
+					out.write( buf );
+				}
+				out.force( true );
+			}
+			Files.move( tmp, checkpointPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			for( int g : segmentGenerations() ) {
+				if( g < checkpointGeneration )
+					Files.deleteIfExists( segmentPath( g ) );
+			}
+			logger.info( "Checkpointed " + snapshot.size() + " rows of " + name + " at log segment " + checkpointGeneration );
+		} catch( IOException e ) {
+			logger.error( "Checkpoint of " + name + " failed", e );
+		}
+	}
+
+	private static void drain( FileChannel out, ByteBuffer buf, CRC32 checksum ) throws IOException {
+		buf.flip();
+		checksum.update( buf.duplicate() );
+		while( buf.hasRemaining() ) {
+			out.write( buf );
+		}
+		buf.clear();
+	}
+
+	private void recover() throws IOException {
+		live = new IntTable<>();
+		int checkpointGeneration = readCheckpoint();
+		int last = checkpointGeneration;
+		int replayed = 0;
+		for( int g : segmentGenerations() ) {
+			if( g < checkpointGeneration ) {
+				// left behind by a checkpoint that did not get to delete it
+				Files.delete( segmentPath( g ) );
+			} else {
+				replayed += replaySegment( segmentPath( g ) );
+			}
+			last = Math.max( last, g );
+		}
+		generation = last + 1;
+		channel = openSegment( generation );
+		// a long replay checkpoints on the first write
+		sinceCheckpoint = replayed;
+	}
+
+	private int readCheckpoint() throws IOException {
+		Path path = checkpointPath();
+		if( !Files.exists( path ) )
+			return 0;
+		MappedByteBuffer buf;
+		try( FileChannel in = FileChannel.open( path, StandardOpenOption.READ ) ) {
+			buf = in.map( FileChannel.MapMode.READ_ONLY, 0, in.size() );
+		}
+		int end = buf.capacity() - CRC_SIZE;
+		if( end < CHECKPOINT_HEADER_SIZE || buf.getInt( 0 ) != MAGIC || buf.getInt( 4 ) != VERSION )
+			throw new IOException( "Not a version " + VERSION + " checkpoint: " + path );
+		ByteBuffer content = buf.duplicate();
+		content.limit( end );
+		crc.reset();
+		crc.update( content );
+		if( (int) crc.getValue() != buf.getInt( end ) )
+			throw new IOException( "Checkpoint fails its CRC: " + path );
+
+		int checkpointGeneration = buf.getInt( 8 );
+		maxId = Math.max( maxId, buf.getInt( 12 ) );
+		int count = buf.getInt( 16 );
+		int p = CHECKPOINT_HEADER_SIZE;
+		for( int i = 0; i < count; i++ ) {
+			int length = buf.getInt( p + 4 );
+			live.put( buf.getInt( p ), slice( buf, p + 8, length ) );
+			p += 8 + length;
+		}
+		return checkpointGeneration;
+	}
+
+	private int replaySegment( Path path ) throws IOException {
+		MappedByteBuffer buf;
+		try( FileChannel in = FileChannel.open( path, StandardOpenOption.READ ) ) {
+			buf = in.size() == 0 ? null : in.map( FileChannel.MapMode.READ_ONLY, 0, in.size() );
+		}
+		if( buf == null ) {
+			Files.delete( path );
+			return 0;
+		}
+		int size = buf.capacity();
+		int records = 0;
+		int p = 0;
+		while( p < size ) {
+			int length = p + RECORD_HEADER_SIZE + CRC_SIZE <= size ? buf.getInt( p ) : -1;
+			int end = p + RECORD_HEADER_SIZE + length;
+			if( length < 0 || end + CRC_SIZE > size || end < 0 || !checksumMatches( buf, p, end ) ) {
+				logger.warn( "Ignoring the end of log segment " + path + " from offset " + p );
+				break;
+			}
+			int id = buf.getInt( p + 5 );
+			if( buf.get( p + 4 ) == PUT ) {
+				live.put( id, slice( buf, p + RECORD_HEADER_SIZE, length ) );
+				maxId = Math.max( maxId, id );
+			} else {
+				live.remove( id );
+			}
+			records++;
+			p = end + CRC_SIZE;
+		}
+		return records;
+	}
+
+	private boolean checksumMatches( ByteBuffer buf, int start, int end ) {
+		ByteBuffer record = buf.duplicate();
+		record.limit( end ).position( start );
+		crc.reset();
+		crc.update( record );
+		return (int) crc.getValue() == buf.getInt( end );
+	}
+
+	private static ByteBuffer slice( ByteBuffer buf, int start, int length ) {
+		ByteBuffer slice = buf.duplicate();
+		slice.limit( start + length ).position( start );
+		return slice.slice();
+	}
+
+	private FileChannel openSegment( int segmentGeneration ) throws IOException {
+		return FileChannel.open( segmentPath( segmentGeneration ),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+	}
+
+	private List<Integer> segmentGenerations() throws IOException {
+		List<Integer> generations = new ArrayList<>();
+		String prefix = name + ".wal.";
+		try( DirectoryStream<Path> files = Files.newDirectoryStream( dir, prefix + "*" ) ) {
+			for( Path file : files ) {
+				try {
+					generations.add( Integer.parseInt( file.getFileName().toString().substring( prefix.length() ) ) );
+				} catch( NumberFormatException e ) {
+					logger.warn( "Ignoring " + file );
+				}
+			}
+		}
+		Collections.sort( generations );
+		return generations;
+	}
+
+	private Path segmentPath( int segmentGeneration ) {
+		return dir.resolve( name + ".wal." + segmentGeneration );
+	}
+
+	private Path checkpointPath() {
+		return dir.resolve( name + ".ckpt" );
+	}
+}
@@ -0,0 +1,95 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+
+public class BatchInsertTest {
+
+	@Test
+	public void testFailedRowTakesBackTheBatch() {
+		List<Integer> table = new ArrayList<>();
+		IllegalStateException failure = new IllegalStateException( "Store is full" );
+
+		Exception e = assertThrows( IllegalStateException.class, () -> BatchInsert.publish( Arrays.asList( 1, 2, 3, 4 ),
+				row -> {
+					if( row == 3 )
+						throw failure;
+					table.add( row );
+				},
+				table::remove ) );
+		assertSame( failure, e );
+		assertTrue( table.isEmpty() );
+	}
+
+	@Test
+	public void testFailedGroupTakesBackEarlierGroups() {
+		StripedLocks locks = new StripedLocks( true );
+		List<Integer> table = new ArrayList<>();
+		List<Integer> takenBack = new ArrayList<>();
+
+		// rows 11 and 21 are under parent 1, 12 under parent 2; 22 fails
+		assertThrows( IllegalStateException.class, () -> BatchInsert.publish( Arrays.asList( 11, 12, 21, 22 ),
+				row -> row % 10, locks,
+				row -> {
+					if( row == 22 )
+						throw new IllegalStateException( "Store is full" );
+					table.add( row );
+				},
+				row -> {
+					table.remove( row );
+					takenBack.add( row );
+				} ) );
+		assertTrue( table.isEmpty() );
+		assertEquals( Arrays.asList( 12, 21, 11 ), takenBack );
+	}
+
+	@Test
+	public void testOtherParentsAreNotHeldUp() throws Exception {
+		StripedLocks locks = new StripedLocks( true );
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			List<Boolean> otherFree = new ArrayList<>();
+			BatchInsert.publish( Arrays.asList( 1 ), row -> row, locks,
+					row -> otherFree.add( tryStripe( executor, locks, 2 ) ),
+					row -> {} );
+			assertEquals( Arrays.asList( true ), otherFree );
+
+			List<Boolean> sameFree = new ArrayList<>();
+			BatchInsert.publish( Arrays.asList( 1 ), row -> row, locks,
+					row -> sameFree.add( tryStripe( executor, locks, 1 ) ),
+					row -> {} );
+			assertFalse( sameFree.get( 0 ) );
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	private static boolean tryStripe( ExecutorService executor, StripedLocks locks, int key ) {
+		try {
+			return executor.submit( () -> {
+				Lock lock = locks.stripe( key );
+				if( !lock.tryLock() )
+					return false;
+				lock.unlock();
+				return true;
+			} ).get( 10, TimeUnit.SECONDS );
+		} catch( Exception e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+}
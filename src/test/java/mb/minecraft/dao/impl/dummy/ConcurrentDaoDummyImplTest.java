@@ -0,0 +1,338 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static mb.minecraft.model.OfferRequire.OFFER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.dao.DaoConstraintException;
+import mb.minecraft.dao.ForeignKeyConstraintException;
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Villager;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConcurrentDaoDummyImplTest {
+
+	private static final int THREADS = 8;
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDao;
+
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDao;
+
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao;
+
+	@InjectMocks
+	TradeItemDaoDummyImpl tradeItemDao;
+
+
+	@BeforeClass
+	public static void enableConcurrentMode() {
+		System.setProperty( DummyDaoSettings.CONCURRENT, "true" );
+	}
+
+	@AfterClass
+	public static void disableConcurrentMode() {
+		System.clearProperty( DummyDaoSettings.CONCURRENT );
+	}
+
+
+	@Test
+	public void testConcurrentInsertLosesNothing() throws Exception {
+		int count = itemDao.selectAll().size();
+		int perThread = 2000;
+
+		runConcurrently( t -> {
+			for( int i = 0; i < perThread; i++ ) {
+				itemDao.insertOne( Item.builder().name( "Item " + t + "-" + i ).build() );
+			}
+		} );
+
+		List<Item> items = itemDao.selectAll();
+		assertEquals( count + THREADS * perThread, items.size() );
+		Set<Integer> ids = new HashSet<>();
+		for( Item item : items ) {
+			ids.add( item.getId() );
+			assertEquals( item.getId(), itemDao.selectOneByName( item.getName() ).getId() );
+		}
+		assertEquals( items.size(), ids.size() );
+	}
+
+	@Test
+	public void testConcurrentDuplicateNames() throws Exception {
+		int names = 500;
+		AtomicInteger inserted = new AtomicInteger();
+		AtomicInteger rejected = new AtomicInteger();
+
+		runConcurrently( t -> {
+			for( int i = 0; i < names; i++ ) {
+				try {
+					itemDao.insertOne( Item.builder().name( "Contested " + i ).build() );
+					inserted.incrementAndGet();
+				} catch( DaoConstraintException e ) {
+					rejected.incrementAndGet();
+				}
+			}
+		} );
+
+		assertEquals( names, inserted.get() );
+		assertEquals( ( THREADS - 1 ) * names, rejected.get() );
+		for( int i = 0; i < names; i++ ) {
+			assertNotNull( itemDao.selectOneByName( "Contested " + i ) );
+		}
+	}
+
+	@Test
+	public void testConcurrentRenames() throws Exception {
+		int perThread = 200;
+		List<Villager> villagers = new ArrayList<>();
+		for( int i = 0; i < THREADS * perThread; i++ ) {
+			villagers.add( villagerDao.insertOne( Villager.builder().name( "Villager " + i ).build() ) );
+		}
+
+		// every thread renames its own slice of villagers back and forth
+		runConcurrently( t -> {
+			for( int round = 0; round < 5; round++ ) {
+				for( int i = t * perThread; i < ( t + 1 ) * perThread; i++ ) {
+					Villager v = villagers.get( i );
+					v.setName( "Villager " + i + " round " + round );
+					villagerDao.update( v );
+				}
+			}
+		} );
+
+		for( int i = 0; i < villagers.size(); i++ ) {
+			assertNull( villagerDao.selectOneByName( "Villager " + i ) );
+			assertEquals( villagers.get( i ).getId(), villagerDao.selectOneByName( "Villager " + i + " round 4" ).getId() );
+		}
+	}
+
+	@Test
+	public void testConcurrentDerivedSeqno() throws Exception {
+		int perThread = 250;
+
+		runConcurrently( t -> {
+			for( int i = 0; i < perThread; i++ ) {
+				tradeDao.insertOne( Trade.builder().villagerId( 9000 ).build() );
+			}
+		} );
+
+		List<Trade> trades = tradeDao.selectAll( Villager.builder().id( 9000 ).build() );
+		assertEquals( THREADS * perThread, trades.size() );
+		Set<Integer> seqnos = new HashSet<>();
+		for( Trade trade : trades ) {
+			seqnos.add( trade.getTradeSeqno() );
+		}
+		assertEquals( trades.size(), seqnos.size() );
+	}
+
+	@Test
+	public void testConcurrentTradeKeys() throws Exception {
+		int seqnos = 300;
+		AtomicInteger inserted = new AtomicInteger();
+
+		runConcurrently( t -> {
+			for( int i = 1; i <= seqnos; i++ ) {
+				try {
+					tradeItemDao.insertOne( TradeItem.builder()
+							.tradeId( 500 )
+							.offerRequire( OFFER )
+							.seqno( i )
+							.quantity( t )
+							.itemId( 1001 )
+							.build() );
+					inserted.incrementAndGet();
+				} catch( DaoConstraintException e ) {
+					// another thread got there first
+				}
+			}
+		} );
+
+		assertEquals( seqnos, inserted.get() );
+		assertEquals( seqnos, tradeItemDao.selectAll( Trade.builder().id( 500 ).build() ).size() );
+	}
+
+
+	@Test
+	public void testConcurrentBulkInserts() throws Exception {
+		int tradesPerVillager = 50;
+		int count = tradeItemDao.selectAll().size();
+
+		// each importer loads its own villager's trade book, plus a shared one
+		runConcurrently( t -> {
+			for( int villagerId : new int[] { 8000 + t, 8100 } ) {
+				List<Trade> trades = new ArrayList<>();
+				for( int i = 0; i < tradesPerVillager; i++ ) {
+					trades.add( Trade.builder().villagerId( villagerId ).build() );
+				}
+				tradeDao.insert( trades );
+
+				List<TradeItem> items = new ArrayList<>();
+				for( Trade trade : trades ) {
+					items.add( TradeItem.builder().tradeId( trade.getId() ).offerRequire( OFFER ).seqno( 1 ).quantity( 1 ).itemId( 1001 ).build() );
+					items.add( TradeItem.builder().tradeId( trade.getId() ).offerRequire( OFFER ).seqno( 2 ).quantity( 1 ).itemId( 1002 ).build() );
+				}
+				tradeItemDao.insert( items );
+			}
+		} );
+
+		for( int t = 0; t < THREADS; t++ ) {
+			assertEquals( tradesPerVillager, tradeDao.selectAll( Villager.builder().id( 8000 + t ).build() ).size() );
+		}
+		List<Trade> shared = tradeDao.selectAll( Villager.builder().id( 8100 ).build() );
+		assertEquals( THREADS * tradesPerVillager, shared.size() );
+		Set<Integer> seqnos = new HashSet<>();
+		for( Trade trade : shared ) {
+			seqnos.add( trade.getTradeSeqno() );
+			assertEquals( 2, tradeItemDao.selectAll( trade ).size() );
+		}
+		assertEquals( shared.size(), seqnos.size() );
+		assertEquals( count + THREADS * 2 * tradesPerVillager * 2, tradeItemDao.selectAll().size() );
+	}
+
+
+	@Test
+	public void testVersionedUpdatesLoseNothing() throws Exception {
+		int perThread = 500;
+		villagerDao.update( Villager.builder().id( 73 ).name( "Tag 0" ).villageId( 201 ).typeId( 101 ).build() );
+
+		// every thread re-tags the same villager, counting up from the tag it read
+		runConcurrently( t -> {
+			for( int i = 0; i < perThread; ) {
+				long version = villagerDao.versionOf( 73 );
+				Villager read = villagerDao.selectOneById( 73 );
+				int tag = Integer.parseInt( read.getName().substring( 4 ) );
+				Villager tagged = Villager.builder().id( 73 ).name( "Tag " + ( tag + 1 ) )
+						.villageId( read.getVillageId() ).typeId( read.getTypeId() ).build();
+				try {
+					villagerDao.update( tagged, version );
+					i++;
+				} catch( StaleRowException e ) {
+					// another thread got there first; read again
+				}
+			}
+		} );
+
+		assertEquals( "Tag " + THREADS * perThread, villagerDao.selectOneById( 73 ).getName() );
+	}
+
+	@Test
+	public void testConcurrentBatchesAreAllOrNothing() throws Exception {
+		int batches = 300;
+
+		// every thread races for the same shared names, each batch bringing one of its own
+		runConcurrently( t -> {
+			for( int i = 0; i < batches; i++ ) {
+				try {
+					itemDao.insert( Arrays.asList(
+							Item.builder().name( "Own " + t + "-" + i ).build(),
+							Item.builder().name( "Shared " + i ).build() ) );
+				} catch( DaoConstraintException e ) {
+					// lost the race for this one
+				}
+			}
+		} );
+
+		for( int i = 0; i < batches; i++ ) {
+			Item shared = itemDao.selectOneByName( "Shared " + i );
+			assertNotNull( shared );
+			int winners = 0;
+			for( int t = 0; t < THREADS; t++ ) {
+				Item own = itemDao.selectOneByName( "Own " + t + "-" + i );
+				if( own != null ) {
+					winners++;
+					assertEquals( own.getId() + 1, shared.getId().intValue() );
+				}
+			}
+			assertEquals( 1, winners );
+		}
+	}
+
+	@Test
+	public void testCascadeLeavesNoOrphans() throws Exception {
+		System.setProperty( DummyDaoSettings.FOREIGN_KEYS, "cascade" );
+		ForeignKeys foreignKeys;
+		try {
+			foreignKeys = new ForeignKeys();
+		} finally {
+			System.clearProperty( DummyDaoSettings.FOREIGN_KEYS );
+		}
+		foreignKeys.itemDao = itemDao;
+		foreignKeys.villagerDao = villagerDao;
+		foreignKeys.tradeDao = tradeDao;
+		foreignKeys.tradeItemDao = tradeItemDao;
+		foreignKeys.init();
+		villagerDao.foreignKeys = foreignKeys;
+		tradeDao.foreignKeys = foreignKeys;
+		tradeItemDao.foreignKeys = foreignKeys;
+		Villager liam = Villager.builder().id( 699 ).build();
+
+		// thread 0 deletes Liam Z partway through; every trade is either
+		// refused or taken with him
+		runConcurrently( t -> {
+			for( int i = 0; i < 200; i++ ) {
+				if( t == 0 && i == 50 )
+					villagerDao.deleteOne( liam );
+				try {
+					tradeDao.insertOne( Trade.builder().villagerId( 699 ).build() );
+				} catch( ForeignKeyConstraintException e ) {
+					return;
+				}
+			}
+		} );
+
+		assertNull( villagerDao.selectOneById( 699 ) );
+		assertEquals( 0, tradeDao.selectAll( liam ).size() );
+	}
+
+
+	private interface Worker {
+		void run( int thread ) throws Exception;
+	}
+
+	private static void runConcurrently( Worker worker ) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool( THREADS );
+		CountDownLatch start = new CountDownLatch( 1 );
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for( int t = 0; t < THREADS; t++ ) {
+				int thread = t;
+				futures.add( pool.submit( () -> {
+					start.await();
+					worker.run( thread );
+					return null;
+				} ) );
+			}
+			start.countDown();
+			for( Future<?> f : futures ) {
+				f.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.dao.ItemDao;
+import mb.minecraft.dao.VillagerDao;
+import mb.minecraft.dao.impl.dummy.DaoCache.CacheStats;
+import mb.minecraft.dao.impl.dummy.DaoCache.Eviction;
+import mb.minecraft.dao.impl.dummy.DaoMetrics.MethodStats;
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Village;
+import mb.minecraft.model.Villager;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class DaoCacheTest {
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDaoImpl;
+
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDaoImpl;
+
+	// counts the calls that get past the cache
+	DaoMetrics backend = new DaoMetrics( "ItemDao" );
+
+
+	@Test
+	public void testReadThrough() {
+		DaoCache cache = DaoCache.builder().dao( "ItemDao" ).maximumSize( 100 ).build();
+		ItemDao itemDao = cache.wrap( ItemDao.class, backend.instrument( ItemDao.class, itemDaoImpl ) );
+
+		assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( 1, backendCalls( "selectOneById(int)" ) );
+
+		List<Item> all = itemDao.selectAll();
+		all.clear();
+		assertEquals( 18, itemDao.selectAll().size() );
+		assertEquals( 1, backendCalls( "selectAll()" ) );
+
+		// misses are not kept unless asked for
+		assertNull( itemDao.selectOneByName( "Stone" ) );
+		assertNull( itemDao.selectOneByName( "Stone" ) );
+		assertEquals( 2, backendCalls( "selectOneByName(String)" ) );
+
+		CacheStats stats = cache.getStats();
+		assertEquals( 2, stats.getHits() );
+		assertEquals( 4, stats.getMisses() );
+		assertEquals( 2, stats.getSize() );
+		assertEquals( 2.0 / 6, stats.getHitRate(), 1e-9 );
+
+		assertThrows( IllegalStateException.class, () -> cache.wrap( ItemDao.class, itemDaoImpl ) );
+	}
+
+	@Test
+	public void testWritesInvalidate() {
+		DaoCache cache = DaoCache.builder().dao( "ItemDao" ).maximumSize( 100 ).build();
+		ItemDao itemDao = cache.wrap( ItemDao.class, backend.instrument( ItemDao.class, itemDaoImpl ) );
+
+		Item emerald = itemDao.selectOneByName( "Emerald" );
+		itemDao.selectOneById( 1001 );
+		itemDao.selectOneById( 1002 );
+		itemDao.selectAll();
+
+		itemDao.update( Item.builder().id( 1001 ).name( "Green Gem" ).imageSource( emerald.getImageSource() ).build() );
+		assertNull( itemDao.selectOneByName( "Emerald" ) );
+		assertEquals( "Green Gem", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( "Green Gem", itemDao.selectAll().stream().filter( i -> i.getId() == 1001 ).findFirst().get().getName() );
+		// other rows stay cached
+		itemDao.selectOneById( 1002 );
+		assertEquals( 3, backendCalls( "selectOneById(int)" ) );
+		assertEquals( 2, backendCalls( "selectAll()" ) );
+
+		Item stone = itemDao.insertOne( Item.builder().name( "Stone" ).build() );
+		assertEquals( stone, itemDao.selectOneById( stone.getId() ) );
+		assertEquals( 19, itemDao.selectAll().size() );
+
+		itemDao.deleteOne( stone );
+		assertNull( itemDao.selectOneById( stone.getId() ) );
+		assertEquals( 18, itemDao.selectAll().size() );
+	}
+
+	@Test
+	public void testMissesAndExpiry() throws Exception {
+		DaoCache cache = DaoCache.builder()
+				.dao( "ItemDao" )
+				.maximumSize( 100 )
+				.expireAfterWrite( Duration.ofMillis( 200 ) )
+				.expireMissesAfter( Duration.ofMillis( 200 ) )
+				.build();
+		ItemDao itemDao = cache.wrap( ItemDao.class, backend.instrument( ItemDao.class, itemDaoImpl ) );
+
+		assertNull( itemDao.selectOneByName( "Stone" ) );
+		assertNull( itemDao.selectOneByName( "Stone" ) );
+		assertEquals( 1, backendCalls( "selectOneByName(String)" ) );
+		assertEquals( 1, cache.getStats().getMissHits() );
+
+		itemDao.insertOne( Item.builder().name( "Stone" ).build() );
+		assertEquals( "Stone", itemDao.selectOneByName( "Stone" ).getName() );
+		assertEquals( 2, backendCalls( "selectOneByName(String)" ) );
+
+		itemDao.selectOneById( 1001 );
+		Thread.sleep( 250 );
+		itemDao.selectOneById( 1001 );
+		assertEquals( 2, backendCalls( "selectOneById(int)" ) );
+	}
+
+	@Test
+	public void testRowArgumentsKeyByID() {
+		DaoMetrics villagerBackend = new DaoMetrics( "VillagerDao" );
+		DaoCache cache = DaoCache.builder().dao( "VillagerDao" ).maximumSize( 100 ).eviction( Eviction.LRU ).build();
+		VillagerDao villagerDao = cache.wrap( VillagerDao.class, villagerBackend.instrument( VillagerDao.class, villagerDaoImpl ) );
+
+		int inVillage = villagerDao.selectAll( Village.builder().id( 201 ).build() ).size();
+		assertEquals( inVillage, villagerDao.selectAll( Village.builder().id( 201 ).name( "anything" ).build() ).size() );
+		assertEquals( 1, villagerBackend.snapshot().stream()
+				.filter( s -> s.getMethod().equals( "selectAll(Village)" ) ).findFirst().get().getCalls() );
+
+		villagerDao.insertOne( Villager.builder().name( "Newcomer" ).villageId( 201 ).typeId( 102 ).build() );
+		assertEquals( inVillage + 1, villagerDao.selectAll( Village.builder().id( 201 ).build() ).size() );
+	}
+
+	@Test
+	public void testEviction() {
+		BoundedCache<Integer,String> lru = BoundedCache.create( Eviction.LRU, 3 );
+		for( int key = 1; key <= 3; key++ ) {
+			lru.put( key, "v" + key );
+		}
+		lru.get( 1 );
+		lru.put( 4, "v4" );
+		assertNull( lru.get( 2 ) );
+		assertEquals( "v1", lru.get( 1 ) );
+		assertEquals( 3, lru.size() );
+		assertEquals( 1, lru.evictions() );
+
+		// a scan of one-off keys flushes the hot keys out of an LRU, but not out of W-TinyLFU
+		for( Eviction eviction : Eviction.values() ) {
+			BoundedCache<Integer,String> cache = BoundedCache.create( eviction, 100 );
+			for( int round = 0; round < 5; round++ ) {
+				for( int key = 0; key < 50; key++ ) {
+					if( cache.get( key ) == null ) {
+						cache.put( key, "hot" );
+					}
+				}
+			}
+			for( int key = 1_000; key < 2_000; key++ ) {
+				if( cache.get( key ) == null ) {
+					cache.put( key, "cold" );
+				}
+			}
+			int hot = 0;
+			for( int key = 0; key < 50; key++ ) {
+				hot += cache.get( key ) != null ? 1 : 0;
+			}
+			assertEquals( 100, cache.size() );
+			assertEquals( eviction.toString(), eviction == Eviction.LRU ? 0 : 50, hot );
+		}
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		DaoCache cache = DaoCache.builder().dao( "ItemDao" ).maximumSize( 100 ).build();
+		ItemDao itemDao = cache.wrap( ItemDao.class, itemDaoImpl );
+		itemDao.selectOneById( 1001 );
+		itemDao.selectOneById( 1001 );
+		cache.register();
+		try {
+			CompositeData stats = (CompositeData) ManagementFactory.getPlatformMBeanServer()
+					.getAttribute( cache.objectName(), "Stats" );
+			assertEquals( 0.5, (Double) stats.get( "hitRate" ), 1e-9 );
+			ManagementFactory.getPlatformMBeanServer().invoke( cache.objectName(), "clear", null, null );
+			assertEquals( 0, cache.getStats().getSize() );
+		} finally {
+			cache.unregister();
+		}
+		assertTrue( cache.getStats().getHits() > 0 );
+	}
+
+
+	private long backendCalls( String method ) {
+		for( MethodStats stats : backend.snapshot() ) {
+			if( stats.getMethod().equals( method ) )
+				return stats.getCalls();
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,145 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.dao.DaoConstraintException;
+import mb.minecraft.dao.ItemDao;
+import mb.minecraft.dao.VillagerDao;
+import mb.minecraft.dao.impl.dummy.DaoMetrics.MethodStats;
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Village;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class DaoMetricsTest {
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDaoImpl;
+
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDaoImpl;
+
+
+	@Test
+	public void testRecordsEveryCall() {
+		DaoMetrics metrics = new DaoMetrics( "ItemDao" );
+		ItemDao itemDao = metrics.instrument( ItemDao.class, itemDaoImpl );
+
+		for( int i = 0; i < 10; i++ ) {
+			assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		}
+		assertEquals( 18, itemDao.selectAll().size() );
+		itemDao.selectAll();
+		itemDao.insertOne( Item.builder().name( "Stone" ).build() );
+		assertThrows( DaoConstraintException.class, () -> itemDao.insertOne( Item.builder().name( "Stone" ).build() ) );
+		assertThrows( NullPointerException.class, () -> itemDao.deleteOne( null ) );
+
+		Map<String,MethodStats> stats = byMethod( metrics.snapshot() );
+		assertEquals( 10, stats.get( "selectOneById(int)" ).getCalls() );
+		assertEquals( 0, stats.get( "selectOneById(int)" ).getRows() );
+		assertEquals( 2, stats.get( "selectAll()" ).getCalls() );
+		assertEquals( 18 + 18, stats.get( "selectAll()" ).getRows() );
+		assertEquals( 2, stats.get( "insertOne(Item)" ).getCalls() );
+		assertEquals( 1, stats.get( "insertOne(Item)" ).getConstraintViolations() );
+		assertEquals( 0, stats.get( "insertOne(Item)" ).getFailures() );
+		assertEquals( 1, stats.get( "deleteOne(Item)" ).getFailures() );
+		assertEquals( 0, stats.get( "update(Item)" ).getCalls() );
+		assertTrue( stats.containsKey( "destroy()" ) );
+
+		MethodStats select = stats.get( "selectOneById(int)" );
+		assertTrue( select.getTotalNanos() > 0 );
+		assertTrue( select.getP50Nanos() <= select.getP99Nanos() );
+		assertTrue( select.getP99Nanos() <= select.getMaxNanos() );
+
+		metrics.reset();
+		assertEquals( 0, byMethod( metrics.snapshot() ).get( "selectOneById(int)" ).getCalls() );
+		assertEquals( itemDaoImpl.selectOneById( 1001 ), itemDao.selectOneById( 1001 ) );
+	}
+
+	@Test
+	public void testOverloadsAreKeptApart() {
+		DaoMetrics metrics = new DaoMetrics( "VillagerDao" );
+		VillagerDao villagerDao = metrics.instrument( VillagerDao.class, villagerDaoImpl );
+
+		int inVillage = villagerDao.selectAll( Village.builder().id( 201 ).build() ).size();
+		villagerDao.selectAll();
+
+		Map<String,MethodStats> stats = byMethod( metrics.snapshot() );
+		assertEquals( 1, stats.get( "selectAll(Village)" ).getCalls() );
+		assertEquals( inVillage, stats.get( "selectAll(Village)" ).getRows() );
+		assertEquals( 1, stats.get( "selectAll()" ).getCalls() );
+		// the busiest method comes first
+		assertTrue( metrics.snapshot().get( 0 ).getCalls() > 0 );
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		DaoMetrics metrics = new DaoMetrics( "ItemDao" );
+		ItemDao itemDao = metrics.instrument( ItemDao.class, itemDaoImpl );
+		itemDao.selectOneByName( "Paper" );
+		metrics.register();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertEquals( "ItemDao", server.getAttribute( metrics.objectName(), "Dao" ) );
+			CompositeData[] methods = (CompositeData[]) server.getAttribute( metrics.objectName(), "Methods" );
+			CompositeData byName = null;
+			for( CompositeData method : methods ) {
+				if( method.get( "method" ).equals( "selectOneByName(String)" ) )
+					byName = method;
+			}
+			assertEquals( 1L, byName.get( "calls" ) );
+
+			server.invoke( metrics.objectName(), "reset", null, null );
+			assertEquals( 0, byMethod( metrics.snapshot() ).get( "selectOneByName(String)" ).getCalls() );
+		} finally {
+			metrics.unregister();
+		}
+		assertFalse( server.isRegistered( metrics.objectName() ) );
+	}
+
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals( 0, histogram.percentile( 0.5 ) );
+		for( long nanos = 1; nanos <= 100_000; nanos++ ) {
+			histogram.record( nanos );
+		}
+		assertEquals( 100_000, histogram.count() );
+		assertEquals( 50_000, histogram.mean() );
+		assertEquals( 100_000, histogram.max() );
+		assertEquals( 50_000, histogram.percentile( 0.5 ), 50_000 * 0.035 );
+		assertEquals( 99_000, histogram.percentile( 0.99 ), 99_000 * 0.035 );
+		assertEquals( 100_000, histogram.percentile( 1.0 ) );
+
+		// every value lands in a bucket whose top is within 1/32 of it
+		for( long value = 1; value < 1L << 40; value = value * 3 + 1 ) {
+			long top = LatencyHistogram.highestValueAt( LatencyHistogram.indexOf( value ) );
+			assertTrue( value + " -> " + top, top >= value && top - value <= value / 32 );
+		}
+		histogram.record( Long.MAX_VALUE );
+		histogram.record( -5 );
+		assertEquals( ( 1L << 40 ) - 1, histogram.max() );
+	}
+
+
+	private static Map<String,MethodStats> byMethod( List<MethodStats> stats ) {
+		return stats.stream().collect( Collectors.toMap( MethodStats::getMethod, Function.identity() ) );
+	}
+}
@@ -0,0 +1,127 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.TransientDataAccessException;
+
+import mb.minecraft.dao.ItemDao;
+import mb.minecraft.dao.impl.dummy.DaoSimulation.Profile;
+import mb.minecraft.model.Item;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class DaoSimulationTest {
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDaoImpl;
+
+
+	@Test
+	public void testLatency() {
+		ItemDao itemDao = DaoSimulation.builder()
+				.operation( "select", Profile.builder().latency( LatencyDistribution.fixed( Duration.ofMillis( 20 ) ) ).build() )
+				.build()
+				.wrap( ItemDao.class, itemDaoImpl );
+
+		long start = System.nanoTime();
+		assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		assertTrue( System.nanoTime() - start >= Duration.ofMillis( 20 ).toNanos() );
+	}
+
+	@Test
+	public void testLongestPrefixWins() throws Exception {
+		ItemDao itemDao = DaoSimulation.builder()
+				.operation( "", Profile.builder().failureRate( 1 ).build() )
+				.operation( "select", Profile.builder().build() )
+				.operation( "selectAll", Profile.builder().failureRate( 1 ).build() )
+				.build()
+				.wrap( ItemDao.class, itemDaoImpl );
+
+		assertNotNull( itemDao.selectOneById( 1001 ) );
+		assertNotNull( itemDao.selectOneByName( "Paper" ) );
+		TransientDaoException e = assertThrows( TransientDaoException.class, itemDao::selectAll );
+		assertEquals( "Simulated transient failure in ItemDao.selectAll", e.getMessage() );
+		// retry logic built on Spring's exception hierarchy picks it up
+		assertTrue( TransientDataAccessException.class.isInstance( e ) );
+		assertThrows( TransientDaoException.class, () -> itemDao.insertOne( Item.builder().name( "Stone" ).build() ) );
+		// the failed insert never reached the DAO
+		assertEquals( null, itemDaoImpl.selectOneByName( "Stone" ) );
+
+		// destroy and Object's methods are left alone
+		itemDao.hashCode();
+		itemDao.destroy();
+	}
+
+	@Test
+	public void testFailureRate() {
+		ItemDao itemDao = DaoSimulation.builder()
+				.operation( "select", Profile.builder().failureRate( 0.3 ).build() )
+				.build()
+				.wrap( ItemDao.class, itemDaoImpl );
+
+		int failures = 0;
+		for( int i = 0; i < 2_000; i++ ) {
+			try {
+				itemDao.selectOneById( 1001 );
+			} catch( TransientDaoException e ) {
+				failures++;
+			}
+		}
+		assertTrue( String.valueOf( failures ), failures > 450 && failures < 750 );
+	}
+
+	@Test
+	public void testThroughputCap() {
+		ItemDao itemDao = DaoSimulation.builder()
+				.operation( "select", Profile.builder().maxPerSecond( 200 ).build() )
+				.build()
+				.wrap( ItemDao.class, itemDaoImpl );
+
+		long start = System.nanoTime();
+		for( int i = 0; i <= 40; i++ ) {
+			itemDao.selectOneById( 1001 );
+		}
+		// 40 intervals of 5ms after the first call
+		assertTrue( System.nanoTime() - start >= Duration.ofMillis( 200 ).toNanos() );
+	}
+
+	@Test
+	public void testDistributions() {
+		Random random = new Random( 42 );
+		assertEquals( 1_000_000, LatencyDistribution.fixed( Duration.ofMillis( 1 ) ).sampleNanos( random ) );
+
+		LatencyDistribution normal = LatencyDistribution.normal( Duration.ofMillis( 10 ), Duration.ofMillis( 2 ) );
+		long sum = 0;
+		for( int i = 0; i < 10_000; i++ ) {
+			sum += normal.sampleNanos( random );
+		}
+		assertEquals( 10_000_000, sum / 10_000, 200_000 );
+
+		LatencyDistribution tail = LatencyDistribution.percentiles(
+				Duration.ofMillis( 2 ), Duration.ofMillis( 5 ), Duration.ofMillis( 20 ), Duration.ofMillis( 80 ) );
+		long[] samples = new long[100_000];
+		for( int i = 0; i < samples.length; i++ ) {
+			samples[i] = tail.sampleNanos( random );
+		}
+		Arrays.sort( samples );
+		assertEquals( 2_000_000, samples[50_000], 100_000 );
+		assertEquals( 5_000_000, samples[90_000], 250_000 );
+		assertEquals( 20_000_000, samples[99_000], 2_000_000 );
+		assertTrue( samples[0] >= 1_000_000 );
+		assertTrue( samples[samples.length - 1] <= 320_000_000 );
+
+		assertThrows( IllegalArgumentException.class, () -> LatencyDistribution.percentiles(
+				Duration.ofMillis( 5 ), Duration.ofMillis( 2 ), Duration.ofMillis( 20 ), Duration.ofMillis( 80 ) ) );
+	}
+}
@@ -0,0 +1,171 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Villager;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class DummyDataGeneratorTest {
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDao;
+	@InjectMocks
+	VillageDaoDummyImpl villageDao;
+	@InjectMocks
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDao;
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao;
+	@InjectMocks
+	TradeItemDaoDummyImpl tradeItemDao;
+
+	// a second, independent set of tables
+	@InjectMocks
+	ItemDaoDummyImpl itemDao2;
+	@InjectMocks
+	VillageDaoDummyImpl villageDao2;
+	@InjectMocks
+	VillagerTypeDaoDummyImpl villagerTypeDao2;
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDao2;
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao2;
+	@InjectMocks
+	TradeItemDaoDummyImpl tradeItemDao2;
+
+
+	@Test
+	public void testPopulateIsReferentiallyConsistent() {
+		int items = itemDao.selectAll().size();
+		int villagers = villagerDao.selectAll().size();
+		int trades = tradeDao.selectAll().size();
+
+		generator( 1L ).populate( itemDao, villageDao, villagerTypeDao, villagerDao, tradeDao, tradeItemDao );
+
+		assertEquals( items + 20, itemDao.selectAll().size() );
+		assertEquals( villagers + 300, villagerDao.selectAll().size() );
+		assertTrue( tradeDao.selectAll().size() >= trades + 300 );
+
+		for( Villager villager : villagerDao.selectAll() ) {
+			assertNotNull( villageDao.selectOneById( villager.getVillageId() ) );
+			assertNotNull( villagerTypeDao.selectOneById( villager.getTypeId() ) );
+		}
+		for( Trade trade : tradeDao.selectAll() ) {
+			assertNotNull( villagerDao.selectOneById( trade.getVillagerId() ) );
+		}
+		for( TradeItem tradeItem : tradeItemDao.selectAll() ) {
+			assertNotNull( tradeDao.selectOneById( tradeItem.getTradeId() ) );
+			assertNotNull( itemDao.selectOneById( tradeItem.getItemId() ) );
+		}
+	}
+
+	@Test
+	public void testPopulateIsDeterministic() {
+		generator( 7L ).populate( itemDao, villageDao, villagerTypeDao, villagerDao, tradeDao, tradeItemDao );
+		generator( 7L ).populate( itemDao2, villageDao2, villagerTypeDao2, villagerDao2, tradeDao2, tradeItemDao2 );
+
+		assertEquals( describeVillagers( villagerDao.selectAll() ), describeVillagers( villagerDao2.selectAll() ) );
+		assertEquals( describeTrades( tradeDao.selectAll() ), describeTrades( tradeDao2.selectAll() ) );
+		assertEquals( describeTradeItems( tradeItemDao.selectAll() ), describeTradeItems( tradeItemDao2.selectAll() ) );
+	}
+
+	@Test
+	public void testPopulateDependsOnSeed() {
+		generator( 7L ).populate( itemDao, villageDao, villagerTypeDao, villagerDao, tradeDao, tradeItemDao );
+		generator( 8L ).populate( itemDao2, villageDao2, villagerTypeDao2, villagerDao2, tradeDao2, tradeItemDao2 );
+
+		assertNotEquals( describeTradeItems( tradeItemDao.selectAll() ), describeTradeItems( tradeItemDao2.selectAll() ) );
+	}
+
+	@Test
+	public void testPopulateWithoutParents() {
+		int villagers = villagerDao.selectAll().size();
+		int tradeItems = tradeItemDao.selectAll().size();
+
+		DummyDataGenerator.builder()
+				.items( 0 )
+				.villages( 0 )
+				.villagerTypes( 0 )
+				.villagers( 10 )
+				.batchSize( 4 )
+				.build()
+				.populate( itemDao, villageDao, villagerTypeDao, villagerDao, tradeDao, tradeItemDao );
+
+		List<Villager> generated = villagerDao.selectAll().stream()
+				.filter( v -> v.getName().startsWith( "Generated" ) )
+				.collect( Collectors.toList() );
+		assertEquals( villagers + 10, villagerDao.selectAll().size() );
+		assertEquals( 10, generated.size() );
+		for( Villager villager : generated ) {
+			assertNull( villager.getVillageId() );
+			assertNull( villager.getTypeId() );
+			assertFalse( tradeDao.selectAll( villager ).isEmpty() );
+		}
+		assertEquals( tradeItems, tradeItemDao.selectAll().size() );
+	}
+
+	@Test
+	public void testZipfFavoursLowValues() {
+		Distribution zipf = Distribution.zipf( 10, 1.0 );
+		SplittableRandom random = new SplittableRandom( 3 );
+		int[] counts = new int[10];
+		for( int i = 0; i < 10_000; i++ ) {
+			counts[zipf.sample( random )]++;
+		}
+		assertTrue( counts[0] > counts[1] );
+		assertTrue( counts[1] > counts[9] );
+	}
+
+
+	private static DummyDataGenerator generator( long seed ) {
+		return DummyDataGenerator.builder()
+				.seed( seed )
+				.items( 20 )
+				.villages( 5 )
+				.villagerTypes( 3 )
+				.villagers( 300 )
+				.tradesPerVillager( Distribution.uniform( 1, 4 ) )
+				.batchSize( 64 )
+				.build();
+	}
+
+	private static List<String> describeVillagers( List<Villager> villagers ) {
+		return villagers.stream()
+				.map( v -> v.getId() + ":" + v.getName() + ":" + v.isTagged() + ":" + v.getVillageId() + ":" + v.getTypeId() )
+				.sorted()
+				.collect( Collectors.toList() );
+	}
+
+	private static List<String> describeTrades( List<Trade> trades ) {
+		return trades.stream()
+				.map( t -> t.getId() + ":" + t.getVillagerId() + ":" + t.getTradeSeqno() )
+				.sorted()
+				.collect( Collectors.toList() );
+	}
+
+	private static List<String> describeTradeItems( List<TradeItem> tradeItems ) {
+		return tradeItems.stream()
+				.map( ti -> ti.getId() + ":" + ti.getTradeId() + ":" + ti.getOfferRequire() + ":" + ti.getSeqno() + ":" + ti.getQuantity() + ":" + ti.getItemId() )
+				.sorted()
+				.collect( Collectors.toList() );
+	}
+
+}
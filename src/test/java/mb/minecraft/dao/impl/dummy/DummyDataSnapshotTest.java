@@ -0,0 +1,147 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static mb.minecraft.model.OfferRequire.OFFER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Villager;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class DummyDataSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDao;
+	@InjectMocks
+	VillageDaoDummyImpl villageDao;
+	@InjectMocks
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDao;
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao;
+	@InjectMocks
+	TradeItemDaoDummyImpl tradeItemDao;
+
+	// the environment the snapshot moves to
+	@InjectMocks
+	ItemDaoDummyImpl itemDao2;
+	@InjectMocks
+	VillageDaoDummyImpl villageDao2;
+	@InjectMocks
+	VillagerTypeDaoDummyImpl villagerTypeDao2;
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDao2;
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao2;
+	@InjectMocks
+	TradeItemDaoDummyImpl tradeItemDao2;
+
+
+	@Test
+	public void testImportRestoresExport() throws Exception {
+		DummyDataGenerator.builder().villagers( 500 ).build()
+				.populate( itemDao, villageDao, villagerTypeDao, villagerDao, tradeDao, tradeItemDao );
+		Villager gone = villagerDao.insertOne( Villager.builder().name( "Gone" ).villageId( 201 ).typeId( 101 ).build() );
+		villagerDao.deleteOne( gone );
+		villagerDao2.insertOne( Villager.builder().name( "Stale" ).villageId( 201 ).typeId( 101 ).build() );
+
+		Path file = folder.getRoot().toPath().resolve( "dataset.snap" );
+		long rows = snapshot( 1 ).exportTo( file );
+		assertEquals( rows, snapshot( 2 ).importFrom( file ) );
+
+		assertEquals( itemDao.selectAll(), itemDao2.selectAll() );
+		assertEquals( villageDao.selectAll(), villageDao2.selectAll() );
+		assertEquals( villagerTypeDao.selectAll(), villagerTypeDao2.selectAll() );
+		assertEquals( villagerDao.selectAll(), villagerDao2.selectAll() );
+		assertEquals( tradeDao.selectAll(), tradeDao2.selectAll() );
+		assertEquals( tradeItemDao.selectAll(), tradeItemDao2.selectAll() );
+		assertNull( villagerDao2.selectOneByName( "Stale" ) );
+
+		// indexes
+		Villager liam = villagerDao2.selectOneByName( "Liam Z" );
+		assertEquals( tradeDao.selectAll( liam ), tradeDao2.selectAll( liam ) );
+		assertEquals( villagerDao.countByTypeId( 102 ), villagerDao2.countByTypeId( 102 ) );
+		TradeItem first = tradeItemDao.selectAll().get( 0 );
+		assertEquals( first, tradeItemDao2.selectOneByTradeKey( first.getTradeId(), first.getOfferRequire(), first.getSeqno() ) );
+		assertEquals( 0, first.getId().intValue() );
+
+		// ID sequences, including the deleted villager's
+		assertEquals( gone.getId() + 1, villagerDao2.insertOne( Villager.builder().name( "New" ).build() ).getId().intValue() );
+		Trade trade = tradeDao2.insertOne( Trade.builder().villagerId( liam.getId() ).build() );
+		assertEquals( tradeDao.nextId(), trade.getId().intValue() );
+		assertEquals( 3, trade.getTradeSeqno().intValue() );
+		assertEquals( tradeItemDao.nextId(), tradeItemDao2.insertOne( TradeItem.builder().tradeId( trade.getId() ).offerRequire( OFFER ).seqno( 1 ).quantity( 1 ).itemId( 1001 ).build() ).getId().intValue() );
+	}
+
+	@Test
+	public void testImportRefusesDamagedFile() throws Exception {
+		Path file = folder.getRoot().toPath().resolve( "dataset.snap" );
+		snapshot( 1 ).exportTo( file );
+		byte[] bytes = Files.readAllBytes( file );
+
+		bytes[bytes.length / 2] ^= 0x55;
+		Files.write( file, bytes );
+		assertThrows( IOException.class, () -> snapshot( 2 ).importFrom( file ) );
+
+		bytes[bytes.length / 2] ^= 0x55;
+		Files.write( file, Arrays.copyOf( bytes, bytes.length - 10 ) );
+		assertThrows( EOFException.class, () -> snapshot( 2 ).importFrom( file ) );
+
+		Files.write( file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 } );
+		assertThrows( IOException.class, () -> snapshot( 2 ).importFrom( file ) );
+
+		// none of it got as far as the DAOs
+		assertEquals( itemDao.selectAll(), itemDao2.selectAll() );
+		assertEquals( villagerDao.selectAll(), villagerDao2.selectAll() );
+		assertEquals( tradeItemDao.selectAll(), tradeItemDao2.selectAll() );
+	}
+
+	@Test
+	public void testImportRefusesLateDamageBeforeDeleting() throws Exception {
+		Path file = folder.getRoot().toPath().resolve( "dataset.snap" );
+		snapshot( 1 ).exportTo( file );
+		byte[] bytes = Files.readAllBytes( file );
+
+		// in the last table, which a single pass would only reach after clearing the rest
+		bytes[bytes.length - 8] ^= 0x55;
+		Files.write( file, bytes );
+		int villagers = villagerDao2.selectAll().size();
+		assertThrows( IOException.class, () -> snapshot( 2 ).importFrom( file ) );
+		assertEquals( villagers, villagerDao2.selectAll().size() );
+		assertEquals( tradeItemDao.selectAll(), tradeItemDao2.selectAll() );
+	}
+
+
+	// wires a snapshot to one of the two sets of DAOs, the way Spring would
+	private DummyDataSnapshot snapshot( int set ) {
+		DummyDataSnapshot snapshot = new DummyDataSnapshot();
+		snapshot.itemDao = set == 1 ? itemDao : itemDao2;
+		snapshot.villageDao = set == 1 ? villageDao : villageDao2;
+		snapshot.villagerTypeDao = set == 1 ? villagerTypeDao : villagerTypeDao2;
+		snapshot.villagerDao = set == 1 ? villagerDao : villagerDao2;
+		snapshot.tradeDao = set == 1 ? tradeDao : tradeDao2;
+		snapshot.tradeItemDao = set == 1 ? tradeItemDao : tradeItemDao2;
+		snapshot.villagerTypeDao.villagerDao = snapshot.villagerDao;
+		return snapshot;
+	}
+}
@@ -0,0 +1,182 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static mb.minecraft.model.OfferRequire.REQUIRE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.dao.DaoConstraintException;
+import mb.minecraft.dao.ForeignKeyConstraintException;
+import mb.minecraft.dao.impl.dummy.DummyFixtureLoader.Format;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Villager;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class DummyFixtureLoaderTest {
+
+	private static final String JSON = "{\n"
+			+ "  \"items\": [ { \"id\": 2001, \"name\": \"Ruby\" }, { \"id\": 2002, \"name\": \"Sapphire\", \"imageSource\": \"sapphire.png\" } ],\n"
+			+ "  \"villages\": [ { \"id\": 301, \"name\": \"Hilltop\" } ],\n"
+			+ "  \"villagerTypes\": [ { \"id\": 111, \"profession\": \"Jeweler\" } ],\n"
+			+ "  \"villagers\": [ { \"id\": 801, \"name\": \"Opal\", \"tagged\": true, \"villageId\": 301, \"typeId\": 111 } ],\n"
+			+ "  \"trades\": [ { \"id\": 901, \"villagerId\": 801 } ],\n"
+			+ "  \"tradeItems\": [\n"
+			+ "    { \"tradeId\": 901, \"offerRequire\": \"OFFER\", \"seqno\": 1, \"quantity\": 1, \"itemId\": 2001 },\n"
+			+ "    { \"tradeId\": 901, \"offerRequire\": \"REQUIRE\", \"seqno\": 1, \"quantity\": 12, \"itemId\": 2002 }\n"
+			+ "  ]\n"
+			+ "}";
+
+	private static final String XML = "<fixture>\n"
+			+ "  <items><item><id>2001</id><name>Ruby</name></item><item><id>2002</id><name>Sapphire</name><imageSource>sapphire.png</imageSource></item></items>\n"
+			+ "  <villages><village><id>301</id><name>Hilltop</name></village></villages>\n"
+			+ "  <villagerTypes><villagerType><id>111</id><profession>Jeweler</profession></villagerType></villagerTypes>\n"
+			+ "  <villagers><villager><id>801</id><name>Opal</name><tagged>true</tagged><villageId>301</villageId><typeId>111</typeId></villager></villagers>\n"
+			+ "  <trades><trade><id>901</id><villagerId>801</villagerId></trade></trades>\n"
+			+ "  <tradeItems>\n"
+			+ "    <tradeItem><tradeId>901</tradeId><offerRequire>OFFER</offerRequire><seqno>1</seqno><quantity>1</quantity><itemId>2001</itemId></tradeItem>\n"
+			+ "    <tradeItem><tradeId>901</tradeId><offerRequire>REQUIRE</offerRequire><seqno>1</seqno><quantity>12</quantity><itemId>2002</itemId></tradeItem>\n"
+			+ "  </tradeItems>\n"
+			+ "</fixture>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDao;
+	@InjectMocks
+	VillageDaoDummyImpl villageDao;
+	@InjectMocks
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDao;
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao;
+	@InjectMocks
+	TradeItemDaoDummyImpl tradeItemDao;
+
+	private DummyFixtureLoader loader;
+
+
+	@Before
+	public void setUp() {
+		loader = new DummyFixtureLoader();
+		loader.itemDao = itemDao;
+		loader.villageDao = villageDao;
+		loader.villagerTypeDao = villagerTypeDao;
+		loader.villagerDao = villagerDao;
+		loader.tradeDao = tradeDao;
+		loader.tradeItemDao = tradeItemDao;
+		villagerTypeDao.villagerDao = villagerDao;
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty( DummyDaoSettings.FIXTURES );
+	}
+
+
+	@Test
+	public void testLoadJson() throws Exception {
+		assertEquals( 8, loader.load( stream( JSON ), Format.JSON ) );
+		assertLoaded();
+		assertEquals( 18 + 2, itemDao.selectAll().size() );
+	}
+
+	@Test
+	public void testLoadXml() throws Exception {
+		assertEquals( 8, loader.load( stream( XML ), Format.XML ) );
+		assertLoaded();
+	}
+
+	@Test
+	public void testLoadInBatches() throws Exception {
+		StringBuilder json = new StringBuilder( "{ \"villagers\": [" );
+		for( int i = 0; i < 2_500; i++ ) {
+			json.append( i > 0 ? "," : "" ).append( "{ \"name\": \"Batch " ).append( i ).append( "\", \"villageId\": 201 }" );
+		}
+		json.append( "], \"trades\": [" );
+		for( int i = 0; i < 2_500; i++ ) {
+			json.append( i > 0 ? "," : "" ).append( "{ \"villagerId\": 699 }" );
+		}
+		json.append( "] }" );
+
+		assertEquals( 5_000, loader.load( stream( json.toString() ), Format.JSON ) );
+		assertEquals( 2_502, tradeDao.selectAll( villagerDao.selectOneByName( "Liam Z" ) ).size() );
+		assertEquals( 201, villagerDao.selectOneByName( "Batch 2499" ).getVillageId().intValue() );
+	}
+
+	@Test
+	public void testLoadRefusesBadRows() {
+		String missingParent = "{ \"villagers\": [\n{ \"name\": \"Orphan\", \"villageId\": 999 }\n] }";
+		ForeignKeyConstraintException fk = assertThrows( ForeignKeyConstraintException.class,
+				() -> loader.load( stream( missingParent ), Format.JSON ) );
+		assertTrue( fk.getMessage(), fk.getMessage().startsWith( "Fixture line 2: Villager references Village with ID 999" ) );
+		assertNull( villagerDao.selectOneByName( "Orphan" ) );
+
+		String missingField = "{ \"tradeItems\": [ { \"tradeId\": 1, \"seqno\": 3 } ] }";
+		DaoConstraintException missing = assertThrows( DaoConstraintException.class,
+				() -> loader.load( stream( missingField ), Format.JSON ) );
+		assertEquals( "Fixture line 1: TradeItem is missing its offerRequire", missing.getMessage() );
+
+		String duplicate = "{ \"items\": [ { \"name\": \"Emerald\" } ] }";
+		assertThrows( DaoConstraintException.class, () -> loader.load( stream( duplicate ), Format.JSON ) );
+
+		assertThrows( IOException.class, () -> loader.load( stream( "{ \"pets\": [] }" ), Format.JSON ) );
+		assertThrows( IOException.class, () -> loader.load( stream( "[ {} ]" ), Format.JSON ) );
+		assertThrows( IOException.class, () -> loader.load( stream( "{ \"items\": [ { \"colour\": \"red\" } ] }" ), Format.JSON ) );
+	}
+
+	@Test
+	public void testInitReplacesMockData() throws Exception {
+		Path file = folder.newFile( "fixture.xml" ).toPath();
+		Files.write( file, XML.getBytes( StandardCharsets.UTF_8 ) );
+		System.setProperty( DummyDaoSettings.FIXTURES, file.toString() );
+
+		loader.init();
+
+		assertLoaded();
+		assertEquals( 2, itemDao.selectAll().size() );
+		assertEquals( 1, villagerDao.selectAll().size() );
+		assertEquals( 2, tradeItemDao.selectAll().size() );
+		assertNull( villagerDao.selectOneByName( "Liam Z" ) );
+	}
+
+
+	private void assertLoaded() {
+		assertEquals( "Ruby", itemDao.selectOneById( 2001 ).getName() );
+		assertEquals( "sapphire.png", itemDao.selectOneByName( "Sapphire" ).getImageSource() );
+		assertEquals( "Jeweler", villagerTypeDao.selectOneById( 111 ).getProfession() );
+		Villager opal = villagerDao.selectOneById( 801 );
+		assertEquals( "Opal", opal.getName() );
+		assertTrue( opal.isTagged() );
+		assertEquals( 301, opal.getVillageId().intValue() );
+		Trade trade = tradeDao.selectAll( opal ).get( 0 );
+		assertEquals( 901, trade.getId().intValue() );
+		TradeItem require = tradeItemDao.selectOneByTradeKey( 901, REQUIRE, 1 );
+		assertEquals( 12, require.getQuantity().intValue() );
+		assertEquals( 2002, require.getItemId().intValue() );
+	}
+
+	private static InputStream stream( String fixture ) {
+		return new ByteArrayInputStream( fixture.getBytes( StandardCharsets.UTF_8 ) );
+	}
+}
@@ -0,0 +1,353 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static mb.minecraft.model.OfferRequire.OFFER;
+import static mb.minecraft.model.OfferRequire.REQUIRE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Village;
+import mb.minecraft.model.Villager;
+
+
+public class DummyTransactionManagerTest {
+
+	AnnotationConfigApplicationContext context;
+	VillagerService service;
+	TransactionTemplate transactions;
+	ItemDaoDummyImpl itemDao;
+	VillagerDaoDummyImpl villagerDao;
+	TradeDaoDummyImpl tradeDao;
+	TradeItemDaoDummyImpl tradeItemDao;
+	ExecutorService executor;
+
+
+	@BeforeClass
+	public static void enableTransactions() {
+		// concurrent storage comes with transactions, unasked
+		System.setProperty( DummyDaoSettings.TRANSACTIONS, "true" );
+	}
+
+	@AfterClass
+	public static void disableTransactions() {
+		System.clearProperty( DummyDaoSettings.TRANSACTIONS );
+	}
+
+	@Before
+	public void startContext() {
+		context = new AnnotationConfigApplicationContext( Config.class );
+		service = context.getBean( VillagerService.class );
+		transactions = new TransactionTemplate( context.getBean( PlatformTransactionManager.class ) );
+		itemDao = context.getBean( ItemDaoDummyImpl.class );
+		villagerDao = context.getBean( VillagerDaoDummyImpl.class );
+		tradeDao = context.getBean( TradeDaoDummyImpl.class );
+		tradeItemDao = context.getBean( TradeItemDaoDummyImpl.class );
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void stopContext() {
+		executor.shutdownNow();
+		context.close();
+	}
+
+
+	@Test
+	public void testTransactionsImplyConcurrentStorage() {
+		assertNull( System.getProperty( DummyDaoSettings.CONCURRENT ) );
+		assertTrue( DummyDaoSettings.isConcurrent() );
+	}
+
+	@Test
+	public void testCommit() {
+		Villager villager = service.hire( "Fletcher Fred", 1001, 1016 );
+
+		assertEquals( villager.getId(), villagerDao.selectOneByName( "Fletcher Fred" ).getId() );
+		Trade trade = tradeDao.selectAll( villager ).get( 0 );
+		assertEquals( 1, (int) trade.getTradeSeqno() );
+		assertEquals( 2, tradeItemDao.selectAll( trade ).size() );
+	}
+
+	@Test
+	public void testRollbackRestoresEveryTable() {
+		int villagers = villagerDao.selectAll().size();
+		int trades = tradeDao.selectAll().size();
+		int tradeItems = tradeItemDao.selectAll().size();
+		Villager owner = Villager.builder().id( 705 ).build();
+		int ownerTrades = tradeDao.selectAll( owner ).size();
+
+		assertThrows( IllegalStateException.class, () -> service.hireAndFail( "Fletcher Fred", 1001, 1016 ) );
+
+		assertNull( villagerDao.selectOneByName( "Fletcher Fred" ) );
+		assertEquals( villagers, villagerDao.selectAll().size() );
+		assertEquals( trades, tradeDao.selectAll().size() );
+		assertEquals( tradeItems, tradeItemDao.selectAll().size() );
+		// the item renamed in place and the trade deleted are back, in their indexes too
+		assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( 1001, (int) itemDao.selectOneByName( "Emerald" ).getId() );
+		assertNull( itemDao.selectOneByName( "Green Gem" ) );
+		assertNotNull( tradeDao.selectOneById( 15 ) );
+		assertEquals( ownerTrades, tradeDao.selectAll( owner ).size() );
+
+		// and the names the rollback freed can be taken again
+		assertNotNull( service.hire( "Fletcher Fred", 1001, 1016 ) );
+	}
+
+	@Test
+	public void testLazyFillIsNotRolledBack() {
+		int items = itemDao.selectAll().size();
+		int trades = tradeDao.selectAll().size();
+		stopContext();
+		System.setProperty( DummyDaoSettings.INIT, "lazy" );
+		try {
+			startContext();
+		} finally {
+			System.clearProperty( DummyDaoSettings.INIT );
+		}
+
+		// every table is first touched in the transaction, trades after it has written
+		assertThrows( IllegalStateException.class, () -> service.hireAndFail( "Fletcher Fred", 1001, 1016 ) );
+
+		assertEquals( items, itemDao.selectAll().size() );
+		assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( trades, tradeDao.selectAll().size() );
+		assertNotNull( villagerDao.selectOneById( 699 ) );
+		assertNull( villagerDao.selectOneByName( "Fletcher Fred" ) );
+	}
+
+	@Test
+	public void testReadersDoNotSeeUncommittedWrites() throws Exception {
+		Village village = Village.builder().id( 201 ).build();
+		int inVillage = villagerDao.selectAll( village ).size();
+		int items = itemDao.selectAll().size();
+		CountDownLatch written = new CountDownLatch( 1 );
+		CountDownLatch checked = new CountDownLatch( 1 );
+
+		Future<?> writer = executor.submit( () -> transactions.executeWithoutResult( status -> {
+			villagerDao.insertOne( Villager.builder().name( "Fletcher Fred" ).villageId( 201 ).typeId( 101 ).build() );
+			itemDao.insertOne( Item.builder().name( "Stick" ).build() );
+			Item emerald = itemDao.selectOneById( 1001 );
+			emerald.setName( "Green Gem" );
+			itemDao.update( emerald );
+			written.countDown();
+			await( checked );
+		} ) );
+
+		assertTrue( written.await( 10, TimeUnit.SECONDS ) );
+		// the writer holds the write lock, and none of this waits for it
+		assertNull( villagerDao.selectOneByName( "Fletcher Fred" ) );
+		assertEquals( inVillage, villagerDao.selectAll( village ).size() );
+		assertEquals( items, itemDao.selectAll().size() );
+		assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( 1001, (int) itemDao.selectOneByName( "Emerald" ).getId() );
+		assertNull( itemDao.selectOneByName( "Green Gem" ) );
+		checked.countDown();
+		writer.get( 10, TimeUnit.SECONDS );
+
+		assertNotNull( villagerDao.selectOneByName( "Fletcher Fred" ) );
+		assertEquals( inVillage + 1, villagerDao.selectAll( village ).size() );
+		assertEquals( items + 1, itemDao.selectAll().size() );
+		assertEquals( "Green Gem", itemDao.selectOneById( 1001 ).getName() );
+		assertNull( itemDao.selectOneByName( "Emerald" ) );
+	}
+
+	@Test
+	public void testSnapshotIsRepeatable() {
+		transactions.executeWithoutResult( status -> {
+			assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+			int items = itemDao.selectAll().size();
+
+			// committed by another thread, outside any transaction
+			run( () -> {
+				itemDao.update( Item.builder().id( 1001 ).name( "Green Gem" ).build() );
+				itemDao.insertOne( Item.builder().name( "Stick" ).build() );
+			} );
+
+			assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+			assertEquals( "Emerald", itemDao.selectOneByName( "Emerald" ).getName() );
+			assertNull( itemDao.selectOneByName( "Stick" ) );
+			assertEquals( items, itemDao.selectAll().size() );
+		} );
+		assertEquals( "Green Gem", itemDao.selectOneById( 1001 ).getName() );
+		assertNotNull( itemDao.selectOneByName( "Stick" ) );
+	}
+
+	@Test
+	public void testStaleSnapshotCannotWrite() {
+		assertThrows( CannotSerializeTransactionException.class, () -> transactions.executeWithoutResult( status -> {
+			itemDao.selectOneById( 1001 );
+			run( () -> itemDao.insertOne( Item.builder().name( "Stick" ).build() ) );
+			itemDao.insertOne( Item.builder().name( "Stone" ).build() );
+		} ) );
+		assertNull( itemDao.selectOneByName( "Stone" ) );
+		assertNotNull( itemDao.selectOneByName( "Stick" ) );
+	}
+
+	@Test
+	public void testWritersTakeTurns() {
+		transactions.executeWithoutResult( status -> {
+			itemDao.insertOne( Item.builder().name( "Stick" ).build() );
+
+			TransactionTemplate impatient = new TransactionTemplate( transactions.getTransactionManager() );
+			impatient.setTimeout( 1 );
+			Exception e = assertThrows( Exception.class, () -> run( () -> impatient.executeWithoutResult(
+					other -> itemDao.insertOne( Item.builder().name( "Stone" ).build() ) ) ) );
+			assertTrue( e.getCause() instanceof CannotAcquireLockException );
+		} );
+		assertNotNull( itemDao.selectOneByName( "Stick" ) );
+		assertNull( itemDao.selectOneByName( "Stone" ) );
+	}
+
+
+	@Test( timeout = 30_000 )
+	public void testUpdatesOfOneRowTakeTurns() throws Exception {
+		Future<Item> waiting = transactions.execute( status -> {
+			itemDao.update( Item.builder().id( 1001 ).name( "Green Gem" ).build() );
+
+			// another thread updates the same row, and waits for the write lock
+			AtomicReference<Thread> other = new AtomicReference<>();
+			Future<Item> update = executor.submit( () -> {
+				other.set( Thread.currentThread() );
+				return itemDao.update( Item.builder().id( 1001 ).name( "Emerald Block" ).build() );
+			} );
+			while( other.get() == null || other.get().getState() != Thread.State.WAITING ) {
+				Thread.yield();
+			}
+
+			// it holds no claim on the row while it waits
+			assertNotNull( itemDao.update( Item.builder().id( 1001 ).name( "Gem" ).build() ) );
+			assertNotNull( itemDao.update( Item.builder().id( 1001 ).name( "Emerald" ).build(), itemDao.versionOf( 1001 ) ) );
+			return update;
+		} );
+		assertNotNull( waiting.get( 10, TimeUnit.SECONDS ) );
+		assertEquals( "Emerald Block", itemDao.selectOneById( 1001 ).getName() );
+	}
+
+	@Test
+	public void testWriteLockTryLockDoesNotWait() throws Exception {
+		Lock lock = DummyTransaction.WRITE_LOCK;
+		CountDownLatch written = new CountDownLatch( 1 );
+		CountDownLatch checked = new CountDownLatch( 1 );
+		Future<?> writer = executor.submit( () -> transactions.executeWithoutResult( status -> {
+			itemDao.insertOne( Item.builder().name( "Stick" ).build() );
+			written.countDown();
+			await( checked );
+		} ) );
+
+		assertTrue( written.await( 10, TimeUnit.SECONDS ) );
+		assertFalse( lock.tryLock() );
+		assertFalse( lock.tryLock( 50, TimeUnit.MILLISECONDS ) );
+		transactions.executeWithoutResult( status -> assertFalse( lock.tryLock() ) );
+		checked.countDown();
+		writer.get( 10, TimeUnit.SECONDS );
+
+		// a transaction that could not write is refused rather than failed
+		transactions.executeWithoutResult( status -> {
+			itemDao.selectOneById( 1001 );
+			run( () -> itemDao.insertOne( Item.builder().name( "Stone" ).build() ) );
+			assertFalse( lock.tryLock() );
+		} );
+		assertTrue( lock.tryLock() );
+		lock.unlock();
+	}
+
+
+	private void run( Runnable task ) {
+		try {
+			executor.submit( task ).get( 10, TimeUnit.SECONDS );
+		} catch( Exception e ) {
+			throw new IllegalStateException( e.getCause() != null ? e.getCause() : e );
+		}
+	}
+
+	private static void await( CountDownLatch latch ) {
+		try {
+			latch.await( 10, TimeUnit.SECONDS );
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	@Configuration
+	@EnableTransactionManagement
+	@Import( { ItemDaoDummyImpl.class, VillagerDaoDummyImpl.class, TradeDaoDummyImpl.class, TradeItemDaoDummyImpl.class } )
+	static class Config {
+
+		@Bean
+		DummyTransactionManager transactionManager() {
+			return new DummyTransactionManager();
+		}
+
+		@Bean
+		VillagerService villagerService() {
+			return new VillagerService();
+		}
+	}
+
+
+	// writes a villager with one trade of two items as one unit
+	static class VillagerService {
+
+		@Autowired
+		ItemDaoDummyImpl itemDao;
+		@Autowired
+		VillagerDaoDummyImpl villagerDao;
+		@Autowired
+		TradeDaoDummyImpl tradeDao;
+		@Autowired
+		TradeItemDaoDummyImpl tradeItemDao;
+
+		@Transactional
+		public Villager hire( String name, int offerItemId, int requireItemId ) {
+			Villager villager = villagerDao.insertOne( Villager.builder().name( name ).villageId( 201 ).typeId( 101 ).build() );
+			Trade trade = tradeDao.insertOne( Trade.builder().villagerId( villager.getId() ).build() );
+			tradeItemDao.insert( Arrays.asList(
+					TradeItem.builder().tradeId( trade.getId() ).offerRequire( OFFER ).seqno( 1 ).quantity( 1 ).itemId( offerItemId ).build(),
+					TradeItem.builder().tradeId( trade.getId() ).offerRequire( REQUIRE ).seqno( 1 ).quantity( 20 ).itemId( requireItemId ).build() ) );
+			return villager;
+		}
+
+		@Transactional
+		public Villager hireAndFail( String name, int offerItemId, int requireItemId ) {
+			Villager villager = hire( name, offerItemId, requireItemId );
+			Item emerald = itemDao.selectOneById( 1001 );
+			emerald.setName( "Green Gem" );
+			itemDao.update( emerald );
+			tradeDao.deleteOne( tradeDao.selectOneById( 15 ) );
+			throw new IllegalStateException( "Fails after writing to every table" );
+		}
+	}
+}
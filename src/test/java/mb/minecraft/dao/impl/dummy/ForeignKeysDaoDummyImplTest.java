@@ -0,0 +1,152 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static mb.minecraft.model.OfferRequire.OFFER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.dao.ForeignKeyConstraintException;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Villager;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class ForeignKeysDaoDummyImplTest {
+
+	private static final Logger logger = LogManager.getLogger( ForeignKeysDaoDummyImplTest.class );
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDao;
+	@InjectMocks
+	VillageDaoDummyImpl villageDao;
+	@InjectMocks
+	VillagerTypeDaoDummyImpl villagerTypeDao;
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDao;
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao;
+	@InjectMocks
+	TradeItemDaoDummyImpl tradeItemDao;
+
+
+	@Test
+	public void testInsertMissingParent() {
+		enforce( "restrict" );
+
+		Exception e = assertThrows( ForeignKeyConstraintException.class, () -> villagerDao.insertOne( Villager.builder().name( "Nomad" ).villageId( 999 ).typeId( 101 ).build() ) );
+		logger.error( e.getMessage() );
+		assertThrows( ForeignKeyConstraintException.class, () -> villagerDao.insertOne( Villager.builder().name( "Nomad" ).villageId( 201 ).typeId( 999 ).build() ) );
+		assertThrows( ForeignKeyConstraintException.class, () -> tradeDao.insertOne( Trade.builder().villagerId( 999 ).build() ) );
+		assertNull( villagerDao.selectOneByName( "Nomad" ) );
+
+		// null references nothing
+		assertNotNull( villagerDao.insertOne( Villager.builder().name( "Nomad" ).build() ) );
+	}
+
+	@Test
+	public void testUpdateMissingParent() {
+		enforce( "restrict" );
+
+		Trade trade = tradeDao.selectOneById( 1 );
+		trade.setVillagerId( 999 );
+		assertThrows( ForeignKeyConstraintException.class, () -> tradeDao.update( trade ) );
+		trade.setVillagerId( 699 );
+		assertEquals( 2, tradeDao.selectAll( Villager.builder().id( 699 ).build() ).size() );
+	}
+
+	@Test
+	public void testInsertManyChecksEveryRowFirst() {
+		enforce( "restrict" );
+		int count = tradeItemDao.selectAll().size();
+
+		List<TradeItem> items = Arrays.asList(
+				TradeItem.builder().tradeId( 1 ).offerRequire( OFFER ).seqno( 5 ).quantity( 1 ).itemId( 1001 ).build(),
+				TradeItem.builder().tradeId( 1 ).offerRequire( OFFER ).seqno( 6 ).quantity( 1 ).itemId( 9999 ).build() );
+		assertThrows( ForeignKeyConstraintException.class, () -> tradeItemDao.insert( items ) );
+		assertEquals( count, tradeItemDao.selectAll().size() );
+	}
+
+	@Test
+	public void testDeleteRestrict() {
+		enforce( "restrict" );
+
+		Exception e = assertThrows( ForeignKeyConstraintException.class, () -> villageDao.deleteOne( villageDao.selectOneById( 201 ) ) );
+		logger.error( e.getMessage() );
+		assertThrows( ForeignKeyConstraintException.class, () -> villagerDao.deleteOne( villagerDao.selectOneById( 699 ) ) );
+		assertThrows( ForeignKeyConstraintException.class, () -> tradeDao.deleteOne( tradeDao.selectOneById( 1 ) ) );
+		assertThrows( ForeignKeyConstraintException.class, () -> itemDao.deleteOne( itemDao.selectOneById( 1001 ) ) );
+		assertNotNull( villageDao.selectOneById( 201 ) );
+
+		// Heart has nobody living in it
+		assertTrue( villageDao.deleteOne( villageDao.selectOneById( 202 ) ) );
+	}
+
+	@Test
+	public void testDeleteCascadesWholeVillage() {
+		enforce( "cascade" );
+		int villagers = villagerDao.selectAll().size();
+		int trades = tradeDao.selectAll().size();
+		int tradeItems = tradeItemDao.selectAll().size();
+
+		// Liam Z lives in Deep Water Cove, and trades 1 and 2 are his
+		assertTrue( villageDao.deleteOne( villageDao.selectOneById( 201 ) ) );
+
+		assertNull( villagerDao.selectOneById( 699 ) );
+		assertEquals( villagers - 1, villagerDao.selectAll().size() );
+		assertNull( tradeDao.selectOneById( 1 ) );
+		assertNull( tradeDao.selectOneById( 2 ) );
+		assertEquals( trades - 2, tradeDao.selectAll().size() );
+		assertEquals( 0, tradeItemDao.selectAll( Trade.builder().id( 1 ).build() ).size() );
+		assertEquals( 0, tradeItemDao.selectAll( Trade.builder().id( 2 ).build() ).size() );
+		assertEquals( tradeItems - 5, tradeItemDao.selectAll().size() );
+	}
+
+	@Test
+	public void testCascadeStillRestrictsItems() {
+		enforce( "cascade" );
+
+		assertThrows( ForeignKeyConstraintException.class, () -> itemDao.deleteOne( itemDao.selectOneById( 1001 ) ) );
+		assertFalse( tradeItemDao.selectAll( itemDao.selectOneById( 1001 ) ).isEmpty() );
+	}
+
+
+	// wires the DAOs to a ForeignKeys in the given mode, the way Spring would
+	private void enforce( String mode ) {
+		System.setProperty( DummyDaoSettings.FOREIGN_KEYS, mode );
+		ForeignKeys foreignKeys;
+		try {
+			foreignKeys = new ForeignKeys();
+		} finally {
+			System.clearProperty( DummyDaoSettings.FOREIGN_KEYS );
+		}
+		foreignKeys.itemDao = itemDao;
+		foreignKeys.villageDao = villageDao;
+		foreignKeys.villagerTypeDao = villagerTypeDao;
+		foreignKeys.villagerDao = villagerDao;
+		foreignKeys.tradeDao = tradeDao;
+		foreignKeys.tradeItemDao = tradeItemDao;
+		foreignKeys.init();
+
+		itemDao.foreignKeys = foreignKeys;
+		villageDao.foreignKeys = foreignKeys;
+		villagerTypeDao.foreignKeys = foreignKeys;
+		villagerDao.foreignKeys = foreignKeys;
+		tradeDao.foreignKeys = foreignKeys;
+		tradeItemDao.foreignKeys = foreignKeys;
+	}
+
+}
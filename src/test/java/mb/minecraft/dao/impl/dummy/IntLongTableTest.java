@@ -0,0 +1,57 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class IntLongTableTest {
+
+	@Test
+	public void testPutGetRemove() {
+		IntLongTable table = new IntLongTable();
+		table.put( 7, 70 );
+		table.put( 0, 0 );
+		table.put( -3, 30 );
+		table.put( 7, 71 );
+
+		assertEquals( 3, table.size() );
+		assertEquals( 71, table.get( 7 ) );
+		assertEquals( 0, table.get( 0 ) );
+		assertEquals( 30, table.get( -3 ) );
+		assertEquals( IntLongTable.ABSENT, table.get( 8 ) );
+
+		table.remove( 0 );
+		table.remove( 8 );
+		assertEquals( 2, table.size() );
+		assertEquals( IntLongTable.ABSENT, table.get( 0 ) );
+		assertThrows( IllegalArgumentException.class, () -> table.put( 1, IntLongTable.ABSENT ) );
+	}
+
+	@Test
+	public void testMatchesHashMap() {
+		IntLongTable table = new IntLongTable();
+		Map<Integer,Long> expected = new HashMap<>();
+		Random random = new Random( 42 );
+		for( int i = 0; i < 100_000; i++ ) {
+			int key = random.nextInt( 5_000 ) * 31;
+			if( random.nextInt( 3 ) == 0 ) {
+				table.remove( key );
+				expected.remove( key );
+			} else {
+				long value = random.nextInt( 1_000_000 );
+				table.put( key, value );
+				expected.put( key, value );
+			}
+		}
+		assertEquals( expected.size(), table.size() );
+		for( int key = 0; key < 5_000 * 31; key++ ) {
+			assertEquals( (long) expected.getOrDefault( key, IntLongTable.ABSENT ), table.get( key ) );
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class IntTableTest {
+
+	@Test
+	public void testPutGet() {
+		IntTable<String> table = new IntTable<>();
+		assertNull( table.put( 7, "seven" ) );
+		assertNull( table.put( 0, "zero" ) );
+		assertNull( table.put( -3, "minus three" ) );
+		assertEquals( "seven", table.put( 7, "SEVEN" ) );
+
+		assertEquals( 3, table.size() );
+		assertEquals( "SEVEN", table.get( 7 ) );
+		assertEquals( "zero", table.get( 0 ) );
+		assertEquals( "minus three", table.get( -3 ) );
+		assertNull( table.get( 8 ) );
+		assertTrue( table.containsKey( 0 ) );
+		assertFalse( table.containsKey( 1 ) );
+	}
+
+	@Test
+	public void testReplace() {
+		IntTable<String> table = new IntTable<>();
+		assertNull( table.replace( 1, "one" ) );
+		assertFalse( table.containsKey( 1 ) );
+
+		table.put( 1, "one" );
+		assertEquals( "one", table.replace( 1, "ONE" ) );
+		assertEquals( "ONE", table.get( 1 ) );
+	}
+
+	@Test
+	public void testRowsInInsertionOrder() {
+		IntTable<Integer> table = new IntTable<>();
+		for( int id : new int[] { 5, 1, 900, 3, 2 } ) {
+			table.put( id, id );
+		}
+		table.remove( 900 );
+		table.put( 4, 4 );
+		assertEquals( Arrays.asList( 5, 1, 3, 2, 4 ), table.rows() );
+	}
+
+	@Test
+	public void testEnsureCapacity() {
+		IntTable<Integer> table = new IntTable<>();
+		for( int id = 0; id < 10; id++ ) {
+			table.put( id, id );
+		}
+		table.remove( 3 );
+		table.ensureCapacity( 10_000 );
+		for( int id = 10; id < 10_010; id++ ) {
+			table.put( id, id );
+		}
+		assertEquals( 10_009, table.size() );
+		assertNull( table.get( 3 ) );
+		assertEquals( Integer.valueOf( 10_009 ), table.get( 10_009 ) );
+		assertEquals( Arrays.asList( 0, 1, 2, 4 ), table.rows().subList( 0, 4 ) );
+	}
+
+	@Test
+	public void testRemoveKeepsProbeChains() {
+		// strided IDs collide heavily in a small table
+		IntTable<Integer> table = new IntTable<>();
+		for( int i = 0; i < 200; i++ ) {
+			table.put( i * 1024, i );
+		}
+		for( int i = 0; i < 200; i += 2 ) {
+			assertEquals( Integer.valueOf( i ), table.remove( i * 1024 ) );
+		}
+		assertNull( table.remove( 0 ) );
+		assertEquals( 100, table.size() );
+		for( int i = 0; i < 200; i++ ) {
+			assertEquals( i % 2 == 0 ? null : Integer.valueOf( i ), table.get( i * 1024 ) );
+		}
+	}
+
+	@Test
+	public void testMatchesHashMap() {
+		Random random = new Random( 42 );
+		IntTable<Integer> table = new IntTable<>();
+		Map<Integer,Integer> expected = new HashMap<>();
+		for( int n = 0; n < 200_000; n++ ) {
+			int id = random.nextInt( 5_000 );
+			switch( random.nextInt( 4 ) ) {
+			case 0:
+			case 1:
+				assertEquals( expected.put( id, n ), table.put( id, n ) );
+				break;
+			case 2:
+				assertEquals( expected.remove( id ), table.remove( id ) );
+				break;
+			default:
+				assertEquals( expected.get( id ), table.get( id ) );
+			}
+		}
+		assertEquals( expected.size(), table.size() );
+		List<Integer> rows = new ArrayList<>( table.rows() );
+		rows.sort( null );
+		List<Integer> values = new ArrayList<>( expected.values() );
+		values.sort( null );
+		assertEquals( values, rows );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPutNullRow() {
+		new IntTable<String>().put( 1, null );
+	}
+
+}
@@ -7,6 +7,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -38,6 +39,15 @@ public class ItemDaoDummyImplTest {
 		assertEquals( "https://minecraft.wiki/images/Emerald_JE3_BE3.png", item.getImageSource() );
 	}
 
+	@Test
+	public void testSelectByIds() {
+		List<Item> items = itemDao.selectByIds( 1002, 1001, 5 );
+		assertEquals( 3, items.size() );
+		assertEquals( "Rotten Flesh", items.get( 0 ).getName() );
+		assertEquals( "Emerald", items.get( 1 ).getName() );
+		assertNull( items.get( 2 ) );
+	}
+
 	@Test
 	public void testSelectOneByName() {
 		Item item = itemDao.selectOneByName( "Rotten Flesh" );
@@ -134,6 +144,41 @@ public class ItemDaoDummyImplTest {
 		assertTrue( item.getId().intValue() > 0 );
 	}
 
+	@Test
+	public void testInsertMany() {
+		int count = itemDao.selectAll().size();
+		List<Item> newItems = Arrays.asList(
+			Item.builder().name( "Stone" ).build(),
+			Item.builder().id( 5000 ).name( "Dirt" ).build(),
+			Item.builder().name( "Sand" ).build()
+		);
+		assertEquals( newItems, itemDao.insert( newItems ) );
+		assertEquals( count + 3, itemDao.selectAll().size() );
+		assertEquals( "Dirt", itemDao.selectOneById( 5000 ).getName() );
+		assertTrue( newItems.get( 0 ).getId() > 5000 );
+		assertEquals( newItems.get( 0 ).getId() + 1, newItems.get( 2 ).getId().intValue() );
+		assertEquals( newItems.get( 2 ), itemDao.selectOneByName( "Sand" ) );
+	}
+
+	@Test
+	public void testInsertManyIsAllOrNothing() {
+		int count = itemDao.selectAll().size();
+		List<Item> clashInBatch = Arrays.asList(
+			Item.builder().name( "Stone" ).build(),
+			Item.builder().name( "Stone" ).build()
+		);
+		assertThrows( DaoConstraintException.class, () -> itemDao.insert( clashInBatch ) );
+		List<Item> clashWithTable = Arrays.asList(
+			Item.builder().name( "Dirt" ).build(),
+			Item.builder().name( "Emerald" ).build()
+		);
+		DaoConstraintException e = assertThrows( DaoConstraintException.class, () -> itemDao.insert( clashWithTable ) );
+		assertEquals( clashWithTable.get( 1 ), e.getRow() );
+		assertEquals( count, itemDao.selectAll().size() );
+		assertNull( itemDao.selectOneByName( "Stone" ) );
+		assertNull( itemDao.selectOneByName( "Dirt" ) );
+	}
+
 	@Test
 	public void testUpdateExisting() {
 		Item item = itemDao.selectOneByName( "Emerald" );
@@ -149,6 +194,66 @@ public class ItemDaoDummyImplTest {
 		assertEquals( newImageSource, finalItem.getImageSource() );
 	}
 
+	@Test
+	public void testUpdateRename() {
+		Item item = itemDao.selectOneByName( "Paper" );
+		assertNotNull( item );
+		int itemId = item.getId();
+
+		item.setName( "Map" );
+		itemDao.update( item );
+
+		assertNull( itemDao.selectOneByName( "Paper" ) );
+		Item finalItem = itemDao.selectOneByName( "Map" );
+		assertNotNull( finalItem );
+		assertEquals( itemId, finalItem.getId().intValue() );
+
+		// the old name is free again
+		Item newItem = itemDao.insertOne( Item.builder().name( "Paper" ).build() );
+		assertEquals( newItem.getId(), itemDao.selectOneByName( "Paper" ).getId() );
+	}
+
+	@Test
+	public void testUpdateNameFail() {
+		Item item = itemDao.selectOneByName( "Book" );
+		assertNotNull( item );
+
+		item.setName( "Compass" );
+		Exception e = assertThrows( DaoConstraintException.class, () -> itemDao.update( item ) );
+		assertEquals( "Dataset of type \"Item\" does not allow duplicate values for field \"NAME\"", e.getMessage() );
+		assertEquals( 1012, itemDao.selectOneByName( "Compass" ).getId().intValue() );
+	}
+
+	@Test
+	public void testUpdateWithVersion() {
+		long version = itemDao.versionOf( 1001 );
+		Item emerald = itemDao.selectOneById( 1001 );
+		Item gem = Item.builder().id( 1001 ).name( "Green Gem" ).imageSource( emerald.getImageSource() ).build();
+		assertEquals( gem, itemDao.update( gem, version ) );
+		long updated = itemDao.versionOf( 1001 );
+		assertTrue( updated != version );
+
+		// a second update from the same read is stale
+		Item jewel = Item.builder().id( 1001 ).name( "Jewel" ).build();
+		StaleRowException e = assertThrows( StaleRowException.class, () -> itemDao.update( jewel, version ) );
+		logger.error( e.getMessage() );
+		assertEquals( updated, e.getActualVersion() );
+		assertEquals( "Green Gem", itemDao.selectOneById( 1001 ).getName() );
+
+		// a rejected update leaves the version as it was
+		Item clash = Item.builder().id( 1001 ).name( "Compass" ).build();
+		assertThrows( DaoConstraintException.class, () -> itemDao.update( clash, updated ) );
+		assertEquals( updated, itemDao.versionOf( 1001 ) );
+
+		// nor does a row inserted again take up an old version
+		itemDao.deleteOne( gem );
+		assertEquals( -1, itemDao.versionOf( 1001 ) );
+		assertNull( itemDao.update( jewel, updated ) );
+		itemDao.insertOne( jewel );
+		assertThrows( StaleRowException.class, () -> itemDao.update( jewel, updated ) );
+		assertThrows( StaleRowException.class, () -> itemDao.update( jewel, version ) );
+	}
+
 	@Test
 	public void testUpdateFailNonExisting() {
 		Item item = Item.builder()
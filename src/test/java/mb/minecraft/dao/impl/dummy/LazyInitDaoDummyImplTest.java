@@ -0,0 +1,260 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.Villager;
+
+
+public class LazyInitDaoDummyImplTest {
+
+	private ItemDaoDummyImpl itemDao;
+	private VillageDaoDummyImpl villageDao;
+	private VillagerTypeDaoDummyImpl villagerTypeDao;
+	private VillagerDaoDummyImpl villagerDao;
+	private TradeDaoDummyImpl tradeDao;
+	private TradeItemDaoDummyImpl tradeItemDao;
+
+
+	@After
+	public void tearDown() {
+		System.clearProperty( DummyDaoSettings.INIT );
+	}
+
+
+	@Test
+	public void testLazyFillsOnFirstAccess() {
+		AtomicInteger fills = new AtomicInteger();
+		AtomicReference<Thread> filledOn = new AtomicReference<>();
+		TableInit tableInit = new TableInit( "Test", TableInit.Mode.LAZY, () -> {
+			fills.incrementAndGet();
+			filledOn.set( Thread.currentThread() );
+		} );
+		tableInit.onInit();
+		assertEquals( 0, fills.get() );
+
+		tableInit.await();
+		tableInit.await();
+		assertEquals( 1, fills.get() );
+		assertSame( Thread.currentThread(), filledOn.get() );
+	}
+
+	@Test
+	public void testAsyncReadersWaitForFill() throws Exception {
+		CountDownLatch started = new CountDownLatch( 1 );
+		CountDownLatch release = new CountDownLatch( 1 );
+		AtomicReference<String> filledOn = new AtomicReference<>();
+		TableInit tableInit = new TableInit( "Test", TableInit.Mode.ASYNC, () -> {
+			filledOn.set( Thread.currentThread().getName() );
+			started.countDown();
+			try {
+				release.await();
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		} );
+		tableInit.onInit();
+
+		// the readers may well get there before the background fill starts,
+		// and still only wait for it
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+		try {
+			List<Future<?>> readers = new ArrayList<>();
+			for( int i = 0; i < 4; i++ ) {
+				readers.add( executor.submit( tableInit::await ) );
+			}
+			assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+			for( Future<?> reader : readers ) {
+				assertFalse( reader.isDone() );
+			}
+			release.countDown();
+			for( Future<?> reader : readers ) {
+				reader.get( 10, TimeUnit.SECONDS );
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals( "dummy-dao-init", filledOn.get() );
+	}
+
+	@Test
+	public void testFailedFillFailsEveryAccess() {
+		TableInit tableInit = new TableInit( "Test", TableInit.Mode.LAZY, () -> {
+			throw new IllegalArgumentException( "bad seed" );
+		} );
+		for( int i = 0; i < 2; i++ ) {
+			IllegalStateException e = assertThrows( IllegalStateException.class, tableInit::await );
+			assertTrue( e.getCause() instanceof IllegalArgumentException );
+		}
+	}
+
+	@Test
+	public void testCloseSkipsUnusedTable() {
+		AtomicInteger fills = new AtomicInteger();
+		TableInit tableInit = new TableInit( "Test", TableInit.Mode.LAZY, fills::incrementAndGet );
+		tableInit.close();
+		assertThrows( IllegalStateException.class, tableInit::await );
+		assertEquals( 0, fills.get() );
+	}
+
+	@Test
+	public void testLazyDaos() throws Exception {
+		System.setProperty( DummyDaoSettings.INIT, "lazy" );
+		createDaos();
+
+		assertMockData();
+		destroyDaos();
+	}
+
+	@Test
+	public void testAsyncDaosWithForeignKeys() throws Exception {
+		System.setProperty( DummyDaoSettings.INIT, "async" );
+		createDaos();
+		enforceForeignKeys();
+
+		// children first, so their fills wait on their parents' checks
+		tradeItemDao.init();
+		tradeDao.init();
+		villagerDao.init();
+		villagerTypeDao.init();
+		villageDao.init();
+		itemDao.init();
+
+		assertMockData();
+		destroyDaos();
+	}
+
+	@Test
+	public void testParallelSeeder() throws Exception {
+		System.setProperty( DummyDaoSettings.INIT, "parallel" );
+		createDaos();
+		itemDao.init();
+		assertEquals( -1, itemDao.tableInit().fillMillis() );
+
+		Map<String,Long> timings = seeder().seed();
+		assertEquals( Arrays.asList( "Item", "Village", "VillagerType", "Villager", "Trade", "TradeItem" ), new ArrayList<>( timings.keySet() ) );
+		for( long millis : timings.values() ) {
+			assertTrue( millis >= 0 );
+		}
+		assertMockData();
+		destroyDaos();
+	}
+
+	@Test
+	public void testParallelSeederWithForeignKeys() throws Exception {
+		System.setProperty( DummyDaoSettings.INIT, "parallel" );
+		createDaos();
+		enforceForeignKeys();
+		// a table already filled by an early reader is left as it is
+		assertEquals( 18, itemDao.selectAll().size() );
+
+		System.setProperty( DummyDaoSettings.FOREIGN_KEYS, "restrict" );
+		DummyDataSeeder seeder = seeder();
+		try {
+			seeder.init();
+		} finally {
+			System.clearProperty( DummyDaoSettings.FOREIGN_KEYS );
+		}
+		assertEquals( 6, seeder.timings().size() );
+		assertMockData();
+		destroyDaos();
+	}
+
+
+	private void assertMockData() {
+		Villager liam = villagerDao.selectOneByName( "Liam Z" );
+		assertEquals( 699, liam.getId().intValue() );
+		List<Trade> trades = tradeDao.selectAll( liam );
+		assertEquals( 2, trades.size() );
+		assertFalse( tradeItemDao.selectAll( trades.get( 0 ) ).isEmpty() );
+		assertEquals( 18, itemDao.selectAll().size() );
+		assertEquals( "Emerald", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( 0, villagerDao.countByTypeId( 101 ) );
+		assertTrue( villageDao.selectOneById( 201 ) != null );
+		assertTrue( villagerTypeDao.deleteOne( villagerTypeDao.selectOneById( 101 ) ) );
+		assertEquals( 1019, itemDao.insertOne( Item.builder().name( "Stone" ).build() ).getId().intValue() );
+	}
+
+	private void enforceForeignKeys() {
+		System.setProperty( DummyDaoSettings.FOREIGN_KEYS, "restrict" );
+		ForeignKeys foreignKeys;
+		try {
+			foreignKeys = new ForeignKeys();
+		} finally {
+			System.clearProperty( DummyDaoSettings.FOREIGN_KEYS );
+		}
+		foreignKeys.itemDao = itemDao;
+		foreignKeys.villageDao = villageDao;
+		foreignKeys.villagerTypeDao = villagerTypeDao;
+		foreignKeys.villagerDao = villagerDao;
+		foreignKeys.tradeDao = tradeDao;
+		foreignKeys.tradeItemDao = tradeItemDao;
+		foreignKeys.init();
+		itemDao.foreignKeys = foreignKeys;
+		villageDao.foreignKeys = foreignKeys;
+		villagerDao.foreignKeys = foreignKeys;
+		tradeDao.foreignKeys = foreignKeys;
+		tradeItemDao.foreignKeys = foreignKeys;
+	}
+
+	private DummyDataSeeder seeder() {
+		DummyDataSeeder seeder = new DummyDataSeeder();
+		seeder.itemDao = itemDao;
+		seeder.villageDao = villageDao;
+		seeder.villagerTypeDao = villagerTypeDao;
+		seeder.villagerDao = villagerDao;
+		seeder.tradeDao = tradeDao;
+		seeder.tradeItemDao = tradeItemDao;
+		return seeder;
+	}
+
+	private void createDaos() {
+		itemDao = create( ItemDaoDummyImpl.class );
+		villageDao = create( VillageDaoDummyImpl.class );
+		villagerTypeDao = create( VillagerTypeDaoDummyImpl.class );
+		villagerDao = create( VillagerDaoDummyImpl.class );
+		tradeDao = create( TradeDaoDummyImpl.class );
+		tradeItemDao = create( TradeItemDaoDummyImpl.class );
+		villagerTypeDao.villagerDao = villagerDao;
+	}
+
+	private void destroyDaos() throws Exception {
+		itemDao.destroy();
+		villageDao.destroy();
+		villagerTypeDao.destroy();
+		villagerDao.destroy();
+		tradeDao.destroy();
+		tradeItemDao.destroy();
+	}
+
+	private static <T> T create( Class<T> daoClass ) {
+		try {
+			Constructor<T> constructor = daoClass.getDeclaredConstructor();
+			constructor.setAccessible( true );
+			return constructor.newInstance();
+		} catch( ReflectiveOperationException e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static mb.minecraft.model.OfferRequire.REQUIRE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Trade;
+import mb.minecraft.model.TradeItem;
+import mb.minecraft.model.Villager;
+import mb.minecraft.model.VillagerType;
+
+
+public class PersistentDaoDummyImplTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path dataDir;
+
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = folder.newFolder( "data" ).toPath();
+		System.setProperty( DummyDaoSettings.DATA_DIR, dataDir.toString() );
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty( DummyDaoSettings.DATA_DIR );
+		System.clearProperty( DummyDaoSettings.WAL );
+		System.clearProperty( DummyDaoSettings.CHECKPOINT_INTERVAL );
+		System.clearProperty( DummyDaoSettings.CONCURRENT );
+		System.clearProperty( DummyDaoSettings.TRANSACTIONS );
+	}
+
+
+	@Test
+	public void testRowsSurviveRestart() throws Exception {
+		ItemDaoDummyImpl itemDao = create( ItemDaoDummyImpl.class );
+		int count = itemDao.selectAll().size();
+		Item stone = itemDao.insertOne( Item.builder().name( "Stone" ).imageSource( null ).build() );
+		Item emerald = itemDao.selectOneById( 1001 );
+		emerald.setName( "Emerald Block" );
+		itemDao.update( emerald );
+		assertTrue( itemDao.deleteOne( itemDao.selectOneById( 1002 ) ) );
+		itemDao.destroy();
+
+		itemDao = create( ItemDaoDummyImpl.class );
+		assertEquals( count, itemDao.selectAll().size() );
+		assertEquals( "Stone", itemDao.selectOneById( stone.getId() ).getName() );
+		assertNull( itemDao.selectOneById( stone.getId() ).getImageSource() );
+		assertEquals( "Emerald Block", itemDao.selectOneById( 1001 ).getName() );
+		assertEquals( 1001, itemDao.selectOneByName( "Emerald Block" ).getId().intValue() );
+		assertNull( itemDao.selectOneById( 1002 ) );
+		assertEquals( stone.getId() + 1, itemDao.insertOne( Item.builder().name( "Dirt" ).build() ).getId().intValue() );
+		itemDao.destroy();
+	}
+
+	@Test
+	public void testWritesSurviveWithoutDestroy() throws Exception {
+		VillagerDaoDummyImpl villagerDao = create( VillagerDaoDummyImpl.class );
+		Villager amy = villagerDao.selectOneById( 705 );
+		amy.setTagged( true );
+		amy.setTypeId( 101 );
+		villagerDao.update( amy );
+
+		villagerDao = create( VillagerDaoDummyImpl.class );
+		Villager reloaded = villagerDao.selectOneById( 705 );
+		assertTrue( reloaded.isTagged() );
+		assertEquals( 101, reloaded.getTypeId().intValue() );
+		assertEquals( reloaded, villagerDao.selectAnyByTypeId( 101 ) );
+		villagerDao.destroy();
+	}
+
+	@Test
+	public void testEveryTableRoundTrips() throws Exception {
+		TradeDaoDummyImpl tradeDao = create( TradeDaoDummyImpl.class );
+		TradeItemDaoDummyImpl tradeItemDao = create( TradeItemDaoDummyImpl.class );
+		VillagerTypeDaoDummyImpl villagerTypeDao = create( VillagerTypeDaoDummyImpl.class );
+		Trade trade = tradeDao.insertOne( Trade.builder().villagerId( 699 ).build() );
+		TradeItem tradeItem = tradeItemDao.insertOne( TradeItem.builder().tradeId( trade.getId() ).offerRequire( REQUIRE ).seqno( 1 ).quantity( 3 ).itemId( 1001 ).memo( "fär" ).build() );
+		VillagerType type = villagerTypeDao.insertOne( VillagerType.builder().profession( "Nitwit" ).build() );
+		tradeDao.destroy();
+		tradeItemDao.destroy();
+		villagerTypeDao.destroy();
+
+		tradeDao = create( TradeDaoDummyImpl.class );
+		tradeItemDao = create( TradeItemDaoDummyImpl.class );
+		villagerTypeDao = create( VillagerTypeDaoDummyImpl.class );
+		assertEquals( trade, tradeDao.selectOneById( trade.getId() ) );
+		assertEquals( 3, tradeDao.selectOneById( trade.getId() ).getTradeSeqno().intValue() );
+		assertEquals( tradeItem, tradeItemDao.selectOneByTradeKey( trade.getId(), REQUIRE, 1 ) );
+		assertEquals( type, villagerTypeDao.selectOneById( type.getId() ) );
+		assertEquals( type, villagerTypeDao.selectOneByName( "Nitwit" ) );
+		assertEquals( 4, tradeDao.insertOne( Trade.builder().villagerId( 699 ).build() ).getTradeSeqno().intValue() );
+		tradeDao.destroy();
+		tradeItemDao.destroy();
+		villagerTypeDao.destroy();
+	}
+
+	@Test
+	public void testFileGrowsAndCompacts() throws Exception {
+		ItemDaoDummyImpl itemDao = create( ItemDaoDummyImpl.class );
+		StringBuilder name = new StringBuilder( "Item" );
+		for( int i = 0; i < 200; i++ ) {
+			name.append( '-' );
+		}
+		for( int i = 0; i < 2000; i++ ) {
+			itemDao.insertOne( Item.builder().name( name.toString() + i ).build() );
+		}
+		for( Item item : itemDao.selectAll() ) {
+			if( item.getId() > 1018 )
+				itemDao.deleteOne( item );
+		}
+		itemDao.destroy();
+		long size = Files.size( dataDir.resolve( "item.tbl" ) );
+
+		itemDao = create( ItemDaoDummyImpl.class );
+		assertEquals( 18, itemDao.selectAll().size() );
+		assertTrue( Files.size( dataDir.resolve( "item.tbl" ) ) < size );
+		itemDao.insertOne( Item.builder().name( "Stone" ).build() );
+		itemDao.destroy();
+
+		itemDao = create( ItemDaoDummyImpl.class );
+		assertEquals( 19, itemDao.selectAll().size() );
+		itemDao.destroy();
+	}
+
+	@Test
+	public void testFileCompactsWhileRunning() throws Exception {
+		ItemDaoDummyImpl itemDao = create( ItemDaoDummyImpl.class );
+		StringBuilder name = new StringBuilder( "Emerald" );
+		for( int i = 0; i < 200; i++ ) {
+			name.append( '-' );
+		}
+		// about 4MB of records, nearly all of them superseded
+		for( int i = 0; i < 20_000; i++ ) {
+			itemDao.update( Item.builder().id( 1001 ).name( name.toString() + i ).build() );
+		}
+		assertTrue( Files.size( dataDir.resolve( "item.tbl" ) ) < 3 << 20 );
+		itemDao.destroy();
+
+		itemDao = create( ItemDaoDummyImpl.class );
+		assertEquals( 18, itemDao.selectAll().size() );
+		assertEquals( name.toString() + 19_999, itemDao.selectOneById( 1001 ).getName() );
+		itemDao.destroy();
+	}
+
+	@Test
+	public void testRefusedWritesLeaveMemoryUnchanged() {
+		RowTable<String> table = new PersistentRowTable<>( new IntTable<>(), new TableStore<String>() {
+			@Override
+			public boolean isEmpty() {
+				return true;
+			}
+
+			@Override
+			public void load( Consumer<? super String> action ) {
+			}
+
+			@Override
+			public int maxId() {
+				return -1;
+			}
+
+			@Override
+			public void put( int id, String row ) {
+				if( row.startsWith( "bad" ) )
+					throw new IllegalStateException( "Store is full" );
+			}
+
+			@Override
+			public void remove( int id ) {
+				throw new IllegalStateException( "Store is full" );
+			}
+
+			@Override
+			public void close() {
+			}
+		} );
+		table.put( 1, "one" );
+
+		assertThrows( IllegalStateException.class, () -> table.put( 2, "bad two" ) );
+		assertThrows( IllegalStateException.class, () -> table.put( 1, "bad one" ) );
+		assertThrows( IllegalStateException.class, () -> table.replace( 1, "bad one" ) );
+		assertThrows( IllegalStateException.class, () -> table.remove( 1 ) );
+		assertEquals( "one", table.get( 1 ) );
+		assertNull( table.get( 2 ) );
+		assertEquals( 1, table.size() );
+	}
+
+	@Test
+	public void testDeletedIdsAreNotReused() throws Exception {
+		ItemDaoDummyImpl itemDao = create( ItemDaoDummyImpl.class );
+		Item stone = itemDao.insertOne( Item.builder().name( "Stone" ).build() );
+		itemDao.deleteOne( stone );
+		itemDao.destroy();
+
+		itemDao = create( ItemDaoDummyImpl.class );
+		assertEquals( stone.getId() + 1, itemDao.insertOne( Item.builder().name( "Dirt" ).build() ).getId().intValue() );
+		itemDao.destroy();
+	}
+
+	@Test
+	public void testLogSurvivesKill() throws Exception {
+		System.setProperty( DummyDaoSettings.WAL, "true" );
+		TradeItemDaoDummyImpl tradeItemDao = create( TradeItemDaoDummyImpl.class );
+		int count = tradeItemDao.selectAll().size();
+		TradeItem tradeItem = tradeItemDao.selectAll().get( 2 );
+		tradeItem.setQuantity( 64 );
+		tradeItemDao.update( tradeItem );
+		tradeItemDao.deleteOne( tradeItemDao.selectAll().get( 0 ) );
+
+		// never destroyed, like a JVM that was killed
+		tradeItemDao = create( TradeItemDaoDummyImpl.class );
+		assertEquals( count - 1, tradeItemDao.selectAll().size() );
+		assertEquals( 64, tradeItemDao.selectAll().get( 1 ).getQuantity().intValue() );
+		assertEquals( count, tradeItemDao.insertOne( TradeItem.builder().tradeId( 1 ).offerRequire( REQUIRE ).seqno( 9 ).quantity( 1 ).itemId( 1001 ).build() ).getId().intValue() );
+		tradeItemDao.destroy();
+	}
+
+	@Test
+	public void testLogIgnoresTornRecord() throws Exception {
+		System.setProperty( DummyDaoSettings.WAL, "true" );
+		VillageDaoDummyImpl villageDao = create( VillageDaoDummyImpl.class );
+		int count = villageDao.selectAll().size();
+		villageDao.deleteOne( villageDao.selectOneById( 202 ) );
+		villageDao.destroy();
+		try( DirectoryStream<Path> segments = Files.newDirectoryStream( dataDir, "village.wal.*" ) ) {
+			for( Path segment : segments ) {
+				Files.write( segment, new byte[] { 0, 0, 0, 40, 1, 0, 0 }, StandardOpenOption.APPEND );
+			}
+		}
+
+		villageDao = create( VillageDaoDummyImpl.class );
+		assertEquals( count - 1, villageDao.selectAll().size() );
+		assertNull( villageDao.selectOneById( 202 ) );
+		villageDao.destroy();
+	}
+
+	@Test
+	public void testCheckpointsTruncateLog() throws Exception {
+		System.setProperty( DummyDaoSettings.WAL, "true" );
+		System.setProperty( DummyDaoSettings.CHECKPOINT_INTERVAL, "100" );
+		ItemDaoDummyImpl itemDao = create( ItemDaoDummyImpl.class );
+		int lastId = 0;
+		for( int i = 0; i < 1000; i++ ) {
+			Item item = itemDao.insertOne( Item.builder().name( "Item " + i ).build() );
+			lastId = item.getId();
+			if( i % 2 == 0 )
+				itemDao.deleteOne( item );
+		}
+		itemDao.destroy();
+		assertTrue( Files.exists( dataDir.resolve( "item.ckpt" ) ) );
+		// 1500 records were logged; only those since the last checkpoint are left
+		long logSize = 0;
+		try( DirectoryStream<Path> segments = Files.newDirectoryStream( dataDir, "item.wal.*" ) ) {
+			for( Path segment : segments ) {
+				logSize += Files.size( segment );
+			}
+		}
+		assertTrue( logSize < 500 * 40 );
+
+		itemDao = create( ItemDaoDummyImpl.class );
+		assertEquals( 518, itemDao.selectAll().size() );
+		assertEquals( "Item 999", itemDao.selectOneById( lastId ).getName() );
+		assertEquals( lastId + 1, itemDao.insertOne( Item.builder().name( "Stone" ).build() ).getId().intValue() );
+		itemDao.destroy();
+	}
+
+	@Test
+	public void testGroupCommitUnderConcurrentWriters() throws Exception {
+		System.setProperty( DummyDaoSettings.WAL, "true" );
+		System.setProperty( DummyDaoSettings.CHECKPOINT_INTERVAL, "500" );
+		System.setProperty( DummyDaoSettings.CONCURRENT, "true" );
+		VillagerDaoDummyImpl villagerDao = create( VillagerDaoDummyImpl.class );
+		int count = villagerDao.selectAll().size();
+		ExecutorService pool = Executors.newFixedThreadPool( 8 );
+		List<Future<?>> writers = new ArrayList<>();
+		for( int t = 0; t < 8; t++ ) {
+			int thread = t;
+			VillagerDaoDummyImpl dao = villagerDao;
+			writers.add( pool.submit( () -> {
+				for( int i = 0; i < 500; i++ ) {
+					dao.insertOne( Villager.builder().name( "Villager " + thread + "-" + i ).villageId( 201 ).typeId( 101 ).build() );
+				}
+			} ) );
+		}
+		for( Future<?> writer : writers ) {
+			writer.get();
+		}
+		pool.shutdown();
+		villagerDao.destroy();
+
+		villagerDao = create( VillagerDaoDummyImpl.class );
+		assertEquals( count + 4000, villagerDao.selectAll().size() );
+		assertEquals( 4000, villagerDao.countByTypeId( 101 ) );
+		villagerDao.destroy();
+	}
+
+	@Test
+	public void testTransactionsRefuseDataDir() throws Exception {
+		System.setProperty( DummyDaoSettings.TRANSACTIONS, "true" );
+		Exception e = assertThrows( InvocationTargetException.class, () -> create( ItemDaoDummyImpl.class ) );
+		assertTrue( e.getCause() instanceof IllegalStateException );
+		try( DirectoryStream<Path> files = Files.newDirectoryStream( dataDir ) ) {
+			assertFalse( files.iterator().hasNext() );
+		}
+	}
+
+
+
+	// a fresh DAO instance, the way Spring would make one after a restart
+	private static <T> T create( Class<T> daoClass ) throws Exception {
+		Constructor<T> constructor = daoClass.getDeclaredConstructor();
+		constructor.setAccessible( true );
+		return constructor.newInstance();
+	}
+}
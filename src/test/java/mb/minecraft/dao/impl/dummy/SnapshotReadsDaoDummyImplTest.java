@@ -0,0 +1,73 @@
+package mb.minecraft.dao.impl.dummy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import mb.minecraft.model.Item;
+import mb.minecraft.model.Trade;
+
+
+@RunWith(MockitoJUnitRunner.class)
+public class SnapshotReadsDaoDummyImplTest {
+
+	@InjectMocks
+	ItemDaoDummyImpl itemDao;
+
+	@InjectMocks
+	TradeDaoDummyImpl tradeDao;
+
+
+	@BeforeClass
+	public static void enableSnapshotReads() {
+		System.setProperty( DummyDaoSettings.SNAPSHOT_READS, "true" );
+	}
+
+	@AfterClass
+	public static void disableSnapshotReads() {
+		System.clearProperty( DummyDaoSettings.SNAPSHOT_READS );
+	}
+
+
+	@Test
+	public void testSelectAllSharedBetweenWrites() {
+		List<Item> first = itemDao.selectAll();
+		List<Item> second = itemDao.selectAll();
+		assertEquals( 18, first.size() );
+		assertSame( first, second );
+	}
+
+	@Test
+	public void testSelectAllUnmodifiable() {
+		List<Item> items = itemDao.selectAll();
+		assertThrows( UnsupportedOperationException.class, () -> items.add( Item.builder().name( "Dirt" ).build() ) );
+		assertThrows( UnsupportedOperationException.class, () -> items.remove( 0 ) );
+	}
+
+	@Test
+	public void testSnapshotStableAcrossWrites() {
+		List<Trade> before = tradeDao.selectAll();
+		tradeDao.insertOne( Trade.builder().villagerId( 73 ).build() );
+		assertTrue( tradeDao.deleteOne( tradeDao.selectOneById( 1 ) ) );
+
+		List<Trade> after = tradeDao.selectAll();
+		assertNotSame( before, after );
+		assertEquals( 15, before.size() );
+		assertEquals( 15, after.size() );
+		assertTrue( before.stream().anyMatch( t -> t.getId().equals( 1 ) ) );
+		assertTrue( after.stream().noneMatch( t -> t.getId().equals( 1 ) ) );
+		assertSame( after, tradeDao.selectAll() );
+	}
+
+}
@@ -75,6 +75,28 @@ public class TradeDaoDummyImplTest {
 		assertEquals( 1, t1.getTradeSeqno().intValue() );
 	}
 
+	@Test
+	public void testSelectByIds() {
+		List<Trade> trades = tradeDao.selectByIds( 15, 999, 3, 15 );
+		assertEquals( 4, trades.size() );
+		assertEquals( 15, trades.get( 0 ).getId().intValue() );
+		assertNull( trades.get( 1 ) );
+		assertEquals( 3, trades.get( 2 ).getId().intValue() );
+		assertEquals( trades.get( 0 ), trades.get( 3 ) );
+		assertTrue( tradeDao.selectByIds().isEmpty() );
+	}
+
+	@Test
+	public void testSelectAllForVillagers() {
+		Villager v73 = Villager.builder().id( 73 ).build();
+		Villager v701 = Villager.builder().id( 701 ).build();
+		List<Trade> trades = tradeDao.selectAll( Arrays.asList( v701, Villager.builder().id( 999 ).build(), null, v73 ) );
+
+		List<Trade> expected = tradeDao.selectAll( v701 );
+		expected.addAll( tradeDao.selectAll( v73 ) );
+		assertEquals( expected, trades );
+	}
+
 	@Test
 	public void testInsertOneSuccess() {
 		int count = tradeDao.selectAll().size();
@@ -105,6 +127,49 @@ public class TradeDaoDummyImplTest {
 		assertEquals( count + 1, tradeDao.selectAll().size() );
 	}
 
+	@Test
+	public void testInsertDeriveSeqnoRepeated() {
+		Trade first = tradeDao.insertOne( Trade.builder().villagerId( 702 ).build() );
+		Trade second = tradeDao.insertOne( Trade.builder().villagerId( 702 ).build() );
+		Trade other = tradeDao.insertOne( Trade.builder().villagerId( 9999 ).build() );
+		assertEquals( 3, first.getTradeSeqno().intValue() );
+		assertEquals( 4, second.getTradeSeqno().intValue() );
+		assertEquals( 1, other.getTradeSeqno().intValue() );
+	}
+
+	@Test
+	public void testInsertDeriveSeqnoAfterDelete() {
+		assertEquals( 4, tradeDao.insertOne( Trade.builder().villagerId( 705 ).build() ).getTradeSeqno().intValue() );
+		assertTrue( tradeDao.deleteOne( tradeDao.selectOneById( 16 ) ) );
+		assertTrue( tradeDao.deleteOne( tradeDao.selectOneById( 15 ) ) );
+		assertEquals( 3, tradeDao.insertOne( Trade.builder().villagerId( 705 ).build() ).getTradeSeqno().intValue() );
+	}
+
+	@Test
+	public void testInsertDeriveSeqnoAfterDeletingSharedMax() {
+		// two of villager 705's trades hold seqno 3; the max stays until both are gone
+		tradeDao.insertOne( Trade.builder().villagerId( 705 ).tradeSeqno( 3 ).build() );
+		assertTrue( tradeDao.deleteOne( tradeDao.selectOneById( 15 ) ) );
+		assertEquals( 4, tradeDao.insertOne( Trade.builder().villagerId( 705 ).build() ).getTradeSeqno().intValue() );
+		assertTrue( tradeDao.deleteOne( tradeDao.selectOneById( 17 ) ) );
+		assertTrue( tradeDao.deleteOne( tradeDao.selectOneById( 16 ) ) );
+		assertEquals( 3, tradeDao.insertOne( Trade.builder().villagerId( 705 ).build() ).getTradeSeqno().intValue() );
+	}
+
+	@Test
+	public void testInsertDeriveSeqnoAfterMove() {
+		assertEquals( 3, tradeDao.insertOne( Trade.builder().villagerId( 704 ).build() ).getTradeSeqno().intValue() );
+
+		// move villager 73's last trade over to villager 704
+		Trade trade = tradeDao.selectOneById( 12 );
+		trade.setVillagerId( 704 );
+		trade.setTradeSeqno( 7 );
+		tradeDao.update( trade );
+
+		assertEquals( 8, tradeDao.insertOne( Trade.builder().villagerId( 704 ).build() ).getTradeSeqno().intValue() );
+		assertEquals( 4, tradeDao.insertOne( Trade.builder().villagerId( 73 ).build() ).getTradeSeqno().intValue() );
+	}
+
 	@Test
 	public void testInsertOneIdFail() {
 		Trade newTrade = Trade.builder()
@@ -153,6 +218,41 @@ public class TradeDaoDummyImplTest {
 		assertEquals( count + 2, tradeDao.selectAll().size() );
 	}
 
+	@Test
+	public void testInsertManyIsAllOrNothing() {
+		int count = tradeDao.selectAll().size();
+		List<Trade> clashWithTable = Arrays.asList(
+			Trade.builder().villagerId( 1 ).build(),
+			Trade.builder().id( 15 ).villagerId( 1 ).build()
+		);
+		assertThrows( DaoConstraintException.class, () -> tradeDao.insert( clashWithTable ) );
+
+		List<Trade> clashInBatch = Arrays.asList(
+			Trade.builder().id( 500 ).villagerId( 1 ).build(),
+			Trade.builder().villagerId( 1 ).build(),
+			Trade.builder().id( 500 ).villagerId( 2 ).build()
+		);
+		assertThrows( DaoConstraintException.class, () -> tradeDao.insert( clashInBatch ) );
+		assertEquals( count, tradeDao.selectAll().size() );
+		assertTrue( tradeDao.selectAll( Villager.builder().id( 1 ).build() ).isEmpty() );
+		assertNull( tradeDao.selectOneById( 500 ) );
+	}
+
+	@Test
+	public void testInsertManyKeepsListOrder() {
+		List<Trade> newTrades = Arrays.asList(
+			Trade.builder().villagerId( 1 ).build(),
+			Trade.builder().villagerId( 2 ).build(),
+			Trade.builder().villagerId( 1 ).build()
+		);
+		tradeDao.insert( newTrades );
+		assertTrue( newTrades.get(0).getId() < newTrades.get(1).getId() );
+		assertTrue( newTrades.get(1).getId() < newTrades.get(2).getId() );
+		assertEquals( 1, newTrades.get(0).getTradeSeqno().intValue() );
+		assertEquals( 1, newTrades.get(1).getTradeSeqno().intValue() );
+		assertEquals( 2, newTrades.get(2).getTradeSeqno().intValue() );
+	}
+
 	@Test
 	public void testUpdateExisting() {
 		Trade trade = tradeDao.selectOneById( 12 );
@@ -168,6 +268,24 @@ public class TradeDaoDummyImplTest {
 		assertEquals( 703, finalTrade.getVillagerId().intValue() );
 	}
 
+	@Test
+	public void testUpdateMovesVillager() {
+		Villager oldVillager = Villager.builder().id( 699 ).build();
+		Villager newVillager = Villager.builder().id( 701 ).build();
+		assertEquals( 2, tradeDao.selectAll( oldVillager ).size() );
+		assertEquals( 2, tradeDao.selectAll( newVillager ).size() );
+
+		Trade trade = tradeDao.selectOneById( 2 );
+		trade.setVillagerId( 701 );
+		trade.setTradeSeqno( 3 );
+		tradeDao.update( trade );
+
+		assertEquals( 1, tradeDao.selectAll( oldVillager ).size() );
+		List<Trade> trades = tradeDao.selectAll( newVillager );
+		assertEquals( 3, trades.size() );
+		assertEquals( 2, trades.get(0).getId().intValue() );
+	}
+
 	@Test
 	public void testUpdateFailNonExisting() {
 		Trade trade = Trade.builder()
@@ -182,6 +300,17 @@ public class TradeDaoDummyImplTest {
 		assertNull( finalTrade );
 	}
 
+	@Test
+	public void testDeleteRemovesFromVillager() {
+		Villager villager = Villager.builder().id( 73 ).build();
+		Trade trade = tradeDao.selectOneById( 10 );
+		assertTrue( tradeDao.deleteOne( trade ) );
+
+		List<Trade> trades = tradeDao.selectAll( villager );
+		assertEquals( 3, trades.size() );
+		assertFalse( trades.stream().anyMatch( t -> t.getId().equals( 10 ) ) );
+	}
+
 	@Test
 	public void testDeleteFail() {
 		Trade deleteTrade = Trade.builder()
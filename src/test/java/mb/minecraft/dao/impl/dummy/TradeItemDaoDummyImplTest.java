@@ -10,6 +10,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -73,6 +74,18 @@ public class TradeItemDaoDummyImplTest {
 		assertEquals( null, ti2.getMemo() );
 	}
 
+	@Test
+	public void testSelectAllForTrades() {
+		Trade t9 = Trade.builder().id( 9 ).build();
+		Trade t2 = Trade.builder().id( 2 ).build();
+		List<TradeItem> tradeItems = tradeItemDao.selectAll( Arrays.asList( t9, null, t2 ) );
+
+		List<TradeItem> expected = tradeItemDao.selectAll( t9 );
+		expected.addAll( tradeItemDao.selectAll( t2 ) );
+		assertEquals( expected, tradeItems );
+		assertTrue( tradeItemDao.selectAll( Collections.<Trade>emptyList() ).isEmpty() );
+	}
+
 	@Test
 	public void testSelectAllForItem() {
 		List<TradeItem> tradeItems = tradeItemDao.selectAll( Item.builder().id( 1001 ).build() );
@@ -80,6 +93,19 @@ public class TradeItemDaoDummyImplTest {
 		assertEquals( 15, tradeItems.size() );
 	}
 
+	@Test
+	public void testSelectOneByTradeKey() {
+		TradeItem tradeItem = tradeItemDao.selectOneByTradeKey( 2, REQUIRE, 2 );
+		assertNotNull( tradeItem );
+		assertEquals( 2, tradeItem.getTradeId().intValue() );
+		assertEquals( REQUIRE, tradeItem.getOfferRequire() );
+		assertEquals( 2, tradeItem.getSeqno().intValue() );
+		assertEquals( 15, tradeItem.getQuantity().intValue() );
+
+		assertNull( tradeItemDao.selectOneByTradeKey( 2, OFFER, 2 ) );
+		assertNull( tradeItemDao.selectOneByTradeKey( 100, OFFER, 1 ) );
+	}
+
 	@Test
 	public void testInsertOneSuccess() {
 		Trade tradeKey = Trade.builder().id( 6 ).build();
@@ -161,6 +187,27 @@ public class TradeItemDaoDummyImplTest {
 	}
 
 
+	@Test
+	public void testInsertManyIsAllOrNothing() {
+		int count = tradeItemDao.selectAll().size();
+		List<TradeItem> clashInBatch = Arrays.asList(
+			TradeItem.builder().tradeId( 100 ).offerRequire( OFFER ).seqno( 1 ).quantity( 1 ).itemId( 1001 ).build(),
+			TradeItem.builder().tradeId( 100 ).offerRequire( REQUIRE ).seqno( 1 ).quantity( 1 ).itemId( 1002 ).build(),
+			TradeItem.builder().tradeId( 100 ).offerRequire( OFFER ).seqno( 1 ).quantity( 2 ).itemId( 1003 ).build()
+		);
+		DaoConstraintException e = assertThrows( DaoConstraintException.class, () -> tradeItemDao.insert( clashInBatch ) );
+		assertEquals( clashInBatch.get( 2 ), e.getRow() );
+
+		TradeItem existing = tradeItemDao.selectAll( Trade.builder().id( 9 ).build() ).get( 0 );
+		List<TradeItem> clashWithTable = Arrays.asList(
+			TradeItem.builder().tradeId( 100 ).offerRequire( OFFER ).seqno( 1 ).quantity( 1 ).itemId( 1001 ).build(),
+			TradeItem.builder().tradeId( 9 ).offerRequire( existing.getOfferRequire() ).seqno( existing.getSeqno() ).quantity( 1 ).itemId( 1001 ).build()
+		);
+		assertThrows( DaoConstraintException.class, () -> tradeItemDao.insert( clashWithTable ) );
+		assertEquals( count, tradeItemDao.selectAll().size() );
+		assertTrue( tradeItemDao.selectAll( Trade.builder().id( 100 ).build() ).isEmpty() );
+	}
+
 	@Test
 	public void testUpdateExisting() {
 		List<TradeItem> tradeItems = tradeItemDao.selectAll( Trade.builder().id( 9 ).build() );
@@ -176,6 +223,39 @@ public class TradeItemDaoDummyImplTest {
 		assertEquals( tradeItems.size(), tradeItemDao.selectAll( Trade.builder().id( 9 ).build() ).size() );
 	}
 
+	@Test
+	public void testUpdateTradeKeyFail() {
+		TradeItem tradeItem = tradeItemDao.selectOneByTradeKey( 2, REQUIRE, 2 );
+		tradeItem.setSeqno( 1 );
+		Exception e = assertThrows( DaoConstraintException.class, () -> tradeItemDao.update( tradeItem ) );
+		assertEquals( "Dataset of type \"TradeItem\" does not allow duplicate values for field \"TradeId-OfferRequire-Seqno\"", e.getMessage() );
+	}
+
+	@Test
+	public void testUpdateToNegativeSeqnoFailKeepsKey() {
+		tradeItemDao.insertOne( TradeItem.builder().tradeId( 2 ).offerRequire( REQUIRE ).seqno( -1 ).quantity( 1 ).itemId( 1001 ).build() );
+		TradeItem stored = tradeItemDao.selectOneByTradeKey( 2, REQUIRE, 2 );
+		int id = stored.getId();
+		TradeItem tradeItem = TradeItem.builder().id( id ).tradeId( 2 ).offerRequire( REQUIRE ).seqno( -1 )
+				.quantity( stored.getQuantity() ).itemId( stored.getItemId() ).build();
+		assertThrows( DaoConstraintException.class, () -> tradeItemDao.update( tradeItem ) );
+
+		// the row was not changed, and still holds its key
+		assertEquals( id, tradeItemDao.selectOneByTradeKey( 2, REQUIRE, 2 ).getId().intValue() );
+		assertThrows( DaoConstraintException.class, () -> tradeItemDao.insertOne(
+				TradeItem.builder().tradeId( 2 ).offerRequire( REQUIRE ).seqno( 2 ).quantity( 1 ).itemId( 1001 ).build() ) );
+	}
+
+	@Test
+	public void testUpdateTradeKey() {
+		TradeItem tradeItem = tradeItemDao.selectOneByTradeKey( 2, REQUIRE, 2 );
+		tradeItem.setSeqno( 3 );
+		tradeItemDao.update( tradeItem );
+
+		assertNull( tradeItemDao.selectOneByTradeKey( 2, REQUIRE, 2 ) );
+		assertEquals( tradeItem.getId(), tradeItemDao.selectOneByTradeKey( 2, REQUIRE, 3 ).getId() );
+	}
+
 	@Test
 	public void testUpdateFailNonExisting() {
 		// no TradeItem.ID
@@ -213,6 +293,29 @@ public class TradeItemDaoDummyImplTest {
 		assertEquals( count - 1, tradeItemDao.selectAll().size() );
 	}
 
+	@Test
+	public void testDeleteRemovesFromIndexes() {
+		Trade trade = Trade.builder().id( 9 ).build();
+		Item item = Item.builder().id( 1002 ).build();
+		TradeItem tradeItem = tradeItemDao.selectAll( item ).get(0);
+
+		assertTrue( tradeItemDao.deleteOne( tradeItem ) );
+		assertEquals( 0, tradeItemDao.selectAll( item ).size() );
+		assertEquals( 1, tradeItemDao.selectAll( trade ).size() );
+	}
+
+	@Test
+	public void testUpdateMovesItem() {
+		Item oldItem = Item.builder().id( 1003 ).build();
+		Item newItem = Item.builder().id( 1017 ).build();
+		TradeItem tradeItem = tradeItemDao.selectAll( oldItem ).get(0);
+
+		tradeItem.setItemId( 1017 );
+		tradeItemDao.update( tradeItem );
+		assertEquals( 0, tradeItemDao.selectAll( oldItem ).size() );
+		assertEquals( 1, tradeItemDao.selectAll( newItem ).size() );
+	}
+
 	@Test
 	public void testDeleteFail() {
 		int count = tradeItemDao.selectAll().size();
@@ -175,6 +175,31 @@ public class VillagerDaoDummyImplTest {
 		assertEquals( newVillageId, finalVillager.getVillageId().intValue() );
 	}
 
+	@Test
+	public void testUpdateRename() {
+		Villager villager = villagerDao.selectOneByName( "Gary" );
+		assertNotNull( villager );
+		int villagerId = villager.getId();
+
+		villager.setName( "Gareth" );
+		villagerDao.update( villager );
+
+		assertNull( villagerDao.selectOneByName( "Gary" ) );
+		Villager finalVillager = villagerDao.selectOneByName( "Gareth" );
+		assertNotNull( finalVillager );
+		assertEquals( villagerId, finalVillager.getId().intValue() );
+	}
+
+	@Test
+	public void testDeleteFreesName() {
+		Villager villager = villagerDao.selectOneByName( "Dana" );
+		assertTrue( villagerDao.deleteOne( villager ) );
+		assertNull( villagerDao.selectOneByName( "Dana" ) );
+
+		Villager newVillager = villagerDao.insertOne( Villager.builder().name( "Dana" ).build() );
+		assertNotNull( newVillager.getId() );
+	}
+
 	@Test
 	public void testUpdateFailNonExisting() {
 		Villager villager = Villager.builder()
@@ -210,4 +235,30 @@ public class VillagerDaoDummyImplTest {
 		assertEquals( count - 1, villagerDao.selectAll().size() );
 	}
 
+	@Test
+	public void testSelectAnyByTypeId() {
+		Villager villager = villagerDao.selectAnyByTypeId( 105 );
+		assertNotNull( villager );
+		assertEquals( 105, villager.getTypeId().intValue() );
+		assertEquals( 2, villagerDao.countByTypeId( 105 ) );
+
+		assertNull( villagerDao.selectAnyByTypeId( 101 ) );
+		assertEquals( 0, villagerDao.countByTypeId( 101 ) );
+		assertNull( villagerDao.selectAnyByTypeId( null ) );
+	}
+
+	@Test
+	public void testTypeIndexFollowsUpdateAndDelete() {
+		Villager villager = villagerDao.selectOneByName( "Gary" );
+		assertEquals( 103, villager.getTypeId().intValue() );
+
+		villager.setTypeId( 101 );
+		villagerDao.update( villager );
+		assertNull( villagerDao.selectAnyByTypeId( 103 ) );
+		assertEquals( villager.getId(), villagerDao.selectAnyByTypeId( 101 ).getId() );
+
+		assertTrue( villagerDao.deleteOne( villager ) );
+		assertNull( villagerDao.selectAnyByTypeId( 101 ) );
+	}
+
 }
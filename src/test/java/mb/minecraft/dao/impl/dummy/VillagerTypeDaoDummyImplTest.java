@@ -3,6 +3,7 @@ package mb.minecraft.dao.impl.dummy;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
@@ -36,6 +37,9 @@ public class VillagerTypeDaoDummyImplTest {
 	@Mock
 	VillagerDao villagerDao;
 
+	@InjectMocks
+	VillagerDaoDummyImpl villagerDaoImpl;
+
 
 	@Test
 	public void testSelectOneById() {
@@ -166,6 +170,31 @@ public class VillagerTypeDaoDummyImplTest {
 	}
 
 
+	@Test
+	public void testDeleteWithDummyVillagerDao() {
+		villagerTypeDao.villagerDao = villagerDaoImpl;
+
+		// Liam Z is a Cleric
+		VillagerType cleric = villagerTypeDao.selectOneById( 105 );
+		Exception e = assertThrows( ForeignKeyConstraintException.class, () -> villagerTypeDao.deleteOne( cleric ) );
+		logger.error( e.getMessage() );
+
+		// nobody is a Librarian
+		assertTrue( villagerTypeDao.deleteOne( villagerTypeDao.selectOneById( 101 ) ) );
+		assertNull( villagerTypeDao.selectOneById( 101 ) );
+	}
+
+	@Test
+	public void testDeleteBehindDecoratedVillagerDao() {
+		// the decorated DAO would list no villagers at all; the index is asked instead
+		villagerTypeDao.villagerDao = new DaoMetrics( "VillagerDao" ).instrument( VillagerDao.class, villagerDao );
+		villagerTypeDao.dummyVillagerDao = villagerDaoImpl;
+
+		VillagerType cleric = villagerTypeDao.selectOneById( 105 );
+		assertThrows( ForeignKeyConstraintException.class, () -> villagerTypeDao.deleteOne( cleric ) );
+		assertNotNull( villagerTypeDao.selectOneById( 105 ) );
+	}
+
 
 	private static List<Villager> prepareVillagers() {
 		List<Villager> list = new ArrayList<>();